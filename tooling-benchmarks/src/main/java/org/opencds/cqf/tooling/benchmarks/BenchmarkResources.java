@@ -0,0 +1,176 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import ca.uhn.fhir.context.FhirVersionEnum;
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixtures shared by the benchmarks: the representative CQL libraries (EXM124 and its dependencies, copied from the
+ * tooling test resources into this module's classes by the build) and Library/Measure resources built from them.
+ */
+public final class BenchmarkResources {
+
+    public static final String CANONICAL_BASE = "http://ecqi.healthit.gov/ecqms";
+
+    /** The bundled CQL libraries, dependencies first. */
+    public static final List<String> CQL_LIBRARIES = List.of(
+            "FHIRHelpers",
+            "MATGlobalCommonFunctionsFHIR4",
+            "SupplementalDataElementsFHIR4",
+            "HospiceFHIR4",
+            "AdultOutpatientEncountersFHIR4",
+            "AdvancedIllnessandFrailtyExclusionECQMFHIR4",
+            "CCSComponent",
+            "EXM124-9.0.000");
+
+    private static final String CQL_RESOURCE_PATH = "/org/opencds/cqf/tooling/benchmarks/cql/";
+
+    private BenchmarkResources() {
+    }
+
+    /**
+     * Returns the bundled CQL source, keyed by file name (without the .cql extension), in dependency order.
+     */
+    public static Map<String, byte[]> getCql() {
+        Map<String, byte[]> cql = new LinkedHashMap<>();
+        for (String library : CQL_LIBRARIES) {
+            try (InputStream stream = BenchmarkResources.class.getResourceAsStream(CQL_RESOURCE_PATH + library + ".cql")) {
+                if (stream == null) {
+                    throw new IllegalStateException("Missing benchmark CQL resource: " + library);
+                }
+                cql.put(library, stream.readAllBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return cql;
+    }
+
+    /**
+     * Copies the bundled CQL libraries to a new temporary directory, as a CQL source folder of an IG would look.
+     */
+    public static Path copyCqlToTempDirectory() {
+        try {
+            Path directory = Files.createTempDirectory("cqf-tooling-benchmarks-cql");
+            for (Map.Entry<String, byte[]> entry : getCql().entrySet()) {
+                Files.write(directory.resolve(entry.getKey() + ".cql"), entry.getValue());
+            }
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            FileUtils.deleteDirectory(directory.toFile());
+        } catch (IOException e) {
+            // temporary files, left for the OS to clean up
+        }
+    }
+
+    /**
+     * Builds a Library carrying the given CQL library as content, with related artifacts and data requirements
+     * comparable to a refreshed IG library.
+     */
+    public static IBaseResource createLibrary(FhirVersionEnum fhirVersion, String name, byte[] cql) {
+        switch (fhirVersion) {
+            case DSTU3:
+                return createStu3Library(name, cql);
+            case R4:
+                return createR4Library(name, cql);
+            default:
+                throw new IllegalArgumentException("Unsupported fhir version: " + fhirVersion.getFhirVersionString());
+        }
+    }
+
+    /**
+     * Builds a Measure referencing the Library of the given name as its primary library.
+     */
+    public static IBaseResource createMeasure(FhirVersionEnum fhirVersion, String name) {
+        switch (fhirVersion) {
+            case DSTU3: {
+                org.hl7.fhir.dstu3.model.Measure measure = new org.hl7.fhir.dstu3.model.Measure();
+                measure.setId(name);
+                measure.setName(name);
+                measure.setUrl(CANONICAL_BASE + "/Measure/" + name);
+                measure.setVersion("9.0.000");
+                measure.addLibrary(new org.hl7.fhir.dstu3.model.Reference("Library/" + name));
+                return measure;
+            }
+            case R4: {
+                org.hl7.fhir.r4.model.Measure measure = new org.hl7.fhir.r4.model.Measure();
+                measure.setId(name);
+                measure.setName(name);
+                measure.setUrl(CANONICAL_BASE + "/Measure/" + name);
+                measure.setVersion("9.0.000");
+                measure.addLibrary(CANONICAL_BASE + "/Library/" + name);
+                return measure;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported fhir version: " + fhirVersion.getFhirVersionString());
+        }
+    }
+
+    private static org.hl7.fhir.r4.model.Library createR4Library(String name, byte[] cql) {
+        org.hl7.fhir.r4.model.Library library = new org.hl7.fhir.r4.model.Library();
+        library.setId(name);
+        library.setName(name);
+        library.setUrl(CANONICAL_BASE + "/Library/" + name);
+        library.setVersion("1.0.000");
+        library.setStatus(org.hl7.fhir.r4.model.Enumerations.PublicationStatus.ACTIVE);
+        library.getType().addCoding()
+                .setSystem("http://terminology.hl7.org/CodeSystem/library-type").setCode("logic-library");
+        for (String dependency : CQL_LIBRARIES) {
+            library.addRelatedArtifact()
+                    .setType(org.hl7.fhir.r4.model.RelatedArtifact.RelatedArtifactType.DEPENDSON)
+                    .setResource(CANONICAL_BASE + "/Library/" + dependency);
+        }
+        for (int i = 0; i < 50; i++) {
+            org.hl7.fhir.r4.model.DataRequirement requirement = library.addDataRequirement().setType("Encounter");
+            requirement.addProfile("http://hl7.org/fhir/StructureDefinition/Encounter");
+            requirement.addMustSupport("type").addMustSupport("period");
+            requirement.addCodeFilter().setPath("type")
+                    .setValueSet("http://cts.nlm.nih.gov/fhir/ValueSet/2.16.840.1.113883.3.464.1003.101.12." + (1000 + i));
+        }
+        library.addContent().setContentType("text/cql").setData(cql);
+        return library;
+    }
+
+    private static org.hl7.fhir.dstu3.model.Library createStu3Library(String name, byte[] cql) {
+        org.hl7.fhir.dstu3.model.Library library = new org.hl7.fhir.dstu3.model.Library();
+        library.setId(name);
+        library.setName(name);
+        library.setUrl(CANONICAL_BASE + "/Library/" + name);
+        library.setVersion("1.0.000");
+        library.setStatus(org.hl7.fhir.dstu3.model.Enumerations.PublicationStatus.ACTIVE);
+        library.getType().addCoding()
+                .setSystem("http://hl7.org/fhir/library-type").setCode("logic-library");
+        for (String dependency : CQL_LIBRARIES) {
+            library.addRelatedArtifact()
+                    .setType(org.hl7.fhir.dstu3.model.RelatedArtifact.RelatedArtifactType.DEPENDSON)
+                    .setResource(new org.hl7.fhir.dstu3.model.Reference("Library/" + dependency));
+        }
+        for (int i = 0; i < 50; i++) {
+            org.hl7.fhir.dstu3.model.DataRequirement requirement = library.addDataRequirement().setType("Encounter");
+            requirement.addProfile("http://hl7.org/fhir/StructureDefinition/Encounter");
+            requirement.addMustSupport("type").addMustSupport("period");
+            requirement.addCodeFilter().setPath("type").setValueSet(new org.hl7.fhir.dstu3.model.StringType(
+                    "http://cts.nlm.nih.gov/fhir/ValueSet/2.16.840.1.113883.3.464.1003.101.12." + (1000 + i)));
+        }
+        library.addContent().setContentType("text/cql").setData(cql);
+        return library;
+    }
+}
@@ -0,0 +1,66 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import ca.uhn.fhir.context.FhirVersionEnum;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Identifier;
+import org.opencds.cqf.tooling.utilities.BundleUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembly of an R4 transaction Bundle from a measure's artifacts, as done for every measure and plan definition
+ * bundle of an IG.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BundleUtilsBenchmark {
+
+    /** The number of resources in the bundle. */
+    @Param({"10", "100", "1000"})
+    public int resourceCount;
+
+    private List<IBaseResource> resources;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, byte[]> cql = BenchmarkResources.getCql();
+        List<String> names = new ArrayList<>(cql.keySet());
+        resources = new ArrayList<>(resourceCount);
+        resources.add(BenchmarkResources.createMeasure(FhirVersionEnum.R4, "EXM124"));
+        for (int i = 1; i < resourceCount; i++) {
+            String name = names.get(i % names.size());
+            IBaseResource library = BenchmarkResources.createLibrary(FhirVersionEnum.R4, name, cql.get(name));
+            library.setId(name + "-" + i);
+            resources.add(library);
+        }
+    }
+
+    @Benchmark
+    public Bundle bundleR4Artifacts() {
+        // the identifier is updated in place by the bundling, so each invocation gets its own
+        List<Object> identifiers = Collections.singletonList(
+                new Identifier().setSystem(BenchmarkResources.CANONICAL_BASE).setValue("EXM124"));
+        return BundleUtils.bundleR4Artifacts("EXM124", resources, identifiers, true);
+    }
+}
@@ -0,0 +1,139 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written with {@code -rf json} and reports the change of every benchmark present in
+ * both.
+ * <p>
+ * A benchmark has regressed when it is slower than the baseline by more than the threshold (10% unless given) and
+ * the difference is larger than the combined score error of the two runs, so noisy results are not reported as
+ * regressions. Exits with status 1 if any benchmark regressed.
+ * <pre>
+ * java -cp tooling-benchmarks/target/benchmarks.jar org.opencds.cqf.tooling.benchmarks.CompareResults \
+ *     baseline.json current.json [thresholdPercent]
+ * </pre>
+ */
+public class CompareResults {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, JsonObject> baseline = readResults(args[0]);
+        Map<String, JsonObject> current = readResults(args[1]);
+
+        int regressions = 0;
+        System.out.printf("%-100s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, JsonObject> entry : current.entrySet()) {
+            JsonObject baselineResult = baseline.get(entry.getKey());
+            if (baselineResult == null) {
+                System.out.printf("%-100s %14s %14s %9s%n", entry.getKey(), "-", format(entry.getValue()), "new");
+                continue;
+            }
+            Comparison comparison = new Comparison(baselineResult, entry.getValue());
+            boolean regressed = comparison.isRegression(threshold);
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-100s %14s %14s %+8.1f%%%s%n", entry.getKey(), format(baselineResult),
+                    format(entry.getValue()), comparison.getChangePercent(), regressed ? "  REGRESSION" : "");
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-100s %14s %14s %9s%n", key, format(baseline.get(key)), "-", "missing");
+            }
+        }
+
+        System.out.printf("%d benchmark(s) regressed by more than %.1f%%%n", regressions, threshold);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a JMH JSON result file, keyed by benchmark name and parameters.
+     */
+    static Map<String, JsonObject> readResults(String path) throws IOException {
+        JsonArray results = JsonParser.parseString(
+                new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8)).getAsJsonArray();
+        Map<String, JsonObject> keyed = new LinkedHashMap<>();
+        for (JsonElement element : results) {
+            JsonObject result = element.getAsJsonObject();
+            keyed.put(getKey(result), result);
+        }
+        return keyed;
+    }
+
+    static String getKey(JsonObject result) {
+        StringBuilder key = new StringBuilder(result.get("benchmark").getAsString()
+                .replace("org.opencds.cqf.tooling.benchmarks.", ""));
+        if (result.has("params")) {
+            Map<String, String> params = new TreeMap<>();
+            result.getAsJsonObject("params").entrySet()
+                    .forEach(param -> params.put(param.getKey(), param.getValue().getAsString()));
+            key.append(params);
+        }
+        return key.toString();
+    }
+
+    private static String format(JsonObject result) {
+        JsonObject metric = result.getAsJsonObject("primaryMetric");
+        return String.format("%.3f %s", metric.get("score").getAsDouble(), metric.get("scoreUnit").getAsString());
+    }
+
+    static class Comparison {
+        private final double baselineScore;
+        private final double baselineError;
+        private final double currentScore;
+        private final double currentError;
+        private final boolean higherIsBetter;
+
+        Comparison(JsonObject baseline, JsonObject current) {
+            JsonObject baselineMetric = baseline.getAsJsonObject("primaryMetric");
+            JsonObject currentMetric = current.getAsJsonObject("primaryMetric");
+            this.baselineScore = baselineMetric.get("score").getAsDouble();
+            this.baselineError = getError(baselineMetric);
+            this.currentScore = currentMetric.get("score").getAsDouble();
+            this.currentError = getError(currentMetric);
+            // throughput is reported in ops per time unit, every other mode in time per op
+            this.higherIsBetter = "thrpt".equals(current.get("mode").getAsString());
+        }
+
+        private static double getError(JsonObject metric) {
+            JsonElement error = metric.get("scoreError");
+            // single-shot and single-fork runs report "NaN" when there are too few samples for an error
+            return error == null || Double.isNaN(error.getAsDouble()) ? 0.0 : error.getAsDouble();
+        }
+
+        /**
+         * The change from the baseline in percent; positive is slower.
+         */
+        double getChangePercent() {
+            if (baselineScore == 0.0) {
+                return 0.0;
+            }
+            double change = (currentScore - baselineScore) / baselineScore * 100.0;
+            return higherIsBetter ? -change : change;
+        }
+
+        boolean isRegression(double thresholdPercent) {
+            return getChangePercent() > thresholdPercent
+                    && Math.abs(currentScore - baselineScore) > baselineError + currentError;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import org.cqframework.fhir.npm.LibraryLoader;
+import org.cqframework.fhir.utilities.exception.IGInitializationException;
+import org.fhir.ucum.UcumEssenceService;
+import org.fhir.ucum.UcumException;
+import org.fhir.ucum.UcumService;
+import org.opencds.cqf.tooling.operation.ig.IGLoggingService;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translation of a CQL source folder (EXM124 and its dependencies, FHIRHelpers included) the way the IG refresh does
+ * it: a new {@link CqlProcessor} per run, translating every library to ELM and gathering its data requirements.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CqlProcessorBenchmark {
+
+    private Path cqlDirectory;
+    private LibraryLoader libraryLoader;
+    private UcumService ucumService;
+    private IGLoggingService loggingService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cqlDirectory = BenchmarkResources.copyCqlToTempDirectory();
+        libraryLoader = new LibraryLoader("4.0.1");
+        try {
+            ucumService = new UcumEssenceService(UcumEssenceService.class.getResourceAsStream("/ucum-essence.xml"));
+        } catch (UcumException e) {
+            throw new IGInitializationException("Could not create UCUM validation service", e);
+        }
+        loggingService = new IGLoggingService(LoggerFactory.getLogger(CqlProcessorBenchmark.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkResources.deleteDirectory(cqlDirectory);
+    }
+
+    @Benchmark
+    public CqlProcessor translateFolder() {
+        CqlProcessor cqlProcessor = new CqlProcessor(Collections.emptyList(),
+                Collections.singletonList(cqlDirectory.toString()), libraryLoader, loggingService, ucumService,
+                null, BenchmarkResources.CANONICAL_BASE, false);
+        cqlProcessor.execute();
+        if (cqlProcessor.getAllFileInformation().size() != BenchmarkResources.CQL_LIBRARIES.size()) {
+            throw new IllegalStateException("Expected every benchmark CQL library to be translated");
+        }
+        return cqlProcessor;
+    }
+}
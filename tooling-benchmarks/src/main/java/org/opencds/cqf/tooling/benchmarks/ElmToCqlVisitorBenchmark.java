@@ -0,0 +1,59 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import org.hl7.elm.r1.Library;
+import org.opencds.cqf.tooling.cql_generation.context.ElmContext;
+import org.opencds.cqf.tooling.cql_generation.drool.visitor.ElmToCqlVisitor;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CQL generation from ELM with the {@link ElmToCqlVisitor} used by the drool CQL generator, over the ELM of the
+ * representative libraries (translated once per trial).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ElmToCqlVisitorBenchmark {
+
+    @Param({"FHIRHelpers", "MATGlobalCommonFunctionsFHIR4", "EXM124-9.0.000"})
+    public String library;
+
+    private Path cqlDirectory;
+    private Library elm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cqlDirectory = BenchmarkResources.copyCqlToTempDirectory();
+        elm = ResourceUtils.getElmFromCql(cqlDirectory.resolve(library + ".cql").toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkResources.deleteDirectory(cqlDirectory);
+    }
+
+    @Benchmark
+    public String generateCql() {
+        ElmToCqlVisitor visitor = new ElmToCqlVisitor();
+        visitor.visitLibrary(elm, new ElmContext(null));
+        return visitor.getOutput();
+    }
+}
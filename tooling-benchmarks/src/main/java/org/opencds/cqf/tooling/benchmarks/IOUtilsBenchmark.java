@@ -0,0 +1,101 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.FhirContextCache;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and encoding of a Library carrying the EXM124 CQL, in JSON and XML, for R4 and STU3.
+ * <p>
+ * {@link #readResource(ColdCache)} clears the IOUtils caches before every invocation so it measures a file read and
+ * parse; {@link #readResourceCached()} measures the cache hit that every later read of the same path takes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IOUtilsBenchmark {
+
+    @Param({"R4", "DSTU3"})
+    public FhirVersionEnum fhirVersion;
+
+    @Param({"JSON", "XML"})
+    public IOUtils.Encoding encoding;
+
+    private FhirContext fhirContext;
+    private IBaseResource library;
+    private Path directory;
+    private String path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fhirContext = FhirContextCache.getContext(fhirVersion);
+        Map<String, byte[]> cql = BenchmarkResources.getCql();
+        library = BenchmarkResources.createLibrary(fhirVersion, "EXM124", cql.get("EXM124-9.0.000"));
+
+        directory = Files.createTempDirectory("cqf-tooling-benchmarks-io");
+        Path file = directory.resolve("library-EXM124" + IOUtils.getFileExtension(encoding));
+        Files.write(file, IOUtils.encodeResource(library, encoding, fhirContext, true));
+        path = file.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        IOUtils.cleanUp();
+        BenchmarkResources.deleteDirectory(directory);
+    }
+
+    /**
+     * Clears the IOUtils caches before every invocation of the benchmarks that take it.
+     */
+    @State(Scope.Thread)
+    public static class ColdCache {
+        @Setup(Level.Invocation)
+        public void clear() {
+            IOUtils.cleanUp();
+        }
+    }
+
+    @Benchmark
+    public IBaseResource readResource(ColdCache coldCache) {
+        return IOUtils.readResource(path, fhirContext);
+    }
+
+    @Benchmark
+    public IBaseResource readResourceCached() {
+        return IOUtils.readResource(path, fhirContext);
+    }
+
+    @Benchmark
+    public byte[] encodeResource() {
+        return IOUtils.encodeResource(library, encoding, fhirContext);
+    }
+
+    @Benchmark
+    public byte[] encodeResourcePretty() {
+        return IOUtils.encodeResource(library, encoding, fhirContext, true);
+    }
+}
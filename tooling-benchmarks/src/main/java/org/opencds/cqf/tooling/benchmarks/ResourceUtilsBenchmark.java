@@ -0,0 +1,62 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.FhirContextCache;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The canonical url lookups that run for every artifact of an IG during refresh and bundling.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceUtilsBenchmark {
+
+    @Param({"R4", "DSTU3"})
+    public FhirVersionEnum fhirVersion;
+
+    private FhirContext fhirContext;
+    private IBaseResource library;
+    private IBaseResource measure;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fhirContext = FhirContextCache.getContext(fhirVersion);
+        library = BenchmarkResources.createLibrary(fhirVersion, "EXM124", new byte[0]);
+        measure = BenchmarkResources.createMeasure(fhirVersion, "EXM124");
+    }
+
+    @Benchmark
+    public String getUrlLibrary() {
+        return ResourceUtils.getUrl(library, fhirContext);
+    }
+
+    @Benchmark
+    public String getUrlMeasure() {
+        return ResourceUtils.getUrl(measure, fhirContext);
+    }
+
+    @Benchmark
+    public String getPrimaryLibraryUrl() {
+        return ResourceUtils.getPrimaryLibraryUrl(measure, fhirContext);
+    }
+}
@@ -0,0 +1,94 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Duration;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Resource;
+import org.opencds.cqf.tooling.operations.dateroller.RollTestDates;
+import org.opencds.cqf.tooling.utilities.FhirContextCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date rolling of R4 test data: a batch of Observations and Encounters carrying the date roller extension, rebuilt
+ * before every invocation since rolling updates them in place.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RollTestDatesBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final FhirContext fhirContext = FhirContextCache.getContext("r4");
+    private final RollTestDates dateRoller = new RollTestDates();
+    private List<Class<? extends IBase>> dateClasses;
+    private List<Resource> resources;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dateClasses = dateRoller.getDateClasses(fhirContext);
+    }
+
+    @Setup(Level.Invocation)
+    public void createResources() {
+        Date lastUpdated = DateUtils.addDays(new Date(), -40);
+        resources = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Observation observation = new Observation();
+            observation.addExtension(getDateRollerExtension(lastUpdated));
+            observation.setEffective(new DateTimeType(DateUtils.addDays(lastUpdated, -i)));
+            observation.setIssued(DateUtils.addDays(lastUpdated, -i));
+            resources.add(observation);
+
+            Encounter encounter = new Encounter();
+            encounter.addExtension(getDateRollerExtension(lastUpdated));
+            encounter.setPeriod(new Period().setStart(DateUtils.addDays(lastUpdated, -i - 1))
+                    .setEnd(DateUtils.addDays(lastUpdated, -i)));
+            resources.add(encounter);
+        }
+    }
+
+    private Extension getDateRollerExtension(Date lastUpdated) {
+        Duration frequency = new Duration();
+        frequency.setValue(30).setUnit("days");
+        Extension dateRollerExtension = new Extension(RollTestDates.DATEROLLER_EXT_URL);
+        dateRollerExtension.addExtension("dateLastUpdated", new DateTimeType(lastUpdated));
+        dateRollerExtension.addExtension("frequency", frequency);
+        return dateRollerExtension;
+    }
+
+    @Benchmark
+    public int getAllDateElements() {
+        int rolled = 0;
+        for (Resource resource : resources) {
+            if (dateRoller.getAllDateElements(fhirContext, resource, dateClasses)) {
+                rolled++;
+            }
+        }
+        return rolled;
+    }
+}
@@ -0,0 +1,222 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.opencds.cqf.tooling.operation.BundleResources;
+import org.opencds.cqf.tooling.operation.GenerateSyntheticIGOperation;
+import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
+import org.opencds.cqf.tooling.parameter.TestIGParameters;
+import org.opencds.cqf.tooling.processor.IGProcessor;
+import org.opencds.cqf.tooling.processor.IGTestProcessor;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End-to-end benchmark of the IG operations on a synthetic IG: generates the IG with {@link GenerateSyntheticIGOperation}
+ * and runs RefreshIG, BundleResources and (when a FHIR server is given) TestIG over it, in-process, recording the wall
+ * time and peak heap of every phase.
+ * <p>
+ * The phases run minutes on a large IG, too long for JMH iterations, so this is a plain main class. It writes the
+ * results in the JMH JSON format (single shot, milliseconds, with the peak heap as a secondary metric) so they can be
+ * compared with {@link CompareResults}.
+ * <pre>
+ * java -Xmx4g -cp tooling-benchmarks/target/benchmarks.jar org.opencds.cqf.tooling.benchmarks.SyntheticIGMacroBenchmark \
+ *     -libraries=1000 -depth=6 -fanout=4 -measures=200 -valuesets=500 -patients=10 -iterations=3 -rff=macro.json
+ * </pre>
+ * Every option of -GenerateSyntheticIG except the IG path is accepted, plus -iterations, -rff (the result file) and
+ * -fs (the FHIR server TestIG runs against).
+ */
+public class SyntheticIGMacroBenchmark {
+
+    private static final String BENCHMARK_PREFIX = SyntheticIGMacroBenchmark.class.getName() + ".";
+
+    private final List<String> generatorArgs = new ArrayList<>();
+    private final Map<String, String> params = new LinkedHashMap<>();
+    private int iterations = 1;
+    private String resultFile = "synthetic-ig-macro.json";
+    private String fhirServerUri;
+
+    private final Map<String, List<Double>> times = new LinkedHashMap<>();
+    private final Map<String, List<Double>> peakHeaps = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws IOException {
+        SyntheticIGMacroBenchmark benchmark = new SyntheticIGMacroBenchmark();
+        benchmark.parseArgs(args);
+        benchmark.run();
+        benchmark.writeResults();
+        System.exit(0);
+    }
+
+    private void parseArgs(String[] args) {
+        for (String arg : args) {
+            String[] flagAndValue = arg.split("=");
+            if (flagAndValue.length < 2) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            String flag = flagAndValue[0].replace("-", "").toLowerCase();
+            String value = flagAndValue[1];
+            switch (flag) {
+                case "iterations":
+                case "i":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "rff":
+                    resultFile = value;
+                    break;
+                case "fhirserver":
+                case "fs":
+                    fhirServerUri = value;
+                    break;
+                case "igpath":
+                case "ip":
+                    throw new IllegalArgumentException("The synthetic IG is generated into a temporary directory");
+                default:
+                    generatorArgs.add(arg);
+                    params.put(flag, value);
+            }
+        }
+    }
+
+    private void run() throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            Path workDirectory = Files.createTempDirectory("synthetic-ig-macro");
+            try {
+                Path igDirectory = workDirectory.resolve("ig");
+                List<String> args = new ArrayList<>(generatorArgs);
+                args.add("-ip=" + igDirectory);
+                new GenerateSyntheticIGOperation().execute(args.toArray(new String[0]));
+
+                measure("refreshIG", () -> refreshIG(igDirectory));
+                measure("bundleResources", () -> new BundleResources().execute(new String[] {
+                        "-ptd=" + igDirectory.resolve("input").resolve("resources"),
+                        "-op=" + workDirectory.resolve("bundle"), "-v=r4", "-e=json" }));
+                if (fhirServerUri != null) {
+                    measure("testIG", () -> testIG(igDirectory));
+                }
+            } finally {
+                BenchmarkResources.deleteDirectory(workDirectory);
+            }
+        }
+    }
+
+    private static void refreshIG(Path igDirectory) {
+        RefreshIGParameters params = new RefreshIGParameters();
+        params.ini = igDirectory.resolve("ig.ini").toString();
+        params.outputEncoding = IOUtils.Encoding.JSON;
+        params.resourceDirs = new ArrayList<>();
+        params.includeELM = false;
+        params.includeTerminology = true;
+        params.includeDependencies = true;
+        params.includePatientScenarios = true;
+        params.versioned = false;
+        params.shouldApplySoftwareSystemStamp = true;
+        params.addBundleTimestamp = false;
+        new IGProcessor().publishIG(params);
+    }
+
+    private void testIG(Path igDirectory) {
+        TestIGParameters params = new TestIGParameters();
+        params.ini = igDirectory.resolve("ig.ini").toString();
+        params.fhirContext = FhirContext.forR4Cached();
+        params.testCasesPath = igDirectory.resolve("input").resolve("tests").toString();
+        params.fhirServerUri = fhirServerUri;
+        try {
+            new IGTestProcessor().testIg(params);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Runs a phase from a clean state: the IOUtils caches are cleared and the heap collected, so the peak heap is the
+     * phase's own and not left over from the previous one.
+     */
+    private void measure(String phase, Runnable runnable) {
+        IOUtils.cleanUp();
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        long start = System.nanoTime();
+        runnable.run();
+        double elapsedMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        double peakHeapMegabytes = peakHeap / (1024.0 * 1024.0);
+        times.computeIfAbsent(phase, key -> new ArrayList<>()).add(elapsedMillis);
+        peakHeaps.computeIfAbsent(phase, key -> new ArrayList<>()).add(peakHeapMegabytes);
+        System.out.printf("%s: %.0f ms, peak heap %.1f MB%n", phase, elapsedMillis, peakHeapMegabytes);
+    }
+
+    private void writeResults() throws IOException {
+        JsonArray results = new JsonArray();
+        for (Map.Entry<String, List<Double>> phase : times.entrySet()) {
+            JsonObject result = new JsonObject();
+            result.addProperty("benchmark", BENCHMARK_PREFIX + phase.getKey());
+            result.addProperty("mode", "ss");
+            result.addProperty("measurementIterations", phase.getValue().size());
+            JsonObject benchmarkParams = new JsonObject();
+            params.forEach(benchmarkParams::addProperty);
+            result.add("params", benchmarkParams);
+            result.add("primaryMetric", toMetric(phase.getValue(), "ms/op"));
+            JsonObject secondaryMetrics = new JsonObject();
+            secondaryMetrics.add("peakHeap", toMetric(peakHeaps.get(phase.getKey()), "MB"));
+            result.add("secondaryMetrics", secondaryMetrics);
+            results.add(result);
+        }
+        Files.write(Paths.get(resultFile), new GsonBuilder().setPrettyPrinting().create().toJson(results)
+                .getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + Paths.get(resultFile).toAbsolutePath());
+    }
+
+    /*
+     * The mean and, like JMH, the 99.9% confidence interval half-width as the error (NaN for a single sample).
+     */
+    private static JsonObject toMetric(List<Double> samples, String unit) {
+        double mean = samples.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+        double error = Double.NaN;
+        if (samples.size() > 1) {
+            double variance = samples.stream().mapToDouble(sample -> (sample - mean) * (sample - mean)).sum()
+                    / (samples.size() - 1);
+            // normal approximation; JMH uses the Student t distribution, which is wider for few samples
+            error = 3.29 * Math.sqrt(variance / samples.size());
+        }
+        JsonObject metric = new JsonObject();
+        metric.addProperty("score", mean);
+        if (Double.isNaN(error)) {
+            // written as a string, the way JMH does, as JSON has no NaN
+            metric.addProperty("scoreError", "NaN");
+        } else {
+            metric.addProperty("scoreError", error);
+        }
+        metric.addProperty("scoreUnit", unit);
+        JsonArray rawData = new JsonArray();
+        JsonArray fork = new JsonArray();
+        samples.forEach(fork::add);
+        rawData.add(fork);
+        metric.add("rawData", rawData);
+        return metric;
+    }
+}
@@ -0,0 +1,302 @@
+package org.opencds.cqf.tooling.cli;
+
+import ca.uhn.fhir.context.FhirVersionEnum;
+import org.opencds.cqf.tooling.common.Profiler;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
+import org.opencds.cqf.tooling.processor.ValueSetsProcessor;
+import org.opencds.cqf.tooling.utilities.FhirContextCache;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * A long-lived process that runs operations for {@link DaemonClient}, so scripts that call the CLI many times pay the
+ * JVM startup, FhirContext initialization and class loading once.
+ * <p>
+ * The daemon listens on a loopback port and writes the port and a random token to the state file (only readable by the
+ * user), which the client needs to connect. Requests run one at a time: the tooling keeps its per-run state (resource
+ * caches, resource directories, value set cache) in static fields, so every request starts from that state cleared,
+ * while the FhirContexts and everything already loaded and compiled by the JVM stay warm.
+ * <p>
+ * The protocol: the client sends the token, its working directory and the arguments (as modified UTF-8 strings), the
+ * daemon sends back frames of a type byte and a length-prefixed payload: stdout and stderr output while the operation
+ * runs, then the exit code.
+ * <p>
+ * Operations report invalid arguments and a printed help with exceptions rather than System.exit, so such a request
+ * ends with its exit code (1 and 0) and the daemon keeps serving.
+ */
+public class Daemon {
+    private static final Logger logger = LoggerFactory.getLogger(Daemon.class);
+
+    public static final String OPERATION = "-Daemon";
+    static final String STOP = "-StopDaemon";
+    static final String STATE_FILE_PROPERTY = "cqf.tooling.daemon.file";
+
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+
+    private final ServerSocket serverSocket;
+    private final String token;
+    private final Path stateFile;
+    private final String workingDirectory;
+    private volatile boolean running = true;
+
+    Daemon(int port, Path stateFile) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        byte[] tokenBytes = new byte[24];
+        new SecureRandom().nextBytes(tokenBytes);
+        this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        this.stateFile = stateFile;
+        this.workingDirectory = getWorkingDirectory();
+    }
+
+    public static void main(String[] args) {
+        int port = 0;
+        boolean stop = false;
+        for (String arg : args) {
+            if (arg.equals(OPERATION)) continue;
+            String[] flagAndValue = arg.split("=");
+            String flag = flagAndValue[0];
+            switch (flag.replace("-", "").toLowerCase()) {
+                case "port":
+                case "p":
+                    if (flagAndValue.length < 2) {
+                        throw new IllegalArgumentException("Invalid argument: " + arg);
+                    }
+                    port = Integer.parseInt(flagAndValue[1]);
+                    break;
+                case "stop":
+                    stop = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown flag: " + flag);
+            }
+        }
+
+        if (stop) {
+            System.exit(DaemonClient.run(new String[] { STOP }));
+        }
+
+        try {
+            Daemon daemon = new Daemon(port, getStateFile());
+            // scan the FHIR models while waiting for the first request
+            FhirContextCache.warmUp(FhirVersionEnum.DSTU3, FhirVersionEnum.R4);
+            daemon.writeStateFile();
+            daemon.serve();
+        } catch (IOException e) {
+            throw new RuntimeException("Error running the daemon: " + e.getMessage(), e);
+        }
+    }
+
+    static Path getStateFile() {
+        String path = System.getProperty(STATE_FILE_PROPERTY);
+        if (path == null || path.isEmpty()) {
+            return Paths.get(System.getProperty("user.home"), ".cqf-tooling", "daemon");
+        }
+        return Paths.get(path);
+    }
+
+    static String getWorkingDirectory() {
+        return new File(System.getProperty("user.dir")).getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    void writeStateFile() throws IOException {
+        Files.createDirectories(stateFile.toAbsolutePath().getParent());
+        Files.deleteIfExists(stateFile);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(stateFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        Files.write(stateFile, (getPort() + "\n" + token + "\n").getBytes(StandardCharsets.UTF_8));
+        stateFile.toFile().deleteOnExit();
+    }
+
+    void serve() {
+        logger.info("Daemon listening on {}:{} in {} (state file {})", serverSocket.getInetAddress().getHostAddress(),
+                getPort(), workingDirectory, stateFile.toAbsolutePath());
+        while (running) {
+            try (Socket socket = serverSocket.accept()) {
+                handle(socket);
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Error handling a daemon request: {}", e.getMessage());
+                }
+            }
+        }
+        logger.info("Daemon stopped");
+    }
+
+    void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.debug("Error closing the daemon socket: {}", e.getMessage());
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+        if (!token.equals(in.readUTF())) {
+            logger.warn("Rejected a daemon request with an invalid token");
+            return;
+        }
+        String clientDirectory = in.readUTF();
+        int argCount = in.readInt();
+        List<String> argList = new ArrayList<>(argCount);
+        for (int i = 0; i < argCount; i++) {
+            argList.add(in.readUTF());
+        }
+        String[] args = argList.toArray(new String[0]);
+
+        if (args.length == 1 && args[0].equals(STOP)) {
+            writeFrame(out, STDERR, "Daemon stopping\n".getBytes(StandardCharsets.UTF_8));
+            writeExit(out, 0);
+            stop();
+            return;
+        }
+        if (!workingDirectory.equals(clientDirectory)) {
+            // relative paths in the arguments would resolve against the daemon's directory, not the client's
+            writeFrame(out, STDERR, String.format("The daemon runs in %s, run the client from there (was %s)%n",
+                    workingDirectory, clientDirectory).getBytes(StandardCharsets.UTF_8));
+            writeExit(out, 2);
+            return;
+        }
+
+        logger.info("Running {}", String.join(" ", args));
+        long start = System.currentTimeMillis();
+        int exitCode = run(args, out);
+        logger.info("Finished {} with exit code {} in {} ms", args.length > 0 ? args[0] : "", exitCode,
+                System.currentTimeMillis() - start);
+        writeExit(out, exitCode);
+    }
+
+    /*
+     * Runs a request with System.out and System.err sent to the client. The logger (slf4j-simple) writes to whatever
+     * System.err is at the time, so the log output goes to the client as well.
+     */
+    private int run(String[] args, DataOutputStream out) {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        PrintStream requestOut = new PrintStream(new FrameOutputStream(out, STDOUT), true, StandardCharsets.UTF_8);
+        PrintStream requestErr = new PrintStream(new FrameOutputStream(out, STDERR), true, StandardCharsets.UTF_8);
+        System.setOut(requestOut);
+        System.setErr(requestErr);
+        try {
+            resetState();
+            if (args.length == 0) {
+                System.err.println("Requests must include which operation to run as a command line argument.");
+                return 1;
+            }
+            Main.run(args);
+            return 0;
+        } catch (HelpRequestedException e) {
+            return 0;
+        } catch (InvalidOperationArgs e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        } finally {
+            requestOut.flush();
+            requestErr.flush();
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+    }
+
+    /*
+     * Clears the state a previous request left in static fields, including the parsed resources, which the request
+     * may have changed in memory. The FhirContextCache and the compiled libraries are deliberately kept: the latter
+     * are checked against their files when used, so a request only translates again what changed since the previous
+     * one.
+     */
+    static void resetState() {
+        IOUtils.clearRunCaches();
+        IOUtils.resourceDirectories = new ArrayList<>();
+        IOUtils.clearDevicePaths();
+        ResourceUtils.cleanUp();
+        ValueSetsProcessor.clearCachedValueSets();
+        Profiler.reset();
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    private static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(Integer.BYTES);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends everything written to it to the client as frames of the given type. Write errors (the client went away)
+     * are left to the PrintStream wrapping it, which swallows them, so the operation still runs to completion.
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            byte[] payload = new byte[len];
+            System.arraycopy(b, off, payload, 0, len);
+            writeFrame(out, type, payload);
+        }
+    }
+}
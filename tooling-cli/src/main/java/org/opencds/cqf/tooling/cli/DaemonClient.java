@@ -0,0 +1,97 @@
+package org.opencds.cqf.tooling.cli;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The client of {@link Daemon}: forwards the arguments to the daemon named in the state file, copies the output of
+ * the operation to System.out and System.err as it arrives, and returns the operation's exit code.
+ * <pre>
+ * java -jar tooling-cli.jar -Remote -RefreshIG -ini=ig.ini -t -d -p
+ * </pre>
+ * Deliberately light: it loads none of the operations or FHIR classes, so its startup is little more than the JVM's.
+ */
+public class DaemonClient {
+
+    public static final String OPERATION = "-Remote";
+
+    private DaemonClient() {}
+
+    /**
+     * Runs the arguments on the daemon and returns the exit code; 1 if the operation failed, 2 if the daemon could
+     * not be reached or rejected the request.
+     */
+    public static int run(String[] args) {
+        Path stateFile = Daemon.getStateFile();
+        int port;
+        String token;
+        try {
+            List<String> state = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+            if (state.size() < 2) {
+                System.err.println("Invalid daemon state file: " + stateFile);
+                return 2;
+            }
+            port = Integer.parseInt(state.get(0).trim());
+            token = state.get(1).trim();
+        } catch (NoSuchFileException e) {
+            System.err.println("No daemon is running (no state file at " + stateFile + "), start one with -Daemon");
+            return 2;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error reading the daemon state file " + stateFile + ": " + e.getMessage());
+            return 2;
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(token);
+            out.writeUTF(Daemon.getWorkingDirectory());
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            return readResponse(socket.getInputStream());
+        } catch (ConnectException e) {
+            System.err.println("No daemon is listening on port " + port + ", start one with -Daemon");
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error communicating with the daemon: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    private static int readResponse(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                // the daemon closes the connection without an exit code when it rejects the token or dies mid-request
+                System.err.println("The daemon closed the connection before the operation finished");
+                return 2;
+            }
+            int length = in.readInt();
+            if (type == Daemon.EXIT) {
+                return in.readInt();
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            OutputStream target = type == Daemon.STDOUT ? System.out : System.err;
+            target.write(payload);
+            target.flush();
+        }
+    }
+}
@@ -247,63 +247,43 @@ package org.opencds.cqf.tooling.cli;
                 is supplied, the transformer will assume "json" as the default and output a single JSON-encoded bundle.
             - The -wcg flag is a boolean that indicates whether or not the generated condition grouper valuesets should be written
             - to their own dedicated output file, in addition to being included in the generated bundle file.
-        */
 
-//import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
-//import org.opencds.cqf.tooling.exception.InvalidOperationInitialization;
-//import org.opencds.cqf.tooling.exception.OperationNotFound;
-//import org.opencds.cqf.tooling.operations.ExecutableOperation;
-//import org.opencds.cqf.tooling.operations.Operation;
-//import org.reflections.Reflections;
+        - Daemon
+            - command: java -jar tooling-cli.jar -Daemon (-port | -p) (-stop)
+            - Starts a long-lived process on a loopback port that runs operations for -Remote clients, so the JVM startup,
+                FhirContext initialization and class loading are paid once instead of on every invocation
+            - command: java -jar tooling-cli.jar -Remote -RefreshIG -ini=ig.ini ...
+            - Runs the operation on the daemon, streaming its output back and exiting with its exit code. Must be run
+                from the daemon's working directory, as relative paths are resolved by the daemon.
+            - -Daemon -stop stops a running daemon
+
+        - GenerateSyntheticIG
+            - command: mvn exec: java -Dexec.args="-GenerateSyntheticIG [-igpath | -ip] (-libraries | -l) (-depth | -d) (-fanout | -f) (-measures | -m) (-valuesets | -vs) (-expansionsize | -es) (-patients | -p) (-seed | -s) (-canonicalbase | -cb) (-packageid | -pid) (-encoding | -e)"
+            - Generates a synthetic R4 measure IG of the given size for benchmarking
+
+        - Pipeline
+            - command: java -jar tooling-cli.jar -Pipeline (-manifest | -m) (-maxconcurrency | -mc)
+            - Runs the operation steps of a JSON manifest in one JVM, sharing the FhirContexts, parsed resources and CQL
+                translations between them. Steps that declare disjoint "paths" may run concurrently, see PipelineOperation.
+        */
 
+import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.common.Profiler;
 import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationInitialization;
+import org.opencds.cqf.tooling.operations.ExecutableOperation;
+import org.opencds.cqf.tooling.operations.OperationRegistry;
+import org.opencds.cqf.tooling.operations.OperationRegistry.OperationDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-//import java.lang.reflect.InvocationTargetException;
-//import java.util.HashMap;
-//import java.util.Map;
-//import java.util.Set;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
-// TODO: Uncomment this block and imports once operation refactor is ready
-//    private static Map<String, Class<?>> operationClassMap;
-//
-//    public static void main(String[] args) {
-//        if (args == null || args.length == 0) {
-//            logger.error("cqf-tooling version: {}", Main.class.getPackage().getImplementationVersion());
-//            throw new OperationNotFound(
-//                    "Requests must include which operation to run as a command line argument. See docs for examples on how to use this project.");
-//        }
-//
-//        // NOTE: we may want to use the Spring Context Library to find the annotated classes
-//        if (operationClassMap == null) {
-//            operationClassMap = new HashMap<>();
-//            Reflections reflections = newReflections("org.opencds.cqf.tooling.operations");
-//            Set<Class<?>> operationClasses = reflections
-//                    .getTypesAnnotatedWith(Operation.class);
-//            operationClasses.forEach(clazz -> operationClassMap.put(clazz.getAnnotation(Operation.class).name(), clazz));
-//        }
-//
-//        String operation = args[0];
-//        if (!operation.startsWith("-")) {
-//            throw new InvalidOperationArgs(
-//                    "Invalid operation syntax: " + operation + ". Operations must be declared with a \"-\" prefix");
-//        }
-//
-//        try {
-//            ExecutableOperation executableOperation = OperationFactory.createOperation(
-//                    operation, operationClassMap.get(operation.substring(1)), args);
-//            if (executableOperation != null) {
-//                executableOperation.execute();
-//            }
-//        } catch (InvocationTargetException | NoSuchMethodException | InstantiationException | IllegalAccessException e) {
-//            throw new InvalidOperationInitialization(e.getMessage(), e);
-//        }
-//    }
-
     public static void main(String[] args) {
         //ensure any and all executors are shutdown cleanly when app is shutdown:
         Runtime.getRuntime().addShutdownHook(new Thread(ThreadUtils::shutdownRunningExecutors));
@@ -311,14 +291,69 @@ public class Main {
         if (args.length == 0) {
             System.err.println("cqf-tooling version: " + Main.class.getPackage().getImplementationVersion());
             System.err.println("Requests must include which operation to run as a command line argument. See docs for examples on how to use this project.");
+            System.err.println("Operations with a help menu (-help): " + String.join(", ", OperationRegistry.getOperationNames()));
             return;
         }
 
+        switch (args[0]) {
+            case Daemon.OPERATION:
+                Daemon.main(args);
+                return;
+            case DaemonClient.OPERATION:
+                // forwards the remaining arguments to a running daemon
+                System.exit(DaemonClient.run(Arrays.copyOfRange(args, 1, args.length)));
+                return;
+            default:
+                try {
+                    run(args);
+                } catch (HelpRequestedException e) {
+                    // the help was printed, exits with 0; other failures propagate and exit with 1
+                }
+        }
+    }
+
+    /**
+     * Runs the operation named by the first argument. Used for both a plain invocation and a daemon request.
+     */
+    static void run(String[] args) {
+        try {
+            execute(args);
+        } finally {
+            // writes the phase profile when run with -Dcqf.tooling.profile=<path>
+            Profiler.finish();
+        }
+    }
+
+    /**
+     * Runs the operation named by the first argument, without finishing the profile. Also runs the steps of a
+     * pipeline.
+     */
+    static void execute(String[] args) {
         String operation = args[0];
         if (!operation.startsWith("-")) {
             throw new IllegalArgumentException("Invalid operation: " + operation);
         }
 
-        OperationFactory.createOperation(operation.substring(1)).execute(args);
+        String operationName = operation.substring(1);
+        try {
+            Operation legacyOperation = OperationFactory.createOperation(operationName);
+            if (legacyOperation != null) {
+                legacyOperation.execute(args);
+                return;
+            }
+
+            // the @Operation annotated operations are found in the registry generated at build time, which only
+            // loads the class of the operation that is run
+            OperationDescriptor descriptor = OperationRegistry.get(operationName);
+            if (descriptor == null) {
+                throw new IllegalArgumentException("Invalid operation: " + operationName);
+            }
+            ExecutableOperation executableOperation = OperationFactory.createOperation(descriptor, args);
+            if (executableOperation != null) {
+                executableOperation.execute();
+            }
+        } catch (InvocationTargetException | NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+            throw new InvalidOperationInitialization(e.getMessage(), e);
+        }
     }
 }
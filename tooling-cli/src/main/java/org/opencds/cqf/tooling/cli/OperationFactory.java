@@ -5,7 +5,6 @@ import org.opencds.cqf.tooling.casereporting.transformer.ErsdTransformer;
 import org.opencds.cqf.tooling.dateroller.DataDateRollerOperation;
 import org.opencds.cqf.tooling.terminology.*;
 import org.opencds.cqf.tooling.terminology.templateToValueSetGenerator.TemplateToValueSetGenerator;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
@@ -18,7 +17,6 @@ import org.opencds.cqf.tooling.casereporting.tes.TESPackageGenerator;
 import org.opencds.cqf.tooling.casereporting.transformer.ErsdTransformer;
 import org.opencds.cqf.tooling.dateroller.DataDateRollerOperation;
 import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
-import org.opencds.cqf.tooling.exception.OperationNotFound;
 import org.opencds.cqf.tooling.library.r4.LibraryGenerator;
 import org.opencds.cqf.tooling.measure.r4.RefreshR4MeasureOperation;
 import org.opencds.cqf.tooling.measure.stu3.RefreshStu3MeasureOperation;
@@ -26,7 +24,8 @@ import org.opencds.cqf.tooling.modelinfo.StructureDefinitionToModelInfo;
 import org.opencds.cqf.tooling.operation.*;
 import org.opencds.cqf.tooling.operation.ig.NewRefreshIGOperation;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
-import org.opencds.cqf.tooling.operations.OperationParam;
+import org.opencds.cqf.tooling.operations.OperationRegistry.OperationDescriptor;
+import org.opencds.cqf.tooling.operations.OperationRegistry.ParamDescriptor;
 import org.opencds.cqf.tooling.qdm.QdmToQiCore;
 import org.opencds.cqf.tooling.quick.QuickPageGenerator;
 import org.opencds.cqf.tooling.terminology.CMSFlatMultiValueSetGenerator;
@@ -73,53 +72,46 @@ class OperationFactory {
         }
     }
 
-    private static ExecutableOperation initialize(ExecutableOperation operation)
+    private static ExecutableOperation initialize(ExecutableOperation operation, OperationDescriptor descriptor)
             throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-        for (Field field : operation.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(OperationParam.class)) {
-                boolean isInitialized = false;
-                for (String alias : field.getAnnotation(OperationParam.class).alias()) {
-                    if (paramMap.containsKey(alias)) {
-                        Class<?> paramType = OperationUtils.getParamType(operation,
-                                field.getAnnotation(OperationParam.class).setter());
-                        operation.getClass().getDeclaredMethod(
-                                field.getAnnotation(OperationParam.class).setter(), paramType
-                        ).invoke(operation, OperationUtils.mapParamType(paramMap.get(alias), paramType));
-                        isInitialized = true;
-                    }
+        for (ParamDescriptor param : descriptor.getParams()) {
+            boolean isInitialized = false;
+            for (String alias : param.getAlias()) {
+                if (paramMap.containsKey(alias)) {
+                    Class<?> paramType = OperationUtils.getParamType(operation, param.getSetter());
+                    operation.getClass().getDeclaredMethod(param.getSetter(), paramType)
+                            .invoke(operation, OperationUtils.mapParamType(paramMap.get(alias), paramType));
+                    isInitialized = true;
                 }
-                if (!isInitialized) {
-                    if (field.getAnnotation(OperationParam.class).required()) {
-                        throw new InvalidOperationArgs("Missing required argument: " + field.getName());
-                    }
-                    else if (!field.getAnnotation(OperationParam.class).defaultValue().isEmpty()) {
-                        Class<?> paramType = OperationUtils.getParamType(operation,
-                                field.getAnnotation(OperationParam.class).setter());
-                        operation.getClass().getDeclaredMethod(
-                                field.getAnnotation(OperationParam.class).setter(), paramType
-                        ).invoke(operation, OperationUtils.mapParamType(
-                                field.getAnnotation(OperationParam.class).defaultValue(), paramType));
-                    }
+            }
+            if (!isInitialized) {
+                if (param.isRequired()) {
+                    throw new InvalidOperationArgs("Missing required argument: " + param.getField());
+                }
+                else if (!param.getDefaultValue().isEmpty()) {
+                    Class<?> paramType = OperationUtils.getParamType(operation, param.getSetter());
+                    operation.getClass().getDeclaredMethod(param.getSetter(), paramType)
+                            .invoke(operation, OperationUtils.mapParamType(param.getDefaultValue(), paramType));
                 }
             }
         }
         return operation;
     }
 
-    static ExecutableOperation createOperation(String operationName, Class<?> operationClass, String[] args)
+    /**
+     * Creates an {@link org.opencds.cqf.tooling.operations.Operation} annotated operation from the build time
+     * registry, or returns null after logging its help menu (built from the registry) when asked for help.
+     */
+    static synchronized ExecutableOperation createOperation(OperationDescriptor descriptor, String[] args)
             throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        if (operationClass == null) {
-            throw new OperationNotFound("Unable to resolve operation: " + operationName);
-        }
-        OperationFactory.operationName = operationName;
+        OperationFactory.operationName = descriptor.getName();
         processArgs(args);
         if (showHelpMenu) {
-            logger.info(OperationUtils.getHelpMenu(
-                    (ExecutableOperation) operationClass.getDeclaredConstructor().newInstance()));
+            logger.info(OperationUtils.getHelpMenu(descriptor));
             showHelpMenu = false;
             return null;
         }
-        return initialize((ExecutableOperation) operationClass.getDeclaredConstructor().newInstance());
+        return initialize(descriptor.loadClass().getDeclaredConstructor().newInstance(), descriptor);
     }
 
     static Operation createOperation(String operationName) {
@@ -225,8 +217,15 @@ class OperationFactory {
                 return new SpreadsheetValidateVSandCS();
             case "ConvertR5toR4":
                 return new ConvertR5toR4();
+            case "MaterializeBundles":
+                return new MaterializeBundlesOperation();
+            case "GenerateSyntheticIG":
+                return new GenerateSyntheticIGOperation();
+            case "Pipeline":
+                return new PipelineOperation();
             default:
-                throw new IllegalArgumentException("Invalid operation: " + operationName);
+                // not a legacy operation, see OperationRegistry
+                return null;
         }
     }
 }
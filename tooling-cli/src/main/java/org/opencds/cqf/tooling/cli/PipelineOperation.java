@@ -0,0 +1,336 @@
+package org.opencds.cqf.tooling.cli;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.common.Profiler;
+import org.opencds.cqf.tooling.processor.ValueSetsProcessor;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the steps of a JSON manifest in one JVM, so they share the FhirContexts, the parsed resources (re-read when
+ * their file changed) and the CQL translations, and pay the startup once:
+ * <pre>
+ * {
+ *   "maxConcurrency": 2,
+ *   "steps": [
+ *     { "name": "refresh", "operation": "RefreshIG", "args": [ "-ini=ig.ini", "-t", "-d", "-p" ] },
+ *     { "name": "roll", "operation": "RollTestsDataDates", "args": [ "-ip=input/tests" ], "paths": [ "input/tests" ] },
+ *     { "name": "strip", "operation": "StripGeneratedContent", "args": [ "-ptr=input/resources", "-op=output" ],
+ *       "paths": [ "input/resources", "output" ] },
+ *     { "name": "post", "operation": "PostBundlesInDir", "args": [ "-dp=bundles", "-fs=http://localhost:8080/fhir" ],
+ *       "dependsOn": [ "roll", "strip" ] }
+ *   ]
+ * }
+ * </pre>
+ * Steps run in manifest order, except that up to maxConcurrency (1 unless given) steps run at the same time when they
+ * are independent: a step waits for every earlier step it names in dependsOn, and for every earlier step it conflicts
+ * with. Two steps conflict unless both declare the paths they read and write and no path of one is inside a path of
+ * the other. Steps without paths, steps marked exclusive and the IG operations (which configure the process-wide
+ * resource directories) conflict with every step, so they always run alone.
+ * <p>
+ * The operation stops starting steps after the first failure, waits for the running ones and then fails. A step
+ * with invalid arguments, or one that only prints the help of its operation, fails like any other.
+ */
+public class PipelineOperation extends Operation {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineOperation.class);
+
+    // operations that set up process-wide state (IOUtils resource directories, IG paths), so never run concurrently
+    static final Set<String> EXCLUSIVE_OPERATIONS = Set.of("RefreshIG", "NewRefreshIG", "RefreshLibrary",
+            "RefreshStu3Measure", "RefreshR4Measure", "ScaffoldIG", "TestIG", "BundleIg", "PackageIG");
+
+    static class Manifest {
+        Integer maxConcurrency;
+        List<Step> steps = new ArrayList<>();
+    }
+
+    static class Step {
+        String name;
+        String operation;
+        List<String> args = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        List<String> dependsOn = new ArrayList<>();
+        boolean exclusive;
+
+        // resolved by validate()
+        final List<Path> absolutePaths = new ArrayList<>();
+        final Set<Step> prerequisites = new HashSet<>();
+
+        boolean isExclusive() {
+            return exclusive || absolutePaths.isEmpty() || EXCLUSIVE_OPERATIONS.contains(operation);
+        }
+
+        boolean conflictsWith(Step other) {
+            if (isExclusive() || other.isExclusive()) {
+                return true;
+            }
+            for (Path path : absolutePaths) {
+                for (Path otherPath : other.absolutePaths) {
+                    if (path.startsWith(otherPath) || otherPath.startsWith(path)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        String[] getOperationArgs() {
+            List<String> operationArgs = new ArrayList<>();
+            operationArgs.add("-" + operation);
+            operationArgs.addAll(args);
+            return operationArgs.toArray(new String[0]);
+        }
+    }
+
+    private static class StepResult {
+        private final Step step;
+        private final long elapsedMillis;
+
+        StepResult(Step step, long elapsedMillis) {
+            this.step = step;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    @Override
+    public void execute(String[] args) {
+        String manifestPath = null;
+        Integer maxConcurrency = null;
+        for (String arg : args) {
+            if (arg.equals("-Pipeline")) continue;
+            String[] flagAndValue = arg.split("=");
+            if (flagAndValue.length < 2) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            String flag = flagAndValue[0];
+            String value = flagAndValue[1].replace("\"", "");
+
+            switch (flag.replace("-", "").toLowerCase()) {
+                case "manifest":
+                case "m":
+                    manifestPath = value;
+                    break;
+                case "maxconcurrency":
+                case "mc":
+                    maxConcurrency = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown flag: " + flag);
+            }
+        }
+
+        if (manifestPath == null) {
+            throw new IllegalArgumentException("The path to the pipeline manifest is required");
+        }
+
+        Manifest manifest = readManifest(Paths.get(manifestPath));
+        if (maxConcurrency != null) {
+            manifest.maxConcurrency = maxConcurrency;
+        }
+        validate(manifest);
+        run(manifest);
+    }
+
+    static Manifest readManifest(Path path) {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Manifest manifest = new Gson().fromJson(reader, Manifest.class);
+            if (manifest == null) {
+                throw new IllegalArgumentException("The pipeline manifest is empty: " + path);
+            }
+            return manifest;
+        } catch (IOException | JsonParseException e) {
+            throw new IllegalArgumentException("Error reading the pipeline manifest " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    static void validate(Manifest manifest) {
+        if (manifest.steps == null || manifest.steps.isEmpty()) {
+            throw new IllegalArgumentException("The pipeline manifest has no steps");
+        }
+        if (manifest.maxConcurrency == null) {
+            manifest.maxConcurrency = 1;
+        } else if (manifest.maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+
+        Map<String, Step> stepsByName = new LinkedHashMap<>();
+        for (int i = 0; i < manifest.steps.size(); i++) {
+            Step step = manifest.steps.get(i);
+            if (step.operation == null || step.operation.isEmpty()) {
+                throw new IllegalArgumentException("Step " + (i + 1) + " of the pipeline has no operation");
+            }
+            if (step.operation.startsWith("-")) {
+                step.operation = step.operation.substring(1);
+            }
+            if (step.operation.equals("Pipeline")) {
+                throw new IllegalArgumentException("A pipeline cannot run a pipeline");
+            }
+            if (step.name == null || step.name.isEmpty()) {
+                step.name = (i + 1) + "-" + step.operation;
+            }
+            if (step.args == null) {
+                step.args = new ArrayList<>();
+            }
+            if (step.paths != null) {
+                for (String path : step.paths) {
+                    step.absolutePaths.add(Paths.get(path).toAbsolutePath().normalize());
+                }
+            }
+            if (step.dependsOn != null) {
+                for (String dependency : step.dependsOn) {
+                    Step prerequisite = stepsByName.get(dependency);
+                    if (prerequisite == null) {
+                        throw new IllegalArgumentException(String.format(
+                                "Step %s depends on %s, which is not an earlier step", step.name, dependency));
+                    }
+                    step.prerequisites.add(prerequisite);
+                }
+            }
+            for (Step earlier : stepsByName.values()) {
+                if (step.conflictsWith(earlier)) {
+                    step.prerequisites.add(earlier);
+                }
+            }
+            if (stepsByName.put(step.name, step) != null) {
+                throw new IllegalArgumentException("Duplicate step name: " + step.name);
+            }
+        }
+    }
+
+    private void run(Manifest manifest) {
+        long start = System.currentTimeMillis();
+        List<Step> pending = new ArrayList<>(manifest.steps);
+        Set<Step> running = new HashSet<>();
+        Set<Step> completed = new HashSet<>();
+        Map<String, Long> elapsed = new LinkedHashMap<>();
+        Throwable failure = null;
+        String failedStep = null;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(manifest.maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "cqf-pipeline-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<StepResult> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            while (true) {
+                if (failure == null) {
+                    for (Step step : new ArrayList<>(pending)) {
+                        if (running.size() >= manifest.maxConcurrency) {
+                            break;
+                        }
+                        if (completed.containsAll(step.prerequisites)) {
+                            prepare(running.isEmpty());
+                            pending.remove(step);
+                            running.add(step);
+                            completionService.submit(() -> runStep(step));
+                        }
+                    }
+                }
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                Future<StepResult> result = completionService.take();
+                try {
+                    StepResult stepResult = result.get();
+                    running.remove(stepResult.step);
+                    completed.add(stepResult.step);
+                    elapsed.put(stepResult.step.name, stepResult.elapsedMillis);
+                } catch (ExecutionException e) {
+                    StepFailure stepFailure = (StepFailure) e.getCause();
+                    running.remove(stepFailure.step);
+                    if (failure == null) {
+                        failure = stepFailure.getCause();
+                        failedStep = stepFailure.step.name;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("The pipeline was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        StringBuilder summary = new StringBuilder("Pipeline steps:");
+        for (Step step : manifest.steps) {
+            Long stepMillis = elapsed.get(step.name);
+            summary.append(System.lineSeparator()).append(String.format("  %-30s %-28s %s", step.name, step.operation,
+                    stepMillis != null ? stepMillis + " ms" : step.name.equals(failedStep) ? "FAILED" : "not run"));
+        }
+        logger.info("{}{}Pipeline finished in {} ms", summary, System.lineSeparator(),
+                System.currentTimeMillis() - start);
+
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(String.format("Pipeline step %s failed: %s", failedStep, failure.getMessage()),
+                    failure);
+        }
+    }
+
+    /*
+     * The directory listings are always cleared, as an earlier step may have added or removed files. The rest of the
+     * process-wide state is only reset when no step is running, which is always the case before an exclusive step.
+     */
+    private static void prepare(boolean idle) {
+        if (idle) {
+            IOUtils.clearPathCaches();
+            IOUtils.resourceDirectories = new ArrayList<>();
+            IOUtils.clearDevicePaths();
+            ValueSetsProcessor.clearCachedValueSets();
+        } else {
+            IOUtils.clearFilePathCaches();
+        }
+    }
+
+    private static StepResult runStep(Step step) throws StepFailure {
+        logger.info("Starting pipeline step {}: {}", step.name, String.join(" ", step.getOperationArgs()));
+        long start = System.currentTimeMillis();
+        try (Profiler.Span span = Profiler.start(Profiler.PIPELINE_STEP, step.name)) {
+            Main.execute(step.getOperationArgs());
+        } catch (Throwable e) {
+            // an Error as well, so the step is accounted for and the failure reported as it is
+            logger.error("Pipeline step {} failed: {}", step.name, e.toString());
+            throw new StepFailure(step, e);
+        }
+        long elapsedMillis = System.currentTimeMillis() - start;
+        logger.info("Finished pipeline step {} in {} ms", step.name, elapsedMillis);
+        return new StepResult(step, elapsedMillis);
+    }
+
+    private static class StepFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final transient Step step;
+
+        StepFailure(Step step, Throwable cause) {
+            super(cause);
+            this.step = step;
+        }
+    }
+}
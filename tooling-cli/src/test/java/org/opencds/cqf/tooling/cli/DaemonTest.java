@@ -0,0 +1,115 @@
+package org.opencds.cqf.tooling.cli;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.r4.model.Library;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class DaemonTest {
+
+    private Path stateDirectory;
+    private Daemon daemon;
+    private Thread daemonThread;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        stateDirectory = Files.createTempDirectory("daemon");
+        Path stateFile = stateDirectory.resolve("daemon");
+        System.setProperty(Daemon.STATE_FILE_PROPERTY, stateFile.toString());
+        daemon = new Daemon(0, stateFile);
+        daemon.writeStateFile();
+        daemonThread = new Thread(daemon::serve);
+        daemonThread.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException, InterruptedException {
+        daemon.stop();
+        daemonThread.join(10000);
+        System.clearProperty(Daemon.STATE_FILE_PROPERTY);
+        FileUtils.deleteDirectory(stateDirectory.toFile());
+    }
+
+    @Test
+    public void testStateFile() throws IOException {
+        List<String> state = Files.readAllLines(stateDirectory.resolve("daemon"), StandardCharsets.UTF_8);
+        assertEquals(Integer.parseInt(state.get(0)), daemon.getPort());
+        assertEquals(state.get(1), daemon.getToken());
+    }
+
+    @Test
+    public void testFailedOperationReturnsExitCode() {
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+        int exitCode;
+        try {
+            exitCode = DaemonClient.run(new String[] { "-NonexistentOperationName" });
+        } finally {
+            System.setErr(originalErr);
+        }
+        assertEquals(exitCode, 1);
+        // the exception of the operation is streamed back to the client
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("Invalid operation: NonexistentOperationName"));
+    }
+
+    @Test
+    public void testServesSuccessiveRequests() {
+        assertEquals(DaemonClient.run(new String[] { "-NonexistentOperationName" }), 1);
+        assertEquals(DaemonClient.run(new String[] { "-NonexistentOperationName" }), 1);
+    }
+
+    @Test
+    public void testHelpAndInvalidArgumentsDoNotStopTheDaemon() {
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+        try {
+            assertEquals(DaemonClient.run(new String[] { "-RefreshLibrary", "-help" }), 0);
+            assertEquals(DaemonClient.run(new String[] { "-RefreshLibrary", "-nosuchflag" }), 1);
+        } finally {
+            System.setOut(originalOut);
+        }
+        assertEquals(DaemonClient.run(new String[] { "-NonexistentOperationName" }), 1);
+    }
+
+    @Test
+    public void testStop() throws InterruptedException {
+        assertEquals(DaemonClient.run(new String[] { Daemon.STOP }), 0);
+        daemonThread.join(10000);
+        assertFalse(daemonThread.isAlive());
+        assertEquals(DaemonClient.run(new String[] { "-NonexistentOperationName" }), 2);
+    }
+
+    @Test
+    public void testResetStateDropsChangedResources() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        Path file = stateDirectory.resolve("Library-kept.json");
+        Files.write(file, fhirContext.newJsonParser().encodeResourceToString(new Library().setName("Kept"))
+                .getBytes(StandardCharsets.UTF_8));
+        try {
+            Library library = (Library) IOUtils.readResource(file.toString(), fhirContext);
+            // as bundling does to the resources it reads
+            library.setName("Changed");
+            Daemon.resetState();
+            assertEquals(((Library) IOUtils.readResource(file.toString(), fhirContext)).getName(), "Kept");
+        } finally {
+            IOUtils.cleanUp();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.opencds.cqf.tooling.cli;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+public class PipelineOperationTest {
+
+    private static PipelineOperation.Step step(String name, String operation, List<String> paths, String... dependsOn) {
+        PipelineOperation.Step step = new PipelineOperation.Step();
+        step.name = name;
+        step.operation = operation;
+        step.paths = paths;
+        step.dependsOn = List.of(dependsOn);
+        return step;
+    }
+
+    private static PipelineOperation.Manifest manifest(PipelineOperation.Step... steps) {
+        PipelineOperation.Manifest manifest = new PipelineOperation.Manifest();
+        manifest.steps = List.of(steps);
+        return manifest;
+    }
+
+    @Test
+    public void testDisjointStepsAreIndependent() {
+        PipelineOperation.Step roll = step("roll", "RollTestsDataDates", List.of("input/tests"));
+        PipelineOperation.Step strip = step("strip", "StripGeneratedContent", List.of("input/resources", "output"));
+        PipelineOperation.Step post = step("post", "PostBundlesInDir", List.of("bundles"), "roll");
+        PipelineOperation.validate(manifest(roll, strip, post));
+
+        assertTrue(strip.prerequisites.isEmpty());
+        assertEquals(post.prerequisites, Set.of(roll));
+    }
+
+    @Test
+    public void testOverlappingAndExclusiveStepsConflict() {
+        PipelineOperation.Step refresh = step("refresh", "RefreshIG", List.of("input"));
+        PipelineOperation.Step strip = step("strip", "StripGeneratedContent", List.of("input/resources"));
+        PipelineOperation.Step resources = step("resources", "BundleToResources", List.of("input/resources/library"));
+        PipelineOperation.Step unknown = step("unknown", "CqlToSTU3Library", List.of());
+        PipelineOperation.validate(manifest(refresh, strip, resources, unknown));
+
+        assertTrue(refresh.isExclusive());
+        assertFalse(strip.isExclusive());
+        assertEquals(strip.prerequisites, Set.of(refresh));
+        assertEquals(resources.prerequisites, Set.of(refresh, strip));
+        // a step that does not declare its paths may touch anything
+        assertEquals(unknown.prerequisites, Set.of(refresh, strip, resources));
+    }
+
+    @Test
+    public void testInvalidManifests() {
+        expectThrows(IllegalArgumentException.class, () -> PipelineOperation.validate(manifest()));
+        expectThrows(IllegalArgumentException.class, () -> PipelineOperation.validate(
+                manifest(step("a", "RollTestsDataDates", List.of("a"), "b"), step("b", "RollTestsDataDates", List.of("b")))));
+        expectThrows(IllegalArgumentException.class, () -> PipelineOperation.validate(
+                manifest(step("a", "Pipeline", List.of("a")))));
+        expectThrows(IllegalArgumentException.class, () -> PipelineOperation.validate(
+                manifest(step("a", "RollTestsDataDates", List.of("a")), step("a", "RollTestsDataDates", List.of("b")))));
+    }
+
+    @Test
+    public void testFailedStepFailsPipeline() throws IOException {
+        Path manifest = Files.createTempFile("pipeline", ".json");
+        try {
+            Files.write(manifest, ("{ \"steps\": [ { \"name\": \"broken\", \"operation\": \"NonexistentOperationName\" } ] }")
+                    .getBytes(StandardCharsets.UTF_8));
+            RuntimeException e = expectThrows(RuntimeException.class,
+                    () -> new PipelineOperation().execute(new String[] { "-Pipeline", "-m=" + manifest }));
+            assertTrue(e.getMessage().contains("Pipeline step broken failed"));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+    }
+}
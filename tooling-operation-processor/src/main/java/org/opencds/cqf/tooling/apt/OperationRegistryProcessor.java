@@ -0,0 +1,176 @@
+package org.opencds.cqf.tooling.apt;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generates the registry of the {@code @Operation} annotated operations at build time, so the CLI can find an
+ * operation by name and print its help without scanning the classpath or loading any other operation.
+ * <p>
+ * The registry is written to {@value #REGISTRY_PATH} in the class output, one tab-separated record per line:
+ * <pre>
+ * operation  &lt;name&gt;  &lt;class name&gt;
+ * param      &lt;name&gt;  &lt;field&gt;  &lt;aliases, comma-separated&gt;  &lt;required&gt;  &lt;setter&gt;  &lt;default value&gt;  &lt;description&gt;
+ * </pre>
+ * with tabs, line breaks and backslashes in the values escaped with a backslash. The processor also fails the build
+ * when two operations share a name, an operation does not implement ExecutableOperation or a parameter's setter does not
+ * exist, which otherwise only show up when the operation is run.
+ * <p>
+ * The annotations are referenced by name, as this module cannot depend on the tooling module that declares them.
+ */
+@SupportedAnnotationTypes(OperationRegistryProcessor.OPERATION_ANNOTATION)
+public class OperationRegistryProcessor extends AbstractProcessor {
+
+    public static final String REGISTRY_PATH = "META-INF/cqf-tooling/operations";
+    static final String OPERATION_ANNOTATION = "org.opencds.cqf.tooling.operations.Operation";
+    static final String OPERATION_PARAM_ANNOTATION = "org.opencds.cqf.tooling.operations.OperationParam";
+    static final String EXECUTABLE_OPERATION = "org.opencds.cqf.tooling.operations.ExecutableOperation";
+
+    // sorted by operation name so the registry is reproducible
+    private final Map<String, String> operations = new TreeMap<>();
+    private final Map<String, List<String>> params = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement operationAnnotation = processingEnv.getElementUtils().getTypeElement(OPERATION_ANNOTATION);
+        if (operationAnnotation != null) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(operationAnnotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    processOperation((TypeElement) element);
+                }
+            }
+        }
+        if (roundEnv.processingOver() && !operations.isEmpty()) {
+            writeRegistry();
+        }
+        return false;
+    }
+
+    private void processOperation(TypeElement type) {
+        AnnotationMirror operation = getAnnotation(type, OPERATION_ANNOTATION);
+        String name = (String) getValue(operation, "name");
+        String className = processingEnv.getElementUtils().getBinaryName(type).toString();
+
+        String existing = operations.putIfAbsent(name, className);
+        if (existing != null && !existing.equals(className)) {
+            error(type, "Operation name \"" + name + "\" is already used by " + existing);
+            return;
+        }
+        TypeElement executableOperation = processingEnv.getElementUtils().getTypeElement(EXECUTABLE_OPERATION);
+        if (executableOperation != null && !processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(type.asType()),
+                processingEnv.getTypeUtils().erasure(executableOperation.asType()))) {
+            error(type, "Operation " + name + " must implement " + EXECUTABLE_OPERATION);
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(type, "Operation " + name + " must not be abstract");
+        }
+
+        List<String> records = new ArrayList<>();
+        // only the declared fields, the CLI does not look at inherited parameters either
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            AnnotationMirror param = getAnnotation(field, OPERATION_PARAM_ANNOTATION);
+            if (param == null) {
+                continue;
+            }
+            String setter = (String) getValue(param, "setter");
+            if (!hasSetter(type, setter)) {
+                error(field, "Operation " + name + " has no method " + setter + " with a single parameter");
+            }
+            List<String> aliases = new ArrayList<>();
+            for (Object alias : (List<?>) getValue(param, "alias")) {
+                aliases.add((String) ((AnnotationValue) alias).getValue());
+            }
+            records.add(String.join("\t", "param", escape(name), escape(field.getSimpleName().toString()),
+                    escape(String.join(",", aliases)), String.valueOf(getValue(param, "required")), escape(setter),
+                    escape((String) getValue(param, "defaultValue")), escape((String) getValue(param, "description"))));
+        }
+        params.put(name, records);
+    }
+
+    private static boolean hasSetter(TypeElement type, String setter) {
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(setter) && method.getParameters().size() == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeRegistry() {
+        try {
+            FileObject registry = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    REGISTRY_PATH);
+            try (Writer writer = new OutputStreamWriter(registry.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> operation : operations.entrySet()) {
+                    writer.write(String.join("\t", "operation", escape(operation.getKey()), operation.getValue()));
+                    writer.write('\n');
+                    for (String param : params.getOrDefault(operation.getKey(), List.of())) {
+                        writer.write(param);
+                        writer.write('\n');
+                    }
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Error writing the operation registry: " + e.getMessage());
+        }
+    }
+
+    private static AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeMirror annotationType = mirror.getAnnotationType();
+            if (annotationType.toString().equals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object getValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        throw new IllegalStateException("The annotation " + mirror + " has no value " + name);
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,451 @@
+package org.opencds.cqf.tooling.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide execution service shared by all concurrent tooling work.
+ * <p>
+ * Work is submitted to one of two pools:
+ * <ul>
+ *     <li>{@link Pool#CPU} - parsing, translation and bundling; a fixed pool sized to the available cores</li>
+ *     <li>{@link Pool#IO} - network calls and other blocking IO; virtual threads when the JVM supports them
+ *     (Java 21+), otherwise a larger fixed pool</li>
+ * </ul>
+ * Both pools are bounded: the platform pools have bounded queues and run tasks on the submitting thread when the queue
+ * is full, and in-flight virtual thread tasks are limited by a permit count, so a large batch of tasks throttles its
+ * submitter instead of creating hundreds of threads that all allocate at once.
+ * <p>
+ * {@link #invokeAll(Pool, String, Collection)} runs a batch as a unit: it waits for every task, even when some of them
+ * fail, and then rethrows the first failure (with the later ones suppressed on it). A fail-fast batch, see
+ * {@link #invokeAll(Pool, String, Collection, int, boolean)}, instead cancels the rest of the batch on the first failure.
+ * An interrupt of the waiting thread always cancels the rest of the batch. Tasks that submit a nested batch to the pool
+ * they are running on run that batch inline, so nested batches cannot deadlock the pool.
+ * <p>
+ * Sizing can be configured with the system properties {@value #CPU_THREADS_PROPERTY}, {@value #IO_THREADS_PROPERTY},
+ * {@value #QUEUE_CAPACITY_PROPERTY} and {@value #VIRTUAL_THREADS_PROPERTY}.
+ */
+public class ExecutionService {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionService.class);
+
+    public static final String CPU_THREADS_PROPERTY = "cqf.tooling.threads.cpu";
+    public static final String IO_THREADS_PROPERTY = "cqf.tooling.threads.io";
+    public static final String QUEUE_CAPACITY_PROPERTY = "cqf.tooling.threads.queueCapacity";
+    public static final String VIRTUAL_THREADS_PROPERTY = "cqf.tooling.threads.virtual";
+
+    public enum Pool { CPU, IO }
+
+    private static volatile ExecutionService instance;
+
+    // the pool the current thread is running a task for, used to run nested batches inline
+    private static final ThreadLocal<Pool> currentPool = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor cpuExecutor;
+    private final ExecutorService ioExecutor;
+    private final Semaphore ioPermits;
+    private final boolean virtualThreads;
+    private final Set<Future<?>> runningTasks = ConcurrentHashMap.newKeySet();
+    private final Map<String, TaskMetrics> metrics = new ConcurrentHashMap<>();
+
+    public static ExecutionService getInstance() {
+        if (instance == null) {
+            synchronized (ExecutionService.class) {
+                if (instance == null) {
+                    instance = new ExecutionService(
+                            Integer.getInteger(CPU_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                            Integer.getInteger(IO_THREADS_PROPERTY, Math.max(16, Runtime.getRuntime().availableProcessors() * 4)),
+                            Integer.getInteger(QUEUE_CAPACITY_PROPERTY, 1024),
+                            Boolean.parseBoolean(System.getProperty(VIRTUAL_THREADS_PROPERTY, "true")));
+                }
+            }
+        }
+        return instance;
+    }
+
+    ExecutionService(int cpuThreads, int ioThreads, int queueCapacity, boolean useVirtualThreads) {
+        int cpu = Math.max(1, cpuThreads);
+        int io = Math.max(1, ioThreads);
+        int capacity = Math.max(1, queueCapacity);
+
+        this.cpuExecutor = new ThreadPoolExecutor(cpu, cpu, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(capacity), new DaemonThreadFactory("cqf-cpu-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.cpuExecutor.allowCoreThreadTimeOut(true);
+
+        ExecutorService virtualExecutor = useVirtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtualExecutor != null;
+        if (virtualThreads) {
+            this.ioExecutor = virtualExecutor;
+        } else {
+            ThreadPoolExecutor platformExecutor = new ThreadPoolExecutor(io, io, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(capacity), new DaemonThreadFactory("cqf-io-"), new ThreadPoolExecutor.CallerRunsPolicy());
+            platformExecutor.allowCoreThreadTimeOut(true);
+            this.ioExecutor = platformExecutor;
+        }
+        this.ioPermits = new Semaphore(io);
+
+        logger.debug("Execution service started with {} CPU threads and {} IO {}", cpu, io,
+                virtualThreads ? "virtual thread permits" : "threads");
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is only available on Java 21+, and this project targets Java 11
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getCpuParallelism() {
+        return cpuExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * Runs the batch of tasks on the given pool and waits for all of them to complete.
+     *
+     * @param pool     the pool to run the tasks on
+     * @param taskName the name metrics for the batch are recorded under
+     * @param tasks    the tasks to run
+     * @return the task results, in task order
+     * @throws ExecutionException   if a task fails, once every task in the batch has completed; the failures of any
+     *                              other tasks are suppressed on its cause
+     * @throws InterruptedException if the calling thread is interrupted; the remaining tasks in the batch are cancelled
+     */
+    public <T> List<T> invokeAll(Pool pool, String taskName, Collection<? extends Callable<T>> tasks)
+            throws ExecutionException, InterruptedException {
+        return invokeAll(pool, taskName, tasks, 0, false);
+    }
+
+    /**
+     * Runs the batch of tasks on the given pool, with at most maxConcurrency of them running at once, and waits for
+     * all of them to complete.
+     *
+     * @param maxConcurrency the maximum number of tasks from this batch to run at once, or 0 for no limit beyond the
+     *                       pool's own bounds
+     * @see #invokeAll(Pool, String, Collection)
+     */
+    public <T> List<T> invokeAll(Pool pool, String taskName, Collection<? extends Callable<T>> tasks, int maxConcurrency)
+            throws ExecutionException, InterruptedException {
+        return invokeAll(pool, taskName, tasks, maxConcurrency, false);
+    }
+
+    /**
+     * Runs the batch of tasks on the given pool, with at most maxConcurrency of them running at once, and waits for
+     * them to complete.
+     *
+     * @param failFast whether the first failure cancels the remaining tasks in the batch and is thrown right away,
+     *                 for callers that cannot use the other results without it
+     * @see #invokeAll(Pool, String, Collection, int)
+     */
+    public <T> List<T> invokeAll(Pool pool, String taskName, Collection<? extends Callable<T>> tasks, int maxConcurrency,
+                                 boolean failFast) throws ExecutionException, InterruptedException {
+        if (tasks == null || tasks.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        TaskMetrics taskMetrics = metrics.computeIfAbsent(taskName, TaskMetrics::new);
+        long batchStart = System.nanoTime();
+
+        if (currentPool.get() == pool) {
+            List<T> results = new ArrayList<>(tasks.size());
+            ExecutionException failure = null;
+            try {
+                for (Callable<T> task : tasks) {
+                    try {
+                        results.add(instrument(pool, task, taskMetrics, System.nanoTime()).call());
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        if (failFast) {
+                            throw new ExecutionException(e);
+                        }
+                        failure = addFailure(failure, new ExecutionException(e));
+                    }
+                }
+            } finally {
+                taskMetrics.recordBatch(System.nanoTime() - batchStart);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return results;
+        }
+
+        Semaphore batchPermits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                Callable<T> instrumented = instrument(pool, task, taskMetrics, System.nanoTime());
+                if (batchPermits == null) {
+                    futures.add(submit(pool, instrumented));
+                    continue;
+                }
+                batchPermits.acquire();
+                try {
+                    futures.add(submit(pool, () -> {
+                        try {
+                            return instrumented.call();
+                        } finally {
+                            batchPermits.release();
+                        }
+                    }));
+                } catch (RuntimeException e) {
+                    batchPermits.release();
+                    throw e;
+                }
+            }
+
+            List<T> results = new ArrayList<>(futures.size());
+            ExecutionException failure = null;
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failFast) {
+                        throw e;
+                    }
+                    failure = addFailure(failure, e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return results;
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            // a batch that is not fail-fast has no task left running on a failure
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        } finally {
+            futures.forEach(runningTasks::remove);
+            taskMetrics.recordBatch(System.nanoTime() - batchStart);
+        }
+    }
+
+    // the first failure of a batch, with the causes of the later ones suppressed on its cause
+    private static ExecutionException addFailure(ExecutionException failure, ExecutionException e) {
+        if (failure == null) {
+            return e;
+        }
+        if (failure.getCause() != null && e.getCause() != null && failure.getCause() != e.getCause()) {
+            failure.getCause().addSuppressed(e.getCause());
+        }
+        return failure;
+    }
+
+    private <T> Future<T> submit(Pool pool, Callable<T> task) throws InterruptedException {
+        if (pool == Pool.CPU) {
+            Future<T> future = cpuExecutor.submit(task);
+            runningTasks.add(future);
+            return future;
+        }
+
+        if (!virtualThreads) {
+            Future<T> future = ioExecutor.submit(task);
+            runningTasks.add(future);
+            return future;
+        }
+
+        // virtual threads are cheap, but what they do is not: hold the submitter until a permit is free
+        ioPermits.acquire();
+        try {
+            Future<T> future = ioExecutor.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    ioPermits.release();
+                }
+            });
+            runningTasks.add(future);
+            return future;
+        } catch (RuntimeException e) {
+            ioPermits.release();
+            throw e;
+        }
+    }
+
+    private static <T> Callable<T> instrument(Pool pool, Callable<T> task, TaskMetrics taskMetrics, long submitted) {
+        return () -> {
+            long started = System.nanoTime();
+            taskMetrics.recordQueueWait(started - submitted);
+            Pool previousPool = currentPool.get();
+            currentPool.set(pool);
+            try {
+                T result = task.call();
+                taskMetrics.recordCompleted(System.nanoTime() - started);
+                return result;
+            } catch (Exception e) {
+                taskMetrics.recordFailed(System.nanoTime() - started);
+                throw e;
+            } finally {
+                if (previousPool == null) {
+                    currentPool.remove();
+                } else {
+                    currentPool.set(previousPool);
+                }
+            }
+        };
+    }
+
+    /**
+     * Cancels all running batches. The pools remain usable afterwards.
+     */
+    public void cancelAll() {
+        for (Future<?> future : runningTasks) {
+            future.cancel(true);
+        }
+        runningTasks.clear();
+        cpuExecutor.getQueue().clear();
+        if (ioExecutor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) ioExecutor).getQueue().clear();
+        }
+    }
+
+    public Map<String, TaskMetrics> getMetrics() {
+        return Collections.unmodifiableMap(new TreeMap<>(metrics));
+    }
+
+    public void resetMetrics() {
+        metrics.clear();
+    }
+
+    public void logMetrics() {
+        getMetrics().values().forEach(taskMetrics -> logger.info("{}", taskMetrics));
+    }
+
+    /**
+     * Counters for the tasks run under one task name. Times are in nanoseconds.
+     */
+    public static class TaskMetrics {
+        private final String taskName;
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder totalRunTime = new LongAdder();
+        private final LongAccumulator maxRunTime = new LongAccumulator(Math::max, 0L);
+        private final LongAdder totalQueueWait = new LongAdder();
+        private final LongAccumulator maxQueueWait = new LongAccumulator(Math::max, 0L);
+        private final LongAdder totalBatchTime = new LongAdder();
+
+        TaskMetrics(String taskName) {
+            this.taskName = taskName;
+        }
+
+        void recordQueueWait(long nanos) {
+            totalQueueWait.add(nanos);
+            maxQueueWait.accumulate(nanos);
+        }
+
+        void recordCompleted(long nanos) {
+            completed.increment();
+            recordRunTime(nanos);
+        }
+
+        void recordFailed(long nanos) {
+            failed.increment();
+            recordRunTime(nanos);
+        }
+
+        private void recordRunTime(long nanos) {
+            totalRunTime.add(nanos);
+            maxRunTime.accumulate(nanos);
+        }
+
+        void recordBatch(long nanos) {
+            batches.increment();
+            totalBatchTime.add(nanos);
+        }
+
+        public String getTaskName() {
+            return taskName;
+        }
+
+        public long getBatchCount() {
+            return batches.sum();
+        }
+
+        public long getCompletedCount() {
+            return completed.sum();
+        }
+
+        public long getFailedCount() {
+            return failed.sum();
+        }
+
+        public long getTotalRunTime() {
+            return totalRunTime.sum();
+        }
+
+        public long getMaxRunTime() {
+            return maxRunTime.get();
+        }
+
+        public long getTotalQueueWait() {
+            return totalQueueWait.sum();
+        }
+
+        public long getMaxQueueWait() {
+            return maxQueueWait.get();
+        }
+
+        public long getTotalBatchTime() {
+            return totalBatchTime.sum();
+        }
+
+        @Override
+        public String toString() {
+            long tasks = getCompletedCount() + getFailedCount();
+            return String.format("%s: %d task(s) in %d batch(es), %d failed; wall %d ms, run %d ms (avg %.1f ms, max %d ms), queue wait max %d ms",
+                    taskName, tasks, getBatchCount(), getFailedCount(),
+                    TimeUnit.NANOSECONDS.toMillis(getTotalBatchTime()),
+                    TimeUnit.NANOSECONDS.toMillis(getTotalRunTime()),
+                    tasks == 0 ? 0.0 : getTotalRunTime() / 1_000_000.0 / tasks,
+                    TimeUnit.NANOSECONDS.toMillis(getMaxRunTime()),
+                    TimeUnit.NANOSECONDS.toMillis(getMaxQueueWait()));
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            // shared pools outlive any single operation and must not keep the JVM alive
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
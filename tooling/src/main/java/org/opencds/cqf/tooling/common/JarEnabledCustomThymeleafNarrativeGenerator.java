@@ -39,7 +39,9 @@ public class JarEnabledCustomThymeleafNarrativeGenerator extends BaseThymeleafNa
 
     @Override
 	public boolean populateResourceNarrative(FhirContext theFhirContext, IBaseResource theResource) {
-		super.populateResourceNarrative(theFhirContext, theResource);
+		try (Profiler.Span span = Profiler.start(Profiler.NARRATIVE, theResource.fhirType() + "/" + theResource.getIdElement().getIdPart())) {
+			super.populateResourceNarrative(theFhirContext, theResource);
+		}
 		return false;
     }
 
@@ -0,0 +1,288 @@
+package org.opencds.cqf.tooling.common;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Records wall time, CPU time, allocated bytes and output bytes for the phases of an operation (discovery, CQL
+ * translation, refresh, bundling, writes, posts), per phase and per artifact.
+ * <p>
+ * Profiling is off unless the {@value #PROFILE_PROPERTY} system property is set to the path of the JSON profile to
+ * write (or {@link #enable()} is called); while it is off {@link #start(String, String)} returns a shared no-op span.
+ * Usage:
+ * <pre>
+ * try (Profiler.Span span = Profiler.start(Profiler.CQL_TRANSLATE, libraryName)) {
+ *     ...
+ *     span.addBytes(elm.length);
+ * }
+ * </pre>
+ * Spans must be closed on the thread that started them. Nested spans are inclusive: a bundling span includes the time
+ * of the writes made while bundling.
+ */
+public class Profiler {
+    private static final Logger logger = LoggerFactory.getLogger(Profiler.class);
+
+    public static final String PROFILE_PROPERTY = "cqf.tooling.profile";
+    public static final String PROFILE_TOP_PROPERTY = "cqf.tooling.profile.top";
+
+    public static final String DISCOVERY = "discovery";
+    public static final String CQL_TRANSLATE = "cql.translate";
+    public static final String CQL_ELM_SERIALIZATION = "cql.elmSerialization";
+    public static final String CQL_DATA_REQUIREMENTS = "cql.dataRequirements";
+    public static final String MEASURE_REFRESH = "measure.refresh";
+    public static final String NARRATIVE = "narrative";
+    public static final String BUNDLE_ASSEMBLY = "bundle.assembly";
+    public static final String DISK_WRITE = "io.write";
+    public static final String HTTP_POST = "http.post";
+    public static final String PIPELINE_STEP = "pipeline.step";
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+    private static final boolean allocationSupported = isAllocationSupported();
+
+    private static volatile boolean enabled = System.getProperty(PROFILE_PROPERTY) != null;
+    private static volatile long startTime = System.currentTimeMillis();
+    private static final Map<String, Stats> phases = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, Stats>> artifacts = new ConcurrentHashMap<>();
+
+    private static final Span NOOP = new Span(null, null);
+
+    private Profiler() {
+    }
+
+    private static boolean isAllocationSupported() {
+        try {
+            return threadBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void enable() {
+        reset();
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static void reset() {
+        phases.clear();
+        artifacts.clear();
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts timing the given phase for the given artifact (e.g. a library name or file path, may be null).
+     */
+    public static Span start(String phase, String artifact) {
+        if (!enabled) {
+            return NOOP;
+        }
+        return new Span(phase, artifact == null ? "" : artifact);
+    }
+
+    /**
+     * Times the given action as the given phase for the given artifact, for instrumenting a whole method without
+     * wrapping its body in a span.
+     */
+    public static void time(String phase, String artifact, Runnable action) {
+        try (Span span = start(phase, artifact)) {
+            action.run();
+        }
+    }
+
+    private static long currentCpuTime() {
+        return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0L;
+    }
+
+    private static long currentAllocatedBytes() {
+        return allocationSupported
+                ? ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId())
+                : 0L;
+    }
+
+    private static void record(String phase, String artifact, long wallTime, long cpuTime, long allocatedBytes, long bytes) {
+        phases.computeIfAbsent(phase, p -> new Stats()).add(wallTime, cpuTime, allocatedBytes, bytes);
+        artifacts.computeIfAbsent(phase, p -> new ConcurrentHashMap<>())
+                .computeIfAbsent(artifact, a -> new Stats()).add(wallTime, cpuTime, allocatedBytes, bytes);
+    }
+
+    public static class Span implements AutoCloseable {
+        private final String phase;
+        private final String artifact;
+        private final long wallStart;
+        private final long cpuStart;
+        private final long allocationStart;
+        private long bytes;
+        private boolean closed;
+
+        private Span(String phase, String artifact) {
+            this.phase = phase;
+            this.artifact = artifact;
+            this.wallStart = phase == null ? 0L : System.nanoTime();
+            this.cpuStart = phase == null ? 0L : currentCpuTime();
+            this.allocationStart = phase == null ? 0L : currentAllocatedBytes();
+        }
+
+        /**
+         * Adds to the number of bytes produced (or sent) by this span.
+         */
+        public Span addBytes(long count) {
+            bytes += count;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (phase == null || closed) {
+                return;
+            }
+            closed = true;
+            // thread CPU time and allocations are not reported for virtual threads (-1), count them as zero
+            record(phase, artifact, System.nanoTime() - wallStart, Math.max(0L, currentCpuTime() - cpuStart),
+                    Math.max(0L, currentAllocatedBytes() - allocationStart), bytes);
+        }
+    }
+
+    private static class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder wallTime = new LongAdder();
+        private final LongAdder cpuTime = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        void add(long wall, long cpu, long allocated, long byteCount) {
+            count.increment();
+            wallTime.add(wall);
+            cpuTime.add(cpu);
+            allocatedBytes.add(allocated);
+            bytes.add(byteCount);
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("count", count.sum());
+            json.addProperty("wallTimeMs", TimeUnit.NANOSECONDS.toMillis(wallTime.sum()));
+            json.addProperty("cpuTimeMs", TimeUnit.NANOSECONDS.toMillis(cpuTime.sum()));
+            json.addProperty("allocatedBytes", allocatedBytes.sum());
+            json.addProperty("bytes", bytes.sum());
+            return json;
+        }
+    }
+
+    /**
+     * Returns the profile as JSON: totals per phase, and the totals per artifact within each phase, in descending
+     * order of wall time.
+     */
+    public static JsonObject toJson() {
+        JsonObject profile = new JsonObject();
+        profile.addProperty("start", Instant.ofEpochMilli(startTime).toString());
+        profile.addProperty("wallTimeMs", System.currentTimeMillis() - startTime);
+        profile.addProperty("cpuTimeSupported", cpuTimeSupported);
+        profile.addProperty("allocationSupported", allocationSupported);
+
+        JsonArray phaseArray = new JsonArray();
+        for (Map.Entry<String, Stats> phase : sortByWallTime(phases.entrySet())) {
+            JsonObject phaseJson = phase.getValue().toJson();
+            phaseJson.addProperty("phase", phase.getKey());
+            JsonArray artifactArray = new JsonArray();
+            for (Map.Entry<String, Stats> artifact : sortByWallTime(artifacts.getOrDefault(phase.getKey(), Map.of()).entrySet())) {
+                JsonObject artifactJson = artifact.getValue().toJson();
+                artifactJson.addProperty("artifact", artifact.getKey());
+                artifactArray.add(artifactJson);
+            }
+            phaseJson.add("artifacts", artifactArray);
+            phaseArray.add(phaseJson);
+        }
+        profile.add("phases", phaseArray);
+        return profile;
+    }
+
+    private static List<Map.Entry<String, Stats>> sortByWallTime(Collection<Map.Entry<String, Stats>> stats) {
+        return stats.stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Stats> e) -> e.getValue().wallTime.sum()).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a human-readable summary: the totals per phase and the topN most expensive artifacts overall.
+     */
+    public static String getSummary(int topN) {
+        StringBuilder summary = new StringBuilder("\r\nProfile (wall / cpu / allocated / bytes):");
+        for (Map.Entry<String, Stats> phase : sortByWallTime(phases.entrySet())) {
+            summary.append("\r\n  ").append(format(phase.getKey(), phase.getValue()));
+        }
+
+        List<Map.Entry<String, Stats>> all = new ArrayList<>();
+        artifacts.forEach((phase, stats) -> stats.forEach((artifact, artifactStats) ->
+                all.add(Map.entry(phase + " " + artifact, artifactStats))));
+        List<Map.Entry<String, Stats>> top = sortByWallTime(all);
+        summary.append("\r\nTop ").append(Math.min(topN, top.size())).append(" artifacts:");
+        top.stream().limit(topN).forEach(entry -> summary.append("\r\n  ").append(format(entry.getKey(), entry.getValue())));
+        return summary.toString();
+    }
+
+    private static String format(String name, Stats stats) {
+        return String.format("%s x%d: %d ms / %d ms / %d KB / %d KB", name, stats.count.sum(),
+                TimeUnit.NANOSECONDS.toMillis(stats.wallTime.sum()), TimeUnit.NANOSECONDS.toMillis(stats.cpuTime.sum()),
+                stats.allocatedBytes.sum() / 1024, stats.bytes.sum() / 1024);
+    }
+
+    public static void writeReport(String path) {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try {
+            File file = new File(path);
+            if (file.getAbsoluteFile().getParentFile() != null) {
+                Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+            }
+            Files.write(file.toPath(), gson.toJson(toJson()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.error("Error writing profile to {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Ends the profiled run: writes the JSON profile to the path given by {@value #PROFILE_PROPERTY} (if set) and
+     * logs the summary. Does nothing if profiling is disabled.
+     */
+    public static void finish() {
+        if (!enabled) {
+            return;
+        }
+        String path = System.getProperty(PROFILE_PROPERTY);
+        if (path != null && !path.isBlank()) {
+            writeReport(path);
+            logger.info("Wrote profile to {}", new File(path).getAbsolutePath());
+        }
+        logger.info(getSummary(Integer.getInteger(PROFILE_TOP_PROPERTY, 20)));
+    }
+}
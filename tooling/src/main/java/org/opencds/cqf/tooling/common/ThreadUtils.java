@@ -4,45 +4,42 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 public class ThreadUtils {
     protected static final Logger logger = LoggerFactory.getLogger(ThreadUtils.class);
 
-    private static List<ExecutorService> runningExecutors = new ArrayList<>();
+    private static final String DEFAULT_TASK_NAME = "ThreadUtils.executeTasks";
+
+    private static List<ExecutorService> runningExecutors = new CopyOnWriteArrayList<>();
 
     /**
-     * Executes a list of tasks concurrently using a thread pool.
+     * Executes a list of tasks concurrently using the given executor, which is shut down once the tasks complete.
      * <p>
-     * This method takes a list of Callable tasks and executes them concurrently using a thread pool. It utilizes
-     * an ExecutorService with a cached thread pool configuration to manage the execution of the tasks.
-     * The method waits for all tasks to complete before returning.
+     * Prefer {@link #executeTasks(String, Collection)}, which runs the tasks on the shared, bounded
+     * {@link ExecutionService} rather than a dedicated executor.
      *
-     * @param tasks A list of Callable tasks to execute concurrently.
+     * @param tasks    A list of Callable tasks to execute concurrently.
+     * @param executor The executor to run the tasks on.
      */
     public static void executeTasks(List<Callable<Void>> tasks, ExecutorService executor) {
         if (tasks == null || tasks.isEmpty()) {
+            executor.shutdown();
             return;
         }
 
         runningExecutors.add(executor);
-
-        List<Callable<Void>> retryTasks = new ArrayList<>();
-
-        //let OS handle threading:
         try {
             List<Future<Void>> futures = new ArrayList<>();
             for (Callable<Void> task : tasks) {
-                try {
-                    futures.add(executor.submit(task));
-                } catch (OutOfMemoryError e) {
-                    retryTasks.add(task);
-                }
+                futures.add(executor.submit(task));
             }
 
             // Wait for all tasks to complete
@@ -52,30 +49,88 @@ public class ThreadUtils {
         } catch (Exception e) {
             logger.error("ThreadUtils.executeTasks: ", e);
         } finally {
-            if (retryTasks.isEmpty()) {
-                runningExecutors.remove(executor);
-                executor.shutdown();
-            }else{
-                executeTasks(retryTasks, executor);
-            }
+            runningExecutors.remove(executor);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Executes a collection of CPU-bound tasks concurrently on the shared {@link ExecutionService} and waits for all
+     * of them to complete. A task that fails does not stop the others; the failures are logged once all tasks have
+     * completed.
+     *
+     * @param taskName The name the execution metrics for the tasks are recorded under.
+     * @param tasks    The Callable tasks to execute concurrently.
+     */
+    public static void executeTasks(String taskName, Collection<Callable<Void>> tasks) {
+        executeTasks(ExecutionService.Pool.CPU, taskName, tasks);
+    }
+
+    /**
+     * Executes a collection of tasks concurrently on the given pool of the shared {@link ExecutionService} and waits
+     * for all of them to complete. A task that fails does not stop the others; the failures are logged once all tasks
+     * have completed.
+     *
+     * @param pool     The pool to run the tasks on, IO for tasks that mostly block on the network or disk.
+     * @param taskName The name the execution metrics for the tasks are recorded under.
+     * @param tasks    The Callable tasks to execute concurrently.
+     */
+    public static void executeTasks(ExecutionService.Pool pool, String taskName, Collection<Callable<Void>> tasks) {
+        if (tasks == null || tasks.isEmpty()) {
+            return;
+        }
+
+        try {
+            ExecutionService.getInstance().invokeAll(pool, taskName, tasks);
+        } catch (ExecutionException e) {
+            logger.error("ThreadUtils.executeTasks: " + taskName, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("ThreadUtils.executeTasks: {} interrupted", taskName);
+        } catch (Exception e) {
+            logger.error("ThreadUtils.executeTasks: " + taskName, e);
         }
     }
 
     public static void executeTasks(List<Callable<Void>> tasks) {
-        executeTasks(tasks, Executors.newCachedThreadPool());
+        executeTasks(DEFAULT_TASK_NAME, tasks);
+    }
+
+    /**
+     * Runs a list of CPU-bound tasks concurrently on the shared {@link ExecutionService} and returns their results in
+     * task order. Unlike executeTasks, a failure is not only logged: the remaining tasks are cancelled and the failure is
+     * rethrown, as the caller needs every result.
+     *
+     * @param taskName The name the execution metrics for the tasks are recorded under.
+     * @param tasks    The Callable tasks to execute concurrently.
+     * @return The results of the tasks, in task order.
+     */
+    public static <T> List<T> invokeTasks(String taskName, List<Callable<T>> tasks) {
+        try {
+            return ExecutionService.getInstance().invokeAll(ExecutionService.Pool.CPU, taskName, tasks, 0, true);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(taskName + " interrupted", e);
+        }
     }
 
     public static void executeTasks(Queue<Callable<Void>> callables) {
-        executeTasks(new ArrayList<>(callables), Executors.newCachedThreadPool());
+        executeTasks(DEFAULT_TASK_NAME, callables);
     }
 
     public static void shutdownRunningExecutors() {
         try {
+            ExecutionService.getInstance().cancelAll();
             if (runningExecutors.isEmpty()) return;
             for (ExecutorService es : runningExecutors) {
                 es.shutdownNow();
             }
-            runningExecutors = new ArrayList<>();
+            runningExecutors = new CopyOnWriteArrayList<>();
         }catch (Exception e){
             //fail silently, shutting down anyways
         }
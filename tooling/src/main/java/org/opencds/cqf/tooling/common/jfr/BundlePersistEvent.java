@@ -0,0 +1,33 @@
+package org.opencds.cqf.tooling.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for each bundle assembled and persisted by a bundler.
+ */
+@Name("org.opencds.cqf.tooling.BundlePersist")
+@Label("Bundle Persist")
+@Category({"CQF Tooling", "Bundling"})
+@Description("A bundle assembled from its resources and written to disk, an archive or the post queue")
+@StackTrace(false)
+public class BundlePersistEvent extends jdk.jfr.Event {
+    @Label("Bundler")
+    public String bundler;
+
+    @Label("Bundle")
+    public String bundle;
+
+    @Label("Destination")
+    public String destination;
+
+    @Label("Entry Count")
+    public int entryCount;
+
+    @Label("Output")
+    @Description("file, manifest or archive")
+    public String output;
+}
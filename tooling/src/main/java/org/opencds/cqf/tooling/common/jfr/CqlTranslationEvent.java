@@ -0,0 +1,37 @@
+package org.opencds.cqf.tooling.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for each CQL library translated by the CqlProcessor.
+ */
+@Name("org.opencds.cqf.tooling.CqlTranslation")
+@Label("CQL Translation")
+@Category({"CQF Tooling", "CQL"})
+@Description("Translation of a CQL source file to ELM, including ELM serialization and data requirements")
+@StackTrace(false)
+public class CqlTranslationEvent extends jdk.jfr.Event {
+    @Label("File")
+    public String file;
+
+    @Label("Library")
+    public String library;
+
+    @Label("Version")
+    public String version;
+
+    @Label("Error Count")
+    public int errorCount;
+
+    @Label("Warning Count")
+    public int warningCount;
+
+    @Label("ELM Size")
+    @DataAmount
+    public long elmBytes;
+}
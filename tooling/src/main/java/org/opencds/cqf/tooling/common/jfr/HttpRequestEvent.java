@@ -0,0 +1,38 @@
+package org.opencds.cqf.tooling.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for each HTTP request made by HttpClientUtils. The event duration is the request latency.
+ */
+@Name("org.opencds.cqf.tooling.HttpRequest")
+@Label("HTTP Request")
+@Category({"CQF Tooling", "HTTP"})
+@Description("An HTTP request to a FHIR server")
+@StackTrace(false)
+public class HttpRequestEvent extends jdk.jfr.Event {
+    @Label("Method")
+    public String method;
+
+    @Label("URL")
+    public String url;
+
+    @Label("Resource")
+    public String resource;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Size")
+    @DataAmount
+    public long responseBytes;
+}
@@ -0,0 +1,34 @@
+package org.opencds.cqf.tooling.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for each resource encoded by IOUtils.encodeResource.
+ */
+@Name("org.opencds.cqf.tooling.ResourceEncode")
+@Label("Resource Encode")
+@Category({"CQF Tooling", "IO"})
+@Description("A FHIR resource encoded to JSON or XML")
+@StackTrace(false)
+public class ResourceEncodeEvent extends jdk.jfr.Event {
+    @Label("Resource Type")
+    public String resourceType;
+
+    @Label("Resource Id")
+    public String resourceId;
+
+    @Label("Encoding")
+    public String encoding;
+
+    @Label("Pretty Print")
+    public boolean prettyPrint;
+
+    @Label("Encoded Size")
+    @DataAmount
+    public long bytes;
+}
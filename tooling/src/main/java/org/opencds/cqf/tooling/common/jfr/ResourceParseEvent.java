@@ -0,0 +1,32 @@
+package org.opencds.cqf.tooling.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for each resource read (and parsed) from disk or an archive by IOUtils.readResource. Cache hits are not
+ * recorded.
+ */
+@Name("org.opencds.cqf.tooling.ResourceParse")
+@Label("Resource Parse")
+@Category({"CQF Tooling", "IO"})
+@Description("A FHIR resource read and parsed from a file")
+@StackTrace(false)
+public class ResourceParseEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Encoding")
+    public String encoding;
+
+    @Label("Resource Type")
+    public String resourceType;
+
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+}
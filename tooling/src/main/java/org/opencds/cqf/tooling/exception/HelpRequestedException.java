@@ -0,0 +1,13 @@
+package org.opencds.cqf.tooling.exception;
+
+/**
+ * Thrown once the help of an operation was printed, in place of exiting, so the caller (the command line, a daemon
+ * request or a pipeline step) decides what to do; the command line exits with 0.
+ */
+public class HelpRequestedException extends RuntimeException {
+   static final long serialVersionUID = 1L;
+
+   public HelpRequestedException() {
+      super("Help requested");
+   }
+}
@@ -11,7 +11,6 @@ import java.util.Map;
 import org.cqframework.cql.cql2elm.CqlCompilerException;
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
-import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.cql2elm.LibrarySourceProvider;
 import org.cqframework.cql.cql2elm.ModelManager;
@@ -58,8 +57,7 @@ public abstract class BaseLibraryGenerator<L extends IBaseResource, T extends Ba
         setRelevantCqlFiles();
         
         modelManager = new ModelManager();
-        sourceProvider = new DefaultLibrarySourceProvider(new File(pathToCQLContent).getParentFile().toPath());
-        //sourceProvider = new GenericLibrarySourceProvider(pathToCqlContentDir);
+        sourceProvider = new GenericLibrarySourceProvider(new File(pathToCQLContent).getParent());
         libraryManager = new LibraryManager(modelManager);
         libraryManager.getLibrarySourceLoader().registerProvider(sourceProvider);
 
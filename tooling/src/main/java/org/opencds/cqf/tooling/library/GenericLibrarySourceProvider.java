@@ -1,67 +1,61 @@
 package org.opencds.cqf.tooling.library;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.cqframework.cql.cql2elm.LibrarySourceProvider;
 import org.hl7.elm.r1.VersionedIdentifier;
-
+import org.opencds.cqf.tooling.utilities.CqlSourceIndex;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+
+/**
+ * Provides the CQL libraries of a directory to a LibraryManager, by the name and version of their library declarations.
+ * The lookups go to the {@link CqlSourceIndex} of the directory that {@link IOUtils#getCqlSourceIndex(String, boolean)}
+ * shares, so the providers of every translation of a folder read the headers of its CQL files once.
+ * <p>
+ * A request for a version only matches that version, as the LibraryManager rejects a source of any other version
+ * instead of asking the next provider; a request without a version gets the unversioned source, or else the most recent
+ * version.
+ */
 public class GenericLibrarySourceProvider implements LibrarySourceProvider {
 
-    private String pathToSource;
-    private LibraryHashMap libraries = new LibraryHashMap();
+    private final String pathToSource;
+    private final String namespaceUri;
 
     public GenericLibrarySourceProvider(String pathToSource) {
+        this(pathToSource, null);
+    }
+
+    /**
+     * @param namespaceUri the namespace of the libraries, or null when they are not in a namespace
+     */
+    public GenericLibrarySourceProvider(String pathToSource, String namespaceUri) {
         this.pathToSource = pathToSource;
+        this.namespaceUri = namespaceUri;
     }
 
+    /**
+     * @return a new stream over the source of the library, or null so the next provider is asked when there is none
+     */
     @Override
     public InputStream getLibrarySource(VersionedIdentifier versionedIdentifier) {
-        if (libraries.containsKey(versionedIdentifier)) {
-            return libraries.get(versionedIdentifier);
+        if (versionedIdentifier.getSystem() != null && namespaceUri != null
+                && !versionedIdentifier.getSystem().equals(namespaceUri)) {
+            return null;
         }
-
-        File sourceDir = new File(pathToSource);
-        File[] files = sourceDir.listFiles();
-        if (files == null) {
-            files = new File[] {sourceDir};
-        }
-        for (File file : files) {
-            if (!file.getName().endsWith(".cql")) continue;
-            try (Scanner scanner = new Scanner(new FileInputStream(file))) {
-                String cql = scanner.useDelimiter("\\A").next();
-                VersionedIdentifier vi = new VersionedIdentifier();
-                vi.setId(getIdFromSource(cql));
-                vi.setVersion(getVersionFromSource(cql));
-                this.libraries.put(vi, new FileInputStream(file));
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-                throw new IllegalArgumentException("Error reading " + file.getName());
-            }
-        }
-
-        if (libraries.containsKey(versionedIdentifier)) {
-            return libraries.get(versionedIdentifier);
+        Path file = IOUtils.getCqlSourceIndex(pathToSource, false)
+                .findLibrary(versionedIdentifier.getId(), versionedIdentifier.getVersion());
+        if (file == null) {
+            return null;
         }
-
-        throw new IllegalArgumentException("Unable to resolve source for library: " + versionedIdentifier.getId());
-    }
-
-    private String getIdFromSource(String cql) {
-        if (cql.startsWith("library")) {
-            return getNameFromSource(cql);
+        try {
+            return new ByteArrayInputStream(Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + file, e);
         }
-
-        throw new RuntimeException("This tool requires cql libraries to include a named/versioned identifier");
-    }
-
-    private String getNameFromSource(String cql) {
-        return cql.replaceFirst("library ", "").split(" version")[0].replaceAll("\"", "");
-    }
-    private String getVersionFromSource(String cql) {
-        return cql.split("version")[1].split("'")[1];
     }
 }
@@ -111,7 +111,7 @@ public class LibraryProcessor extends BaseProcessor {
     public void bundleLibraryDependencies(IBaseResource library, FhirContext fhirContext, Map<String, IBaseResource> resources,
                                           Encoding encoding, boolean versioned) throws Exception {
         Queue<Callable<Void>> bundleLibraryDependenciesTasks = bundleLibraryDependenciesTasks(library, fhirContext, resources, encoding, versioned);
-        ThreadUtils.executeTasks(bundleLibraryDependenciesTasks);
+        ThreadUtils.executeTasks("bundleLibraryDependencies", bundleLibraryDependenciesTasks);
     }
 
     /**
@@ -240,10 +240,10 @@ public class LibraryProcessor extends BaseProcessor {
                 attachment.setUrl(this.parentContext.getCanonicalBase() + "/" + fileName);
             }
             if (info != null) {
-                if (info.getElm() != null && emptyIfNull(formats).contains(Format.XML)) {
+                if (info.getElmContent() != null && emptyIfNull(formats).contains(Format.XML)) {
                     sourceLibrary.addContent().setContentType("application/elm+xml").setData(info.getElm());
                 }
-                if (info.getJsonElm() != null && emptyIfNull(formats).contains(Format.JSON)) {
+                if (info.getJsonElmContent() != null && emptyIfNull(formats).contains(Format.JSON)) {
                     sourceLibrary.addContent().setContentType("application/elm+json").setData(info.getJsonElm());
                 }
                 sourceLibrary.getDataRequirement().clear();
@@ -332,17 +332,11 @@ public class LibraryProcessor extends BaseProcessor {
         getCqlProcessor().execute();
 
         // For each CQL file, ensure that there is a Library resource with a matching name and version
+        var libraryResourceIndex = new LibraryResourceIndex(sourceLibraries);
         for (CqlProcessor.CqlSourceFileInformation fileInfo : getCqlProcessor().getAllFileInformation()) {
             if (fileInfo.getIdentifier() != null && fileInfo.getIdentifier().getId() != null && !fileInfo.getIdentifier().getId().equals("")) {
-                Library existingLibrary = null;
-                for (Library sourceLibrary : sourceLibraries) {
-                    if (fileInfo.getIdentifier().getId().equals(sourceLibrary.getName())
-                            && (fileInfo.getIdentifier().getVersion() == null || fileInfo.getIdentifier().getVersion().equals(sourceLibrary.getVersion()))
-                    ) {
-                        existingLibrary = sourceLibrary;
-                        break;
-                    }
-                }
+                Library existingLibrary = libraryResourceIndex.find(
+                        fileInfo.getIdentifier().getId(), fileInfo.getIdentifier().getVersion());
 
                 if (existingLibrary == null) {
                     Library newLibrary = new Library();
@@ -354,11 +348,18 @@ public class LibraryProcessor extends BaseProcessor {
                     validateIdAlphaNumeric(newLibrary.getId());
                     List<Attachment> attachments = new ArrayList<Attachment>();
                     Attachment attachment = new Attachment();
-                    attachment.setContentType("application/elm+xml");
-                    attachment.setData(fileInfo.getElm());
+                    // the XML ELM unless the translator options only ask for JSON
+                    if (fileInfo.getElmContent() == null && fileInfo.getJsonElmContent() != null) {
+                        attachment.setContentType("application/elm+json");
+                        attachment.setData(fileInfo.getJsonElm());
+                    } else {
+                        attachment.setContentType("application/elm+xml");
+                        attachment.setData(fileInfo.getElm());
+                    }
                     attachments.add(attachment);
                     newLibrary.setContent(attachments);
                     sourceLibraries.add(newLibrary);
+                    libraryResourceIndex.add(newLibrary);
                 }
             }
             else
@@ -369,23 +370,54 @@ public class LibraryProcessor extends BaseProcessor {
         }
 
         List<Library> resources = new ArrayList<Library>();
-        for (Library library : sourceLibraries) {
-            resources.add(refreshGeneratedContent(library));
+        binaryFiles = indexBinaryPaths();
+        try {
+            for (Library library : sourceLibraries) {
+                resources.add(refreshGeneratedContent(library));
+            }
+        } finally {
+            binaryFiles = null;
         }
         return resources;
     }
 
+    // the files directly in the binary paths by name, the first binary path that has a name wins; set during a refresh
+    private Map<String, File> binaryFiles;
+
+    private Map<String, File> indexBinaryPaths() {
+        var files = new HashMap<String, File>();
+        if (getBinaryPaths() != null) {
+            for (String dir : getBinaryPaths()) {
+                File[] dirFiles = new File(dir).listFiles(File::isFile);
+                if (dirFiles != null) {
+                    for (File file : dirFiles) {
+                        files.putIfAbsent(file.getName(), file);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
     private Attachment loadFile(String fn) throws IOException {
-        for (String dir : getBinaryPaths()) {
-            File f = new File(Utilities.path(dir, fn));
-            if (f.exists()) {
-                Attachment att = new Attachment();
-                att.setContentType("text/cql");
-                att.setData(TextFile.fileToBytes(f));
-                att.setUrl(f.getAbsolutePath());
-                return att;
+        File file = binaryFiles != null ? binaryFiles.get(fn) : null;
+        if (file == null) {
+            // not indexed, or a name that only matches on a case-insensitive file system
+            for (String dir : getBinaryPaths()) {
+                File f = new File(Utilities.path(dir, fn));
+                if (f.exists()) {
+                    file = f;
+                    break;
+                }
             }
         }
+        if (file != null) {
+            Attachment att = new Attachment();
+            att.setContentType("text/cql");
+            att.setData(TextFile.fileToBytes(file));
+            att.setUrl(file.getAbsolutePath());
+            return att;
+        }
         return null;
     }
 
@@ -0,0 +1,47 @@
+package org.opencds.cqf.tooling.library;
+
+import org.hl7.fhir.r5.model.Library;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the source Library resources of a refresh by name and version, used to find the Library of each CQL file.
+ * A lookup returns what a scan of the libraries in order would: the first library with the name, or with the name and
+ * version when a version is given. The CQL sources themselves are indexed by
+ * {@link org.opencds.cqf.tooling.utilities.CqlSourceIndex}.
+ */
+class LibraryResourceIndex {
+
+    private final Map<String, Library> byName = new HashMap<>();
+    private final Map<String, Map<String, Library>> byNameAndVersion = new HashMap<>();
+
+    LibraryResourceIndex(List<Library> libraries) {
+        for (Library library : libraries) {
+            add(library);
+        }
+    }
+
+    void add(Library library) {
+        if (library.getName() == null) {
+            return;
+        }
+        byName.putIfAbsent(library.getName(), library);
+        if (library.getVersion() != null) {
+            byNameAndVersion.computeIfAbsent(library.getName(), k -> new HashMap<>())
+                    .putIfAbsent(library.getVersion(), library);
+        }
+    }
+
+    /**
+     * @return the first library with the name and, if version is not null, the version, or null if there is none
+     */
+    Library find(String name, String version) {
+        if (version == null) {
+            return byName.get(name);
+        }
+        Map<String, Library> versions = byNameAndVersion.get(name);
+        return versions != null ? versions.get(version) : null;
+    }
+}
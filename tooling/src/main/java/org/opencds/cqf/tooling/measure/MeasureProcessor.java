@@ -3,9 +3,10 @@ package org.opencds.cqf.tooling.measure;
 import ca.uhn.fhir.context.FhirContext;
 import org.apache.commons.io.FilenameUtils;
 import org.cqframework.cql.cql2elm.CqlCompilerException;
-import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
 import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
 import org.hl7.fhir.r5.model.Measure;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.measure.r4.R4MeasureProcessor;
 import org.opencds.cqf.tooling.measure.stu3.STU3MeasureProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshMeasureParameters;
@@ -19,6 +20,7 @@ import org.opencds.cqf.tooling.utilities.ResourceUtils;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class MeasureProcessor extends BaseProcessor {
@@ -93,38 +95,47 @@ public class MeasureProcessor extends BaseProcessor {
         return internalRefreshGeneratedContent(sourceMeasures);
     }
 
+    /**
+     * Whether the refreshed measures get the data requirements of each population, in addition to those of the measure.
+     */
+    protected Boolean includePopulationDataRequirements() {
+        return false;
+    }
+
     private List<Measure> internalRefreshGeneratedContent(List<Measure> sourceMeasures) {
         // for each Measure, refresh the measure based on the primary measure library
-       var resources = new ArrayList<Measure>();
-        var processor = new MeasureRefreshProcessor();
+        var processor = new MeasureRefreshProcessor(getCqlProcessor().getDataRequirementsCache());
+        if (includePopulationDataRequirements() != null) {
+            processor.includePopulationDataRequirements = includePopulationDataRequirements();
+        }
         var libraryManager = getCqlProcessor().getLibraryManager();
-        var cqlTranslatorOptions = getCqlProcessor().getCqlTranslatorOptions();
+        var cqlCompilerOptions = getCqlProcessor().getCqlTranslatorOptions().getCqlCompilerOptions();
+
+        // the primary libraries are resolved one at a time, as a library that is not compiled yet is translated and the
+        // translator is not thread-safe; the refreshes only read the compiled libraries, so they run concurrently
+        var tasks = new ArrayList<Callable<Measure>>();
         for (var measure : sourceMeasures) {
             // Do not attempt to refresh if the measure does not have a library
-            if (measure.hasLibrary()) {
-                resources.add(refreshGeneratedContent(measure, processor, libraryManager, cqlTranslatorOptions));
+            var compiledLibrary = measure.hasLibrary() ? resolvePrimaryLibrary(measure, libraryManager) : null;
+            if (compiledLibrary != null) {
+                tasks.add(() -> processor.refreshMeasure(measure, libraryManager, compiledLibrary, cqlCompilerOptions));
             } else {
-                resources.add(measure);
+                tasks.add(() -> measure);
             }
         }
 
-        return resources;
+        return ThreadUtils.invokeTasks("MeasureProcessor.refreshGeneratedContent", tasks);
     }
 
-    private Measure refreshGeneratedContent(Measure measure, MeasureRefreshProcessor processor,
-                                            LibraryManager libraryManager, CqlTranslatorOptions cqlTranslatorOptions) {
+    // the compiled primary library of the measure, or null if it has severe errors
+    private CompiledLibrary resolvePrimaryLibrary(Measure measure, LibraryManager libraryManager) {
         var libraryUrl = ResourceUtils.getPrimaryLibraryUrl(measure, fhirContext);
         var primaryLibraryIdentifier = CanonicalUtils.toVersionedIdentifier(libraryUrl);
         var errors = new CopyOnWriteArrayList<CqlCompilerException>();
         var compiledLibrary = libraryManager.resolveLibrary(primaryLibraryIdentifier, errors);
         logger.info(CqlProcessor.buildStatusMessage(errors, measure.getName(), verboseMessaging));
-        boolean hasSevereErrors = CqlProcessor.hasSevereErrors(errors);
 
         //refresh measures without severe errors:
-        if (!hasSevereErrors) {
-            return processor.refreshMeasure(measure, libraryManager, compiledLibrary, cqlTranslatorOptions.getCqlCompilerOptions());
-        }
-
-        return measure;
+        return CqlProcessor.hasSevereErrors(errors) ? null : compiledLibrary;
     }
 }
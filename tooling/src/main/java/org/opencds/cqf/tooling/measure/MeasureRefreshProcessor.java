@@ -9,7 +9,6 @@ import java.util.Collections;
 import org.cqframework.cql.cql2elm.CqlCompilerOptions;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.cql2elm.model.CompiledLibrary;
-import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
 import org.cqframework.cql.elm.requirements.fhir.utilities.SpecificationLevel;
 import org.hl7.fhir.r5.model.CanonicalType;
 import org.hl7.fhir.r5.model.Extension;
@@ -20,13 +19,35 @@ import org.hl7.fhir.r5.model.Reference;
 import org.hl7.fhir.r5.model.RelatedArtifact;
 import org.hl7.fhir.r5.model.Resource;
 import org.hl7.fhir.r5.model.StringType;
+import org.opencds.cqf.tooling.common.Profiler;
+import org.opencds.cqf.tooling.processor.DataRequirementsCache;
 import org.opencds.cqf.tooling.utilities.constants.CrmiConstants;
 
 public class MeasureRefreshProcessor {
 
     public Boolean includePopulationDataRequirements = false;
 
+    private final DataRequirementsCache dataRequirementsCache;
+
+    public MeasureRefreshProcessor() {
+        this(new DataRequirementsCache());
+    }
+
+    /**
+     * @param dataRequirementsCache the data requirements shared with the other refreshes that use the same library
+     *                              manager; refreshMeasure may be called concurrently for different measures
+     */
+    public MeasureRefreshProcessor(DataRequirementsCache dataRequirementsCache) {
+        this.dataRequirementsCache = dataRequirementsCache;
+    }
+
     public Measure refreshMeasure(Measure measureToUse, LibraryManager libraryManager, CompiledLibrary compiledLibrary, CqlCompilerOptions options) {
+        Profiler.time(Profiler.MEASURE_REFRESH, measureToUse.getIdElement().getIdPart(),
+                () -> refresh(measureToUse, libraryManager, compiledLibrary, options));
+        return measureToUse;
+    }
+
+    private Measure refresh(Measure measureToUse, LibraryManager libraryManager, CompiledLibrary compiledLibrary, CqlCompilerOptions options) {
 
         // Computable measure http://hl7.org/fhir/us/cqfmeasures/StructureDefinition/computable-measure-cqfm
         clearMeasureExtensions(measureToUse, "http://hl7.org/fhir/us/cqfmeasures/StructureDefinition/cqfm-parameter");
@@ -72,17 +93,15 @@ public class MeasureRefreshProcessor {
 
     private Library getModuleDefinitionLibrary(Measure measureToUse, LibraryManager libraryManager, CompiledLibrary compiledLibrary, CqlCompilerOptions options){
         Set<String> expressionList = getExpressions(measureToUse);
-        DataRequirementsProcessor dqReqTrans = new DataRequirementsProcessor();
-        dqReqTrans.setSpecificationLevel(SpecificationLevel.QM_STU_1);
-        return dqReqTrans.gatherDataRequirements(libraryManager, compiledLibrary, options, expressionList, true);
+        return dataRequirementsCache.gatherDataRequirements(libraryManager, compiledLibrary, options, expressionList,
+                true, SpecificationLevel.QM_STU_1);
     }
 
     private void setPopulationDataRequirements(Measure measureToUse, LibraryManager libraryManager, CompiledLibrary compiledLibrary, CqlCompilerOptions options) {
-        DataRequirementsProcessor dqReqTrans = new DataRequirementsProcessor();
-        dqReqTrans.setSpecificationLevel(SpecificationLevel.QM_STU_1);
         measureToUse.getGroup().forEach(groupMember -> groupMember.getPopulation().forEach(population -> {
             if (population.hasId()) { // Requirement for computable measures
-                var popMDL = dqReqTrans.gatherDataRequirements(libraryManager, compiledLibrary, options, Collections.singleton(population.getCriteria().getExpression()), false);
+                var popMDL = dataRequirementsCache.gatherDataRequirements(libraryManager, compiledLibrary, options,
+                        Collections.singleton(population.getCriteria().getExpression()), false, SpecificationLevel.QM_STU_1);
                 var mdlID = population.getId() + "-effectiveDataRequirements";
                 popMDL.setId(mdlID);
                 setEffectiveDataRequirements(measureToUse, popMDL);
@@ -1,24 +1,15 @@
 package org.opencds.cqf.tooling.measure.r4;
 
-import org.cqframework.cql.cql2elm.CqlCompilerException;
-import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
-import org.cqframework.cql.cql2elm.LibraryManager;
 import org.hl7.fhir.convertors.advisors.impl.BaseAdvisor_40_50;
 import org.hl7.fhir.convertors.conv40_50.VersionConvertor_40_50;
 import org.hl7.fhir.r4.formats.FormatUtilities;
-import org.hl7.fhir.r5.model.Measure;
 import org.opencds.cqf.tooling.common.r4.SoftwareSystemHelper;
 import org.opencds.cqf.tooling.measure.MeasureProcessor;
-import org.opencds.cqf.tooling.measure.MeasureRefreshProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshMeasureParameters;
-import org.opencds.cqf.tooling.processor.CqlProcessor;
-import org.opencds.cqf.tooling.utilities.CanonicalUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils;
-import org.opencds.cqf.tooling.utilities.ResourceUtils;
 
 import java.io.File;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 public class R4MeasureProcessor extends MeasureProcessor {
 
@@ -130,49 +121,8 @@ public class R4MeasureProcessor extends MeasureProcessor {
     }
 
     @Override
-    protected List<Measure> refreshGeneratedContent(List<Measure> sourceMeasures) {
-        return internalRefreshGeneratedContent(sourceMeasures);
-    }
-
-    private List<Measure> internalRefreshGeneratedContent(List<Measure> sourceMeasures) {
-        // for each Measure, refresh the measure based on the primary measure library
-        var resources = new ArrayList<Measure>();
-        var processor = new MeasureRefreshProcessor();
-        var libraryManager = getCqlProcessor().getLibraryManager();
-        var cqlTranslatorOptions = getCqlProcessor().getCqlTranslatorOptions();
-        for (var measure : sourceMeasures) {
-            // Do not attempt to refresh if the measure does not have a library
-            if (measure.hasLibrary()) {
-                resources.add(refreshGeneratedContent(measure, processor, libraryManager, cqlTranslatorOptions));
-            } else {
-                resources.add(measure);
-            }
-        }
-
-        return resources;
-    }
-
-    private Measure refreshGeneratedContent(Measure measure, MeasureRefreshProcessor processor,
-                                            LibraryManager libraryManager, CqlTranslatorOptions cqlTranslatorOptions) {
-        var libraryUrl = ResourceUtils.getPrimaryLibraryUrl(measure, fhirContext);
-        var primaryLibraryIdentifier = CanonicalUtils.toVersionedIdentifier(libraryUrl);
-
-        var errors = new CopyOnWriteArrayList<CqlCompilerException>();
-        var compiledLibrary = libraryManager.resolveLibrary(primaryLibraryIdentifier, errors);
-
-        logger.info(CqlProcessor.buildStatusMessage(errors, measure.getName(), verboseMessaging));
-
-        var hasSevereErrors = CqlProcessor.hasSevereErrors(errors);
-
-        //refresh measures without severe errors:
-        if (!hasSevereErrors) {
-            if (params.includePopulationDataRequirements != null) {
-                processor.includePopulationDataRequirements = params.includePopulationDataRequirements;
-            }
-            return processor.refreshMeasure(measure, libraryManager, compiledLibrary, cqlTranslatorOptions.getCqlCompilerOptions());
-        }
-
-        return measure;
+    protected Boolean includePopulationDataRequirements() {
+        return params.includePopulationDataRequirements;
     }
 
     @Override
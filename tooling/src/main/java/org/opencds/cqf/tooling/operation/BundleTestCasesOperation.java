@@ -1,6 +1,8 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.parameter.BundleTestCasesParameters;
 import org.opencds.cqf.tooling.processor.TestCaseProcessor;
 import org.opencds.cqf.tooling.processor.argument.BundleTestCasesArgumentProcessor;
@@ -21,9 +23,11 @@ public class BundleTestCasesOperation extends Operation {
         try {
             params = new BundleTestCasesArgumentProcessor().parseAndConvert(args);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new InvalidOperationArgs(e.getMessage());
         }
 
         FhirContext fhirContext = ResourceUtils.getFhirContext(ResourceUtils.FhirVersion.parse(params.igVersion.toString()));
@@ -1,6 +1,7 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
 import org.opencds.cqf.tooling.measure.MeasureTestProcessor;
 import org.opencds.cqf.tooling.parameter.MeasureTestParameters;
 import org.opencds.cqf.tooling.processor.argument.ExecuteMeasureTestArgumentProcessor;
@@ -26,9 +27,11 @@ public class ExecuteMeasureTestOperation extends Operation {
 //            String resource = IOUtils.encodeResourceAsString((IBaseResource)result, params.encoding, fhirContext);
 //            System.out.println(resource);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new RuntimeException(e.getMessage(), e);
         }
     }
 //
@@ -6,6 +6,8 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.Operation;
 import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.utilities.BundleUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ParserPool;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -208,7 +210,7 @@ public class ExtractMatBundleOperation extends Operation {
         if (bundleFile.getPath().endsWith(".xml")) {
             encoding = "xml";
             try (FileReader reader = new FileReader(bundleFile)) {
-                bundle = context.newXmlParser().parseResource(reader);
+                bundle = ParserPool.getParser(IOUtils.Encoding.XML, context, false).parseResource(reader);
             } catch (Exception e) {
                 logger.info(ERROR_NOT_VALID + "\n" + inputFileLocation);
                 return;
@@ -217,7 +219,7 @@ public class ExtractMatBundleOperation extends Operation {
         } else if (bundleFile.getPath().endsWith(".json")) {
             encoding = "json";
             try (FileReader reader = new FileReader(bundleFile)) {
-                bundle = context.newJsonParser().parseResource(reader);
+                bundle = ParserPool.getParser(IOUtils.Encoding.JSON, context, false).parseResource(reader);
             } catch (Exception e) {
                 logger.info(ERROR_NOT_VALID + "\n" + inputFileLocation);
                 return;
@@ -298,14 +300,14 @@ public class ExtractMatBundleOperation extends Operation {
             IBaseResource theResource = null;
             if (extractedFile.getPath().endsWith(".xml")) {
                 try {
-                    theResource = context.newXmlParser().parseResource(new FileReader(extractedFile));
+                    theResource = ParserPool.getParser(IOUtils.Encoding.XML, context, false).parseResource(new FileReader(extractedFile));
                 } catch (Exception e) {
                     logger.error("moveAndRenameFiles: " + extractedFile + ": " + e.getMessage());
                     continue;
                 }
             } else if (extractedFile.getPath().endsWith(".json")) {
                 try {
-                    theResource = context.newJsonParser().parseResource(new FileReader(extractedFile));
+                    theResource = ParserPool.getParser(IOUtils.Encoding.JSON, context, false).parseResource(new FileReader(extractedFile));
                 } catch (Exception e) {
                     logger.error("moveAndRenameFiles: " + extractedFile + ": " + e.getMessage());
                     continue;
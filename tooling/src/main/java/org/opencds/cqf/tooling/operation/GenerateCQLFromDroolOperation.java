@@ -1,6 +1,8 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.parameter.GenerateCQLFromDroolParameters;
 import org.opencds.cqf.tooling.processor.GenerateCQLFromDroolProcessor;
 import org.opencds.cqf.tooling.processor.argument.GenerateCQLFromDroolArgumentProcessor;
@@ -22,9 +24,11 @@ public class GenerateCQLFromDroolOperation extends Operation {
         try {
             params = new GenerateCQLFromDroolArgumentProcessor().parseAndConvert(args);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new InvalidOperationArgs(e.getMessage());
         }
         GenerateCQLFromDroolProcessor.generate(params);
     }
@@ -0,0 +1,97 @@
+package org.opencds.cqf.tooling.operation;
+
+import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.parameter.SyntheticIGParameters;
+import org.opencds.cqf.tooling.processor.SyntheticIGGenerator;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+
+/**
+ * Generates a synthetic R4 measure IG of a given size, for benchmarking the IG operations at scale.
+ * <pre>
+ * -GenerateSyntheticIG -ip=target/synthetic-ig -libraries=1000 -depth=6 -fanout=4 -measures=200 -valuesets=500
+ *     -expansionsize=100 -patients=10
+ * </pre>
+ */
+public class GenerateSyntheticIGOperation extends Operation {
+
+    @Override
+    public void execute(String[] args) {
+        SyntheticIGParameters params = new SyntheticIGParameters();
+        for (String arg : args) {
+            if (arg.equals("-GenerateSyntheticIG")) continue;
+            String[] flagAndValue = arg.split("=");
+            if (flagAndValue.length < 2) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            String flag = flagAndValue[0];
+            String value = flagAndValue[1].replace("\"", "");
+
+            switch (flag.replace("-", "").toLowerCase()) {
+                case "igpath":
+                case "ip":
+                    params.igPath = value;
+                    break;
+                case "packageid":
+                case "pid":
+                    params.packageId = value;
+                    break;
+                case "canonicalbase":
+                case "cb":
+                    params.canonicalBase = value;
+                    break;
+                case "libraries":
+                case "l":
+                    params.libraryCount = parseInt(flag, value);
+                    break;
+                case "depth":
+                case "d":
+                    params.includeDepth = parseInt(flag, value);
+                    break;
+                case "fanout":
+                case "f":
+                    params.includeFanOut = parseInt(flag, value);
+                    break;
+                case "measures":
+                case "m":
+                    params.measureCount = parseInt(flag, value);
+                    break;
+                case "valuesets":
+                case "vs":
+                    params.valueSetCount = parseInt(flag, value);
+                    break;
+                case "expansionsize":
+                case "es":
+                    params.valueSetExpansionSize = parseInt(flag, value);
+                    break;
+                case "patients":
+                case "p":
+                    params.patientsPerMeasure = parseInt(flag, value);
+                    break;
+                case "seed":
+                case "s":
+                    try {
+                        params.seed = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid value for " + flag + ": " + value);
+                    }
+                    break;
+                case "encoding":
+                case "e":
+                    params.outputEncoding = IOUtils.Encoding.parse(value.toLowerCase());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown flag: " + flag);
+            }
+        }
+
+        new SyntheticIGGenerator().generate(params);
+    }
+
+    private static int parseInt(String flag, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + flag + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.opencds.cqf.tooling.operation;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.processor.BundleContentStore;
+import org.opencds.cqf.tooling.utilities.FhirContextCache;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds full bundles from the manifests written by a deduplicated (content-addressed) bundle run.
+ */
+public class MaterializeBundlesOperation extends Operation {
+    private static final Logger logger = LoggerFactory.getLogger(MaterializeBundlesOperation.class);
+
+    @Override
+    public void execute(String[] args) {
+        String pathToManifests = null;
+        String encoding = "json";
+        String version = "r4";
+        for (String arg : args) {
+            if (arg.equals("-MaterializeBundles")) continue;
+            String[] flagAndValue = arg.split("=");
+            if (flagAndValue.length < 2) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            String flag = flagAndValue[0];
+            String value = flagAndValue[1].replace("\"", "");
+
+            switch (flag.replace("-", "").toLowerCase()) {
+                case "pathtomanifests":
+                case "ptm":
+                    pathToManifests = value;
+                    break;
+                case "encoding":
+                case "e":
+                    encoding = value;
+                    break;
+                case "version":
+                case "v":
+                    version = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown flag: " + flag);
+            }
+        }
+
+        if (pathToManifests == null) {
+            throw new IllegalArgumentException("The path to the bundle manifests is required");
+        }
+
+        FhirContext fhirContext = FhirContextCache.getContext(version);
+        IOUtils.Encoding outputEncoding = IOUtils.Encoding.parse(encoding);
+        List<String> manifestPaths = new ArrayList<>();
+        if (new File(pathToManifests).isDirectory()) {
+            for (String path : IOUtils.getFilePaths(pathToManifests, true)) {
+                if (BundleContentStore.isManifest(path)) {
+                    manifestPaths.add(path);
+                }
+            }
+        } else {
+            manifestPaths.add(pathToManifests);
+        }
+
+        for (String manifestPath : manifestPaths) {
+            BundleContentStore.materialize(manifestPath, outputEncoding, fhirContext);
+        }
+        logger.info("Materialized {} bundle(s)", manifestPaths.size());
+    }
+}
@@ -1,6 +1,8 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.parameter.PostBundlesInDirParameters;
 import org.opencds.cqf.tooling.processor.PostBundlesInDirProcessor;
 import org.opencds.cqf.tooling.processor.argument.PostBundlesInDirArgumentProcessor;
@@ -16,9 +18,11 @@ public class PostBundlesInDirOperation extends Operation {
         try {
             params = new PostBundlesInDirArgumentProcessor().parseAndConvert(args);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new InvalidOperationArgs(e.getMessage());
         }
         PostBundlesInDirProcessor.PostBundlesInDir(params);
     }   
@@ -1,6 +1,8 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
 import org.opencds.cqf.tooling.processor.IGProcessor;
 import org.opencds.cqf.tooling.processor.argument.RefreshIGArgumentProcessor;
@@ -25,9 +27,11 @@ public class RefreshIGOperation extends Operation {
         try {
             params = new RefreshIGArgumentProcessor().parseAndConvert(args);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new InvalidOperationArgs(e.getMessage());
         }
 
         if (params.verboseMessaging == null || !params.verboseMessaging) {
@@ -1,6 +1,8 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.parameter.RefreshLibraryParameters;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.library.r4.R4LibraryProcessor;
@@ -23,9 +25,11 @@ public class RefreshLibraryOperation extends Operation {
         try {
             params = new RefreshLibraryArgumentProcessor().parseAndConvert(args);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new InvalidOperationArgs(e.getMessage());
         }
 
         List<String> refreshedLibraryNames = new ArrayList<String>();
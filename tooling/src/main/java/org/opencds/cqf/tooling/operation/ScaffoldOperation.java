@@ -1,6 +1,8 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.parameter.ScaffoldParameters;
 import org.opencds.cqf.tooling.processor.ScaffoldProcessor;
 import org.opencds.cqf.tooling.processor.argument.ScaffoldArgumentProcessor;
@@ -18,9 +20,11 @@ public class ScaffoldOperation extends Operation {
         try {
             params = new ScaffoldArgumentProcessor().parseAndConvert(args);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new InvalidOperationArgs(e.getMessage());
         }
 
         ScaffoldProcessor scaffoldProcessor = new ScaffoldProcessor();
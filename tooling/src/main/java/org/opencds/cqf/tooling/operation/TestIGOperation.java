@@ -1,6 +1,7 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
 import org.opencds.cqf.tooling.parameter.TestIGParameters;
 import org.opencds.cqf.tooling.processor.IGTestProcessor;
 import org.opencds.cqf.tooling.processor.argument.TestIGArgumentsProcessor;
@@ -16,9 +17,11 @@ public class TestIGOperation extends Operation {
             params = new TestIGArgumentsProcessor().parseAndConvert(args);
             new IGTestProcessor().testIg(params);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new RuntimeException(e.getMessage(), e);
         }
     }
 
@@ -1,6 +1,8 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.parameter.ValidateParameters;
 import org.opencds.cqf.tooling.processor.ValidateProcessor;
 import org.opencds.cqf.tooling.processor.argument.ValidateArgumentProcessor;
@@ -17,9 +19,11 @@ public class ValidateOperation extends Operation {
         try {
             params = new ValidateArgumentProcessor().parseAndConvert(args);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new InvalidOperationArgs(e.getMessage());
         }
         ValidateProcessor.validate(params);
     }
@@ -1,6 +1,8 @@
 package org.opencds.cqf.tooling.operation;
 
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
+import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.parameter.VmrToFhirParameters;
 import org.opencds.cqf.tooling.processor.VmrToFhirProcessor;
 import org.opencds.cqf.tooling.processor.argument.VmrToFhirArgumentProcessor;
@@ -19,9 +21,11 @@ public class VmrToFhirOperation extends Operation {
         try {
             params = new VmrToFhirArgumentProcessor().parseAndConvert(args);
         }
+        catch (HelpRequestedException e) {
+            throw e;
+        }
         catch (Exception e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            throw new InvalidOperationArgs(e.getMessage());
         }
         VmrToFhirProcessor.transform(params);
     }
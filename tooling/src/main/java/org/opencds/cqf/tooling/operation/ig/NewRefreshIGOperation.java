@@ -6,6 +6,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.Operation;
 import org.opencds.cqf.tooling.common.r4.SoftwareSystemHelper;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
 import org.opencds.cqf.tooling.processor.argument.RefreshIGArgumentProcessor;
 import org.opencds.cqf.tooling.utilities.IOUtils;
@@ -38,9 +39,11 @@ public class NewRefreshIGOperation extends Operation {
              publishMeasureBundles(measureRefresh);
          }
          // TODO: bundle IG/testcases
+      } catch (HelpRequestedException e) {
+         throw e;
       } catch (Exception e) {
          logger.error(e.getMessage());
-         System.exit(1);
+         throw new RuntimeException(e.getMessage(), e);
       }
    }
 
@@ -0,0 +1,187 @@
+package org.opencds.cqf.tooling.operations;
+
+import org.opencds.cqf.tooling.exception.OperationNotFound;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The {@link Operation} annotated operations and their {@link OperationParam} metadata, read from the registry the
+ * tooling-operation-processor annotation processor generates at build time (META-INF/cqf-tooling/operations, in every
+ * jar that has operations). Finding an operation or printing its help loads no operation class and scans nothing;
+ * {@link OperationDescriptor#loadClass()} loads the one operation that is run.
+ */
+public class OperationRegistry {
+   public static final String REGISTRY_PATH = "META-INF/cqf-tooling/operations";
+
+   private static Map<String, OperationDescriptor> operations;
+
+   private OperationRegistry() {}
+
+   public static synchronized Map<String, OperationDescriptor> getOperations() {
+      if (operations == null) {
+         operations = Collections.unmodifiableMap(load(OperationRegistry.class.getClassLoader()));
+      }
+      return operations;
+   }
+
+   public static Set<String> getOperationNames() {
+      return getOperations().keySet();
+   }
+
+   /**
+    * The operation with the given name, or null if there is none.
+    */
+   public static OperationDescriptor get(String name) {
+      return getOperations().get(name);
+   }
+
+   static Map<String, OperationDescriptor> load(ClassLoader classLoader) {
+      Map<String, OperationDescriptor> loaded = new TreeMap<>();
+      try {
+         Enumeration<URL> registries = classLoader.getResources(REGISTRY_PATH);
+         while (registries.hasMoreElements()) {
+            read(registries.nextElement(), loaded);
+         }
+      } catch (IOException e) {
+         throw new UncheckedIOException("Error reading the operation registry: " + e.getMessage(), e);
+      }
+      return loaded;
+   }
+
+   private static void read(URL registry, Map<String, OperationDescriptor> loaded) throws IOException {
+      try (BufferedReader reader = new BufferedReader(
+              new InputStreamReader(registry.openStream(), StandardCharsets.UTF_8))) {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+               continue;
+            }
+            String[] fields = line.split("\t", -1);
+            for (int i = 0; i < fields.length; i++) {
+               fields[i] = unescape(fields[i]);
+            }
+            if (fields[0].equals("operation") && fields.length == 3) {
+               // the first registry on the class path wins, like classes do
+               loaded.putIfAbsent(fields[1], new OperationDescriptor(fields[1], fields[2]));
+            } else if (fields[0].equals("param") && fields.length == 8) {
+               OperationDescriptor operation = loaded.get(fields[1]);
+               if (operation != null && operation.params.stream().noneMatch(p -> p.getField().equals(fields[2]))) {
+                  operation.params.add(new ParamDescriptor(fields[2], fields[3].split(","),
+                          Boolean.parseBoolean(fields[4]), fields[5], fields[6], fields[7]));
+               }
+            } else {
+               throw new IllegalStateException("Invalid operation registry entry in " + registry + ": " + line);
+            }
+         }
+      }
+   }
+
+   static String unescape(String value) {
+      if (value.indexOf('\\') < 0) {
+         return value;
+      }
+      StringBuilder result = new StringBuilder(value.length());
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         if (c == '\\' && i + 1 < value.length()) {
+            char escaped = value.charAt(++i);
+            switch (escaped) {
+               case 't': result.append('\t'); break;
+               case 'n': result.append('\n'); break;
+               case 'r': result.append('\r'); break;
+               default: result.append(escaped);
+            }
+         } else {
+            result.append(c);
+         }
+      }
+      return result.toString();
+   }
+
+   public static class OperationDescriptor {
+      private final String name;
+      private final String className;
+      private final List<ParamDescriptor> params = new ArrayList<>();
+
+      OperationDescriptor(String name, String className) {
+         this.name = name;
+         this.className = className;
+      }
+
+      public String getName() {
+         return name;
+      }
+
+      public String getClassName() {
+         return className;
+      }
+
+      public List<ParamDescriptor> getParams() {
+         return Collections.unmodifiableList(params);
+      }
+
+      public Class<? extends ExecutableOperation> loadClass() {
+         try {
+            return Class.forName(className, false, OperationRegistry.class.getClassLoader())
+                    .asSubclass(ExecutableOperation.class);
+         } catch (ClassNotFoundException e) {
+            throw new OperationNotFound("The class of operation " + name + " is missing: " + className);
+         }
+      }
+   }
+
+   public static class ParamDescriptor {
+      private final String field;
+      private final String[] alias;
+      private final boolean required;
+      private final String setter;
+      private final String defaultValue;
+      private final String description;
+
+      ParamDescriptor(String field, String[] alias, boolean required, String setter, String defaultValue,
+                      String description) {
+         this.field = field;
+         this.alias = alias;
+         this.required = required;
+         this.setter = setter;
+         this.defaultValue = defaultValue;
+         this.description = description;
+      }
+
+      public String getField() {
+         return field;
+      }
+
+      public String[] getAlias() {
+         return alias.clone();
+      }
+
+      public boolean isRequired() {
+         return required;
+      }
+
+      public String getSetter() {
+         return setter;
+      }
+
+      public String getDefaultValue() {
+         return defaultValue;
+      }
+
+      public String getDescription() {
+         return description;
+      }
+   }
+}
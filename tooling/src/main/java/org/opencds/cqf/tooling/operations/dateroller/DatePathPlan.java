@@ -0,0 +1,321 @@
+package org.opencds.cqf.tooling.operations.dateroller;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.apache.commons.lang3.time.DateUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The set of element paths of a resource type that can hold date, dateTime, instant or Period values.
+ * <p>
+ * Plans are compiled once per FHIR version and resource type from the runtime definitions and cached, so rolling
+ * a resource only walks the children that can actually contain dates instead of visiting every element. Extensions,
+ * contained resources and Timing elements are not rolled (consistent with the terser based implementation).
+ */
+public final class DatePathPlan {
+   private static final Logger logger = LoggerFactory.getLogger(DatePathPlan.class);
+   private static final Map<String, DatePathPlan> plans = new ConcurrentHashMap<>();
+   private static final Set<String> DATE_TYPES = Set.of("date", "dateTime", "instant", "Period");
+   private static final Set<String> SKIPPED_TYPES = Set.of("Timing", "Extension", "Narrative");
+   private static final Set<String> SKIPPED_CHILDREN = Set.of("extension", "modifierExtension", "contained");
+   private static final List<String> PERIOD_BOUNDARIES = List.of("start", "end");
+
+   private final List<Step> steps = new ArrayList<>();
+   // JSON property name (choice types resolved, e.g. effectiveDateTime) to the step for that property
+   private final Map<String, JsonStep> jsonSteps = new HashMap<>();
+   private boolean hasDates;
+
+   private DatePathPlan() { }
+
+   public static DatePathPlan forResource(FhirContext fhirContext, IBaseResource resource) {
+      return forDefinition(fhirContext, fhirContext.getResourceDefinition(resource));
+   }
+
+   public static DatePathPlan forResourceType(FhirContext fhirContext, String resourceType) {
+      return forDefinition(fhirContext, fhirContext.getResourceDefinition(resourceType));
+   }
+
+   private static DatePathPlan forDefinition(FhirContext fhirContext, RuntimeResourceDefinition definition) {
+      String key = fhirContext.getVersion().getVersion().name() + "|" + definition.getName();
+      return plans.computeIfAbsent(key, k -> compile(definition));
+   }
+
+   private static DatePathPlan compile(BaseRuntimeElementCompositeDefinition<?> definition) {
+      Map<BaseRuntimeElementDefinition<?>, DatePathPlan> compiled = new IdentityHashMap<>();
+      DatePathPlan plan = compile(definition, compiled);
+
+      // Nested plans may be recursive (e.g. Identifier.assigner.identifier), so mark plans that reach a date
+      // element by fixpoint and then drop the steps that can never lead to one
+      boolean changed = true;
+      while (changed) {
+         changed = false;
+         for (DatePathPlan next : compiled.values()) {
+            if (!next.hasDates && next.steps.stream().anyMatch(Step::leadsToDates)) {
+               next.hasDates = true;
+               changed = true;
+            }
+         }
+      }
+      for (DatePathPlan next : compiled.values()) {
+         next.steps.forEach(step -> step.nested.values().removeIf(nested -> !nested.hasDates));
+         next.steps.removeIf(step -> !step.rollsDates && step.nested.isEmpty());
+         next.jsonSteps.values().removeIf(step -> step.nested != null && !step.nested.hasDates);
+      }
+
+      return plan;
+   }
+
+   private static DatePathPlan compile(BaseRuntimeElementCompositeDefinition<?> definition,
+                                       Map<BaseRuntimeElementDefinition<?>, DatePathPlan> compiled) {
+      DatePathPlan plan = compiled.get(definition);
+      if (plan != null) {
+         return plan;
+      }
+      plan = new DatePathPlan();
+      compiled.put(definition, plan);
+
+      for (BaseRuntimeChildDefinition child : definition.getChildren()) {
+         if (SKIPPED_CHILDREN.contains(child.getElementName())) {
+            continue;
+         }
+         Step step = new Step(child);
+         for (String name : child.getValidChildNames()) {
+            BaseRuntimeElementDefinition<?> elementDefinition = child.getChildByName(name);
+            if (elementDefinition == null || elementDefinition instanceof RuntimeResourceDefinition
+                    || SKIPPED_TYPES.contains(elementDefinition.getName())) {
+               continue;
+            }
+            if (DATE_TYPES.contains(elementDefinition.getName())) {
+               step.rollsDates = true;
+               plan.jsonSteps.put(name, new JsonStep("Period".equals(elementDefinition.getName()), null));
+            }
+            else if (elementDefinition instanceof BaseRuntimeElementCompositeDefinition) {
+               DatePathPlan nested = compile((BaseRuntimeElementCompositeDefinition<?>) elementDefinition, compiled);
+               step.nested.put(elementDefinition.getImplementingClass(), nested);
+               plan.jsonSteps.put(name, new JsonStep(false, nested));
+            }
+         }
+         if (step.rollsDates || !step.nested.isEmpty()) {
+            plan.steps.add(step);
+         }
+      }
+
+      return plan;
+   }
+
+   /**
+    * Shifts every date element reachable from the given element by the given number of days.
+    *
+    * @return the number of date elements that were updated
+    */
+   public int roll(IBase element, int daysToAdd) {
+      int count = 0;
+      for (Step step : steps) {
+         for (IBase value : step.child.getAccessor().getValues(element)) {
+            if (step.rollsDates && shiftDate(value, daysToAdd)) {
+               ++count;
+               continue;
+            }
+            DatePathPlan nested = step.getNested(value);
+            if (nested != null) {
+               count += nested.roll(value, daysToAdd);
+            }
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Shifts every date value reachable from the given JSON object (a resource or element in the FHIR JSON format)
+    * by the given number of days, rewriting the values in place.
+    *
+    * @return the number of date values that were updated
+    */
+   public int rollJson(JsonObject element, int daysToAdd) {
+      int count = 0;
+      for (Map.Entry<String, JsonElement> property : element.entrySet()) {
+         JsonStep step = jsonSteps.get(property.getKey());
+         if (step == null) {
+            continue;
+         }
+         JsonElement value = property.getValue();
+         if (value.isJsonArray()) {
+            JsonArray values = value.getAsJsonArray();
+            for (int i = 0; i < values.size(); ++i) {
+               if (step.isDate() && values.get(i).isJsonPrimitive()) {
+                  values.set(i, new JsonPrimitive(shiftDate(values.get(i).getAsString(), daysToAdd)));
+                  ++count;
+               }
+               else {
+                  count += rollJsonObject(step, values.get(i), daysToAdd);
+               }
+            }
+         }
+         else if (step.isDate() && value.isJsonPrimitive()) {
+            property.setValue(new JsonPrimitive(shiftDate(value.getAsString(), daysToAdd)));
+            ++count;
+         }
+         else {
+            count += rollJsonObject(step, value, daysToAdd);
+         }
+      }
+      return count;
+   }
+
+   private static int rollJsonObject(JsonStep step, JsonElement value, int daysToAdd) {
+      if (!value.isJsonObject()) {
+         return 0;
+      }
+      if (step.nested != null) {
+         return step.nested.rollJson(value.getAsJsonObject(), daysToAdd);
+      }
+      if (step.period) {
+         JsonObject period = value.getAsJsonObject();
+         for (String boundary : PERIOD_BOUNDARIES) {
+            JsonElement date = period.get(boundary);
+            if (date != null && date.isJsonPrimitive()) {
+               period.addProperty(boundary, shiftDate(date.getAsString(), daysToAdd));
+            }
+         }
+         return 1;
+      }
+      return 0;
+   }
+
+   /**
+    * Shifts a FHIR date, dateTime or instant string by the given number of days. Adding whole days leaves the
+    * time and offset unchanged, so only the date portion is rewritten and the original precision is preserved.
+    */
+   static String shiftDate(String value, int daysToAdd) {
+      try {
+         if (value.length() >= 10) {
+            return LocalDate.parse(value.substring(0, 10)).plusDays(daysToAdd) + value.substring(10);
+         }
+         else if (value.length() == 7) {
+            return LocalDate.parse(value + "-01").plusDays(daysToAdd).toString().substring(0, 7);
+         }
+         else if (value.length() == 4) {
+            return LocalDate.of(Integer.parseInt(value), 1, 1).plusDays(daysToAdd).toString().substring(0, 4);
+         }
+      } catch (DateTimeParseException | NumberFormatException e) {
+         logger.warn("Unable to roll date value {}", value);
+      }
+      return value;
+   }
+
+   private static boolean shiftDate(IBase element, int daysToAdd) {
+      if (element instanceof org.hl7.fhir.dstu3.model.BaseDateTimeType) {
+         org.hl7.fhir.dstu3.model.BaseDateTimeType date = (org.hl7.fhir.dstu3.model.BaseDateTimeType) element;
+         if (date.getValue() != null) {
+            TimeZone timeZone = date.getTimeZone();
+            date.setValue(DateUtils.addDays(date.getValue(), daysToAdd)).setTimeZone(timeZone);
+         }
+         return true;
+      } else if (element instanceof org.hl7.fhir.r4.model.BaseDateTimeType) {
+         org.hl7.fhir.r4.model.BaseDateTimeType date = (org.hl7.fhir.r4.model.BaseDateTimeType) element;
+         if (date.getValue() != null) {
+            TimeZone timeZone = date.getTimeZone();
+            date.setValue(DateUtils.addDays(date.getValue(), daysToAdd)).setTimeZone(timeZone);
+         }
+         return true;
+      } else if (element instanceof org.hl7.fhir.r5.model.BaseDateTimeType) {
+         org.hl7.fhir.r5.model.BaseDateTimeType date = (org.hl7.fhir.r5.model.BaseDateTimeType) element;
+         if (date.getValue() != null) {
+            TimeZone timeZone = date.getTimeZone();
+            date.setValue(DateUtils.addDays(date.getValue(), daysToAdd)).setTimeZone(timeZone);
+         }
+         return true;
+      } else if (element instanceof org.hl7.fhir.dstu3.model.Period) {
+         org.hl7.fhir.dstu3.model.Period period = (org.hl7.fhir.dstu3.model.Period) element;
+         if (period.hasStart()) {
+            shiftDate(period.getStartElement(), daysToAdd);
+         }
+         if (period.hasEnd()) {
+            shiftDate(period.getEndElement(), daysToAdd);
+         }
+         return true;
+      } else if (element instanceof org.hl7.fhir.r4.model.Period) {
+         org.hl7.fhir.r4.model.Period period = (org.hl7.fhir.r4.model.Period) element;
+         if (period.hasStart()) {
+            shiftDate(period.getStartElement(), daysToAdd);
+         }
+         if (period.hasEnd()) {
+            shiftDate(period.getEndElement(), daysToAdd);
+         }
+         return true;
+      } else if (element instanceof org.hl7.fhir.r5.model.Period) {
+         org.hl7.fhir.r5.model.Period period = (org.hl7.fhir.r5.model.Period) element;
+         if (period.hasStart()) {
+            shiftDate(period.getStartElement(), daysToAdd);
+         }
+         if (period.hasEnd()) {
+            shiftDate(period.getEndElement(), daysToAdd);
+         }
+         return true;
+      }
+      return false;
+   }
+
+   private static final class JsonStep {
+      private final boolean period;
+      private final DatePathPlan nested;
+
+      private JsonStep(boolean period, DatePathPlan nested) {
+         this.period = period;
+         this.nested = nested;
+      }
+
+      private boolean isDate() {
+         return !period && nested == null;
+      }
+   }
+
+   private static final class Step {
+      private final BaseRuntimeChildDefinition child;
+      private final Map<Class<?>, DatePathPlan> nested = new LinkedHashMap<>();
+      private boolean rollsDates;
+
+      private Step(BaseRuntimeChildDefinition child) {
+         this.child = child;
+      }
+
+      private boolean leadsToDates() {
+         return rollsDates || nested.values().stream().anyMatch(plan -> plan.hasDates);
+      }
+
+      private DatePathPlan getNested(IBase value) {
+         DatePathPlan plan = nested.get(value.getClass());
+         if (plan == null) {
+            // profiled datatypes (e.g. SimpleQuantity) are subclasses of the declared type
+            for (Map.Entry<Class<?>, DatePathPlan> entry : nested.entrySet()) {
+               if (entry.getKey().isInstance(value)) {
+                  return entry.getValue();
+               }
+            }
+         }
+         return plan;
+      }
+   }
+}
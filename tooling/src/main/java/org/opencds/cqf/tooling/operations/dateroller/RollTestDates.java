@@ -2,29 +2,25 @@ package org.opencds.cqf.tooling.operations.dateroller;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
-import ca.uhn.fhir.context.RuntimeChildChoiceDefinition;
-import ca.uhn.fhir.context.RuntimeChildPrimitiveDatatypeDefinition;
-import ca.uhn.fhir.util.BundleBuilder;
-import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.util.ExtensionUtil;
-import ca.uhn.fhir.util.FhirTerser;
-import ca.uhn.fhir.util.TerserUtil;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IBase;
-import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseDatatype;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
 import org.opencds.cqf.tooling.utilities.FhirContextCache;
 import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ParserPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,7 +35,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 @Operation(name = "RollTestDates")
@@ -74,11 +70,15 @@ public class RollTestDates implements ExecutableOperation {
          if (outputPath == null) {
             outputPath = pathToResources;
          }
-         List<IBaseResource> resources = IOUtils.readResources(Collections.singletonList(pathToResources), fhirContext)
-                 .stream().filter(resource -> ExtensionUtil.hasExtension(resource, DATEROLLER_EXT_URL))
-                 .filter(resource -> getAllDateElements(fhirContext, resource, getDateClasses(fhirContext)))
-                 .collect(Collectors.toList());
-         IOUtils.writeResources(resources, outputPath, IOUtils.Encoding.valueOf(encoding), fhirContext);
+         if (IOUtils.isDirectory(pathToResources)) {
+            processResourceDirectory(pathToResources);
+         }
+         else {
+            List<IBaseResource> resources = IOUtils.readResources(Collections.singletonList(pathToResources), fhirContext)
+                    .stream().filter(resource -> rollDates(fhirContext, resource))
+                    .collect(Collectors.toList());
+            IOUtils.writeResources(resources, outputPath, IOUtils.Encoding.parse(encoding), fhirContext);
+         }
       }
       else {
          if (outputPath == null) {
@@ -89,6 +89,31 @@ public class RollTestDates implements ExecutableOperation {
       }
    }
 
+   // Each file is parsed, rolled and written independently, so the directory is processed concurrently
+   private void processResourceDirectory(String directory) {
+      IOUtils.Encoding outputEncoding = IOUtils.Encoding.parse(encoding);
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (String path : IOUtils.getFilePaths(directory, true)) {
+         IOUtils.Encoding fileEncoding = IOUtils.getEncoding(path);
+         if (fileEncoding != IOUtils.Encoding.JSON && fileEncoding != IOUtils.Encoding.XML) {
+            continue;
+         }
+         tasks.add(() -> {
+            try {
+               IParser parser = ParserPool.getParser(fileEncoding, fhirContext, false);
+               IBaseResource resource = parser.parseResource(IOUtils.getFileContent(new File(path)));
+               if (rollDates(fhirContext, resource)) {
+                  IOUtils.writeResource(resource, outputPath, outputEncoding, fhirContext);
+               }
+            } catch (Exception e) {
+               logger.error("Error rolling dates for resource file {}", path, e);
+            }
+            return null;
+         });
+      }
+      ThreadUtils.executeTasks(tasks);
+   }
+
    // NOTE: the legacy CDSHooks prefetch format is NOT supported
    private void processCDSHooksRequests(File requestDirectory, Gson gson) {
       if (requestDirectory.isDirectory()) {
@@ -119,133 +144,116 @@ public class RollTestDates implements ExecutableOperation {
       }
    }
 
-   private IBaseBundle updateBundleDates(IBaseBundle bundle) {
-      BundleBuilder builder = new BundleBuilder(fhirContext);
-      BundleUtil.toListOfResources(fhirContext, bundle).forEach(
-              resource -> {
-                 getAllDateElements(fhirContext, resource, getDateClasses(fhirContext));
-                 builder.addCollectionEntry(resource);
-              }
-      );
-      return builder.getBundle();
-   }
-
    // Library method
+   // The request is updated in place on the JSON tree - resources are not parsed into (or encoded from) the HAPI model
    public void getUpdatedRequest(JsonObject request, Gson gson) {
-      if (request.has("context") &&
-              request.get("context").getAsJsonObject().has("draftOrders")) {
-         IBaseResource draftOrdersBundle = fhirContext.newJsonParser().parseResource(
-                 request.getAsJsonObject("context").getAsJsonObject("draftOrders").toString());
-         if (draftOrdersBundle instanceof IBaseBundle) {
-            request.getAsJsonObject("context").add("draftOrders",
-                    gson.fromJson(fhirContext.newJsonParser().encodeResourceToString(
-                            updateBundleDates((IBaseBundle) draftOrdersBundle)), JsonObject.class));
+      if (request.has("context") && request.get("context").isJsonObject()) {
+         JsonElement draftOrders = request.getAsJsonObject("context").get("draftOrders");
+         if (draftOrders != null && draftOrders.isJsonObject()) {
+            rollJsonResource(draftOrders.getAsJsonObject());
          }
       }
-      if (request.has("prefetch")) {
-         JsonObject prefetchResources = request.getAsJsonObject("prefetch");
-         JsonObject updatedPrefetch = new JsonObject();
-         for (Map.Entry<String, JsonElement> prefetchElement : prefetchResources.entrySet()) {
-            if (prefetchElement.getValue().isJsonNull()) {
-               updatedPrefetch.add(prefetchElement.getKey(), prefetchElement.getValue());
-               continue;
+      if (request.has("prefetch") && request.get("prefetch").isJsonObject()) {
+         for (Map.Entry<String, JsonElement> prefetchElement : request.getAsJsonObject("prefetch").entrySet()) {
+            if (prefetchElement.getValue().isJsonObject()) {
+               rollJsonResource(prefetchElement.getValue().getAsJsonObject());
             }
-            IBaseResource resource = fhirContext.newJsonParser().parseResource(prefetchElement.getValue().toString());
-            if (resource instanceof IBaseBundle) {
-               updatedPrefetch.add(prefetchElement.getKey(), gson.fromJson(fhirContext.newJsonParser()
-                               .encodeResourceToString(updateBundleDates((IBaseBundle) resource)),
-                       JsonObject.class));
+         }
+      }
+   }
+
+   // Library method
+   public boolean rollJsonResource(JsonObject resource) {
+      JsonElement resourceType = resource.get("resourceType");
+      if (resourceType == null || !resourceType.isJsonPrimitive()) {
+         return false;
+      }
+      if (resourceType.getAsString().equals("Bundle")) {
+         boolean updated = false;
+         JsonElement entries = resource.get("entry");
+         if (entries != null && entries.isJsonArray()) {
+            for (JsonElement entry : entries.getAsJsonArray()) {
+               if (entry.isJsonObject() && entry.getAsJsonObject().has("resource")
+                       && entry.getAsJsonObject().get("resource").isJsonObject()) {
+                  updated |= rollJsonResource(entry.getAsJsonObject().getAsJsonObject("resource"));
+               }
             }
-            else {
-               getAllDateElements(fhirContext, resource, getDateClasses(fhirContext));
-               updatedPrefetch.add(prefetchElement.getKey(), gson.fromJson(
-                       fhirContext.newJsonParser().encodeResourceToString(resource), JsonObject.class));
+         }
+         return updated;
+      }
+
+      JsonObject dateLastUpdated = getJsonDateLastUpdated(resource);
+      if (dateLastUpdated == null) {
+         return false;
+      }
+      LocalDate lastUpdated = null;
+      for (String property : List.of("valueDateTime", "valueDate", "valueInstant")) {
+         if (dateLastUpdated.has(property)) {
+            lastUpdated = LocalDate.parse(dateLastUpdated.get(property).getAsString().split("T")[0]);
+            break;
+         }
+      }
+      if (lastUpdated == null) {
+         throw new IllegalArgumentException("Unsupported type found for dateLastUpdated extension in resource: "
+                 + resource.get("id"));
+      }
+
+      LocalDate now = LocalDate.now();
+      if (!lastUpdated.isBefore(now)) {
+         return false;
+      }
+      DatePathPlan plan;
+      try {
+         plan = DatePathPlan.forResourceType(fhirContext, resourceType.getAsString());
+      } catch (DataFormatException e) {
+         logger.warn("Unknown resource type {} found in request, dates not rolled", resourceType.getAsString());
+         return false;
+      }
+      if (plan.rollJson(resource, getDaysBetweenDates(lastUpdated, now)) > 0) {
+         dateLastUpdated.remove("valueDate");
+         dateLastUpdated.remove("valueInstant");
+         dateLastUpdated.addProperty("valueDateTime", new org.hl7.fhir.r4.model.DateTimeType(new Date()).getValueAsString());
+      }
+      return true;
+   }
+
+   private JsonObject getJsonDateLastUpdated(JsonObject resource) {
+      JsonObject dateRollerExtension = getJsonExtensionByUrl(resource, DATEROLLER_EXT_URL);
+      return dateRollerExtension == null ? null : getJsonExtensionByUrl(dateRollerExtension, "dateLastUpdated");
+   }
+
+   private JsonObject getJsonExtensionByUrl(JsonObject element, String url) {
+      JsonElement extensions = element.get("extension");
+      if (extensions != null && extensions.isJsonArray()) {
+         for (JsonElement extension : extensions.getAsJsonArray()) {
+            if (extension.isJsonObject() && extension.getAsJsonObject().has("url")
+                    && url.equals(extension.getAsJsonObject().get("url").getAsString())) {
+               return extension.getAsJsonObject();
             }
          }
-         request.add("prefetch", updatedPrefetch);
       }
+      return null;
    }
 
    // Library method
+   // NOTE: the date-bearing elements are resolved from the compiled DatePathPlan for the resource type; the classes
+   //  argument is retained for compatibility
    public boolean getAllDateElements(FhirContext fhirContext, IBaseResource resource, List<Class<? extends IBase>> classes) {
-      FhirTerser terser = new FhirTerser(fhirContext);
-      if (ExtensionUtil.hasExtension(resource, DATEROLLER_EXT_URL) && doUpdate(resource)) {
-         terser.visit(resource, (theResource, theElement, thePathToElement, theChildDefinition, theDefinition) -> {
-            // TODO - handle timing elements
-            if (theElement.fhirType().equalsIgnoreCase("timing")) {
-               return;
-            }
-            for (Class<? extends IBase> clazz : classes) {
-               if (clazz.isAssignableFrom(theElement.getClass())) {
-                  // skip extensions and children of composite Date elements (Period)
-                  if (thePathToElement.contains("extension") ||
-                          (theChildDefinition instanceof RuntimeChildPrimitiveDatatypeDefinition &&
-                                  ((RuntimeChildPrimitiveDatatypeDefinition) theChildDefinition).getField()
-                                          .getDeclaringClass().getSimpleName().equalsIgnoreCase("period")))
-                  {
-                     continue;
-                  }
-                  // Resolve choice type path names by type
-                  if (theChildDefinition instanceof RuntimeChildChoiceDefinition) {
-                     String s = theChildDefinition.getChildNameByDatatype(clazz);
-                     thePathToElement.remove(thePathToElement.size() - 1);
-                     thePathToElement.add(s);
-                  }
-                  int daysToAdd = getDaysBetweenDates(getLastUpdatedDate(resource), LocalDate.now());
-                  if (theElement instanceof org.hl7.fhir.dstu3.model.BaseDateTimeType) {
-                     TimeZone timeZone = ((org.hl7.fhir.dstu3.model.BaseDateTimeType) theElement).getTimeZone();
-                     ((org.hl7.fhir.dstu3.model.BaseDateTimeType) theElement).setValue(DateUtils.addDays(
-                                     ((org.hl7.fhir.dstu3.model.BaseDateTimeType) theElement).getValue(), daysToAdd))
-                             .setTimeZone(timeZone);
-                  } else if (theElement instanceof org.hl7.fhir.r4.model.BaseDateTimeType) {
-                     TimeZone timeZone = ((org.hl7.fhir.r4.model.BaseDateTimeType) theElement).getTimeZone();
-                     ((org.hl7.fhir.r4.model.BaseDateTimeType) theElement).setValue(DateUtils.addDays(
-                                     ((org.hl7.fhir.r4.model.BaseDateTimeType) theElement).getValue(), daysToAdd))
-                             .setTimeZone(timeZone);
-                  } else if (theElement instanceof org.hl7.fhir.r5.model.BaseDateTimeType) {
-                     TimeZone timeZone = ((org.hl7.fhir.r5.model.BaseDateTimeType) theElement).getTimeZone();
-                     ((org.hl7.fhir.r5.model.BaseDateTimeType) theElement).setValue(DateUtils.addDays(
-                                     ((org.hl7.fhir.r5.model.BaseDateTimeType) theElement).getValue(), daysToAdd))
-                             .setTimeZone(timeZone);
-                  } else if (theElement instanceof org.hl7.fhir.dstu3.model.Period) {
-                     org.hl7.fhir.dstu3.model.BaseDateTimeType start = terser.getSingleValueOrNull(theElement,
-                             "start", org.hl7.fhir.dstu3.model.BaseDateTimeType.class);
-                     org.hl7.fhir.dstu3.model.BaseDateTimeType end = terser.getSingleValueOrNull(theElement,
-                             "end", org.hl7.fhir.dstu3.model.BaseDateTimeType.class);
-                     ((org.hl7.fhir.dstu3.model.Period) theElement).setEnd(end.setValue(
-                             DateUtils.addDays(end.getValue(), daysToAdd)).setTimeZone(end.getTimeZone()).getValue());
-                     ((org.hl7.fhir.dstu3.model.Period) theElement).setStart(start.setValue(
-                             DateUtils.addDays(start.getValue(), daysToAdd)).setTimeZone(start.getTimeZone()).getValue());
-                  } else if (theElement instanceof org.hl7.fhir.r4.model.Period) {
-                     org.hl7.fhir.r4.model.BaseDateTimeType start = terser.getSingleValueOrNull(theElement,
-                             "start", org.hl7.fhir.r4.model.BaseDateTimeType.class);
-                     org.hl7.fhir.r4.model.BaseDateTimeType end = terser.getSingleValueOrNull(theElement,
-                             "end", org.hl7.fhir.r4.model.BaseDateTimeType.class);
-                     ((org.hl7.fhir.r4.model.Period) theElement).setEnd(end.setValue(
-                             DateUtils.addDays(end.getValue(), daysToAdd)).setTimeZone(end.getTimeZone()).getValue());
-                     ((org.hl7.fhir.r4.model.Period) theElement).setStart(start.setValue(
-                             DateUtils.addDays(start.getValue(), daysToAdd)).setTimeZone(start.getTimeZone()).getValue());
-                  } else if (theElement instanceof org.hl7.fhir.r5.model.Period) {
-                     org.hl7.fhir.r5.model.BaseDateTimeType start = terser.getSingleValueOrNull(theElement,
-                             "start", org.hl7.fhir.r5.model.BaseDateTimeType.class);
-                     org.hl7.fhir.r5.model.BaseDateTimeType end = terser.getSingleValueOrNull(theElement,
-                             "end", org.hl7.fhir.r5.model.BaseDateTimeType.class);
-                     ((org.hl7.fhir.r5.model.Period) theElement).setEnd(end.setValue(
-                             DateUtils.addDays(end.getValue(), daysToAdd)).setTimeZone(end.getTimeZone()).getValue());
-                     ((org.hl7.fhir.r5.model.Period) theElement).setStart(start.setValue(
-                             DateUtils.addDays(start.getValue(), daysToAdd)).setTimeZone(start.getTimeZone()).getValue());
-                  } else {
-                     throw new IllegalArgumentException(
-                             "Expected type: date | datetime | timing | instant | period, found: " +
-                                     theElement.fhirType());
-                  }
-                  TerserUtil.setFieldByFhirPath(terser, resolveFhirPath(theResource.fhirType(), thePathToElement),
-                          resource, theElement);
-                  updateDateRollerExtension(fhirContext, resource);
-               }
+      return rollDates(fhirContext, resource);
+   }
+
+   // Library method
+   public boolean rollDates(FhirContext fhirContext, IBaseResource resource) {
+      if (ExtensionUtil.hasExtension(resource, DATEROLLER_EXT_URL)) {
+         LocalDate lastUpdated = getLastUpdatedDate(resource);
+         LocalDate now = LocalDate.now();
+         if (lastUpdated.isBefore(now)) {
+            int daysToAdd = getDaysBetweenDates(lastUpdated, now);
+            if (DatePathPlan.forResource(fhirContext, resource).roll(resource, daysToAdd) > 0) {
+               updateDateRollerExtension(fhirContext, resource);
             }
-         });
-         return true;
+            return true;
+         }
       }
       return false;
    }
@@ -301,10 +309,6 @@ public class RollTestDates implements ExecutableOperation {
       }
    }
 
-   private boolean doUpdate(IBaseResource resource) {
-      return getLastUpdatedDate(resource).isBefore(LocalDate.now());
-   }
-
    private void updateDateRollerExtension(FhirContext fhirContext, IBaseResource resource) {
       ExtensionUtil.setExtension(fhirContext, ExtensionUtil.getExtensionByUrl(ExtensionUtil.getExtensionByUrl(
               resource, DATEROLLER_EXT_URL), "dateLastUpdated"), "dateTime", new Date());
@@ -338,14 +342,6 @@ public class RollTestDates implements ExecutableOperation {
       return classes;
    }
 
-   private String resolveFhirPath(String resourceType, List<String> paths) {
-      StringBuilder builder = new StringBuilder();
-      builder.append(resourceType).append(".");
-      paths.forEach(path -> builder.append(path).append("."));
-      builder.deleteCharAt(builder.length() - 1);
-      return builder.toString();
-   }
-
    public String getPathToResources() {
       return pathToResources;
    }
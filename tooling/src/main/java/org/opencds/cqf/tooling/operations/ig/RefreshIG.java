@@ -42,4 +42,68 @@ public class RefreshIG implements ExecutableOperation {
       // package (Bundle or list of resources) - also includes
       // publish
    }
+
+   public String getPathToImplementationGuide() {
+      return pathToImplementationGuide;
+   }
+
+   public void setPathToImplementationGuide(String pathToImplementationGuide) {
+      this.pathToImplementationGuide = pathToImplementationGuide;
+   }
+
+   public Boolean getIncludeElm() {
+      return includeElm;
+   }
+
+   public void setIncludeElm(Boolean includeElm) {
+      this.includeElm = includeElm;
+   }
+
+   public Boolean getIncludeDependencies() {
+      return includeDependencies;
+   }
+
+   public void setIncludeDependencies(Boolean includeDependencies) {
+      this.includeDependencies = includeDependencies;
+   }
+
+   public Boolean getIncludeTerminology() {
+      return includeTerminology;
+   }
+
+   public void setIncludeTerminology(Boolean includeTerminology) {
+      this.includeTerminology = includeTerminology;
+   }
+
+   public Boolean getIncludePatients() {
+      return includePatients;
+   }
+
+   public void setIncludePatients(Boolean includePatients) {
+      this.includePatients = includePatients;
+   }
+
+   public String getEncoding() {
+      return encoding;
+   }
+
+   public void setEncoding(String encoding) {
+      this.encoding = encoding;
+   }
+
+   public String getVersion() {
+      return version;
+   }
+
+   public void setVersion(String version) {
+      this.version = version;
+   }
+
+   public String getOutputPath() {
+      return outputPath;
+   }
+
+   public void setOutputPath(String outputPath) {
+      this.outputPath = outputPath;
+   }
 }
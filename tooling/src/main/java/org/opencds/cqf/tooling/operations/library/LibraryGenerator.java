@@ -6,7 +6,6 @@ import ca.uhn.fhir.util.TerserUtil;
 import org.apache.commons.codec.binary.Base64;
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
-import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.cql2elm.LibrarySourceProvider;
 import org.cqframework.cql.cql2elm.ModelManager;
@@ -19,6 +18,7 @@ import org.hl7.fhir.convertors.conv30_50.VersionConvertor_30_50;
 import org.hl7.fhir.convertors.conv40_50.VersionConvertor_40_50;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.library.GenericLibrarySourceProvider;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
@@ -61,8 +61,8 @@ public class LibraryGenerator implements ExecutableOperation {
       ModelManager modelManager = new ModelManager();
       LibraryManager libraryManager = new LibraryManager(modelManager, translatorOptions.getCqlCompilerOptions());
       File cqlContent = new File(pathToCqlContent);
-      LibrarySourceProvider librarySourceProvider = new DefaultLibrarySourceProvider(cqlContent.isDirectory() ?
-              cqlContent.toPath() : cqlContent.getParentFile().toPath());
+      LibrarySourceProvider librarySourceProvider = new GenericLibrarySourceProvider(cqlContent.isDirectory() ?
+              cqlContent.getPath() : cqlContent.getParent());
       libraryManager.getLibrarySourceLoader().registerProvider(librarySourceProvider);
 
       if (cqlContent.isDirectory()) {
@@ -3,7 +3,6 @@ package org.opencds.cqf.tooling.operations.library;
 import ca.uhn.fhir.context.FhirContext;
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
-import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.cql2elm.ModelManager;
 import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
@@ -12,6 +11,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.Attachment;
 import org.hl7.fhir.r5.model.Library;
 import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
+import org.opencds.cqf.tooling.library.GenericLibrarySourceProvider;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
@@ -22,7 +22,6 @@ import org.opencds.cqf.tooling.utilities.converters.ResourceAndTypeConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Date;
 
@@ -64,7 +63,7 @@ public class LibraryRefresh implements ExecutableOperation {
          modelManager = new ModelManager();
          translatorOptions = ResourceUtils.getTranslatorOptions(pathToCql);
          libraryManager = new LibraryManager(modelManager, translatorOptions.getCqlCompilerOptions());
-         libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(pathToCql)));
+         libraryManager.getLibrarySourceLoader().registerProvider(new GenericLibrarySourceProvider(pathToCql));
          libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
          refreshLibrary(libraryToRefresh);
 
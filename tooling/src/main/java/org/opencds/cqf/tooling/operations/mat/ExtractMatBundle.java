@@ -29,7 +29,7 @@ import java.util.List;
 public class ExtractMatBundle implements ExecutableOperation {
    private static final Logger logger = LoggerFactory.getLogger(ExtractMatBundle.class);
 
-   @OperationParam(alias = { "ptb", "pathtobundle" }, setter = "pathToBundle", required = true,
+   @OperationParam(alias = { "ptb", "pathtobundle" }, setter = "setPathToBundle", required = true,
            description = "Path to the exported MAT FHIR Bundle resource (required)")
    private String pathToBundle;
    @OperationParam(alias = { "e", "encoding" }, setter = "setEncoding", defaultValue = "json",
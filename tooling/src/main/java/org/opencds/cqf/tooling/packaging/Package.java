@@ -4,13 +4,17 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import org.apache.commons.io.FilenameUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.common.Profiler;
+import org.opencds.cqf.tooling.processor.BundleContentStore;
+import org.opencds.cqf.tooling.processor.DependencyService;
+import org.opencds.cqf.tooling.utilities.ArchiveWriter;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 public abstract class Package<T extends IBaseResource> {
@@ -47,6 +51,8 @@ public abstract class Package<T extends IBaseResource> {
     private String fhirServerUrl;
     private IGenericClient fhirClient;
     private String bundleOutputPath;
+    private BundleContentStore contentStore;
+    private ArchiveWriter archiveWriter;
 
     public Package(String igRoot, FhirContext fhirContext, boolean includeDependencies, boolean includeTerminology, boolean includeTests, String fhirServerUrl) {
         this.igRoot = igRoot;
@@ -68,11 +74,14 @@ public abstract class Package<T extends IBaseResource> {
 
     public void packageArtifact() {
         this.mainArtifact = resolveMainArtifact();
-        this.dependencies = resolveDependencies(this.mainArtifact);
-        if (includeTests) {
-            this.testPackage = resolveTests(this.mainArtifact);
+        try (Profiler.Span span = Profiler.start(Profiler.BUNDLE_ASSEMBLY,
+                this.mainArtifact == null ? null : this.mainArtifact.getIdElement().getIdPart())) {
+            this.dependencies = resolveDependencies(this.mainArtifact);
+            if (includeTests) {
+                this.testPackage = resolveTests(this.mainArtifact);
+            }
+            output();
         }
-        output();
     }
 
     public void resolvePrimaryLibraryDependencies(IBaseResource mainArtifact, FhirContext fhirContext, LinkedHashSet<IBaseResource> dependencies) {
@@ -82,23 +91,68 @@ public abstract class Package<T extends IBaseResource> {
             setPrimaryLibrary(primaryLibrary);
         }
 
-        var missingDependencies = new HashSet<String>();
+        var dependencyService = DependencyService.getInstance(fhirContext);
+        var missingDependencies = new LinkedHashSet<String>();
         if (includeDependencies) {
             dependencies.add(primaryLibrary);
-            var dependencyLibraries = ResourceUtils.getDepLibraryResources(
-                    primaryLibrary, fhirContext, true, false, missingDependencies);
-            dependencies.addAll(dependencyLibraries.values());
+            dependencies.addAll(dependencyService.getLibraryDependencies(primaryLibrary, true).values());
+            missingDependencies.addAll(dependencyService.getMissingLibraries(primaryLibrary, true));
         }
 
         if (includeTerminology) {
-            var dependencyValueSets = ResourceUtils.getDepValueSetResources(
-                    primaryLibrary, fhirContext, true, missingDependencies);
-            dependencies.addAll(dependencyValueSets.values());
+            dependencies.addAll(dependencyService.getTerminologyDependencies(primaryLibrary, true).values());
+            missingDependencies.addAll(dependencyService.getMissingTerminology(primaryLibrary, true));
         }
 
         missingDependencies.forEach(missing -> logger.warn("Unable to package dependency: {}", missing));
     }
 
+    /*
+        Output helpers: when an archive writer is configured, output is written as entries of the archive (relative to
+        the bundle output path) instead of files; otherwise bundles are written as manifests when a content store is
+        configured, or as files.
+    */
+
+    protected void initializeDirectory(String outputPath) {
+        if (archiveWriter == null) {
+            IOUtils.initializeDirectory(outputPath);
+        }
+    }
+
+    protected void writeBundle(IBaseResource bundle, String outputPath, String fileName) {
+        if (archiveWriter != null) {
+            archiveWriter.writeResource(bundle, ArchiveWriter.getEntryName(bundleOutputPath, outputPath), fileName,
+                    IOUtils.Encoding.JSON, fhirContext);
+        } else if (contentStore != null) {
+            contentStore.writeManifest(bundle, outputPath, fileName, fhirContext);
+        } else {
+            IOUtils.writeBundle(bundle, outputPath, IOUtils.Encoding.JSON, fhirContext, fileName);
+        }
+    }
+
+    protected void writeResource(IBaseResource resource, String outputPath, String fileName) {
+        if (archiveWriter != null) {
+            archiveWriter.writeResource(resource, ArchiveWriter.getEntryName(bundleOutputPath, outputPath), fileName,
+                    IOUtils.Encoding.JSON, fhirContext);
+        } else {
+            IOUtils.writeResource(resource, outputPath, IOUtils.Encoding.JSON, fhirContext, true, fileName);
+        }
+    }
+
+    protected void writeResources(List<IBaseResource> resources, String outputPath) {
+        for (IBaseResource resource : resources) {
+            writeResource(resource, outputPath, null);
+        }
+    }
+
+    protected void writeCql(String cql, String outputFilePath) {
+        if (archiveWriter != null) {
+            archiveWriter.writeText(ArchiveWriter.getEntryName(bundleOutputPath, outputFilePath), cql);
+        } else {
+            IOUtils.writeCqlToFile(cql, outputFilePath);
+        }
+    }
+
     public T getMainArtifact() {
         return mainArtifact;
     }
@@ -194,4 +248,20 @@ public abstract class Package<T extends IBaseResource> {
     public void setBundleOutputPath(String bundleOutputPath) {
         this.bundleOutputPath = bundleOutputPath;
     }
+
+    public BundleContentStore getContentStore() {
+        return contentStore;
+    }
+
+    public void setContentStore(BundleContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
+
+    public ArchiveWriter getArchiveWriter() {
+        return archiveWriter;
+    }
+
+    public void setArchiveWriter(ArchiveWriter archiveWriter) {
+        this.archiveWriter = archiveWriter;
+    }
 }
@@ -3,6 +3,8 @@ package org.opencds.cqf.tooling.packaging;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
 import org.opencds.cqf.tooling.packaging.r4.PackageMeasure;
+import org.opencds.cqf.tooling.processor.BundleContentStore;
+import org.opencds.cqf.tooling.utilities.ArchiveWriter;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +23,10 @@ public class PackageMeasures {
     }
 
     public PackageMeasures(String igRoot, FhirContext fhirContext, boolean includeDependencies, boolean includeTerminology, boolean includeTests, String fhirServerUrl, String measureToPackagePath) {
+        this(igRoot, fhirContext, includeDependencies, includeTerminology, includeTests, fhirServerUrl, measureToPackagePath, null, null);
+    }
+
+    public PackageMeasures(String igRoot, FhirContext fhirContext, boolean includeDependencies, boolean includeTerminology, boolean includeTests, String fhirServerUrl, String measureToPackagePath, BundleContentStore contentStore, ArchiveWriter archiveWriter) {
         var measureResourcePaths = IOUtils.getMeasurePaths(fhirContext);
         if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
             var filteredPaths = filterMeasurePaths(measureResourcePaths, measureToPackagePath);
@@ -28,8 +34,12 @@ public class PackageMeasures {
                 logger.warn("No Measure resources matched the path: {}", measureToPackagePath);
             } else {
                 filteredPaths.forEach(
-                        path -> new PackageMeasure(igRoot, fhirContext, path, includeDependencies, includeTerminology, includeTests, fhirServerUrl)
-                                .packageArtifact());
+                        path -> {
+                            var packageMeasure = new PackageMeasure(igRoot, fhirContext, path, includeDependencies, includeTerminology, includeTests, fhirServerUrl);
+                            packageMeasure.setContentStore(contentStore);
+                            packageMeasure.setArchiveWriter(archiveWriter);
+                            packageMeasure.packageArtifact();
+                        });
             }
         } else {
             throw new UnsupportedOperationException("Package operation for Measure resources is not supported for FHIR version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
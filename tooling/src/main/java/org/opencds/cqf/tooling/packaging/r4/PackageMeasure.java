@@ -110,54 +110,51 @@ public class PackageMeasure extends Package<Measure> {
         logger.info("Packaging Measure {}...", measureId);
         var measureOutputPath = IOUtils.concatFilePath(getBundleOutputPath(),
                 "measure", measureId);
-        IOUtils.initializeDirectory(measureOutputPath);
+        initializeDirectory(measureOutputPath);
 
         var measureFilesOutputPath = IOUtils.concatFilePath(measureOutputPath,
                 measureId + "-files");
-        IOUtils.initializeDirectory(measureFilesOutputPath);
-        IOUtils.writeResource(mainArtifact, measureFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext());
-        IOUtils.writeResource(getPrimaryLibrary(), measureFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext());
+        initializeDirectory(measureFilesOutputPath);
+        writeResource(mainArtifact, measureFilesOutputPath, null);
+        writeResource(getPrimaryLibrary(), measureFilesOutputPath, null);
 
         // TODO: Is this correct? Do we just exclude the dependencies from the bundle?
         if (isIncludeDependencies()) {
             logger.info("Packaging Dependencies...");
             var libraryDependencyBundleId = "library-deps-" + measureId + "-bundle";
-            IOUtils.writeBundle(createDependencyLibraryBundle(libraryDependencyBundleId, dependencies),
-                    measureFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(), libraryDependencyBundleId);
+            writeBundle(createDependencyLibraryBundle(libraryDependencyBundleId, dependencies),
+                    measureFilesOutputPath, libraryDependencyBundleId);
         }
 
         // TODO: Is this correct? Do we just exclude the dependencies from the bundle?
         if (isIncludeTerminology()) {
             logger.info("Packaging Terminology...");
             var valueSetDependencyBundleId = "valuesets-" + measureId + "-bundle";
-            IOUtils.writeBundle(createDependencyValueSetBundle(valueSetDependencyBundleId, dependencies),
-                    measureFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(), valueSetDependencyBundleId);
+            writeBundle(createDependencyValueSetBundle(valueSetDependencyBundleId, dependencies),
+                    measureFilesOutputPath, valueSetDependencyBundleId);
         }
 
         var cqlFileOutputPath = IOUtils.concatFilePath(measureFilesOutputPath,
                 ((Library) getPrimaryLibrary()).getIdPart() + ".cql");
-        IOUtils.writeCqlToFile(ResourceUtils.getCqlFromR4Library((Library) getPrimaryLibrary()), cqlFileOutputPath);
+        writeCql(ResourceUtils.getCqlFromR4Library((Library) getPrimaryLibrary()), cqlFileOutputPath);
 
         if (isIncludeTests() && testPackage != null) {
             logger.info("Packaging {} Tests...", testPackage.getTests().size());
             testPackage.getTests().forEach(
                     test -> {
                         dependencies.addAll(BundleUtils.getR4ResourcesFromBundle((Bundle) test));
-                        IOUtils.writeBundle(test, measureFilesOutputPath, IOUtils.Encoding.JSON,
-                                getFhirContext(), test.getIdElement().getIdPart());
+                        writeBundle(test, measureFilesOutputPath, test.getIdElement().getIdPart());
                     }
             );
             if (testPackage.getGroup() != null) {
                 dependencies.add(testPackage.getGroup());
-                IOUtils.writeResource(testPackage.getGroup(), measureFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(),
-                        true, "Group-" + testPackage.getGroup().getIdElement().getIdPart());
+                writeResource(testPackage.getGroup(), measureFilesOutputPath, "Group-" + testPackage.getGroup().getIdElement().getIdPart());
             }
         }
 
         dependencies.add(mainArtifact);
         var packageBundle = createArtifactPackageBundle(measureId, dependencies);
-        IOUtils.writeBundle(packageBundle, measureOutputPath,
-                IOUtils.Encoding.JSON, getFhirContext(), measureId + "-bundle");
+        writeBundle(packageBundle, measureOutputPath, measureId + "-bundle");
 
         if (getFhirClient() != null) {
             logger.info("Loading package to FHIR Server: {}", getFhirServerUrl());
@@ -118,55 +118,51 @@ public class PackagePlanDefinition extends org.opencds.cqf.tooling.packaging.Pac
         logger.info("Packaging PlanDefinition {}...", planDefinitionId);
         var planDefinitionOutputPath = IOUtils.concatFilePath(getBundleOutputPath(),
                 "plandefinition", planDefinitionId);
-        IOUtils.initializeDirectory(planDefinitionOutputPath);
+        initializeDirectory(planDefinitionOutputPath);
 
         var planDefinitionFilesOutputPath = IOUtils.concatFilePath(planDefinitionOutputPath,
                 planDefinitionId + "-files");
-        IOUtils.initializeDirectory(planDefinitionFilesOutputPath);
-        IOUtils.writeResource(mainArtifact, planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext());
-        IOUtils.writeResource(getPrimaryLibrary(), planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext());
+        initializeDirectory(planDefinitionFilesOutputPath);
+        writeResource(mainArtifact, planDefinitionFilesOutputPath, null);
+        writeResource(getPrimaryLibrary(), planDefinitionFilesOutputPath, null);
 
         // Is this correct? Do we just exclude the dependencies from the bundle?
         if (isIncludeDependencies()) {
             logger.info("Packaging Dependencies...");
             var libraryDependencyBundleId = "library-deps-" + planDefinitionId + "-bundle";
-            IOUtils.writeBundle(createDependencyLibraryBundle(libraryDependencyBundleId, dependencies),
-                    planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(), libraryDependencyBundleId);
+            writeBundle(createDependencyLibraryBundle(libraryDependencyBundleId, dependencies),
+                    planDefinitionFilesOutputPath, libraryDependencyBundleId);
         }
 
         // Is this correct? Do we just exclude the dependencies from the bundle?
         if (isIncludeTerminology()) {
             logger.info("Packaging Terminology...");
             var valueSetDependencyBundleId = "valuesets-" + planDefinitionId + "-bundle";
-            IOUtils.writeBundle(createDependencyValueSetBundle(valueSetDependencyBundleId, dependencies),
-                    planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(), valueSetDependencyBundleId);
+            writeBundle(createDependencyValueSetBundle(valueSetDependencyBundleId, dependencies),
+                    planDefinitionFilesOutputPath, valueSetDependencyBundleId);
         }
 
-        IOUtils.writeResources(getActivityDefinitions(dependencies), planDefinitionFilesOutputPath,
-                IOUtils.Encoding.JSON, getFhirContext());
+        writeResources(getActivityDefinitions(dependencies), planDefinitionFilesOutputPath);
         var cqlFileOutputPath = IOUtils.concatFilePath(planDefinitionFilesOutputPath,
                 ((Library) getPrimaryLibrary()).getIdPart() + ".cql");
-        IOUtils.writeCqlToFile(ResourceUtils.getCqlFromR4Library((Library) getPrimaryLibrary()), cqlFileOutputPath);
+        writeCql(ResourceUtils.getCqlFromR4Library((Library) getPrimaryLibrary()), cqlFileOutputPath);
 
         if (isIncludeTests() && testPackage != null) {
             logger.info("Packaging {} Tests...", testPackage.getTests().size());
             if (testPackage.getGroup() != null) {
-                IOUtils.writeResource(testPackage.getGroup(), planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(),
-                        true, "Group-" + testPackage.getGroup().getIdElement().getIdPart());
+                writeResource(testPackage.getGroup(), planDefinitionFilesOutputPath, "Group-" + testPackage.getGroup().getIdElement().getIdPart());
             }
             testPackage.getTests().forEach(
                     test -> {
                         dependencies.addAll(BundleUtils.getR4ResourcesFromBundle((Bundle) test));
-                        IOUtils.writeBundle(test, planDefinitionFilesOutputPath, IOUtils.Encoding.JSON,
-                                getFhirContext(), test.getIdElement().getIdPart());
+                        writeBundle(test, planDefinitionFilesOutputPath, test.getIdElement().getIdPart());
                     }
             );
         }
 
         dependencies.add(mainArtifact);
         var packageBundle = createArtifactPackageBundle(planDefinitionId, dependencies);
-        IOUtils.writeBundle(packageBundle, planDefinitionOutputPath,
-                IOUtils.Encoding.JSON, getFhirContext(), planDefinitionId + "-bundle");
+        writeBundle(packageBundle, planDefinitionOutputPath, planDefinitionId + "-bundle");
 
         if (getFhirClient() != null) {
             logger.info("Loading package to FHIR Server: {}", getFhirServerUrl());
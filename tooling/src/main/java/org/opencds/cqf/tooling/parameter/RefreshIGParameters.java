@@ -29,4 +29,6 @@ public class RefreshIGParameters {
     public Boolean verboseMessaging;
     public String updatedVersion;
     public Boolean includePopulationLevelDataRequirements;
+    public Boolean deduplicateBundles;
+    public String archiveFormat;
 }
@@ -0,0 +1,63 @@
+package org.opencds.cqf.tooling.parameter;
+
+import org.opencds.cqf.tooling.utilities.IOUtils;
+
+public class SyntheticIGParameters {
+    /*
+    The root directory the synthetic IG is written to (must be empty or not exist)
+    */
+    public String igPath;
+
+    /*
+    The package id of the IG, also used for the ImplementationGuide id
+    */
+    public String packageId = "synthetic.ig";
+
+    /*
+    The canonical base of the IG's artifacts
+    */
+    public String canonicalBase = "http://example.org/fhir/synthetic";
+
+    /*
+    The number of shared CQL libraries (not counting the measure libraries)
+    */
+    public int libraryCount = 100;
+
+    /*
+    The number of layers of the include graph of the shared libraries; libraries only include libraries of the layer
+    directly below them, so this is the length of the longest include chain
+    */
+    public int includeDepth = 4;
+
+    /*
+    The number of libraries each library (and each measure library) includes from the layer below it
+    */
+    public int includeFanOut = 3;
+
+    /*
+    The number of measures, each with its own measure library
+    */
+    public int measureCount = 20;
+
+    /*
+    The number of ValueSets
+    */
+    public int valueSetCount = 50;
+
+    /*
+    The number of codes in the expansion (and compose) of each ValueSet
+    */
+    public int valueSetExpansionSize = 20;
+
+    /*
+    The number of test patients generated for each measure
+    */
+    public int patientsPerMeasure = 5;
+
+    /*
+    The seed of the include graph, so the same parameters always produce the same IG
+    */
+    public long seed = 42L;
+
+    public IOUtils.Encoding outputEncoding = IOUtils.Encoding.JSON;
+}
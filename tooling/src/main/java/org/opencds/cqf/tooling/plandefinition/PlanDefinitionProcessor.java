@@ -3,7 +3,10 @@ package org.opencds.cqf.tooling.plandefinition;
 import ca.uhn.fhir.context.FhirContext;
 import org.apache.commons.io.FilenameUtils;
 import org.cqframework.cql.cql2elm.CqlCompilerException;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
 import org.hl7.fhir.r5.model.PlanDefinition;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshPlanDefinitionParameters;
 import org.opencds.cqf.tooling.processor.BaseProcessor;
@@ -16,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class PlanDefinitionProcessor extends BaseProcessor {
 
@@ -93,37 +97,42 @@ public class PlanDefinitionProcessor extends BaseProcessor {
 
     private List<PlanDefinition> internalRefreshGeneratedContent(List<PlanDefinition> sourcePlanDefinitions) {
         // for each PlanDefinition, refresh the PlanDefinition based on the primary PlanDefinition library
-        var resources = new ArrayList<PlanDefinition>();
+        var processor = new PlanDefinitionRefreshProcessor(getCqlProcessor().getDataRequirementsCache());
+        var libraryManager = getCqlProcessor().getLibraryManager();
+        var cqlCompilerOptions = getCqlProcessor().getCqlTranslatorOptions().getCqlCompilerOptions();
+
+        // the libraries are resolved one at a time (resolving may translate), the refreshes run concurrently
+        var tasks = new ArrayList<Callable<PlanDefinition>>();
         for (var planDefinition : sourcePlanDefinitions) {
-            resources.add(refreshGeneratedContent(planDefinition));
+            // Do not attempt to refresh if the PlanDefinition does not have a library
+            var compiledLibrary = planDefinition.hasLibrary()
+                    ? resolvePrimaryLibrary(planDefinition, libraryManager) : null;
+            if (compiledLibrary != null) {
+                tasks.add(() -> processor.refreshPlanDefinition(
+                        planDefinition, libraryManager, compiledLibrary, cqlCompilerOptions));
+            } else {
+                tasks.add(() -> planDefinition);
+            }
         }
-        return resources;
+        return ThreadUtils.invokeTasks("PlanDefinitionProcessor.refreshGeneratedContent", tasks);
     }
 
-    private PlanDefinition refreshGeneratedContent(PlanDefinition planDefinition) {
-        var processor = new PlanDefinitionRefreshProcessor();
-        var libraryManager = getCqlProcessor().getLibraryManager();
-        var cqlCompilerOptions = getCqlProcessor().getCqlTranslatorOptions().getCqlCompilerOptions();
-        // Do not attempt to refresh if the PlanDefinition does not have a library
-        if (planDefinition.hasLibrary()) {
-            var libraryUrl = ResourceUtils.getPrimaryLibraryUrl(planDefinition, fhirContext);
-            var primaryLibraryIdentifier = CanonicalUtils.toVersionedIdentifier(libraryUrl);
-            var errors = new ArrayList<CqlCompilerException>();
-            var compiledLibrary = libraryManager.resolveLibrary(primaryLibraryIdentifier, errors);
-            var hasErrors = false;
-            if (!errors.isEmpty()) {
-                for (var e : errors) {
-                    if (e.getSeverity() == CqlCompilerException.ErrorSeverity.Error) {
-                        hasErrors = true;
-                    }
-                    logger.warn(e.getMessage());
+    // the compiled primary library of the PlanDefinition, or null if it has errors
+    private CompiledLibrary resolvePrimaryLibrary(PlanDefinition planDefinition, LibraryManager libraryManager) {
+        var libraryUrl = ResourceUtils.getPrimaryLibraryUrl(planDefinition, fhirContext);
+        var primaryLibraryIdentifier = CanonicalUtils.toVersionedIdentifier(libraryUrl);
+        var errors = new ArrayList<CqlCompilerException>();
+        var compiledLibrary = libraryManager.resolveLibrary(primaryLibraryIdentifier, errors);
+        var hasErrors = false;
+        if (!errors.isEmpty()) {
+            for (var e : errors) {
+                if (e.getSeverity() == CqlCompilerException.ErrorSeverity.Error) {
+                    hasErrors = true;
                 }
-            }
-            if (!hasErrors) {
-                return processor.refreshPlanDefinition(planDefinition, libraryManager, compiledLibrary, cqlCompilerOptions);
+                logger.warn(e.getMessage());
             }
         }
-        return planDefinition;
+        return hasErrors ? null : compiledLibrary;
     }
 
 }
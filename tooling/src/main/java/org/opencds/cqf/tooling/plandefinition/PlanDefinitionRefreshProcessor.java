@@ -3,8 +3,8 @@ package org.opencds.cqf.tooling.plandefinition;
 import org.cqframework.cql.cql2elm.CqlCompilerOptions;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.cql2elm.model.CompiledLibrary;
-import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
 import org.hl7.fhir.r5.model.*;
+import org.opencds.cqf.tooling.processor.DataRequirementsCache;
 import org.opencds.cqf.tooling.utilities.constants.CqfConstants;
 import org.opencds.cqf.tooling.utilities.constants.CqfmConstants;
 import org.opencds.cqf.tooling.utilities.constants.CrmiConstants;
@@ -13,6 +13,20 @@ import java.util.*;
 
 public class PlanDefinitionRefreshProcessor {
 
+    private final DataRequirementsCache dataRequirementsCache;
+
+    public PlanDefinitionRefreshProcessor() {
+        this(new DataRequirementsCache());
+    }
+
+    /**
+     * @param dataRequirementsCache the data requirements shared with the other refreshes that use the same library
+     *                              manager; refreshPlanDefinition may be called concurrently for different artifacts
+     */
+    public PlanDefinitionRefreshProcessor(DataRequirementsCache dataRequirementsCache) {
+        this.dataRequirementsCache = dataRequirementsCache;
+    }
+
     public PlanDefinition refreshPlanDefinition(PlanDefinition planToUse, LibraryManager libraryManager,
                                                 CompiledLibrary compiledLibrary, CqlCompilerOptions options) {
         planToUse.setDate(new Date());
@@ -20,9 +34,8 @@ public class PlanDefinitionRefreshProcessor {
         if (planToUse.hasAction()) {
             getExpressions(planToUse.getAction(), expressions);
         }
-        var dqReqTrans = new DataRequirementsProcessor();
-        var moduleDefinitionLibrary = dqReqTrans.gatherDataRequirements(libraryManager, compiledLibrary,
-                options, expressions, true);
+        var moduleDefinitionLibrary = dataRequirementsCache.gatherDataRequirements(libraryManager, compiledLibrary,
+                options, expressions, true, null);
 
         // Clear all existing CQFM extensions
         // These extensions are now deprecated, but may be in use for older artifacts
@@ -6,7 +6,9 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.cqframework.cql.cql2elm.CqlCompilerException;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.common.Profiler;
 import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.opencds.cqf.tooling.common.jfr.BundlePersistEvent;
 import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.utilities.*;
@@ -53,6 +55,8 @@ public abstract class AbstractBundler {
     private List<Object> identifiers;
     private CDSHooksProcessor cdsHooksProcessor;
     private LibraryProcessor libraryProcessor;
+    private BundleContentStore contentStore;
+    private ArchiveWriter archiveWriter;
 
     /**
      * Sets the LibraryProcessor for handling library-related tasks.
@@ -72,6 +76,26 @@ public abstract class AbstractBundler {
         this.cdsHooksProcessor = cdsHooksProcessor;
     }
 
+    /**
+     * Sets the content-addressed store used for bundle output. When set, bundles are written as manifests referencing
+     * the stored resources instead of full copies of each resource.
+     *
+     * @param contentStore The BundleContentStore instance to set, or null to write full bundles.
+     */
+    public void setContentStore(BundleContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
+
+    /**
+     * Sets the archive that bundles are written to. When set, bundles are written as archive entries (relative to the
+     * IG bundles directory) instead of files, and take precedence over the content store.
+     *
+     * @param archiveWriter The ArchiveWriter instance to set, or null to write to the file system.
+     */
+    public void setArchiveWriter(ArchiveWriter archiveWriter) {
+        this.archiveWriter = archiveWriter;
+    }
+
     protected List<Object> getIdentifiers() {
         if (identifiers == null) {
             identifiers = new CopyOnWriteArrayList<>();
@@ -137,15 +161,26 @@ public abstract class AbstractBundler {
 
         try {
             final Map<String, IBaseResource> resourcesMap = new ConcurrentHashMap<>(getResources(fhirContext));
-            final Map<String, IBaseResource> libraryUrlMap = new ConcurrentHashMap<>(IOUtils.getLibraryUrlMap(fhirContext));
-            final Map<String, IBaseResource> libraries = new ConcurrentHashMap<>(IOUtils.getLibraries(fhirContext));
-            final Map<String, String> libraryPathMap = new ConcurrentHashMap<>(IOUtils.getLibraryPathMap(fhirContext));
 
             if (resourcesMap.isEmpty()) {
                 logger.info("[INFO] No " + getResourceBundlerType() + "s found. Continuing...");
                 return;
             }
 
+            final Map<String, IBaseResource> artifactsByPath = new HashMap<>();
+            for (Map.Entry<String, IBaseResource> resourceEntry : resourcesMap.entrySet()) {
+                if (resourceEntry.getValue() != null && resourceEntry.getKey() != null
+                        && !resourceEntry.getKey().equalsIgnoreCase("null")) {
+                    String sourcePath = getSourcePath(fhirContext, resourceEntry);
+                    if (sourcePath != null) {
+                        artifactsByPath.put(sourcePath, resourceEntry.getValue());
+                    }
+                }
+            }
+
+            //libraries, terminology and dependency closures are resolved once and shared by every task:
+            final ArtifactGraph artifactGraph = ArtifactGraph.build(fhirContext, artifactsByPath);
+
             for (Map.Entry<String, IBaseResource> resourceEntry : resourcesMap.entrySet()) {
                 String resourceId;
 
@@ -175,25 +210,19 @@ public abstract class AbstractBundler {
                     String resourceName = FilenameUtils.getBaseName(resourceSourcePath).replace(getResourcePrefix(), "");
 
                     try {
-                        Map<String, IBaseResource> resources = new ConcurrentHashMap<>();
-                        Boolean shouldPersist = ResourceUtils.safeAddResource(resourceSourcePath, resources, fhirContext);
+                        Map<String, IBaseResource> resources = new LinkedHashMap<>();
+                        Boolean shouldPersist = addResource(artifactGraph, resourceSourcePath, resources, fhirContext);
                         if (!resources.containsKey(getResourceBundlerType() + "/" + resourceEntry.getKey())) {
                             throw new IllegalArgumentException(String.format("Could not retrieve base resource for " + getResourceBundlerType() + " %s", resourceName));
                         }
 
                         IBaseResource resource = resources.get(getResourceBundlerType() + "/" + resourceEntry.getKey());
-                        String primaryLibraryUrl = ResourceUtils.getPrimaryLibraryUrl(resource, fhirContext);
-                        IBaseResource primaryLibrary;
-                        if (primaryLibraryUrl != null && primaryLibraryUrl.startsWith("http")) {
-                            primaryLibrary = libraryUrlMap.get(primaryLibraryUrl);
-                        } else {
-                            primaryLibrary = libraries.get(primaryLibraryUrl);
-                        }
+                        IBaseResource primaryLibrary = artifactGraph.resolvePrimaryLibrary(resource);
 
                         if (primaryLibrary == null)
-                            throw new IllegalArgumentException(String.format("Could not resolve library url %s", primaryLibraryUrl));
+                            throw new IllegalArgumentException(String.format("Could not resolve library url %s", ResourceUtils.getPrimaryLibraryUrl(resource, fhirContext)));
 
-                        String primaryLibrarySourcePath = libraryPathMap.get(primaryLibrary.getIdElement().getIdPart());
+                        String primaryLibrarySourcePath = artifactGraph.getLibraryPath(primaryLibrary);
                         String primaryLibraryName = ResourceUtils.getName(primaryLibrary, fhirContext);
                         if (includeVersion) {
                             primaryLibraryName = primaryLibraryName + "-" +
@@ -201,31 +230,31 @@ public abstract class AbstractBundler {
                         }
 
                         shouldPersist = shouldPersist
-                                & ResourceUtils.safeAddResource(primaryLibrarySourcePath, resources, fhirContext);
+                                & addResource(artifactGraph, primaryLibrarySourcePath, resources, fhirContext);
 
                         if (includeTerminology) {
-                            //throws CQLTranslatorException if failed with severe errors, which will be logged and reported it in the final summary
-                            try {
-                                ValueSetsProcessor.bundleValueSets(primaryLibrary, fhirContext, resources, encoding, includeDependencies);
-                            } catch (CqlTranslatorException cqlTranslatorException) {
-                                cqlTranslatorErrorMessages.put(primaryLibraryName, cqlTranslatorException.getErrors());
+                            for (IBaseResource valueSet : artifactGraph.getValueSetClosure(primaryLibrary, includeDependencies).values()) {
+                                resources.putIfAbsent(valueSet.fhirType() + "/" + valueSet.getIdElement().getIdPart(), valueSet);
+                            }
+                            //missing terminology is logged and reported in the final summary
+                            Set<String> missingValueSets = artifactGraph.getMissingValueSets(primaryLibrary, includeDependencies);
+                            if (!missingValueSets.isEmpty()) {
+                                cqlTranslatorErrorMessages.put(primaryLibraryName, new CqlTranslatorException(new ArrayList<>(missingValueSets),
+                                        CqlCompilerException.ErrorSeverity.Warning).getErrors());
                             }
                         }
 
                         if (includeDependencies) {
-                            if (libraryProcessor == null) libraryProcessor = new LibraryProcessor();
-                            try {
-                                libraryProcessor.bundleLibraryDependencies(primaryLibrary, fhirContext, resources, encoding, includeVersion);
-                            } catch (Exception bre) {
-                                failedExceptionMessages.put(resourceSourcePath, getResourceBundlerType() + " will not be bundled because Library Dependency bundling failed: " + bre.getMessage());
-                                //exit from task:
-                                return null;
+                            for (IBaseResource dependency : artifactGraph.getLibraryClosure(primaryLibrary).values()) {
+                                resources.putIfAbsent(dependency.fhirType() + "/" + dependency.getIdElement().getIdPart(), dependency);
                             }
                         }
 
                         if (includePatientScenarios) {
                             try {
-                                TestCaseProcessor.bundleTestCases(igPath, getResourceTestGroupName(), primaryLibraryName, fhirContext, resources);
+                                for (IBaseResource testCaseResource : artifactGraph.getTestCaseResources(igPath, getResourceTestGroupName(), primaryLibraryName)) {
+                                    resources.putIfAbsent(testCaseResource.getIdElement().getIdPart(), testCaseResource);
+                                }
                             } catch (Exception tce) {
                                 failedExceptionMessages.put(resourceSourcePath, getResourceBundlerType() + " will not be bundled because Test Case bundling failed: " + tce.getMessage());
                                 //exit from task:
@@ -236,7 +265,7 @@ public abstract class AbstractBundler {
                         if (shouldPersist) {
                             String bundleDestPath = FilenameUtils.concat(FilenameUtils.concat(IGProcessor.getBundlesPath(igPath), getResourceTestGroupName()), resourceName);
 
-                            persistBundle(bundleDestPath, resourceName, encoding, fhirContext, new ArrayList<IBaseResource>(resources.values()), fhirUri, addBundleTimestamp);
+                            persistBundle(bundleDestPath, resourceName, encoding, fhirContext, new ArrayList<IBaseResource>(resources.values()), fhirUri, addBundleTimestamp, igPath);
 
                             // It's not clear at all why this is happening... we've already persisted the bundle? Why write out all the bundle files??
                             // And if we _do_ need to write out the bundle files, why go through the whole assembling process again? Just write out the resources in the bundle we already have, right?
@@ -279,7 +308,7 @@ public abstract class AbstractBundler {
 
             }//end for loop
 
-            ThreadUtils.executeTasks(tasks);
+            ThreadUtils.executeTasks("bundleResources: " + getResourceBundlerType(), tasks);
 
         } catch (Exception e) {
             LogUtils.putException("bundleResources: " + getResourceBundlerType(), e);
@@ -440,17 +469,52 @@ public abstract class AbstractBundler {
         return getResourceBundlerType().toLowerCase();
     }
 
+    /**
+     * Adds the resource read from the given path to the bundle resources, taking it from the artifact graph when the
+     * path is part of the IG so it is not read again for each bundle.
+     */
+    private Boolean addResource(ArtifactGraph artifactGraph, String path, Map<String, IBaseResource> resources, FhirContext fhirContext) {
+        IBaseResource resource = artifactGraph.getResource(path);
+        if (resource == null) {
+            return ResourceUtils.safeAddResource(path, resources, fhirContext);
+        }
+        resources.putIfAbsent(resource.fhirType() + "/" + resource.getIdElement().getIdPart(), resource);
+        return true;
+    }
+
     private void persistBundle(String bundleDestPath, String libraryName,
                                IOUtils.Encoding encoding, FhirContext fhirContext,
                                List<IBaseResource> resources, String fhirUri,
-                               Boolean addBundleTimestamp) throws IOException {
-        IOUtils.initializeDirectory(bundleDestPath);
-        Object bundle = BundleUtils.bundleArtifacts(libraryName, resources, fhirContext, addBundleTimestamp, this.getIdentifiers());
-        IOUtils.writeBundle(bundle, bundleDestPath, encoding, fhirContext);
-
-        if (fhirUri != null && !fhirUri.isEmpty()) {
-            String resourceWriteLocation = bundleDestPath + separator + libraryName + "-bundle." + encoding;
-            HttpClientUtils.post(fhirUri, (IBaseResource) bundle, encoding, fhirContext, resourceWriteLocation, true);
+                               Boolean addBundleTimestamp, String igPath) throws IOException {
+        BundlePersistEvent event = new BundlePersistEvent();
+        event.begin();
+        try (Profiler.Span span = Profiler.start(Profiler.BUNDLE_ASSEMBLY, libraryName)) {
+            Object bundle = BundleUtils.bundleArtifacts(libraryName, resources, fhirContext, addBundleTimestamp, this.getIdentifiers());
+            if (archiveWriter != null) {
+                archiveWriter.writeResource((IBaseResource) bundle,
+                        ArchiveWriter.getEntryName(IGProcessor.getBundlesPath(igPath), bundleDestPath), null, encoding, fhirContext);
+            } else if (contentStore != null) {
+                IOUtils.initializeDirectory(bundleDestPath);
+                contentStore.writeManifest((IBaseResource) bundle, bundleDestPath, null, fhirContext);
+            } else {
+                IOUtils.initializeDirectory(bundleDestPath);
+                IOUtils.writeBundle(bundle, bundleDestPath, encoding, fhirContext);
+            }
+
+            if (fhirUri != null && !fhirUri.isEmpty()) {
+                String resourceWriteLocation = bundleDestPath + separator + libraryName + "-bundle." + encoding;
+                HttpClientUtils.post(fhirUri, (IBaseResource) bundle, encoding, fhirContext, resourceWriteLocation, true);
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.bundler = getResourceBundlerType();
+            event.bundle = libraryName;
+            event.destination = bundleDestPath;
+            event.entryCount = resources.size();
+            event.output = archiveWriter != null ? "archive" : contentStore != null ? "manifest" : "file";
+            event.commit();
         }
     }
 
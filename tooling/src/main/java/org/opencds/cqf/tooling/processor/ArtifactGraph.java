@@ -0,0 +1,130 @@
+package org.opencds.cqf.tooling.processor;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.apache.commons.io.FilenameUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.ArtifactRecord;
+import org.opencds.cqf.tooling.utilities.ArtifactRecordMap;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A snapshot of the libraries of an IG along with the resources being bundled, keyed by their source paths.
+ * <p>
+ * The graph is built once per bundling run from the artifact records of IOUtils, and a library is only read when it is
+ * used. The library and ValueSet closures come from the {@link DependencyService}, which resolves each library once
+ * regardless of how many artifacts depend on it, so bundle tasks assemble their content with map lookups rather than
+ * resolving shared dependencies such as FHIRHelpers over and over. Test case resources are loaded on first use and
+ * memoized per test group and library.
+ */
+public class ArtifactGraph {
+    private final FhirContext fhirContext;
+    private final Map<String, IBaseResource> libraryUrlMap;
+    private final Map<String, IBaseResource> libraries;
+    private final Map<String, String> libraryPathMap;
+    private final Map<String, String> libraryIdsByPath;
+    private final Map<String, IBaseResource> resourcesByPath;
+    private final DependencyService dependencies;
+    private final Map<String, List<IBaseResource>> testCaseResources = new ConcurrentHashMap<>();
+
+    private ArtifactGraph(FhirContext fhirContext, Map<String, ArtifactRecord> libraryUrlMap,
+                          Map<String, ArtifactRecord> libraries, Map<String, String> libraryPathMap,
+                          Map<String, IBaseResource> resourcesByPath) {
+        this.fhirContext = fhirContext;
+        // the libraries are kept as records and read when used
+        this.libraryUrlMap = new ArtifactRecordMap(new HashMap<>(libraryUrlMap), record -> IOUtils.readArtifact(record, fhirContext));
+        this.libraries = new ArtifactRecordMap(new HashMap<>(libraries), record -> IOUtils.readArtifact(record, fhirContext));
+        this.libraryPathMap = Collections.unmodifiableMap(new HashMap<>(libraryPathMap));
+
+        Map<String, String> idsByPath = new HashMap<>();
+        this.libraryPathMap.forEach((id, path) -> idsByPath.putIfAbsent(FilenameUtils.normalize(path), id));
+        this.libraryIdsByPath = Collections.unmodifiableMap(idsByPath);
+        this.resourcesByPath = Collections.unmodifiableMap(new HashMap<>(resourcesByPath));
+        this.dependencies = DependencyService.getInstance(fhirContext);
+    }
+
+    /**
+     * Builds the graph for the current IG.
+     *
+     * @param fhirContext the FHIR context
+     * @param artifacts   the artifacts being bundled, keyed by source path
+     */
+    public static ArtifactGraph build(FhirContext fhirContext, Map<String, IBaseResource> artifacts) {
+        Map<String, IBaseResource> normalizedArtifacts = new HashMap<>();
+        artifacts.forEach((path, resource) -> normalizedArtifacts.put(FilenameUtils.normalize(path), resource));
+        return new ArtifactGraph(fhirContext, IOUtils.getLibraryUrlRecords(fhirContext), IOUtils.getLibraryRecords(fhirContext),
+                IOUtils.getLibraryPathMap(fhirContext), normalizedArtifacts);
+    }
+
+    /**
+     * Returns the artifact or library read from the given source path, or null if the path is not part of the graph.
+     */
+    public IBaseResource getResource(String path) {
+        if (path == null) {
+            return null;
+        }
+        String normalizedPath = FilenameUtils.normalize(path);
+        IBaseResource resource = resourcesByPath.get(normalizedPath);
+        if (resource == null) {
+            String libraryId = libraryIdsByPath.get(normalizedPath);
+            resource = libraryId == null ? null : libraries.get(libraryId);
+        }
+        return resource;
+    }
+
+    public IBaseResource resolvePrimaryLibrary(IBaseResource resource) {
+        String primaryLibraryUrl = ResourceUtils.getPrimaryLibraryUrl(resource, fhirContext);
+        if (primaryLibraryUrl != null && primaryLibraryUrl.startsWith("http")) {
+            return libraryUrlMap.get(primaryLibraryUrl);
+        }
+        return primaryLibraryUrl == null ? null : libraries.get(primaryLibraryUrl);
+    }
+
+    public String getLibraryPath(IBaseResource library) {
+        return libraryPathMap.get(library.getIdElement().getIdPart());
+    }
+
+    /**
+     * The transitive library dependencies of the given library, keyed by canonical url.
+     */
+    public Map<String, IBaseResource> getLibraryClosure(IBaseResource library) {
+        return dependencies.getLibraryDependencies(library, true);
+    }
+
+    /**
+     * The ValueSet dependencies of the given library, keyed by canonical url. If includeDependencies is true the
+     * ValueSets of all transitively included libraries are returned as well.
+     */
+    public Map<String, IBaseResource> getValueSetClosure(IBaseResource library, boolean includeDependencies) {
+        return dependencies.getTerminologyDependencies(library, includeDependencies);
+    }
+
+    public Set<String> getMissingLibraries(IBaseResource library) {
+        return dependencies.getMissingLibraries(library, true);
+    }
+
+    public Set<String> getMissingValueSets(IBaseResource library, boolean includeDependencies) {
+        return dependencies.getMissingTerminology(library, includeDependencies);
+    }
+
+    /**
+     * The (non-Bundle) test case resources for the given test group (e.g. measure) and library name.
+     */
+    public List<IBaseResource> getTestCaseResources(String igPath, String contextResourceType, String libraryName) {
+        String igTestCasePath = FilenameUtils.concat(FilenameUtils.concat(FilenameUtils.concat(
+                igPath, IGProcessor.TEST_CASE_PATH_ELEMENT), contextResourceType), libraryName);
+        return testCaseResources.computeIfAbsent(igTestCasePath, path ->
+                Collections.unmodifiableList(TestCaseProcessor.getTestCaseResources(path, fhirContext).stream()
+                        .filter(resource -> !(resource instanceof org.hl7.fhir.dstu3.model.Bundle)
+                                && !(resource instanceof org.hl7.fhir.r4.model.Bundle))
+                        .collect(Collectors.toList())));
+    }
+}
@@ -197,6 +197,8 @@ public class BaseProcessor implements IProcessorContext, ILoggingService {
             cqlProcessor = new CqlProcessor(new CopyOnWriteArrayList<>(cleanPackageList(packageManager.getNpmList())),
                     new CopyOnWriteArrayList<>(binaryPaths), reader, this, ucumService,
                     packageId, canonicalBase, verboseMessaging);
+            // only the ELM formats of the translator options are added to the libraries
+            cqlProcessor.setElmFormats(null);
         }
 
         return cqlProcessor;
@@ -0,0 +1,284 @@
+package org.opencds.cqf.tooling.processor;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed store for bundle output.
+ * <p>
+ * Rather than writing every bundle in full (which duplicates shared libraries and ValueSets into each bundle), each
+ * distinct resource is written once to {@code <bundles>/.objects/<xx>/<sha256>.json} and the bundle itself is
+ * written as a manifest: the bundle with each entry's resource replaced by the hash of its content. Manifests can be
+ * turned back into full bundles with {@link #materialize(String, IOUtils.Encoding, FhirContext)}.
+ * <p>
+ * Resources are hashed on their compact JSON encoding, so the same resource produces the same hash regardless of the
+ * bundle (or encoding) it is written for. Objects that no manifest references any more are removed by
+ * {@link #sweep()}.
+ */
+public class BundleContentStore {
+    private static final Logger logger = LoggerFactory.getLogger(BundleContentStore.class);
+
+    public static final String OBJECTS_PATH_ELEMENT = ".objects";
+    public static final String MANIFEST_EXTENSION = ".manifest.json";
+    public static final String CONTENT_HASH = "contentHash";
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final String bundlesPath;
+    private final String objectsPath;
+    private final Set<String> storedHashes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param bundlesPath the root bundle output directory (e.g. {@code <ig>/bundles}), objects are stored beneath it
+     */
+    public BundleContentStore(String bundlesPath) {
+        this.bundlesPath = bundlesPath;
+        this.objectsPath = FilenameUtils.concat(bundlesPath, OBJECTS_PATH_ELEMENT);
+    }
+
+    /**
+     * Returns the store for the given manifest by searching the manifest's ancestor directories for the objects directory.
+     */
+    public static BundleContentStore forManifest(String manifestPath) {
+        Path parent = Paths.get(manifestPath).toAbsolutePath().getParent();
+        while (parent != null) {
+            if (parent.resolve(OBJECTS_PATH_ELEMENT).toFile().isDirectory()) {
+                return new BundleContentStore(parent.toString());
+            }
+            parent = parent.getParent();
+        }
+        throw new IllegalArgumentException(String.format("Could not find a %s directory for manifest %s", OBJECTS_PATH_ELEMENT, manifestPath));
+    }
+
+    public static boolean isManifest(String path) {
+        return path != null && path.endsWith(MANIFEST_EXTENSION);
+    }
+
+    public static boolean isObject(String path) {
+        return path != null && Paths.get(path).toAbsolutePath().normalize().toString()
+                .contains(File.separator + OBJECTS_PATH_ELEMENT + File.separator);
+    }
+
+    /**
+     * Returns whether the full bundle of the given manifest has been written next to it, in any encoding.
+     */
+    public static boolean isMaterialized(String manifestPath) {
+        String basePath = manifestPath.substring(0, manifestPath.length() - MANIFEST_EXTENSION.length());
+        return new File(basePath + "." + IOUtils.Encoding.JSON.toString()).exists()
+                || new File(basePath + "." + IOUtils.Encoding.XML.toString()).exists();
+    }
+
+    public static String hash(IBaseResource resource, FhirContext fhirContext) {
+        return DigestUtils.sha256Hex(IOUtils.encodeResource(resource, IOUtils.Encoding.JSON, fhirContext));
+    }
+
+    private static String hash(JsonObject resource) {
+        return DigestUtils.sha256Hex(resource.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getObjectsPath() {
+        return objectsPath;
+    }
+
+    private File getObjectFile(String hash) {
+        return new File(FilenameUtils.concat(FilenameUtils.concat(objectsPath, hash.substring(0, 2)), hash + ".json"));
+    }
+
+    /**
+     * Writes the bundle as a manifest to {@code <bundleDestPath>/<fileName>.manifest.json}, storing any entry
+     * resources that are not already in the store.
+     *
+     * @return the path of the manifest
+     */
+    public String writeManifest(IBaseResource bundle, String bundleDestPath, String fileName, FhirContext fhirContext) {
+        JsonObject manifest = JsonParser.parseString(
+                new String(IOUtils.encodeResource(bundle, IOUtils.Encoding.JSON, fhirContext), StandardCharsets.UTF_8)).getAsJsonObject();
+        if (manifest.has("entry")) {
+            for (JsonElement entry : manifest.getAsJsonArray("entry")) {
+                JsonObject entryObject = entry.getAsJsonObject();
+                JsonElement resource = entryObject.remove("resource");
+                if (resource != null && resource.isJsonObject()) {
+                    entryObject.addProperty(CONTENT_HASH, store(resource.getAsJsonObject()));
+                }
+            }
+        }
+
+        IOUtils.ensurePath(bundleDestPath);
+        String manifestPath = FilenameUtils.concat(bundleDestPath,
+                (fileName == null ? bundle.getIdElement().getIdPart() : fileName) + MANIFEST_EXTENSION);
+        try {
+            Files.write(Paths.get(manifestPath), gson.toJson(manifest).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException("Error writing bundle manifest: " + e.getMessage());
+        }
+        return manifestPath;
+    }
+
+    private String store(JsonObject resource) {
+        String hash = hash(resource);
+        if (!storedHashes.add(hash)) {
+            return hash;
+        }
+
+        File objectFile = getObjectFile(hash);
+        if (objectFile.exists()) {
+            return hash;
+        }
+
+        try {
+            Files.createDirectories(objectFile.getParentFile().toPath());
+            // write to a temporary file first so concurrent runs never observe a partially written object
+            Path tempFile = Files.createTempFile(objectFile.getParentFile().toPath(), hash, ".tmp");
+            Files.write(tempFile, resource.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tempFile, objectFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+                if (objectFile.exists()) {
+                    Files.deleteIfExists(tempFile);
+                } else {
+                    Files.move(tempFile, objectFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException e) {
+            storedHashes.remove(hash);
+            logger.error(e.getMessage());
+            throw new RuntimeException(String.format("Error writing object %s: %s", hash, e.getMessage()));
+        }
+        return hash;
+    }
+
+    /**
+     * Deletes the objects that none of the manifests beneath the bundles directory references, e.g. the resources of
+     * bundles that were removed or changed since an earlier run.
+     *
+     * @return the number of objects deleted
+     */
+    public int sweep() {
+        File objectsDir = new File(objectsPath);
+        if (!objectsDir.isDirectory()) {
+            return 0;
+        }
+
+        Set<String> referencedHashes = new HashSet<>(storedHashes);
+        List<Path> objectFiles;
+        try {
+            try (Stream<Path> paths = Files.walk(Paths.get(bundlesPath))) {
+                for (Path manifestPath : paths.filter(path -> isManifest(path.toString()) && !isObject(path.toString()))
+                        .collect(Collectors.toList())) {
+                    referencedHashes.addAll(getContentHashes(manifestPath));
+                }
+            }
+            try (Stream<Path> paths = Files.walk(objectsDir.toPath())) {
+                objectFiles = paths.filter(path -> path.toString().endsWith(".json") && Files.isRegularFile(path))
+                        .collect(Collectors.toList());
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException("Error reading bundle store: " + e.getMessage(), e);
+        }
+
+        int deleted = 0;
+        for (Path objectFile : objectFiles) {
+            if (!referencedHashes.contains(FilenameUtils.getBaseName(objectFile.toString()))) {
+                try {
+                    Files.deleteIfExists(objectFile);
+                    deleted++;
+                    File prefixDir = objectFile.getParent().toFile();
+                    String[] remaining = prefixDir.list();
+                    if (remaining != null && remaining.length == 0) {
+                        Files.deleteIfExists(prefixDir.toPath());
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not delete unreferenced object {}: {}", objectFile, e.getMessage());
+                }
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Removed {} unreferenced objects from {}", deleted, objectsPath);
+        }
+        return deleted;
+    }
+
+    private static Set<String> getContentHashes(Path manifestPath) throws IOException {
+        Set<String> hashes = new HashSet<>();
+        JsonObject manifest = JsonParser.parseString(Files.readString(manifestPath)).getAsJsonObject();
+        if (manifest.has("entry")) {
+            for (JsonElement entry : manifest.getAsJsonArray("entry")) {
+                JsonElement hash = entry.getAsJsonObject().get(CONTENT_HASH);
+                if (hash != null) {
+                    hashes.add(hash.getAsString());
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Rebuilds the full bundle described by the given manifest.
+     */
+    public IBaseResource readManifest(String manifestPath, FhirContext fhirContext) {
+        JsonObject manifest;
+        try {
+            manifest = JsonParser.parseString(Files.readString(Paths.get(manifestPath))).getAsJsonObject();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error reading bundle manifest %s: %s", manifestPath, e.getMessage()), e);
+        }
+
+        if (manifest.has("entry")) {
+            for (JsonElement entry : manifest.getAsJsonArray("entry")) {
+                JsonObject entryObject = entry.getAsJsonObject();
+                JsonElement hash = entryObject.remove(CONTENT_HASH);
+                if (hash != null) {
+                    File objectFile = getObjectFile(hash.getAsString());
+                    try {
+                        entryObject.add("resource", JsonParser.parseString(Files.readString(objectFile.toPath())));
+                    } catch (IOException e) {
+                        throw new RuntimeException(String.format("Missing object %s referenced by manifest %s", hash.getAsString(), manifestPath), e);
+                    }
+                }
+            }
+        }
+
+        return fhirContext.newJsonParser().parseResource(manifest.toString());
+    }
+
+    /**
+     * Writes the full bundle described by the given manifest next to it, using the given encoding.
+     *
+     * @return the rebuilt bundle
+     */
+    public static IBaseResource materialize(String manifestPath, IOUtils.Encoding encoding, FhirContext fhirContext) {
+        IBaseResource bundle = forManifest(manifestPath).readManifest(manifestPath, fhirContext);
+        String fileName = FilenameUtils.getName(manifestPath);
+        fileName = fileName.substring(0, fileName.length() - MANIFEST_EXTENSION.length());
+        IOUtils.writeResource(bundle, FilenameUtils.getFullPathNoEndSeparator(manifestPath), encoding, fhirContext, true, fileName);
+        return bundle;
+    }
+}
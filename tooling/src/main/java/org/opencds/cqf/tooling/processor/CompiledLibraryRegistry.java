@@ -0,0 +1,90 @@
+package org.opencds.cqf.tooling.processor;
+
+import org.hl7.elm.r1.IncludeDef;
+import org.hl7.elm.r1.Library;
+import org.hl7.elm.r1.ValueSetDef;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The include and value set declarations of the CQL libraries compiled by the {@link CqlProcessor},
+ * keyed by the path of the CQL file. Later steps of a run (bundling, ValueSet dependency discovery) read the
+ * declarations from here instead of translating the CQL again.
+ * <p>
+ * Only libraries that compiled without errors are registered. An entry is ignored once its file has been changed
+ * (modification time or size) since it was compiled. The registry is cleared with {@code IOUtils.cleanUp()}, but kept by
+ * {@code IOUtils.clearRunCaches()} between the requests to the daemon.
+ */
+public class CompiledLibraryRegistry {
+
+    /**
+     * The declarations of a compiled library.
+     */
+    public static class Entry {
+        private final long lastModified;
+        private final long length;
+        private final List<IncludeDef> includeDefs;
+        private final List<ValueSetDef> valueSetDefs;
+
+        private Entry(File file, Library elm) {
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.includeDefs = elm.getIncludes() != null
+                    ? Collections.unmodifiableList(new ArrayList<>(elm.getIncludes().getDef())) : Collections.emptyList();
+            this.valueSetDefs = elm.getValueSets() != null
+                    ? Collections.unmodifiableList(new ArrayList<>(elm.getValueSets().getDef())) : Collections.emptyList();
+        }
+
+        private boolean isCurrent(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+
+        public List<IncludeDef> getIncludeDefs() {
+            return includeDefs;
+        }
+
+        public List<ValueSetDef> getValueSetDefs() {
+            return valueSetDefs;
+        }
+    }
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private CompiledLibraryRegistry() {
+    }
+
+    /**
+     * Registers the declarations of the ELM compiled from the CQL file.
+     */
+    public static void register(File cqlFile, Library elm) {
+        entries.put(getKey(cqlFile.getPath()), new Entry(cqlFile, elm));
+    }
+
+    /**
+     * @return the declarations of the library compiled from the CQL file, or null when it was not compiled in this run
+     * or has changed since
+     */
+    public static Entry get(String cqlContentPath) {
+        String key = getKey(cqlContentPath);
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isCurrent(new File(key))) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    public static void clear() {
+        entries.clear();
+    }
+
+    private static String getKey(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+}
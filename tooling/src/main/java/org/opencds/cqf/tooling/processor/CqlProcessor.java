@@ -3,7 +3,6 @@ package org.opencds.cqf.tooling.processor;
 import org.cqframework.cql.cql2elm.*;
 import org.cqframework.cql.cql2elm.model.CompiledLibrary;
 import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
-import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
 import org.cqframework.cql.elm.tracking.TrackBack;
 import org.cqframework.fhir.npm.ILibraryReader;
 import org.cqframework.fhir.npm.NpmLibrarySourceProvider;
@@ -20,6 +19,9 @@ import org.hl7.fhir.utilities.npm.NpmPackage;
 import org.hl7.fhir.utilities.validation.ValidationMessage;
 import org.hl7.fhir.utilities.validation.ValidationMessage.IssueSeverity;
 import org.hl7.fhir.utilities.validation.ValidationMessage.IssueType;
+import org.opencds.cqf.tooling.common.Profiler;
+import org.opencds.cqf.tooling.common.jfr.CqlTranslationEvent;
+import org.opencds.cqf.tooling.library.GenericLibrarySourceProvider;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
 import org.slf4j.Logger;
 
@@ -28,6 +30,7 @@ import java.io.FilenameFilter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class CqlProcessor {
@@ -42,8 +45,8 @@ public class CqlProcessor {
         private CqlTranslatorOptions options;
         private VersionedIdentifier identifier;
         private byte[] cql;
-        private byte[] elm;
-        private byte[] jsonElm;
+        private ElmContent elm;
+        private ElmContent jsonElm;
         private List<ValidationMessage> errors = new ArrayList<>();
         private List<RelatedArtifact> relatedArtifacts = new ArrayList<>();
         private List<DataRequirement> dataRequirements = new ArrayList<>();
@@ -75,16 +78,34 @@ public class CqlProcessor {
         public void setCql(byte[] cql) {
             this.cql = cql;
         }
+        /**
+         * @return the XML ELM, or null when it was not translated or XML is not one of the ELM formats
+         */
         public byte[] getElm() {
-            return elm;
+            return elm != null ? elm.getBytes() : null;
         }
         public void setElm(byte[] elm) {
+            this.elm = elm != null ? ElmContent.of(elm) : null;
+        }
+        public ElmContent getElmContent() {
+            return elm;
+        }
+        public void setElmContent(ElmContent elm) {
             this.elm = elm;
         }
+        /**
+         * @return the JSON ELM, or null when it was not translated or JSON is not one of the ELM formats
+         */
         public byte[] getJsonElm() {
-            return jsonElm;
+            return jsonElm != null ? jsonElm.getBytes() : null;
         }
         public void setJsonElm(byte[] jsonElm) {
+            this.jsonElm = jsonElm != null ? ElmContent.of(jsonElm) : null;
+        }
+        public ElmContent getJsonElmContent() {
+            return jsonElm;
+        }
+        public void setJsonElmContent(ElmContent jsonElm) {
             this.jsonElm = jsonElm;
         }
         public List<ValidationMessage> getErrors() {
@@ -158,6 +179,17 @@ public class CqlProcessor {
 
     private boolean verboseMessaging;
 
+    /**
+     * The ELM formats serialized for each library, null for the formats of the translator options of its folder
+     */
+    private Set<CqlTranslatorOptions.Format> elmFormats = EnumSet.of(CqlTranslatorOptions.Format.XML,
+            CqlTranslatorOptions.Format.JSON);
+
+    /**
+     * The size in bytes past which a serialized ELM is kept in a temporary file rather than in memory
+     */
+    private long elmSpillThreshold = ElmContent.getDefaultSpillThreshold();
+
     public CqlProcessor(List<NpmPackage> packages, List<String> folders, ILibraryReader reader, ILoggingService logger, UcumService ucumService, String packageId, String canonicalBase, Boolean verboseMessaging) {
         super();
         this.packages = packages;
@@ -173,6 +205,40 @@ public class CqlProcessor {
         this.verboseMessaging = verboseMessaging;
     }
 
+    public Set<CqlTranslatorOptions.Format> getElmFormats() {
+        return elmFormats;
+    }
+
+    /**
+     * Selects the ELM formats serialized for each library (XML and JSON by default). Libraries that only need one of
+     * them save the memory and time of the other.
+     *
+     * @param elmFormats XML, JSON or both, or null for the formats of the translator options of each CQL folder (XML
+     *                   when they name none)
+     */
+    public void setElmFormats(Set<CqlTranslatorOptions.Format> elmFormats) {
+        if (elmFormats != null) {
+            if (elmFormats.isEmpty()) {
+                throw new IllegalArgumentException("At least one ELM format is required");
+            }
+            for (CqlTranslatorOptions.Format format : elmFormats) {
+                if (format != CqlTranslatorOptions.Format.XML && format != CqlTranslatorOptions.Format.JSON) {
+                    throw new IllegalArgumentException("Unsupported ELM format: " + format);
+                }
+            }
+            elmFormats = EnumSet.copyOf(elmFormats);
+        }
+        this.elmFormats = elmFormats;
+    }
+
+    /**
+     * @param elmSpillThreshold the size in bytes past which a serialized ELM is kept in a temporary file rather than
+     *                          in memory, 0 to keep them all in files
+     */
+    public void setElmSpillThreshold(long elmSpillThreshold) {
+        this.elmSpillThreshold = elmSpillThreshold;
+    }
+
     /**
      * Do the compile. Do not return any exceptions related to content; only throw exceptions for infrastructural issues
      *
@@ -182,6 +248,7 @@ public class CqlProcessor {
      */
     public void execute() throws FHIRException {
         try {
+            // a spilled ELM of the previous run is deleted once its information is no longer referenced
             fileMap = new HashMap<>();
 
             // foreach folder
@@ -277,16 +344,27 @@ public class CqlProcessor {
         return cachedLibraryManager;
     }
 
+    private DataRequirementsCache cachedDataRequirements;
+    /**
+     * The data requirements computed with the cached library manager, shared by the artifact refreshes.
+     */
+    public DataRequirementsCache getDataRequirementsCache() {
+        checkCachedManager();
+        return cachedDataRequirements;
+    }
+
     private void translateFolder(String folder) {
         System.out.printf("Translating CQL source in folder %s%n", folder);
 
         CqlTranslatorOptions options = ResourceUtils.getTranslatorOptions(folder);
 
         // Setup
-        // Construct DefaultLibrarySourceProvider
+        // Construct GenericLibrarySourceProvider
         // Construct FhirLibrarySourceProvider
         ModelManager modelManager = new ModelManager();
-        LibraryManager libraryManager = new LibraryManager(modelManager, options.getCqlCompilerOptions());
+        // the compiled libraries are read by the concurrent measure and plan definition refreshes
+        LibraryManager libraryManager = new LibraryManager(modelManager, options.getCqlCompilerOptions(),
+                new ConcurrentHashMap<>());
         if (options.getCqlCompilerOptions().getValidateUnits()) {
             libraryManager.setUcumService(ucumService);
         }
@@ -294,17 +372,21 @@ public class CqlProcessor {
             modelManager.getModelInfoLoader().registerModelInfoProvider(new NpmModelInfoProvider(packages, reader, logger), true);
             libraryManager.getLibrarySourceLoader().registerProvider(new NpmLibrarySourceProvider(packages, reader, logger));
         }
-        libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
+        libraryManager.getLibrarySourceLoader().registerProvider(new GenericLibrarySourceProvider(folder));
         libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
         modelManager.getModelInfoLoader().registerModelInfoProvider(new DefaultModelInfoProvider(Paths.get(folder)));
 
         loadNamespaces(libraryManager);
 
+        // the data requirements of unchanged libraries are read from the persistent cache
+        DataRequirementsCache dataRequirementsCache = new DataRequirementsCache();
+
         // foreach *.cql file
         boolean hadCqlFiles = false;
         for (File file : new File(folder).listFiles(getCqlFilenameFilter())) {
             hadCqlFiles = true;
-            translateFile(libraryManager, file, options.getCqlCompilerOptions());
+            translateFile(libraryManager, dataRequirementsCache, file, options.getCqlCompilerOptions(),
+                    resolveElmFormats(options));
         }
 
         if (hadCqlFiles) {
@@ -312,6 +394,7 @@ public class CqlProcessor {
                 if (!hasMultipleBinaryPaths) {
                     cachedOptions = options;
                     cachedLibraryManager = libraryManager;
+                    cachedDataRequirements = dataRequirementsCache;
                 }
             }
             else {
@@ -319,9 +402,28 @@ public class CqlProcessor {
                     hasMultipleBinaryPaths = true;
                     cachedOptions = null;
                     cachedLibraryManager = null;
+                    cachedDataRequirements = null;
+                }
+            }
+        }
+    }
+
+    private Set<CqlTranslatorOptions.Format> resolveElmFormats(CqlTranslatorOptions options) {
+        if (elmFormats != null) {
+            return elmFormats;
+        }
+        Set<CqlTranslatorOptions.Format> formats = EnumSet.noneOf(CqlTranslatorOptions.Format.class);
+        if (options.getFormats() != null) {
+            for (CqlTranslatorOptions.Format format : options.getFormats()) {
+                if (format == CqlTranslatorOptions.Format.XML || format == CqlTranslatorOptions.Format.JSON) {
+                    formats.add(format);
                 }
             }
         }
+        if (formats.isEmpty()) {
+            formats.add(CqlTranslatorOptions.Format.XML);
+        }
+        return formats;
     }
 
     private void loadNamespaces(LibraryManager libraryManager) {
@@ -378,7 +480,8 @@ public class CqlProcessor {
         }
     }
 
-    private void translateFile(LibraryManager libraryManager, File file, CqlCompilerOptions options) {
+    private void translateFile(LibraryManager libraryManager, DataRequirementsCache dataRequirementsCache, File file,
+                               CqlCompilerOptions options, Set<CqlTranslatorOptions.Format> formats) {
 //        logger.logMessage(String.format("Translating CQL source in file %s", file.toString()));
         CqlSourceFileInformation result = new CqlSourceFileInformation(file.getAbsolutePath());
         fileMap.put(file.getAbsoluteFile().toString(), result);
@@ -387,10 +490,15 @@ public class CqlProcessor {
             libraryManager.setUcumService(ucumService);
         }
 
+        CqlTranslationEvent event = new CqlTranslationEvent();
+        event.begin();
         try {
 
             // translate toXML
-            CqlTranslator translator = CqlTranslator.fromFile(namespaceInfo, file, libraryManager);
+            CqlTranslator translator;
+            try (Profiler.Span span = Profiler.start(Profiler.CQL_TRANSLATE, file.getName())) {
+                translator = CqlTranslator.fromFile(namespaceInfo, file, libraryManager);
+            }
 
             // record errors and warnings
             for (CqlCompilerException exception : translator.getExceptions()) {
@@ -398,6 +506,8 @@ public class CqlProcessor {
             }
 
             List<CqlCompilerException> severeErrorList = listBySeverity(translator.getErrors(), CqlCompilerException.ErrorSeverity.Error);
+            event.errorCount = severeErrorList.size();
+            event.warningCount = listBySeverity(translator.getExceptions(), CqlCompilerException.ErrorSeverity.Warning).size();
 
 
             if (!severeErrorList.isEmpty()) {
@@ -412,18 +522,36 @@ public class CqlProcessor {
                     // convert to base64 bytes
                     // NOTE: Publication tooling requires XML content
                     result.setCql(Files.readAllBytes(file.toPath()));
-                    result.setElm(translator.toXml().getBytes());
-                    result.setIdentifier(translator.toELM().getIdentifier());
-                    result.setJsonElm(translator.toJson().getBytes());
+                    try (Profiler.Span span = Profiler.start(Profiler.CQL_ELM_SERIALIZATION, file.getName())) {
+                        // serialized straight from the library, without building the whole ELM as a String first
+                        org.hl7.elm.r1.Library elm = translator.toELM();
+                        result.setIdentifier(elm.getIdentifier());
+                        CompiledLibraryRegistry.register(file, elm);
+                        if (formats.contains(CqlTranslatorOptions.Format.XML)) {
+                            result.setElmContent(ElmContent.write(elm, LibraryContentType.XML, elmSpillThreshold));
+                            span.addBytes(result.getElmContent().length());
+                        }
+                        if (formats.contains(CqlTranslatorOptions.Format.JSON)) {
+                            result.setJsonElmContent(ElmContent.write(elm, LibraryContentType.JSON, elmSpillThreshold));
+                            span.addBytes(result.getJsonElmContent().length());
+                        }
+                    }
 
                     // Add the translated library to the library manager (NOTE: This should be a "cacheLibrary" call on the LibraryManager, available in 1.5.3+)
                     // Without this, the data requirements processor will try to load the current library, resulting in a re-translation
                     CompiledLibrary compiledLibrary = translator.getTranslatedLibrary();
                     libraryManager.getCompiledLibraries().put(compiledLibrary.getIdentifier(), compiledLibrary);
 
-                    DataRequirementsProcessor drp = new DataRequirementsProcessor();
-                    org.hl7.fhir.r5.model.Library requirementsLibrary =
-                            drp.gatherDataRequirements(libraryManager, translator.getTranslatedLibrary(), options, null, false, false);
+                    org.hl7.fhir.r5.model.Library requirementsLibrary;
+                    List<ValidationMessage> requirementsMessages = new ArrayList<>();
+                    try (Profiler.Span span = Profiler.start(Profiler.CQL_DATA_REQUIREMENTS, file.getName())) {
+                        if (result.getElmContent() != null) {
+                            dataRequirementsCache.registerElmHash(compiledLibrary.getIdentifier(),
+                                    result.getElmContent().getSha256());
+                        }
+                        requirementsLibrary = dataRequirementsCache.gatherDataRequirements(libraryManager,
+                                compiledLibrary, options, null, false, false, null, requirementsMessages);
+                    }
 
                     // TODO: Report context, requires 1.5 translator (ContextDef)
                     // NOTE: In STU3, only Patient context is supported
@@ -449,7 +577,7 @@ public class CqlProcessor {
 
                     // Extract parameter data and validate result types are supported types
                     result.parameters.addAll(requirementsLibrary.getParameter());
-                    for (ValidationMessage paramMessage : drp.getValidationMessages()) {
+                    for (ValidationMessage paramMessage : requirementsMessages) {
                         result.getErrors().add(new ValidationMessage(paramMessage.getSource(), paramMessage.getType(), file.getName(),
                                 paramMessage.getMessage(), paramMessage.getLevel()));
                     }
@@ -468,6 +596,20 @@ public class CqlProcessor {
         catch (Exception e) {
             result.getErrors().add(new ValidationMessage(ValidationMessage.Source.Publisher, IssueType.EXCEPTION, file.getName(), "CQL Processing failed with exception: "+e.getMessage(), IssueSeverity.ERROR));
         }
+        finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = file.getName();
+                if (result.getIdentifier() != null) {
+                    event.library = result.getIdentifier().getId();
+                    event.version = result.getIdentifier().getVersion();
+                }
+                if (result.getElmContent() != null) {
+                    event.elmBytes = result.getElmContent().length();
+                }
+                event.commit();
+            }
+        }
 
 
     }
@@ -0,0 +1,449 @@
+package org.opencds.cqf.tooling.processor;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.NamespaceManager;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
+import org.cqframework.cql.elm.requirements.fhir.utilities.SpecificationLevel;
+import org.hl7.elm.r1.IncludeDef;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.r5.formats.JsonParser;
+import org.hl7.fhir.r5.model.Library;
+import org.hl7.fhir.r5.model.Parameters;
+import org.hl7.fhir.r5.model.StringType;
+import org.hl7.fhir.utilities.validation.ValidationMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Memoizes the module definition libraries the {@link DataRequirementsProcessor} computes, by library identifier,
+ * expression set and data requirements options, so the measures and plan definitions that share a primary library (and
+ * usually the same populations) compute them once. The cache is safe to use from concurrent refreshes; a computation
+ * that is running is waited for rather than repeated.
+ * <p>
+ * When the system property {@value #DIRECTORY_PROPERTY} names a directory, the results are also stored there, so
+ * unchanged libraries are not analyzed again by later refreshes. The directory keeps at most
+ * {@value #MAX_ENTRIES_PROPERTY} entries (1000 by default); the least recently used are deleted. A stored result is
+ * keyed by a hash of the ELM of the library and of every library it includes, the expressions, the options and the
+ * versions of the translator, the data requirements processor and the tooling, so a change to any of them is a miss
+ * rather than a stale result. Nothing is stored when one of the versions is unknown (the classes were not loaded from
+ * a released jar), as a changed build could not be told apart.
+ * <p>
+ * A cache belongs to one {@link LibraryManager}, as the identifier stands for the library the manager compiled. Callers
+ * get their own copy of the cached library and may change it. The validation messages of the processor (unsupported
+ * parameter types) are cached and stored with the library.
+ */
+public class DataRequirementsCache {
+    private static final Logger logger = LoggerFactory.getLogger(DataRequirementsCache.class);
+
+    public static final String DIRECTORY_PROPERTY = "cqf.tooling.cache.dataRequirements";
+    public static final String MAX_ENTRIES_PROPERTY = "cqf.tooling.cache.dataRequirements.maxEntries";
+    private static final int MAX_ENTRIES = Math.max(1, Integer.getInteger(MAX_ENTRIES_PROPERTY, 1000));
+
+    // the parameters of a stored entry
+    private static final String LIBRARY = "library";
+    private static final String VALIDATION_MESSAGE = "validationMessage";
+
+    // the versions of the translator, the data requirements processor and the tooling, or null when one is unknown
+    private static final String VERSION = getVersion(CqlTranslator.class, DataRequirementsProcessor.class,
+            DataRequirementsCache.class);
+
+    private final Map<Key, FutureTask<Result>> results = new ConcurrentHashMap<>();
+    // identifier -> hash of the ELM of the library and its includes
+    private final Map<String, String> libraryHashes = new ConcurrentHashMap<>();
+    // identifier -> hash of the ELM of the library alone, for the libraries whose ELM was already serialized
+    private final Map<String, String> elmHashes = new ConcurrentHashMap<>();
+    // null when the results are kept in memory only
+    private final Path directory;
+    private final String version;
+    private final int maxEntries;
+
+    /**
+     * A cache that stores its results in the directory given by the {@value #DIRECTORY_PROPERTY} system property, or
+     * keeps them in memory only when it is not set.
+     */
+    public DataRequirementsCache() {
+        this(getDefaultDirectory());
+    }
+
+    /**
+     * @param directory the directory the results are stored in, or null to keep them in memory only
+     */
+    public DataRequirementsCache(Path directory) {
+        this(directory, VERSION, MAX_ENTRIES);
+    }
+
+    DataRequirementsCache(Path directory, String version, int maxEntries) {
+        if (directory != null && version == null) {
+            logger.debug("Not storing data requirements in {}, the translator or tooling version is unknown",
+                    directory);
+        }
+        this.directory = version != null ? directory : null;
+        this.version = version;
+        this.maxEntries = maxEntries;
+    }
+
+    static Path getDefaultDirectory() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        return directory == null || directory.isEmpty() ? null : Paths.get(directory);
+    }
+
+    private static String getVersion(Class<?>... classes) {
+        List<String> versions = new ArrayList<>();
+        for (Class<?> clazz : classes) {
+            String version = clazz.getPackage() != null ? clazz.getPackage().getImplementationVersion() : null;
+            if (version == null) {
+                return null;
+            }
+            versions.add(version);
+        }
+        return String.join("|", versions);
+    }
+
+    /**
+     * Records the serialized ELM of a library the caller already has, so it is not serialized again to compute the key.
+     */
+    public void registerElm(VersionedIdentifier identifier, byte[] elm) {
+        registerElmHash(identifier, DigestUtils.sha256Hex(elm));
+    }
+
+    /**
+     * Records the SHA-256 (hex) of the serialized XML ELM of a library, computed by the caller while serializing it.
+     */
+    public void registerElmHash(VersionedIdentifier identifier, String sha256) {
+        elmHashes.put(toString(identifier), sha256);
+    }
+
+    /**
+     * @see DataRequirementsProcessor#gatherDataRequirements(LibraryManager, CompiledLibrary, CqlCompilerOptions, Set,
+     * boolean)
+     * @param specificationLevel the specification level of the processor, or null for its default
+     */
+    public Library gatherDataRequirements(LibraryManager libraryManager, CompiledLibrary compiledLibrary,
+                                          CqlCompilerOptions options, Set<String> expressions,
+                                          boolean includeLogicDefinitions, SpecificationLevel specificationLevel) {
+        return gatherDataRequirements(libraryManager, compiledLibrary, options, expressions, includeLogicDefinitions,
+                true, specificationLevel);
+    }
+
+    /**
+     * @see DataRequirementsProcessor#gatherDataRequirements(LibraryManager, CompiledLibrary, CqlCompilerOptions, Set,
+     * boolean, boolean)
+     * @param specificationLevel the specification level of the processor, or null for its default
+     */
+    public Library gatherDataRequirements(LibraryManager libraryManager, CompiledLibrary compiledLibrary,
+                                          CqlCompilerOptions options, Set<String> expressions,
+                                          boolean includeLogicDefinitions, boolean recursive,
+                                          SpecificationLevel specificationLevel) {
+        return gatherDataRequirements(libraryManager, compiledLibrary, options, expressions, includeLogicDefinitions,
+                recursive, specificationLevel, null);
+    }
+
+    /**
+     * @see DataRequirementsProcessor#gatherDataRequirements(LibraryManager, CompiledLibrary, CqlCompilerOptions, Set,
+     * boolean, boolean)
+     * @param specificationLevel the specification level of the processor, or null for its default
+     * @param validationMessages the list the validation messages of the processor are added to, or null
+     */
+    public Library gatherDataRequirements(LibraryManager libraryManager, CompiledLibrary compiledLibrary,
+                                          CqlCompilerOptions options, Set<String> expressions,
+                                          boolean includeLogicDefinitions, boolean recursive,
+                                          SpecificationLevel specificationLevel,
+                                          List<ValidationMessage> validationMessages) {
+        Key key = new Key(compiledLibrary.getIdentifier(), expressions, includeLogicDefinitions, recursive,
+                specificationLevel);
+        FutureTask<Result> task = new FutureTask<>(() -> {
+            String storeKey = directory != null
+                    ? getStoreKey(libraryManager, compiledLibrary, options, key) : null;
+            Result result = storeKey != null ? read(storeKey) : null;
+            if (result == null) {
+                DataRequirementsProcessor processor = new DataRequirementsProcessor();
+                if (specificationLevel != null) {
+                    processor.setSpecificationLevel(specificationLevel);
+                }
+                Library library = processor.gatherDataRequirements(libraryManager, compiledLibrary, options,
+                        expressions, includeLogicDefinitions, recursive);
+                result = new Result(library, new ArrayList<>(processor.getValidationMessages()));
+                if (storeKey != null) {
+                    write(storeKey, result);
+                }
+            }
+            return result;
+        });
+        FutureTask<Result> existing = results.putIfAbsent(key, task);
+        if (existing == null) {
+            existing = task;
+            task.run();
+        }
+
+        try {
+            Result result = existing.get();
+            if (validationMessages != null) {
+                validationMessages.addAll(result.validationMessages);
+            }
+            return result.library.copy();
+        } catch (ExecutionException e) {
+            // a failure is not cached, the next caller tries again
+            results.remove(key, existing);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while gathering data requirements", e);
+        }
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    public void clear() {
+        results.clear();
+        libraryHashes.clear();
+        elmHashes.clear();
+    }
+
+    private String getStoreKey(LibraryManager libraryManager, CompiledLibrary compiledLibrary,
+                               CqlCompilerOptions options, Key key) {
+        String libraryHash;
+        try {
+            libraryHash = getLibraryHash(libraryManager, compiledLibrary, new HashSet<>());
+        } catch (Exception e) {
+            // not stored, only memoized
+            logger.debug("Unable to hash the ELM of {}: {}", toString(compiledLibrary.getIdentifier()), e.getMessage());
+            return null;
+        }
+        StringBuilder content = new StringBuilder();
+        content.append(version).append('\n')
+                .append(libraryHash).append('\n')
+                .append(key.expressions == null ? "*" : key.expressions.stream().map(String::valueOf).sorted()
+                        .collect(Collectors.joining("\n"))).append('\n')
+                .append(key.includeLogicDefinitions).append(key.recursive).append(key.specificationLevel).append('\n')
+                .append(new TreeSet<>(options.getOptions())).append(options.getCompatibilityLevel())
+                .append(options.getErrorLevel()).append(options.getSignatureLevel())
+                .append(options.getAnalyzeDataRequirements()).append(options.getCollapseDataRequirements());
+        return DigestUtils.sha256Hex(content.toString());
+    }
+
+    // the hash of the ELM of the library and, recursively, of the libraries it includes
+    private String getLibraryHash(LibraryManager libraryManager, CompiledLibrary compiledLibrary,
+                                  Set<String> visiting) throws IOException {
+        String identifier = toString(compiledLibrary.getIdentifier());
+        String hash = libraryHashes.get(identifier);
+        if (hash != null) {
+            return hash;
+        }
+        if (!visiting.add(identifier)) {
+            throw new IllegalStateException("Circular include of " + identifier);
+        }
+
+        String elmHash = elmHashes.get(identifier);
+        if (elmHash == null) {
+            elmHash = DigestUtils.sha256Hex(CqlTranslator.convertToXml(compiledLibrary.getLibrary()));
+            elmHashes.put(identifier, elmHash);
+        }
+        List<String> parts = new ArrayList<>();
+        parts.add(identifier + "=" + elmHash);
+        if (compiledLibrary.getLibrary().getIncludes() != null) {
+            for (IncludeDef include : compiledLibrary.getLibrary().getIncludes().getDef()) {
+                CompiledLibrary included = findIncluded(libraryManager, include);
+                if (included == null) {
+                    // the processor would translate it from a source that may have changed
+                    throw new IllegalStateException("The included library " + include.getPath() + " is not compiled");
+                }
+                parts.add(getLibraryHash(libraryManager, included, visiting));
+            }
+        }
+        Collections.sort(parts);
+        hash = DigestUtils.sha256Hex(String.join("\n", parts));
+        libraryHashes.put(identifier, hash);
+        visiting.remove(identifier);
+        return hash;
+    }
+
+    private static CompiledLibrary findIncluded(LibraryManager libraryManager, IncludeDef include) {
+        String name = NamespaceManager.getNamePart(include.getPath());
+        VersionedIdentifier identifier = new VersionedIdentifier()
+                .withSystem(NamespaceManager.getUriPart(include.getPath())).withId(name)
+                .withVersion(include.getVersion());
+        CompiledLibrary included = libraryManager.getCompiledLibraries().get(identifier);
+        if (included == null) {
+            // the system of an include in the same namespace is implied
+            for (CompiledLibrary compiled : libraryManager.getCompiledLibraries().values()) {
+                VersionedIdentifier compiledIdentifier = compiled.getIdentifier();
+                if (name.equals(compiledIdentifier.getId()) && (include.getVersion() == null
+                        || include.getVersion().equals(compiledIdentifier.getVersion()))) {
+                    return compiled;
+                }
+            }
+        }
+        return included;
+    }
+
+    private Result read(String storeKey) {
+        Path file = directory.resolve(storeKey + ".json");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            Parameters parameters = (Parameters) new JsonParser().parse(Files.readAllBytes(file));
+            // the least recently used entries are the ones deleted
+            file.toFile().setLastModified(System.currentTimeMillis());
+            Library library = null;
+            List<ValidationMessage> validationMessages = new ArrayList<>();
+            for (Parameters.ParametersParameterComponent parameter : parameters.getParameter()) {
+                if (LIBRARY.equals(parameter.getName())) {
+                    library = (Library) parameter.getResource();
+                } else if (VALIDATION_MESSAGE.equals(parameter.getName())) {
+                    validationMessages.add(new ValidationMessage(
+                            ValidationMessage.Source.valueOf(getPart(parameter, "source")),
+                            ValidationMessage.IssueType.valueOf(getPart(parameter, "type")),
+                            getPart(parameter, "location"), getPart(parameter, "message"),
+                            ValidationMessage.IssueSeverity.valueOf(getPart(parameter, "level"))));
+                }
+            }
+            return library != null ? new Result(library, validationMessages) : null;
+        } catch (Exception e) {
+            logger.debug("Ignoring unreadable data requirements cache entry {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private static String getPart(Parameters.ParametersParameterComponent parameter, String name) {
+        for (Parameters.ParametersParameterComponent part : parameter.getPart()) {
+            if (name.equals(part.getName())) {
+                return part.getValue().primitiveValue();
+            }
+        }
+        return null;
+    }
+
+    private void write(String storeKey, Result result) {
+        Parameters parameters = new Parameters();
+        parameters.addParameter().setName(LIBRARY).setResource(result.library);
+        for (ValidationMessage validationMessage : result.validationMessages) {
+            Parameters.ParametersParameterComponent message = parameters.addParameter().setName(VALIDATION_MESSAGE);
+            message.addPart().setName("source").setValue(new StringType(validationMessage.getSource().name()));
+            message.addPart().setName("type").setValue(new StringType(validationMessage.getType().name()));
+            message.addPart().setName("level").setValue(new StringType(validationMessage.getLevel().name()));
+            if (validationMessage.getLocation() != null) {
+                message.addPart().setName("location").setValue(new StringType(validationMessage.getLocation()));
+            }
+            message.addPart().setName("message").setValue(new StringType(validationMessage.getMessage()));
+        }
+
+        try {
+            Files.createDirectories(directory);
+            // written to a temporary file first, so a concurrent refresh never reads a partial entry
+            Path temp = Files.createTempFile(directory, storeKey, ".tmp");
+            try {
+                Files.write(temp, new JsonParser().composeString(parameters).getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, directory.resolve(storeKey + ".json"), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            prune();
+        } catch (Exception e) {
+            logger.debug("Unable to store data requirements in {}: {}", directory, e.getMessage());
+        }
+    }
+
+    // deletes the least recently used entries beyond the maximum
+    private void prune() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(directory)) {
+            entries = files.filter(file -> file.getFileName().toString().endsWith(".json"))
+                    .collect(Collectors.toList());
+        }
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        Map<Path, Long> lastModified = new HashMap<>();
+        entries.forEach(entry -> lastModified.put(entry, entry.toFile().lastModified()));
+        entries.sort(Comparator.comparing(lastModified::get));
+        for (Path entry : entries.subList(0, entries.size() - maxEntries)) {
+            Files.deleteIfExists(entry);
+        }
+    }
+
+    private static String toString(VersionedIdentifier identifier) {
+        return identifier.getSystem() + "|" + identifier.getId() + "|" + identifier.getVersion();
+    }
+
+    private static final class Result {
+        private final Library library;
+        private final List<ValidationMessage> validationMessages;
+
+        Result(Library library, List<ValidationMessage> validationMessages) {
+            this.library = library;
+            this.validationMessages = validationMessages;
+        }
+    }
+
+    private static final class Key {
+        private final String system;
+        private final String id;
+        private final String version;
+        private final Set<String> expressions;
+        private final boolean includeLogicDefinitions;
+        private final boolean recursive;
+        private final SpecificationLevel specificationLevel;
+
+        Key(VersionedIdentifier identifier, Set<String> expressions, boolean includeLogicDefinitions,
+            boolean recursive, SpecificationLevel specificationLevel) {
+            this.system = identifier.getSystem();
+            this.id = identifier.getId();
+            this.version = identifier.getVersion();
+            // null means every expression of the library
+            this.expressions = expressions == null ? null : new HashSet<>(expressions);
+            this.includeLogicDefinitions = includeLogicDefinitions;
+            this.recursive = recursive;
+            this.specificationLevel = specificationLevel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return includeLogicDefinitions == key.includeLogicDefinitions && recursive == key.recursive
+                    && Objects.equals(system, key.system) && Objects.equals(id, key.id)
+                    && Objects.equals(version, key.version) && Objects.equals(expressions, key.expressions)
+                    && specificationLevel == key.specificationLevel;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(system, id, version, expressions, includeLogicDefinitions, recursive,
+                    specificationLevel);
+        }
+    }
+}
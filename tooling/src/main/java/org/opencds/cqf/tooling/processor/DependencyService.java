@@ -0,0 +1,320 @@
+package org.opencds.cqf.tooling.processor;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.ArtifactRecord;
+import org.opencds.cqf.tooling.utilities.ArtifactRecordMap;
+import org.opencds.cqf.tooling.utilities.CanonicalUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The Library, ValueSet and CodeSystem dependencies (relatedArtifact of type depends-on) of the artifacts of an IG.
+ * <p>
+ * The canonical graph of the libraries is taken from the artifact records of IOUtils when the service is first used for
+ * a FHIR version, and the transitive closure of each library is computed once and memoized, so the shared part of the
+ * graph (FHIRHelpers, common libraries) is walked once for all the measures and plan definitions that depend on it.
+ * The graph is walked over the depends-on canonicals of the records, without reading the libraries, and the closures
+ * hold records: a dependency is only read when it is requested from a closure. The terminology of the IG (the
+ * ValueSetsProcessor cache) is only loaded when a terminology closure is requested. A closure carries every missing
+ * dependency found while walking it, so they can be reported together.
+ * <p>
+ * Closures are immutable and the memoization maps are concurrent, so the service can be used by the bundling tasks in
+ * parallel. It is dropped along with the path caches of IOUtils ({@link #clear()}).
+ */
+public class DependencyService {
+    private static final Logger logger = LoggerFactory.getLogger(DependencyService.class);
+
+    private static final Map<FhirVersionEnum, DependencyService> services = new ConcurrentHashMap<>();
+
+    private final FhirContext fhirContext;
+    private final Map<String, ArtifactRecord> libraryUrlMap;
+    private final Map<String, ArtifactRecord> libraries;
+    private final Function<ArtifactRecord, IBaseResource> libraryReader;
+    private final Function<ArtifactRecord, IBaseResource> terminologyReader;
+    private volatile Map<String, ArtifactRecord> terminology;
+    // keyed by library id (or canonical url, for a library whose id is taken by another one)
+    private final Map<String, Closure> libraryClosures = new ConcurrentHashMap<>();
+    private final Map<String, Closure> terminologyClosures = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> libraryPaths = new ConcurrentHashMap<>();
+
+    private DependencyService(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+        this.libraryUrlMap = Collections.unmodifiableMap(new HashMap<>(IOUtils.getLibraryUrlRecords(fhirContext)));
+        this.libraries = Collections.unmodifiableMap(new HashMap<>(IOUtils.getLibraryRecords(fhirContext)));
+        this.libraryReader = record -> IOUtils.readArtifact(record, fhirContext);
+        this.terminologyReader = record -> ValueSetsProcessor.readValueSet(record, fhirContext);
+    }
+
+    public static DependencyService getInstance(FhirContext fhirContext) {
+        return services.computeIfAbsent(fhirContext.getVersion().getVersion(), version -> new DependencyService(fhirContext));
+    }
+
+    /**
+     * Drops the graphs and closures, which are rebuilt from the IOUtils caches on the next use.
+     */
+    public static void clear() {
+        services.clear();
+    }
+
+    /**
+     * Drops the terminology closures (but not the library graph), for when the ValueSet cache is reloaded.
+     */
+    public static void clearTerminology() {
+        services.values().forEach(service -> {
+            service.terminology = null;
+            service.terminologyClosures.clear();
+        });
+    }
+
+    /**
+     * The libraries the resource depends on, keyed by the canonical url of the dependency.
+     *
+     * @param transitive whether the libraries those libraries depend on are included as well
+     */
+    public Map<String, IBaseResource> getLibraryDependencies(IBaseResource resource, boolean transitive) {
+        return getLibraryClosure(resource, transitive).getResources(libraryReader);
+    }
+
+    /**
+     * The canonical urls of the libraries the resource depends on that are not part of the IG (or not at the version
+     * referenced).
+     */
+    public Set<String> getMissingLibraries(IBaseResource resource, boolean transitive) {
+        return getLibraryClosure(resource, transitive).missing;
+    }
+
+    /**
+     * The ValueSets and CodeSystems the resource depends on, keyed by canonical url.
+     *
+     * @param transitive whether the terminology of the libraries the resource depends on (transitively) is included
+     */
+    public Map<String, IBaseResource> getTerminologyDependencies(IBaseResource resource, boolean transitive) {
+        return getTerminologyClosure(resource, transitive).getResources(terminologyReader);
+    }
+
+    /**
+     * The canonical urls of the ValueSets and CodeSystems the resource depends on that are not part of the IG. When
+     * transitive, the missing libraries (whose terminology could not be resolved) are included as well.
+     */
+    public Set<String> getMissingTerminology(IBaseResource resource, boolean transitive) {
+        return getTerminologyClosure(resource, transitive).missing;
+    }
+
+    /**
+     * The dependency library paths of a library file, read once per path, encoding and versioning.
+     *
+     * @param reader reads the paths when they are not known yet
+     */
+    public List<String> getLibraryPaths(String path, IOUtils.Encoding encoding, Boolean versioned, Supplier<List<String>> reader) {
+        String key = path + "|" + encoding + "|" + versioned;
+        List<String> paths = libraryPaths.get(key);
+        if (paths == null) {
+            // not computeIfAbsent: the reader may ask for the paths of the dependencies
+            paths = Collections.unmodifiableList(reader.get());
+            List<String> existing = libraryPaths.putIfAbsent(key, paths);
+            if (existing != null) {
+                paths = existing;
+            }
+        }
+        return paths;
+    }
+
+    private Closure getLibraryClosure(IBaseResource resource, boolean transitive) {
+        ArtifactRecord record = getLibraryRecord(resource);
+        if (transitive && record != null) {
+            return computeLibraryClosure(record, new LinkedHashSet<>());
+        }
+        // an artifact that is not a library of the IG: only its direct dependencies are walked here, the closures of
+        // those come from the memo
+        Closure closure = new Closure();
+        List<String> urls = record != null ? getLibraryUrls(record) : ResourceUtils.getLibraryDependencies(resource, fhirContext);
+        for (String url : urls) {
+            ArtifactRecord library = resolveLibrary(url);
+            if (library == null) {
+                closure.missing.add(url);
+                continue;
+            }
+            closure.records.putIfAbsent(url, library);
+            if (transitive) {
+                Closure dependencyClosure = computeLibraryClosure(library, new LinkedHashSet<>());
+                dependencyClosure.records.forEach(closure.records::putIfAbsent);
+                closure.missing.addAll(dependencyClosure.missing);
+            }
+        }
+        return closure.seal();
+    }
+
+    private Closure computeLibraryClosure(ArtifactRecord library, Set<String> visiting) {
+        String key = getKey(library);
+        Closure closure = libraryClosures.get(key);
+        if (closure != null) {
+            return closure;
+        }
+
+        closure = new Closure();
+        if (!visiting.add(key)) {
+            logger.warn("Circular library dependency found for {}", key);
+            return closure.seal();
+        }
+        for (String url : getLibraryUrls(library)) {
+            ArtifactRecord dependency = resolveLibrary(url);
+            if (dependency == null) {
+                closure.missing.add(url);
+                continue;
+            }
+            closure.records.putIfAbsent(url, dependency);
+            Closure dependencyClosure = computeLibraryClosure(dependency, visiting);
+            dependencyClosure.records.forEach(closure.records::putIfAbsent);
+            closure.missing.addAll(dependencyClosure.missing);
+        }
+        visiting.remove(key);
+
+        Closure existing = libraryClosures.putIfAbsent(key, closure.seal());
+        return existing != null ? existing : closure;
+    }
+
+    private Closure getTerminologyClosure(IBaseResource resource, boolean transitive) {
+        ArtifactRecord record = getLibraryRecord(resource);
+        Closure direct = record != null
+                ? getDirectTerminology(record)
+                : readDirectTerminology(ResourceUtils.getTerminologyDependencies(resource, fhirContext));
+        if (!transitive) {
+            return direct;
+        }
+
+        Closure closure = new Closure();
+        closure.records.putAll(direct.records);
+        closure.missing.addAll(direct.missing);
+        Closure libraryClosure = getLibraryClosure(resource, true);
+        for (ArtifactRecord library : libraryClosure.records.values()) {
+            Closure dependencyTerminology = getDirectTerminology(library);
+            dependencyTerminology.records.forEach(closure.records::putIfAbsent);
+            closure.missing.addAll(dependencyTerminology.missing);
+        }
+        closure.missing.addAll(libraryClosure.missing);
+        return closure.seal();
+    }
+
+    private Closure getDirectTerminology(ArtifactRecord library) {
+        String key = getKey(library);
+        Closure closure = terminologyClosures.get(key);
+        if (closure == null) {
+            closure = readDirectTerminology(library.getDependencies().stream()
+                    .filter(url -> url.contains("/CodeSystem") || url.contains("/ValueSet"))
+                    .collect(Collectors.toList()));
+            Closure existing = terminologyClosures.putIfAbsent(key, closure);
+            if (existing != null) {
+                closure = existing;
+            }
+        }
+        return closure;
+    }
+
+    private Closure readDirectTerminology(List<String> urls) {
+        Map<String, ArtifactRecord> valueSets = getTerminology();
+        Closure closure = new Closure();
+        for (String url : urls) {
+            ArtifactRecord valueSet = valueSets.get(url);
+            if (valueSet != null) {
+                closure.records.putIfAbsent(url, valueSet);
+            } else {
+                closure.missing.add(url);
+            }
+        }
+        return closure.seal();
+    }
+
+    private Map<String, ArtifactRecord> getTerminology() {
+        Map<String, ArtifactRecord> result = terminology;
+        if (result == null) {
+            synchronized (this) {
+                result = terminology;
+                if (result == null) {
+                    result = ValueSetsProcessor.getCachedValueSetRecords(fhirContext);
+                    terminology = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<String> getLibraryUrls(ArtifactRecord library) {
+        return library.getDependencies().stream().filter(url -> url.contains("/Library")).collect(Collectors.toList());
+    }
+
+    // the record of the library when it is one of the libraries of the graph, or null
+    private ArtifactRecord getLibraryRecord(IBaseResource resource) {
+        if (!"Library".equals(resource.fhirType())) {
+            return null;
+        }
+        ArtifactRecord record = libraries.get(resource.getIdElement().getIdPart());
+        if (record != null && record.describes(resource, fhirContext)) {
+            return record;
+        }
+        String url = ResourceUtils.getUrl(resource, fhirContext);
+        String version = ResourceUtils.getVersion(resource, fhirContext);
+        record = url == null ? null : libraryUrlMap.get(version != null ? url + "|" + version : url);
+        return record != null && record.describes(resource, fhirContext) ? record : null;
+    }
+
+    private String getKey(ArtifactRecord library) {
+        if (libraries.get(library.getId()) == library) {
+            return library.getId();
+        }
+        return library.getVersion() != null ? library.getUrl() + "|" + library.getVersion() : library.getUrl();
+    }
+
+    private ArtifactRecord resolveLibrary(String url) {
+        ArtifactRecord library = libraryUrlMap.get(url);
+        if (library == null) {
+            var id = CanonicalUtils.getId(url);
+            var version = CanonicalUtils.getVersion(url);
+            library = libraries.get(id);
+            if (library != null) {
+                var libraryVersion = library.getVersion();
+                if (libraryVersion != null && !libraryVersion.equals(version)) {
+                    logger.warn("Mismatch library version for {}, expected {}, found {}", url, version, libraryVersion);
+                    library = null;
+                }
+            }
+        }
+        return library;
+    }
+
+    private static class Closure {
+        private Map<String, ArtifactRecord> records = new LinkedHashMap<>();
+        private Set<String> missing = new LinkedHashSet<>();
+        private volatile Map<String, IBaseResource> resources;
+
+        private Closure seal() {
+            records = Collections.unmodifiableMap(records);
+            missing = Collections.unmodifiableSet(missing);
+            return this;
+        }
+
+        private Map<String, IBaseResource> getResources(Function<ArtifactRecord, IBaseResource> reader) {
+            Map<String, IBaseResource> result = resources;
+            if (result == null) {
+                result = new ArtifactRecordMap(records, reader);
+                resources = result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.opencds.cqf.tooling.processor;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.cqframework.cql.cql2elm.LibraryContentType;
+import org.cqframework.cql.elm.serializing.ElmLibraryWriterFactory;
+import org.hl7.elm.r1.Library;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The serialized ELM of a translated library. The ELM is written straight from the library to a byte buffer, without
+ * an intermediate String; once it grows past the spill threshold (by default 1 MiB, configured in bytes with the system
+ * property {@value #SPILL_THRESHOLD_PROPERTY}) the rest is written to a temporary file instead, so the ELM of large IGs
+ * does not have to fit in the heap until the refresh ends. {@link #getBytes()} reads a spilled ELM back when it is
+ * needed.
+ * <p>
+ * The file of a spilled ELM lives as long as the content: it is deleted by {@link #delete()}, or once the content is
+ * no longer reachable, so a {@link CqlProcessor.CqlSourceFileInformation} kept after a later translation can still be
+ * read. The files are kept in one temporary directory per process, which is removed when the JVM exits.
+ */
+public class ElmContent {
+    private static final Logger logger = LoggerFactory.getLogger(ElmContent.class);
+
+    public static final String SPILL_THRESHOLD_PROPERTY = "cqf.tooling.elm.spillThreshold";
+
+    private static final long DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+    // deletes the file of a spilled ELM that is no longer reachable
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static Path spillDirectory;
+
+    private final byte[] bytes;
+    private final Path file;
+    private final long length;
+    private final String sha256;
+    private final Cleaner.Cleanable cleanable;
+
+    private ElmContent(byte[] bytes, Path file, long length, String sha256) {
+        this.bytes = bytes;
+        this.file = file;
+        this.length = length;
+        this.sha256 = sha256;
+        this.cleanable = file != null ? CLEANER.register(this, new DeleteFile(file)) : null;
+    }
+
+    /**
+     * @return the ELM held in memory
+     */
+    public static ElmContent of(byte[] bytes) {
+        return new ElmContent(bytes, null, bytes.length, null);
+    }
+
+    /**
+     * Serializes the library in the given format, in memory or, past the threshold, to a temporary file.
+     *
+     * @param contentType XML or JSON
+     * @param spillThreshold the size in bytes past which the ELM is written to a file
+     */
+    public static ElmContent write(Library library, LibraryContentType contentType, long spillThreshold)
+            throws IOException {
+        SpillingOutputStream spillingStream = new SpillingOutputStream(spillThreshold, contentType);
+        MessageDigest digest = newSha256Digest();
+        try (Writer writer = new OutputStreamWriter(new DigestOutputStream(spillingStream, digest),
+                StandardCharsets.UTF_8)) {
+            ElmLibraryWriterFactory.getWriter(contentType.mimeType()).write(library, writer);
+        } catch (IOException | RuntimeException e) {
+            spillingStream.delete();
+            throw e;
+        }
+        return new ElmContent(spillingStream.file == null ? spillingStream.buffer.toByteArray() : null,
+                spillingStream.file, spillingStream.length, Hex.encodeHexString(digest.digest()));
+    }
+
+    public static long getDefaultSpillThreshold() {
+        String threshold = System.getProperty(SPILL_THRESHOLD_PROPERTY);
+        if (threshold == null || threshold.isEmpty()) {
+            return DEFAULT_SPILL_THRESHOLD;
+        }
+        try {
+            return Long.parseLong(threshold);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid value for %s: %s", SPILL_THRESHOLD_PROPERTY,
+                    threshold), e);
+        }
+    }
+
+    /**
+     * @return the ELM, read from its file when it was spilled
+     */
+    public byte[] getBytes() {
+        if (file == null) {
+            return bytes;
+        }
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading the spilled ELM " + file, e);
+        }
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return the SHA-256 of the ELM, or null when it was not written by {@link #write(Library, LibraryContentType,
+     * long)}
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * Deletes the file of a spilled ELM now rather than when the content is no longer reachable; the content is not
+     * readable afterwards.
+     */
+    public void delete() {
+        if (cleanable != null) {
+            cleanable.clean();
+        }
+    }
+
+    private static synchronized Path getSpillDirectory() throws IOException {
+        if (spillDirectory == null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(ElmContent::deleteSpillDirectory));
+        }
+        // created again when a temporary file cleaner removed it while the process was running
+        if (spillDirectory == null || !Files.isDirectory(spillDirectory)) {
+            spillDirectory = Files.createTempDirectory("cqf-elm");
+        }
+        return spillDirectory;
+    }
+
+    private static synchronized void deleteSpillDirectory() {
+        FileUtils.deleteQuietly(spillDirectory.toFile());
+    }
+
+    // must not refer to the content, or it would never become unreachable
+    private static class DeleteFile implements Runnable {
+        private final Path file;
+
+        DeleteFile(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.debug("Unable to delete the spilled ELM {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // buffers up to the threshold, then moves what it has to a temporary file and writes the rest there
+    private static class SpillingOutputStream extends OutputStream {
+        private final long threshold;
+        private final LibraryContentType contentType;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        private Path file;
+        private OutputStream fileStream;
+        private long length;
+
+        SpillingOutputStream(long threshold, LibraryContentType contentType) {
+            this.threshold = threshold;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (fileStream == null && length + len > threshold) {
+                file = Files.createTempFile(getSpillDirectory(), "elm", "." + contentType.name().toLowerCase());
+                fileStream = Files.newOutputStream(file);
+                buffer.writeTo(fileStream);
+                buffer.reset();
+            }
+            if (fileStream != null) {
+                fileStream.write(b, off, len);
+            } else {
+                buffer.write(b, off, len);
+            }
+            length += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fileStream != null) {
+                fileStream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileStream != null) {
+                fileStream.close();
+            }
+        }
+
+        void delete() {
+            try {
+                close();
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                logger.debug("Unable to delete the spilled ELM {}: {}", file, e.getMessage());
+            }
+        }
+    }
+}
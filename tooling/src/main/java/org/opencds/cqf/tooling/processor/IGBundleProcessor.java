@@ -5,6 +5,7 @@ import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.packaging.PackageMeasures;
 import org.opencds.cqf.tooling.packaging.PackagePlanDefinitions;
 import org.opencds.cqf.tooling.questionnaire.QuestionnaireBundler;
+import org.opencds.cqf.tooling.utilities.ArchiveWriter;
 import org.opencds.cqf.tooling.utilities.HttpClientUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
@@ -12,6 +13,7 @@ import org.opencds.cqf.tooling.utilities.ResourceUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -21,11 +23,32 @@ public class IGBundleProcessor {
     public static final String bundleFilesPathElement = "files/";
 
     private final Boolean verboseMessaging;
+    private final Boolean deduplicateBundles;
+    private final String archiveFormat;
     LibraryProcessor libraryProcessor;
     CDSHooksProcessor cdsHooksProcessor;
 
     public IGBundleProcessor(Boolean verboseMessaging, LibraryProcessor libraryProcessor, CDSHooksProcessor cdsHooksProcessor) {
+        this(verboseMessaging, false, libraryProcessor, cdsHooksProcessor);
+    }
+
+    /**
+     * @param deduplicateBundles if true, bundles are written as manifests over a content-addressed store of resources
+     *                           (see {@link BundleContentStore}) rather than as full copies
+     */
+    public IGBundleProcessor(Boolean verboseMessaging, Boolean deduplicateBundles, LibraryProcessor libraryProcessor, CDSHooksProcessor cdsHooksProcessor) {
+        this(verboseMessaging, deduplicateBundles, null, libraryProcessor, cdsHooksProcessor);
+    }
+
+    /**
+     * @param archiveFormat if "zip" or "tgz", bundle and package output is streamed into a single
+     *                      {@code <ig>/bundles.<archiveFormat>} archive instead of the bundles directory; takes
+     *                      precedence over deduplicateBundles
+     */
+    public IGBundleProcessor(Boolean verboseMessaging, Boolean deduplicateBundles, String archiveFormat, LibraryProcessor libraryProcessor, CDSHooksProcessor cdsHooksProcessor) {
         this.verboseMessaging = verboseMessaging;
+        this.deduplicateBundles = deduplicateBundles;
+        this.archiveFormat = archiveFormat;
         this.libraryProcessor = libraryProcessor;
         this.cdsHooksProcessor = cdsHooksProcessor;
     }
@@ -34,20 +57,37 @@ public class IGBundleProcessor {
                          Boolean includeDependencies, Boolean includeTerminology, Boolean includePatientScenarios, Boolean versioned, Boolean addBundleTimestamp,
                          FhirContext fhirContext, String fhirUri, String measureToRefreshPath) {
 
-//        new MeasureBundler().bundleResources(refreshedLibraryNames,
-//                igPath, binaryPaths, includeDependencies, includeTerminology,
-//                includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
-//                fhirUri, encoding, verboseMessaging);
-        new PackageMeasures(igPath, fhirContext, includeDependencies, includeTerminology, includePatientScenarios, fhirUri, measureToRefreshPath);
-//        new PlanDefinitionBundler(this.libraryProcessor, this.cdsHooksProcessor).bundleResources(refreshedLibraryNames,
-//                igPath, binaryPaths, includeDependencies, includeTerminology,
-//                includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
-//                fhirUri, encoding, verboseMessaging);
-        new PackagePlanDefinitions(igPath, fhirContext, includeDependencies, includeTerminology, includePatientScenarios, fhirUri);
-        new QuestionnaireBundler(this.libraryProcessor).bundleResources(refreshedLibraryNames,
-                igPath, binaryPaths, includeDependencies, includeTerminology,
-                includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
-                fhirUri, encoding, verboseMessaging);
+        BundleContentStore contentStore = Boolean.TRUE.equals(deduplicateBundles)
+                ? new BundleContentStore(IGProcessor.getBundlesPath(igPath)) : null;
+
+        try (ArchiveWriter archiveWriter = archiveFormat == null || archiveFormat.isEmpty()
+                ? null : new ArchiveWriter(IGProcessor.getBundlesPath(igPath) + "." + archiveFormat)) {
+//            new MeasureBundler().bundleResources(refreshedLibraryNames,
+//                    igPath, binaryPaths, includeDependencies, includeTerminology,
+//                    includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
+//                    fhirUri, encoding, verboseMessaging);
+            new PackageMeasures(igPath, fhirContext, includeDependencies, includeTerminology, includePatientScenarios, fhirUri, measureToRefreshPath, contentStore, archiveWriter);
+//            new PlanDefinitionBundler(this.libraryProcessor, this.cdsHooksProcessor).bundleResources(refreshedLibraryNames,
+//                    igPath, binaryPaths, includeDependencies, includeTerminology,
+//                    includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
+//                    fhirUri, encoding, verboseMessaging);
+            new PackagePlanDefinitions(igPath, fhirContext, includeDependencies, includeTerminology, includePatientScenarios, fhirUri, contentStore, archiveWriter);
+            QuestionnaireBundler questionnaireBundler = new QuestionnaireBundler(this.libraryProcessor);
+            questionnaireBundler.setContentStore(contentStore);
+            questionnaireBundler.setArchiveWriter(archiveWriter);
+            questionnaireBundler.bundleResources(refreshedLibraryNames,
+                    igPath, binaryPaths, includeDependencies, includeTerminology,
+                    includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
+                    fhirUri, encoding, verboseMessaging);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException("Error writing bundle archive: " + e.getMessage(), e);
+        }
+
+        // objects of bundles that were removed or changed since an earlier run are no longer referenced
+        if (contentStore != null) {
+            contentStore.sweep();
+        }
 
         //run collected post calls last:
         if (HttpClientUtils.hasPostTasksInQueue()) {
@@ -55,8 +95,9 @@ public class IGBundleProcessor {
             HttpClientUtils.postTaskCollection();
         }
 
-        // run cleanup (maven runs all ci tests sequentially and static member variables could retain values from previous tests)
-        IOUtils.cleanUp();
+        // run cleanup (maven runs all ci tests sequentially and static member variables could retain values from previous tests);
+        // the compiled libraries are checked against their files, so they are kept for the next run
+        IOUtils.clearRunCaches();
         ResourceUtils.cleanUp();
     }
 
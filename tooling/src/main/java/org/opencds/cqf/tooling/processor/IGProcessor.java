@@ -1,6 +1,7 @@
 package org.opencds.cqf.tooling.processor;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
 import com.google.common.base.Strings;
 import org.apache.commons.io.FilenameUtils;
 import org.hl7.fhir.utilities.Utilities;
@@ -8,6 +9,7 @@ import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.measure.MeasureProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
 import org.opencds.cqf.tooling.plandefinition.PlanDefinitionProcessor;
+import org.opencds.cqf.tooling.utilities.FhirContextCache;
 import org.opencds.cqf.tooling.utilities.IGUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.LogUtils;
@@ -99,7 +101,7 @@ public class IGProcessor extends BaseProcessor {
         var skipPackages = params.skipPackages;
 
         if (Boolean.FALSE.equals(skipPackages)) {
-            new IGBundleProcessor(params.verboseMessaging, new LibraryProcessor(), new CDSHooksProcessor()).bundleIg(
+            new IGBundleProcessor(params.verboseMessaging, params.deduplicateBundles, params.archiveFormat, new LibraryProcessor(), new CDSHooksProcessor()).bundleIg(
                     refreshedResourcesNames,
                     rootDir,
                     getBinaryPaths(),
@@ -198,11 +200,11 @@ public class IGProcessor extends BaseProcessor {
             case "3.0.0":
             case "3.0.1":
             case "3.0.2":
-                return FhirContext.forDstu3Cached();
+                return FhirContextCache.getContext(FhirVersionEnum.DSTU3);
 
             case "4.0.0":
             case "4.0.1":
-                return FhirContext.forR4Cached();
+                return FhirContextCache.getContext(FhirVersionEnum.R4);
 
             default:
                 throw new IllegalArgumentException("Unknown IG version: " + igVersion);
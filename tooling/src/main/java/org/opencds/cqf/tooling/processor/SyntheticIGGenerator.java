@@ -0,0 +1,391 @@
+package org.opencds.cqf.tooling.processor;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Expression;
+import org.hl7.fhir.r4.model.ImplementationGuide;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.hl7.fhir.r4.model.MeasureReport;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.opencds.cqf.tooling.parameter.SyntheticIGParameters;
+import org.opencds.cqf.tooling.utilities.FhirContextCache;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic R4 measure IG at a configurable scale, for reproducing the performance of RefreshIG,
+ * bundling and testing on IGs with thousands of artifacts. The IG contains:
+ * <ul>
+ *     <li>libraryCount shared CQL libraries in includeDepth layers, each including includeFanOut libraries of the
+ *     layer below it (chosen with a seeded random, so the same parameters give the same include graph)</li>
+ *     <li>measureCount proportion measures, each with a measure library including includeFanOut libraries of the top
+ *     layer</li>
+ *     <li>valueSetCount ValueSets with valueSetExpansionSize codes, referenced round-robin by the libraries</li>
+ *     <li>patientsPerMeasure test cases per measure (Patient, Encounter, Condition and the expected MeasureReport),
+ *     half of them in the numerator</li>
+ * </ul>
+ * along with Library and Measure resources, the ImplementationGuide resource and ig.ini. The CQL includes
+ * FHIRHelpers 4.0.1, which the translator resolves without it being in the IG.
+ */
+public class SyntheticIGGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticIGGenerator.class);
+
+    public static final String LIBRARY_PREFIX = "SyntheticLibrary";
+    public static final String MEASURE_PREFIX = "SyntheticMeasure";
+    public static final String VALUESET_PREFIX = "synthetic-valueset-";
+    private static final String VERSION = "1.0.000";
+    private static final String MEASUREMENT_PERIOD_START = "2024-01-01";
+    private static final String MEASUREMENT_PERIOD_END = "2024-12-31";
+
+    private final FhirContext fhirContext = FhirContextCache.getContext("r4");
+    private SyntheticIGParameters params;
+    private String codeSystemUrl;
+
+    public void generate(SyntheticIGParameters params) {
+        validate(params);
+        this.params = params;
+        this.codeSystemUrl = params.canonicalBase + "/CodeSystem/synthetic";
+
+        File root = new File(params.igPath);
+        String[] existing = root.list();
+        if (existing != null && existing.length > 0) {
+            throw new IllegalArgumentException("The synthetic IG must be generated into an empty directory: " + params.igPath);
+        }
+
+        long start = System.currentTimeMillis();
+        writeImplementationGuide();
+        for (int i = 0; i < params.valueSetCount; i++) {
+            writeValueSet(i);
+        }
+
+        List<List<String>> includeGraph = buildIncludeGraph();
+        for (int i = 0; i < params.libraryCount; i++) {
+            writeLibrary(getLibraryName(i), buildSharedLibraryCql(i, includeGraph.get(i)));
+        }
+
+        List<String> topLayer = getLayer(params.includeDepth - 1);
+        Random random = new Random(params.seed + 1);
+        for (int i = 0; i < params.measureCount; i++) {
+            String name = getMeasureName(i);
+            List<String> includes = pick(topLayer, random);
+            writeLibrary(name, buildMeasureLibraryCql(i, includes));
+            writeMeasure(name);
+            for (int p = 0; p < params.patientsPerMeasure; p++) {
+                writeTestCase(i, p);
+            }
+        }
+
+        logger.info("Generated synthetic IG with {} libraries, {} measures, {} value sets and {} test cases in {} ms: {}",
+                params.libraryCount + params.measureCount, params.measureCount, params.valueSetCount,
+                params.measureCount * params.patientsPerMeasure, System.currentTimeMillis() - start,
+                root.getAbsolutePath());
+    }
+
+    private static void validate(SyntheticIGParameters params) {
+        if (params.igPath == null || params.igPath.isEmpty()) {
+            throw new IllegalArgumentException("The path to generate the synthetic IG in is required");
+        }
+        if (params.libraryCount < 1 || params.includeDepth < 1 || params.includeFanOut < 0) {
+            throw new IllegalArgumentException("libraryCount and includeDepth must be at least 1 and includeFanOut at least 0");
+        }
+        if (params.includeDepth > params.libraryCount) {
+            throw new IllegalArgumentException("includeDepth cannot be larger than libraryCount, each layer needs a library");
+        }
+        if (params.measureCount < 0 || params.valueSetCount < 1 || params.valueSetExpansionSize < 1
+                || params.patientsPerMeasure < 0) {
+            throw new IllegalArgumentException(
+                    "valueSetCount and valueSetExpansionSize must be at least 1, measureCount and patientsPerMeasure at least 0");
+        }
+    }
+
+    /*
+     * Spreads the libraries evenly over the layers; library i is in layer i * includeDepth / libraryCount.
+     */
+    private int getLayerOf(int libraryIndex) {
+        return (int) ((long) libraryIndex * params.includeDepth / params.libraryCount);
+    }
+
+    private List<String> getLayer(int layer) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < params.libraryCount; i++) {
+            if (getLayerOf(i) == layer) {
+                names.add(getLibraryName(i));
+            }
+        }
+        return names;
+    }
+
+    private List<List<String>> buildIncludeGraph() {
+        List<List<String>> layers = new ArrayList<>();
+        for (int layer = 0; layer < params.includeDepth; layer++) {
+            layers.add(getLayer(layer));
+        }
+        Random random = new Random(params.seed);
+        List<List<String>> includes = new ArrayList<>();
+        for (int i = 0; i < params.libraryCount; i++) {
+            int layer = getLayerOf(i);
+            includes.add(layer == 0 ? Collections.emptyList() : pick(layers.get(layer - 1), random));
+        }
+        return includes;
+    }
+
+    private List<String> pick(List<String> candidates, Random random) {
+        List<String> shuffled = new ArrayList<>(candidates);
+        Collections.shuffle(shuffled, random);
+        List<String> picked = new ArrayList<>(shuffled.subList(0, Math.min(params.includeFanOut, shuffled.size())));
+        Collections.sort(picked);
+        return picked;
+    }
+
+    private String getLibraryName(int index) {
+        return String.format("%s%04d", LIBRARY_PREFIX, index);
+    }
+
+    private String getMeasureName(int index) {
+        return String.format("%s%04d", MEASURE_PREFIX, index);
+    }
+
+    private String getValueSetId(int index) {
+        return VALUESET_PREFIX + (index % params.valueSetCount);
+    }
+
+    private String getValueSetUrl(int index) {
+        return params.canonicalBase + "/ValueSet/" + getValueSetId(index);
+    }
+
+    private String getCode(int valueSetIndex, int codeIndex) {
+        return String.format("vs%d-c%d", valueSetIndex % params.valueSetCount, codeIndex);
+    }
+
+    private String path(String... elements) {
+        String result = params.igPath;
+        for (String element : elements) {
+            result = FilenameUtils.concat(result, element);
+        }
+        return result;
+    }
+
+    private void writeImplementationGuide() {
+        ImplementationGuide ig = new ImplementationGuide();
+        ig.setId(params.packageId);
+        ig.setUrl(params.canonicalBase + "/ImplementationGuide/" + params.packageId);
+        ig.setVersion(VERSION);
+        ig.setName("SyntheticIG");
+        ig.setTitle("Synthetic Implementation Guide");
+        ig.setStatus(Enumerations.PublicationStatus.DRAFT);
+        ig.setPackageId(params.packageId);
+        ig.addFhirVersion(Enumerations.FHIRVersion._4_0_1);
+        ig.getDefinition().getPage().setNameUrl("toc.html").setTitle("Table of Contents")
+                .setGeneration(ImplementationGuide.GuidePageGeneration.HTML);
+        IOUtils.writeResource(ig, path("input"), params.outputEncoding, fhirContext, false, "synthetic-ig");
+
+        String ini = "[IG]\n"
+                + "ig = input/synthetic-ig" + IOUtils.getFileExtension(params.outputEncoding) + "\n"
+                + "fhir-version=4.0.1\n";
+        try {
+            FileUtils.writeStringToFile(new File(path("ig.ini")), ini, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing ig.ini: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeValueSet(int index) {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId(getValueSetId(index));
+        valueSet.setUrl(getValueSetUrl(index));
+        valueSet.setVersion(VERSION);
+        valueSet.setName(String.format("SyntheticValueSet%d", index));
+        valueSet.setStatus(Enumerations.PublicationStatus.ACTIVE);
+        ValueSet.ConceptSetComponent include = valueSet.getCompose().addInclude().setSystem(codeSystemUrl);
+        valueSet.getExpansion().setTimestamp(new Date()).setTotal(params.valueSetExpansionSize);
+        for (int c = 0; c < params.valueSetExpansionSize; c++) {
+            String code = getCode(index, c);
+            include.addConcept().setCode(code).setDisplay("Synthetic code " + code);
+            valueSet.getExpansion().addContains().setSystem(codeSystemUrl).setCode(code).setDisplay("Synthetic code " + code);
+        }
+        IOUtils.writeResource(valueSet, path("input", "vocabulary", "valueset"), params.outputEncoding, fhirContext,
+                false, "valueset-" + valueSet.getId());
+    }
+
+    private StringBuilder buildCqlHeader(String name, List<String> includes, int valueSetIndex) {
+        StringBuilder cql = new StringBuilder();
+        cql.append("library ").append(name).append(" version '").append(VERSION).append("'\n\n");
+        cql.append("using FHIR version '4.0.1'\n\n");
+        cql.append("include FHIRHelpers version '4.0.1' called FHIRHelpers\n");
+        for (String include : includes) {
+            cql.append("include ").append(include).append(" version '").append(VERSION).append("' called ")
+                    .append(include).append('\n');
+        }
+        cql.append('\n');
+        cql.append("valueset \"Encounter Codes\": '").append(getValueSetUrl(valueSetIndex)).append("'\n");
+        cql.append("valueset \"Condition Codes\": '").append(getValueSetUrl(valueSetIndex + 1)).append("'\n\n");
+        cql.append("parameter \"Measurement Period\" Interval<DateTime>\n");
+        cql.append("  default Interval[@").append(MEASUREMENT_PERIOD_START).append("T00:00:00.0, @")
+                .append(MEASUREMENT_PERIOD_END).append("T23:59:59.999]\n\n");
+        cql.append("context Patient\n\n");
+        cql.append("define \"Qualifying Encounters\":\n");
+        cql.append("  [Encounter: \"Encounter Codes\"] Encounter\n");
+        cql.append("    where Encounter.status = 'finished'\n");
+        cql.append("      and Encounter.period ends during \"Measurement Period\"\n\n");
+        cql.append("define \"Qualifying Conditions\":\n");
+        cql.append("  [Condition: \"Condition Codes\"]\n\n");
+        return cql;
+    }
+
+    private static void appendIncludedCriteria(StringBuilder cql, List<String> includes) {
+        for (String include : includes) {
+            cql.append("\n    or ").append(include).append(".\"Qualifies\"");
+        }
+    }
+
+    private String buildSharedLibraryCql(int index, List<String> includes) {
+        StringBuilder cql = buildCqlHeader(getLibraryName(index), includes, index * 2);
+        cql.append("define \"Qualifies\":\n");
+        cql.append("  exists \"Qualifying Encounters\"");
+        appendIncludedCriteria(cql, includes);
+        cql.append("\n");
+        return cql.toString();
+    }
+
+    private String buildMeasureLibraryCql(int index, List<String> includes) {
+        StringBuilder cql = buildCqlHeader(getMeasureName(index), includes, getMeasureValueSetIndex(index));
+        cql.append("define \"Initial Population\":\n");
+        cql.append("  exists \"Qualifying Encounters\"");
+        appendIncludedCriteria(cql, includes);
+        cql.append("\n\n");
+        cql.append("define \"Denominator\":\n");
+        cql.append("  \"Initial Population\"\n\n");
+        cql.append("define \"Numerator\":\n");
+        cql.append("  exists \"Qualifying Conditions\"\n");
+        return cql.toString();
+    }
+
+    private int getMeasureValueSetIndex(int measureIndex) {
+        return (params.libraryCount + measureIndex) * 2;
+    }
+
+    private void writeLibrary(String name, String cql) {
+        String cqlPath = path("input", "cql");
+        IOUtils.ensurePath(cqlPath);
+        IOUtils.writeCqlToFile(cql, FilenameUtils.concat(cqlPath, name + ".cql"));
+
+        Library library = new Library();
+        library.setId(name);
+        library.setUrl(params.canonicalBase + "/Library/" + name);
+        library.setVersion(VERSION);
+        library.setName(name);
+        library.setStatus(Enumerations.PublicationStatus.ACTIVE);
+        library.setType(new CodeableConcept(
+                new Coding("http://terminology.hl7.org/CodeSystem/library-type", "logic-library", null)));
+        library.addContent().setContentType("text/cql").setUrl("../cql/" + name + ".cql");
+        IOUtils.writeResource(library, path("input", "resources", "library"), params.outputEncoding, fhirContext, false);
+    }
+
+    private void writeMeasure(String name) {
+        Measure measure = new Measure();
+        measure.setId(name);
+        measure.setUrl(params.canonicalBase + "/Measure/" + name);
+        measure.setVersion(VERSION);
+        measure.setName(name);
+        measure.setTitle("Synthetic measure " + name);
+        measure.setStatus(Enumerations.PublicationStatus.ACTIVE);
+        measure.addLibrary(params.canonicalBase + "/Library/" + name);
+        measure.setScoring(new CodeableConcept(
+                new Coding("http://terminology.hl7.org/CodeSystem/measure-scoring", "proportion", null)));
+        Measure.MeasureGroupComponent group = measure.addGroup();
+        for (String population : new String[] {"initial-population", "denominator", "numerator"}) {
+            group.addPopulation()
+                    .setCode(new CodeableConcept(new Coding(
+                            "http://terminology.hl7.org/CodeSystem/measure-population", population, null)))
+                    .setCriteria(new Expression().setLanguage("text/cql-identifier")
+                            .setExpression(getCriteriaExpression(population)));
+        }
+        IOUtils.writeResource(measure, path("input", "resources", "measure"), params.outputEncoding, fhirContext, false);
+    }
+
+    private static String getCriteriaExpression(String population) {
+        switch (population) {
+            case "initial-population":
+                return "Initial Population";
+            case "denominator":
+                return "Denominator";
+            default:
+                return "Numerator";
+        }
+    }
+
+    private void writeTestCase(int measureIndex, int patientIndex) {
+        String measureName = getMeasureName(measureIndex);
+        String patientId = String.format("%s-patient-%d", measureName.toLowerCase(), patientIndex);
+        boolean inNumerator = patientIndex % 2 == 0;
+        int valueSetIndex = getMeasureValueSetIndex(measureIndex);
+        String testCasePath = path("input", "tests", "measure", measureName, patientId);
+
+        Patient patient = new Patient();
+        patient.setId(patientId);
+        patient.setGender(patientIndex % 3 == 0 ? Enumerations.AdministrativeGender.FEMALE : Enumerations.AdministrativeGender.MALE);
+        patient.setBirthDateElement(new DateType(String.format("19%02d-06-15", 40 + patientIndex % 50)));
+        patient.addName().setFamily("Synthetic").addGiven("Patient " + patientIndex);
+        IOUtils.writeResource(patient, FilenameUtils.concat(testCasePath, "Patient"), params.outputEncoding, fhirContext, false);
+
+        Encounter encounter = new Encounter();
+        encounter.setId(patientId + "-encounter");
+        encounter.setStatus(Encounter.EncounterStatus.FINISHED);
+        encounter.setClass_(new Coding("http://terminology.hl7.org/CodeSystem/v3-ActCode", "AMB", "ambulatory"));
+        encounter.addType(new CodeableConcept(new Coding(codeSystemUrl,
+                getCode(valueSetIndex, patientIndex % params.valueSetExpansionSize), null)));
+        encounter.setSubject(new Reference("Patient/" + patientId));
+        encounter.setPeriod(new Period().setStartElement(new DateTimeType("2024-03-01T09:00:00Z"))
+                .setEndElement(new DateTimeType("2024-03-01T10:00:00Z")));
+        IOUtils.writeResource(encounter, FilenameUtils.concat(testCasePath, "Encounter"), params.outputEncoding, fhirContext, false);
+
+        if (inNumerator) {
+            Condition condition = new Condition();
+            condition.setId(patientId + "-condition");
+            condition.setCode(new CodeableConcept(new Coding(codeSystemUrl,
+                    getCode(valueSetIndex + 1, patientIndex % params.valueSetExpansionSize), null)));
+            condition.setSubject(new Reference("Patient/" + patientId));
+            condition.setOnset(new DateTimeType("2024-02-01"));
+            IOUtils.writeResource(condition, FilenameUtils.concat(testCasePath, "Condition"), params.outputEncoding, fhirContext, false);
+        }
+
+        MeasureReport report = new MeasureReport();
+        report.setId(patientId + "-expected");
+        report.setStatus(MeasureReport.MeasureReportStatus.COMPLETE);
+        report.setType(MeasureReport.MeasureReportType.INDIVIDUAL);
+        report.setMeasure(params.canonicalBase + "/Measure/" + measureName);
+        report.setSubject(new Reference("Patient/" + patientId));
+        report.setPeriod(new Period().setStartElement(new DateTimeType(MEASUREMENT_PERIOD_START))
+                .setEndElement(new DateTimeType(MEASUREMENT_PERIOD_END)));
+        MeasureReport.MeasureReportGroupComponent group = report.addGroup();
+        group.addPopulation().setCode(new CodeableConcept(new Coding(
+                "http://terminology.hl7.org/CodeSystem/measure-population", "initial-population", null))).setCount(1);
+        group.addPopulation().setCode(new CodeableConcept(new Coding(
+                "http://terminology.hl7.org/CodeSystem/measure-population", "denominator", null))).setCount(1);
+        group.addPopulation().setCode(new CodeableConcept(new Coding(
+                "http://terminology.hl7.org/CodeSystem/measure-population", "numerator", null))).setCount(inNumerator ? 1 : 0);
+        IOUtils.writeResource(report, FilenameUtils.concat(testCasePath, "MeasureReport"), params.outputEncoding, fhirContext, false);
+    }
+}
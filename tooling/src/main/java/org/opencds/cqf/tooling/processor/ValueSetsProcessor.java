@@ -1,78 +1,127 @@
 package org.opencds.cqf.tooling.processor;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.BundleUtil;
 import org.cqframework.cql.cql2elm.CqlCompilerException;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
+import org.opencds.cqf.tooling.utilities.ArtifactRecord;
+import org.opencds.cqf.tooling.utilities.ArtifactRecordMap;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 public class ValueSetsProcessor {
-    private static Map<String, IBaseResource> copyToUrls(List<IBaseResource> valueSets, FhirContext fhirContext) {
+    private static Map<String, ArtifactRecord> copyToUrls(List<String> paths, FhirContext fhirContext) {
         switch (fhirContext.getVersion().getVersion()) {
         case DSTU3:
-            return copyToStu3Urls(valueSets, fhirContext);
         case R4:
-            return copyToR4Urls(valueSets, fhirContext);
+            break;
         default:
             throw new IllegalArgumentException(
                     "Unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
         }
-    }
 
-    private static Map<String, IBaseResource> copyToStu3Urls(List<IBaseResource> valueSets, FhirContext fhirContext) {
-        Map<String, IBaseResource> valueSetUrls = new HashMap<String, IBaseResource>();
-        for (IBaseResource resource : valueSets) {
-            if (resource instanceof org.hl7.fhir.dstu3.model.ValueSet) {
-                valueSetUrls.putIfAbsent(((org.hl7.fhir.dstu3.model.ValueSet)resource).getUrl(), resource);
-            } else if (resource instanceof org.hl7.fhir.dstu3.model.Bundle) {
-                org.hl7.fhir.dstu3.model.Bundle bundle = (org.hl7.fhir.dstu3.model.Bundle) resource; 
-                for (org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent bundleEntry : bundle.getEntry()) {
-                    org.hl7.fhir.dstu3.model.ValueSet valueSet = (org.hl7.fhir.dstu3.model.ValueSet)bundleEntry.getResource();
-                    valueSetUrls.putIfAbsent((valueSet).getUrl(), valueSet);
-                }
+        Map<String, ArtifactRecord> valueSetUrls = new HashMap<>();
+        for (String path : paths) {
+            IBaseResource resource = IOUtils.readResource(path, fhirContext);
+            for (IBaseResource valueSet : getValueSets(resource, fhirContext)) {
+                ArtifactRecord record = ArtifactRecord.of(valueSet, path, fhirContext);
+                valueSetUrls.putIfAbsent(record.getUrl(), record);
             }
         }
         return valueSetUrls;
     }
 
-    private static Map<String, IBaseResource> copyToR4Urls(List<IBaseResource> valueSets, FhirContext fhirContext) {
-        Map<String, IBaseResource> valueSetUrls = new HashMap<String, IBaseResource>();
-        for (IBaseResource resource : valueSets) {
-            if (resource instanceof org.hl7.fhir.r4.model.ValueSet) {
-                valueSetUrls.putIfAbsent(((org.hl7.fhir.r4.model.ValueSet)resource).getUrl(), resource);
-            } else if (resource instanceof org.hl7.fhir.r4.model.Bundle) {
-                org.hl7.fhir.r4.model.Bundle bundle = (org.hl7.fhir.r4.model.Bundle) resource; 
-                for (org.hl7.fhir.r4.model.Bundle.BundleEntryComponent bundleEntry : bundle.getEntry()) {
-                    org.hl7.fhir.r4.model.ValueSet valueSet = (org.hl7.fhir.r4.model.ValueSet)bundleEntry.getResource();
-                    valueSetUrls.putIfAbsent((valueSet).getUrl(), valueSet);
+    // the ValueSet, or the ValueSets of the Bundle
+    private static List<IBaseResource> getValueSets(IBaseResource resource, FhirContext fhirContext) {
+        if (resource == null) {
+            return Collections.emptyList();
+        }
+        if (resource instanceof IBaseBundle) {
+            return BundleUtil.toListOfResources(fhirContext, (IBaseBundle) resource).stream()
+                    .filter(entry -> "ValueSet".equals(entry.fhirType()))
+                    .collect(Collectors.toList());
+        }
+        return "ValueSet".equals(resource.fhirType()) ? List.of(resource) : Collections.emptyList();
+    }
+
+    // bundle -> its ValueSets by url, indexed once per read of the bundle; weak, so an evicted bundle is not kept
+    private static final Map<IBaseResource, Map<String, IBaseResource>> bundleValueSets =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    static IBaseResource readValueSet(ArtifactRecord record, FhirContext fhirContext) {
+        IBaseResource resource = IOUtils.readArtifact(record, fhirContext);
+        if (resource instanceof IBaseBundle) {
+            return record.getUrl() != null ? getBundleValueSets(resource, fhirContext).get(record.getUrl()) : null;
+        }
+        return resource;
+    }
+
+    private static Map<String, IBaseResource> getBundleValueSets(IBaseResource bundle, FhirContext fhirContext) {
+        return bundleValueSets.computeIfAbsent(bundle, key -> {
+            Map<String, IBaseResource> valueSets = new HashMap<>();
+            for (IBaseResource valueSet : getValueSets(key, fhirContext)) {
+                String url = ResourceUtils.getUrl(valueSet, fhirContext);
+                if (url != null) {
+                    valueSets.putIfAbsent(url, valueSet);
                 }
             }
-        }
-        return valueSetUrls;
+            return valueSets;
+        });
     }
 
-    private static Map<String, IBaseResource> cachedValueSets = null;
+    private static Map<String, ArtifactRecord> cachedValueSets = null;
+    private static ArtifactRecordMap cachedValueSetMap = null;
+    private static FhirContext cachedValueSetContext = null;
+    /**
+     * The ValueSets of the IG by url. The map keeps the {@link ArtifactRecord}s of the ValueSets, which are read from
+     * their files when requested, so a ValueSet may be read again and changes made to it in memory are not kept.
+     */
     public static Map<String, IBaseResource> getCachedValueSets(FhirContext fhirContext) {
-        if (cachedValueSets == null) {
-            IntitializeCachedValueSets(fhirContext);
+        Map<String, ArtifactRecord> records = getCachedValueSetRecords(fhirContext);
+        ArtifactRecordMap result = cachedValueSetMap;
+        // cleared with the records
+        if (result == null || cachedValueSetContext != fhirContext) {
+            result = new ArtifactRecordMap(records, record -> readValueSet(record, fhirContext));
+            cachedValueSetMap = result;
+            cachedValueSetContext = fhirContext;
         }
-        return cachedValueSets;
+        return result;
     }
 
-    private static void IntitializeCachedValueSets(FhirContext fhirContext) {
+    public static Map<String, ArtifactRecord> getCachedValueSetRecords(FhirContext fhirContext) {
+        Map<String, ArtifactRecord> result = cachedValueSets;
+        if (result == null) {
+            result = IntitializeCachedValueSets(fhirContext);
+        }
+        return result;
+    }
+
+    public static void clearCachedValueSets() {
+        cachedValueSets = null;
+        cachedValueSetMap = null;
+        cachedValueSetContext = null;
+        bundleValueSets.clear();
+        DependencyService.clearTerminology();
+    }
+
+    private static Map<String, ArtifactRecord> IntitializeCachedValueSets(FhirContext fhirContext) {
         List<String> allValueSetPaths = IOUtils.getTerminologyPaths(fhirContext).stream().collect(Collectors.toList());
-        List<IBaseResource> allValueSets = IOUtils.readResources(allValueSetPaths, fhirContext); 
-            
-        cachedValueSets = ValueSetsProcessor.copyToUrls(allValueSets, fhirContext);
+
+        Map<String, ArtifactRecord> result = Collections.unmodifiableMap(ValueSetsProcessor.copyToUrls(allValueSetPaths, fhirContext));
+        cachedValueSets = result;
+        return result;
     }
     
     public static String getId(String baseId) {
@@ -92,7 +141,7 @@ public class ValueSetsProcessor {
         Set<String> missingDependencies = new HashSet<>();
         Map<String, IBaseResource> dependencies = ResourceUtils.getDepValueSetResources(resource, fhirContext, includeDependencies, missingDependencies);
         for (IBaseResource dependency : dependencies.values()) {
-            resources.putIfAbsent(resource.fhirType() + '/' + dependency.getIdElement().getIdPart(), resource);
+            resources.putIfAbsent(dependency.fhirType() + '/' + dependency.getIdElement().getIdPart(), dependency);
         }
         if (missingDependencies.size() > 0) {
             throw new CqlTranslatorException(missingDependencies.stream().collect(Collectors.toList()), CqlCompilerException.ErrorSeverity.Warning);
@@ -38,6 +38,8 @@ public class RefreshIGArgumentProcessor {
     public static final String[] SHOULD_ADD_TIMESTAMP_OPTIONS = { "ts", "timestamp" };
     public static final String[] SHOULD_INCLUDE_ERRORS = { "x", "include-errors" };
     public static final String[] INCLUDE_POP_LEVEL_DATA_REQUIREMENTS_OPTIONS = { "pldr", "popDataRequirements" };
+    public static final String[] DEDUPLICATE_BUNDLES_OPTIONS = { "dd", "deduplicate-bundles" };
+    public static final String[] ARCHIVE_FORMAT_OPTIONS = { "ar", "archive" };
 
 
     @SuppressWarnings("unused")
@@ -57,6 +59,7 @@ public class RefreshIGArgumentProcessor {
         OptionSpecBuilder measureOutputPathBuilder = parser.acceptsAll(asList(MEASURE_OUTPUT_PATH_OPTIONS),"If omitted, the measures will overwrite any existing measures");
         OptionSpecBuilder shouldApplySoftwareSystemStampBuilder = parser.acceptsAll(asList(SHOULD_APPLY_SOFTWARE_SYSTEM_STAMP_OPTIONS),"Indicates whether refreshed Measure and Library resources should be stamped with the 'cqf-tooling' stamp via the crmi-softwaresystem Extension.");
         OptionSpecBuilder shouldAddTimestampBuilder = parser.acceptsAll(asList(SHOULD_ADD_TIMESTAMP_OPTIONS),"Indicates whether refreshed Bundle should attach timestamp of creation.");
+        OptionSpecBuilder archiveFormatBuilder = parser.acceptsAll(asList(ARCHIVE_FORMAT_OPTIONS), "If present, bundle and package output is written to a single bundles.zip or bundles.tgz archive in the IG root instead of the bundles directory.");
         OptionSpecBuilder shouldVerboseMessaging = parser.acceptsAll(asList(SHOULD_APPLY_SOFTWARE_SYSTEM_STAMP_OPTIONS),"Indicates that a complete list of errors during library, measure, and test case refresh are included upon failure.");
 
         OptionSpec<String> ini = iniBuilder.withRequiredArg().describedAs("Path to the IG ini file");
@@ -71,6 +74,7 @@ public class RefreshIGArgumentProcessor {
         OptionSpec<String> measureOutputPath = measureOutputPathBuilder.withOptionalArg().describedAs("path to the output directory for updated measures");
         OptionSpec<String> shouldApplySoftwareSystemStamp = shouldApplySoftwareSystemStampBuilder.withOptionalArg().describedAs("Indicates whether refreshed Measure and Library resources should be stamped with the 'cqf-tooling' stamp via the crmi-softwaresystem Extension");
         OptionSpec<String> shouldAddTimestampOptions = shouldAddTimestampBuilder.withOptionalArg().describedAs("Indicates whether refreshed Bundle should attach timestamp of creation");
+        OptionSpec<String> archiveFormat = archiveFormatBuilder.withRequiredArg().describedAs("archive format: zip or tgz");
         OptionSpec<String> shouldVerboseMessagingOptions = shouldVerboseMessaging.withOptionalArg().describedAs("Indicates that a complete list of errors during library, measure, and test case refresh are included upon failure.");
 
 
@@ -86,6 +90,7 @@ public class RefreshIGArgumentProcessor {
         parser.acceptsAll(asList(VERSIONED_OPTIONS),"If omitted resources must be uniquely named.");
         parser.acceptsAll(asList(SHOULD_INCLUDE_ERRORS),"Specifies whether to show errors during library, measure, and test case refresh.");
         parser.acceptsAll(asList(INCLUDE_POP_LEVEL_DATA_REQUIREMENTS_OPTIONS), "If omitted, the measures will not include population-level data requirements");
+        parser.acceptsAll(asList(DEDUPLICATE_BUNDLES_OPTIONS), "If present, bundles are written as manifests referencing a single content-addressed copy of each resource in bundles/.objects.");
 
         OptionSpec<Void> help = parser.acceptsAll(asList(ArgUtils.HELP_OPTIONS), "Show this help page").forHelp();
 
@@ -126,6 +131,11 @@ public class RefreshIGArgumentProcessor {
         boolean includePatientScenarios = options.has(INCLUDE_PATIENT_SCENARIOS_OPTIONS[0]);
         boolean versioned = options.has(VERSIONED_OPTIONS[0]);
         boolean includePopLevelDataRequirements = options.has(INCLUDE_POP_LEVEL_DATA_REQUIREMENTS_OPTIONS[0]);
+        boolean deduplicateBundles = options.has(DEDUPLICATE_BUNDLES_OPTIONS[0]);
+        String archiveFormat = (String)options.valueOf(ARCHIVE_FORMAT_OPTIONS[0]);
+        if (archiveFormat != null && !archiveFormat.equalsIgnoreCase("zip") && !archiveFormat.equalsIgnoreCase("tgz")) {
+            throw new IllegalArgumentException("Unsupported archive format: " + archiveFormat + " (expected zip or tgz)");
+        }
         String fhirUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
         String measureToRefreshPath = (String)options.valueOf(MEASURE_TO_REFRESH_PATH[0]);
 
@@ -191,6 +201,8 @@ public class RefreshIGArgumentProcessor {
         ip.updatedVersion = updatedVersion;
         ip.verboseMessaging = verboseMessaging;
         ip.includePopulationLevelDataRequirements = includePopLevelDataRequirements;
+        ip.deduplicateBundles = deduplicateBundles;
+        ip.archiveFormat = archiveFormat == null ? null : archiveFormat.toLowerCase();
         return ip;
     }
 }
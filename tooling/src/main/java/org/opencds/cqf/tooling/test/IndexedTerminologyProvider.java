@@ -0,0 +1,178 @@
+package org.opencds.cqf.tooling.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Terminology lookups for local test evaluation backed by a precomputed code to ValueSet membership index.
+ * The index is built once from the expansions (or, when no expansion is present, the enumerated compose
+ * concepts) of the supplied ValueSets, so membership checks are hash lookups rather than expansion scans.
+ */
+public class IndexedTerminologyProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexedTerminologyProvider.class);
+
+    private final Map<String, Set<Code>> expansionsByUrl = new HashMap<>();
+    private final Map<Code, Set<String>> valueSetsByCode = new HashMap<>();
+    private final Map<String, Set<String>> valueSetsByCodeOnly = new HashMap<>();
+
+    public IndexedTerminologyProvider(FhirContext fhirContext, Collection<? extends IBaseResource> valueSets) {
+        Objects.requireNonNull(fhirContext, "fhirContext can not be null.");
+        FhirTerser terser = new FhirTerser(fhirContext);
+        if (valueSets != null) {
+            for (IBaseResource valueSet : valueSets) {
+                if (valueSet != null && "ValueSet".equals(valueSet.fhirType())) {
+                    index(fhirContext, terser, valueSet);
+                }
+            }
+        }
+    }
+
+    public static IndexedTerminologyProvider fromBundles(FhirContext fhirContext, IBaseBundle... bundles) {
+        List<IBaseResource> valueSets = new ArrayList<>();
+        for (IBaseBundle bundle : bundles) {
+            if (bundle != null) {
+                valueSets.addAll(BundleUtil.toListOfResourcesOfType(fhirContext, bundle,
+                        fhirContext.getResourceDefinition("ValueSet").getImplementingClass()));
+            }
+        }
+        return new IndexedTerminologyProvider(fhirContext, valueSets);
+    }
+
+    private void index(FhirContext fhirContext, FhirTerser terser, IBaseResource valueSet) {
+        String url = ResourceUtils.getUrl(valueSet, fhirContext);
+        if (url == null) {
+            logger.warn("Skipping ValueSet {} without a url", valueSet.getIdElement().getIdPart());
+            return;
+        }
+
+        Set<Code> codes = new LinkedHashSet<>();
+        List<IBase> contains = terser.getValues(valueSet, "expansion.contains");
+        if (!contains.isEmpty()) {
+            collectExpansionCodes(terser, contains, codes);
+        } else {
+            for (IBase include : terser.getValues(valueSet, "compose.include")) {
+                String system = terser.getSinglePrimitiveValueOrNull(include, "system");
+                if (!terser.getValues(include, "filter").isEmpty() || !terser.getValues(include, "valueSet").isEmpty()) {
+                    logger.warn("ValueSet {} is not expanded and uses filters or imports; only enumerated concepts are indexed", url);
+                }
+                for (IBase concept : terser.getValues(include, "concept")) {
+                    addCode(codes, system, terser.getSinglePrimitiveValueOrNull(concept, "code"));
+                }
+            }
+        }
+
+        register(url, codes);
+        String version = ResourceUtils.getVersion(valueSet, fhirContext);
+        if (version != null) {
+            register(url + "|" + version, codes);
+        }
+    }
+
+    private static void collectExpansionCodes(FhirTerser terser, List<IBase> contains, Set<Code> codes) {
+        for (IBase entry : contains) {
+            addCode(codes, terser.getSinglePrimitiveValueOrNull(entry, "system"),
+                    terser.getSinglePrimitiveValueOrNull(entry, "code"));
+            List<IBase> nested = terser.getValues(entry, "contains");
+            if (!nested.isEmpty()) {
+                collectExpansionCodes(terser, nested, codes);
+            }
+        }
+    }
+
+    private static void addCode(Set<Code> codes, String system, String code) {
+        if (code != null) {
+            codes.add(new Code(system, code));
+        }
+    }
+
+    private void register(String url, Set<Code> codes) {
+        expansionsByUrl.computeIfAbsent(url, k -> new LinkedHashSet<>()).addAll(codes);
+        for (Code code : codes) {
+            valueSetsByCode.computeIfAbsent(code, k -> new LinkedHashSet<>()).add(url);
+            valueSetsByCodeOnly.computeIfAbsent(code.getCode(), k -> new LinkedHashSet<>()).add(url);
+        }
+    }
+
+    public boolean hasValueSet(String valueSetUrl) {
+        return expansionsByUrl.containsKey(valueSetUrl);
+    }
+
+    /**
+     * Returns true if the code is a member of the ValueSet. When system is null any code system matches.
+     */
+    public boolean in(String system, String code, String valueSetUrl) {
+        return getValueSetsForCode(system, code).contains(valueSetUrl);
+    }
+
+    public Set<String> getValueSetsForCode(String system, String code) {
+        if (code == null) {
+            return Collections.emptySet();
+        }
+        Set<String> urls = system == null ? valueSetsByCodeOnly.get(code) : valueSetsByCode.get(new Code(system, code));
+        return urls == null ? Collections.emptySet() : Collections.unmodifiableSet(urls);
+    }
+
+    public Set<Code> expand(String valueSetUrl) {
+        Set<Code> codes = expansionsByUrl.get(valueSetUrl);
+        return codes == null ? Collections.emptySet() : Collections.unmodifiableSet(codes);
+    }
+
+    public static final class Code {
+        private final String system;
+        private final String code;
+
+        public Code(String system, String code) {
+            this.system = system;
+            this.code = Objects.requireNonNull(code, "code can not be null.");
+        }
+
+        public String getSystem() {
+            return system;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Code)) {
+                return false;
+            }
+            Code other = (Code) o;
+            return Objects.equals(system, other.system) && code.equals(other.code);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(system, code);
+        }
+
+        @Override
+        public String toString() {
+            return system == null ? code : system + "|" + code;
+        }
+    }
+}
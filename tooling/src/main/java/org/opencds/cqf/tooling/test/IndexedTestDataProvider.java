@@ -0,0 +1,231 @@
+package org.opencds.cqf.tooling.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.test.IndexedTerminologyProvider.Code;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * In-memory data source for evaluating artifacts against test case bundles without a FHIR server.
+ * Resources are indexed once, on construction, by resource type, subject (patient) and the codings of
+ * the resource's primary code element. Retrieves by type, subject, code or ValueSet are then hash lookups
+ * rather than scans over the bundle entries. ValueSet retrieves are resolved through an
+ * {@link IndexedTerminologyProvider}.
+ */
+public class IndexedTestDataProvider {
+
+    private static final String[] SUBJECT_PATHS = { "subject", "patient", "beneficiary" };
+
+    // Primary code elements that are not named "code"; mirrors the primaryCodePath entries of the FHIR model info
+    private static final Map<String, String> PRIMARY_CODE_PATHS = Map.of(
+            "Encounter", "type",
+            "Coverage", "type",
+            "Immunization", "vaccineCode",
+            "ImmunizationRecommendation", "vaccineCode",
+            "MedicationAdministration", "medication",
+            "MedicationDispense", "medication",
+            "MedicationRequest", "medication",
+            "MedicationStatement", "medication");
+
+    private final FhirContext fhirContext;
+    private final FhirTerser terser;
+    private final IndexedTerminologyProvider terminologyProvider;
+    private final Map<String, TypeIndex> indexesByType = new HashMap<>();
+
+    public IndexedTestDataProvider(FhirContext fhirContext, Collection<? extends IBaseResource> resources,
+                                   IndexedTerminologyProvider terminologyProvider) {
+        this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext can not be null.");
+        this.terser = new FhirTerser(fhirContext);
+        this.terminologyProvider = terminologyProvider;
+        if (resources != null) {
+            for (IBaseResource resource : resources) {
+                if (resource != null) {
+                    index(resource);
+                }
+            }
+        }
+    }
+
+    public static IndexedTestDataProvider fromBundle(FhirContext fhirContext, IBaseBundle bundle,
+                                                     IndexedTerminologyProvider terminologyProvider) {
+        Objects.requireNonNull(bundle, "bundle can not be null.");
+        return new IndexedTestDataProvider(fhirContext, BundleUtil.toListOfResources(fhirContext, bundle),
+                terminologyProvider);
+    }
+
+    private void index(IBaseResource resource) {
+        String resourceType = resource.fhirType();
+        TypeIndex typeIndex = indexesByType.computeIfAbsent(resourceType, k -> new TypeIndex());
+        String subject = getSubjectId(resource);
+        Set<Code> codes = getPrimaryCodes(resource);
+        typeIndex.add(resource, subject, codes);
+    }
+
+    private String getSubjectId(IBaseResource resource) {
+        if ("Patient".equals(resource.fhirType())) {
+            return resource.getIdElement().getIdPart();
+        }
+
+        for (String path : SUBJECT_PATHS) {
+            for (IBase value : getChildValues(resource, path)) {
+                if (value instanceof IBaseReference) {
+                    IBaseReference reference = (IBaseReference) value;
+                    if (reference.getReferenceElement() != null && reference.getReferenceElement().getIdPart() != null) {
+                        return reference.getReferenceElement().getIdPart();
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private Set<Code> getPrimaryCodes(IBaseResource resource) {
+        Set<Code> codes = new LinkedHashSet<>();
+        String path = PRIMARY_CODE_PATHS.getOrDefault(resource.fhirType(), "code");
+        for (IBase value : getChildValues(resource, path)) {
+            BaseRuntimeElementDefinition<?> definition = fhirContext.getElementDefinition(value.getClass());
+            String type = definition == null ? null : definition.getName();
+            if ("CodeableConcept".equals(type)) {
+                for (IBase coding : terser.getValues(value, "coding")) {
+                    addCoding(codes, coding);
+                }
+            } else if ("Coding".equals(type)) {
+                addCoding(codes, value);
+            }
+        }
+        return codes;
+    }
+
+    private void addCoding(Set<Code> codes, IBase coding) {
+        String code = terser.getSinglePrimitiveValueOrNull(coding, "code");
+        if (code != null) {
+            codes.add(new Code(terser.getSinglePrimitiveValueOrNull(coding, "system"), code));
+        }
+    }
+
+    private List<IBase> getChildValues(IBaseResource resource, String name) {
+        RuntimeResourceDefinition definition = fhirContext.getResourceDefinition(resource);
+        BaseRuntimeChildDefinition child = definition.getChildByName(name);
+        if (child == null) {
+            child = definition.getChildByName(name + "[x]");
+        }
+        return child == null ? Collections.emptyList() : child.getAccessor().getValues(resource);
+    }
+
+    public Set<String> getResourceTypes() {
+        return Collections.unmodifiableSet(indexesByType.keySet());
+    }
+
+    public IndexedTerminologyProvider getTerminologyProvider() {
+        return terminologyProvider;
+    }
+
+    /**
+     * Returns all resources of the given type, restricted to the given patient when patientId is not null.
+     */
+    public List<IBaseResource> retrieve(String dataType, String patientId) {
+        TypeIndex typeIndex = indexesByType.get(dataType);
+        if (typeIndex == null) {
+            return Collections.emptyList();
+        }
+        return unmodifiable(patientId == null ? typeIndex.all : typeIndex.bySubject.get(patientId));
+    }
+
+    public List<IBaseResource> retrieveByCode(String dataType, String patientId, String system, String code) {
+        TypeIndex typeIndex = indexesByType.get(dataType);
+        if (typeIndex == null || code == null) {
+            return Collections.emptyList();
+        }
+        return unmodifiable(typeIndex.lookup(patientId, new Code(system, code)));
+    }
+
+    public List<IBaseResource> retrieveByValueSet(String dataType, String patientId, String valueSetUrl) {
+        if (terminologyProvider == null) {
+            throw new IllegalStateException("A terminology provider is required to retrieve by ValueSet.");
+        }
+        if (!terminologyProvider.hasValueSet(valueSetUrl)) {
+            throw new IllegalArgumentException(String.format("ValueSet %s is not available to the terminology provider.", valueSetUrl));
+        }
+
+        TypeIndex typeIndex = indexesByType.get(dataType);
+        if (typeIndex == null) {
+            return Collections.emptyList();
+        }
+
+        // A resource may carry several codings from the same ValueSet, so de-duplicate while keeping bundle order
+        Set<IBaseResource> results = new LinkedHashSet<>();
+        for (Code code : terminologyProvider.expand(valueSetUrl)) {
+            List<IBaseResource> matches = typeIndex.lookup(patientId, code);
+            if (matches != null) {
+                results.addAll(matches);
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(results));
+    }
+
+    private static List<IBaseResource> unmodifiable(List<IBaseResource> resources) {
+        return resources == null ? Collections.emptyList() : Collections.unmodifiableList(resources);
+    }
+
+    private static class TypeIndex {
+        private final List<IBaseResource> all = new ArrayList<>();
+        private final Map<String, List<IBaseResource>> bySubject = new HashMap<>();
+        private final Map<Code, List<IBaseResource>> byCode = new HashMap<>();
+        private final Map<String, Map<Code, List<IBaseResource>>> bySubjectAndCode = new HashMap<>();
+
+        private void add(IBaseResource resource, String subject, Set<Code> codes) {
+            all.add(resource);
+            if (subject != null) {
+                bySubject.computeIfAbsent(subject, k -> new ArrayList<>()).add(resource);
+            }
+            for (Code code : codes) {
+                addCode(byCode, code, resource);
+                // Codes are also indexed without a system so system-less comparisons resolve to a single lookup
+                if (code.getSystem() != null) {
+                    addCode(byCode, new Code(null, code.getCode()), resource);
+                }
+                if (subject != null) {
+                    Map<Code, List<IBaseResource>> subjectCodes = bySubjectAndCode.computeIfAbsent(subject, k -> new HashMap<>());
+                    addCode(subjectCodes, code, resource);
+                    if (code.getSystem() != null) {
+                        addCode(subjectCodes, new Code(null, code.getCode()), resource);
+                    }
+                }
+            }
+        }
+
+        private static void addCode(Map<Code, List<IBaseResource>> index, Code code, IBaseResource resource) {
+            List<IBaseResource> resources = index.computeIfAbsent(code, k -> new ArrayList<>());
+            if (resources.isEmpty() || resources.get(resources.size() - 1) != resource) {
+                resources.add(resource);
+            }
+        }
+
+        private List<IBaseResource> lookup(String subject, Code code) {
+            if (subject == null) {
+                return byCode.get(code);
+            }
+            Map<Code, List<IBaseResource>> subjectCodes = bySubjectAndCode.get(subject);
+            return subjectCodes == null ? null : subjectCodes.get(code);
+        }
+    }
+}
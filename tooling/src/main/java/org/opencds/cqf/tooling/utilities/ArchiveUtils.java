@@ -0,0 +1,214 @@
+package org.opencds.cqf.tooling.utilities;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Helpers for reading resources directly from .zip and .tgz archives (e.g. those produced by {@link ArchiveWriter}).
+ * <p>
+ * A file within an archive is addressed as {@code <archive path>!/<entry name>}, e.g.
+ * {@code bundles.zip!/measure/EXM124/EXM124-bundle.json}; such paths can be passed to IOUtils.readResource.
+ * <p>
+ * A gzip stream can only be read from its start, so {@link #readEntry(String)} keeps the entries of the .tgz archives
+ * it read, by archive path and checked against the modification time and size of the archive, up to
+ * {@value #ARCHIVE_CACHE_SIZE_PROPERTY} bytes (by default a sixteenth of the maximum heap). An archive larger than that
+ * is read up to the requested entry instead.
+ */
+public class ArchiveUtils {
+
+    public static final String ENTRY_SEPARATOR = "!/";
+    public static final String ARCHIVE_CACHE_SIZE_PROPERTY = "cqf.tooling.cache.archives.maxBytes";
+
+    private static final long ARCHIVE_CACHE_SIZE = getArchiveCacheSize();
+    private static final Cache<String, TgzEntries> tgzEntries = Caffeine.newBuilder()
+            .maximumWeight(ARCHIVE_CACHE_SIZE)
+            .weigher((String path, TgzEntries entries) -> entries.weight)
+            .build();
+
+    private static final class TgzEntries {
+        private final IOUtils.FileStamp stamp;
+        private final Map<String, byte[]> entries;
+        private final int weight;
+
+        private TgzEntries(IOUtils.FileStamp stamp, Map<String, byte[]> entries, long bytes) {
+            this.stamp = stamp;
+            this.entries = entries;
+            this.weight = (int) Math.min(Math.max(bytes, 1), Integer.MAX_VALUE);
+        }
+    }
+
+    public enum Format { ZIP, TGZ, UNKNOWN }
+
+    private ArchiveUtils() {
+    }
+
+    static long getArchiveCacheSize() {
+        String size = System.getProperty(ARCHIVE_CACHE_SIZE_PROPERTY);
+        if (size == null || size.isEmpty()) {
+            return Runtime.getRuntime().maxMemory() / 16;
+        }
+        try {
+            return Long.parseLong(size);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid value for %s: %s", ARCHIVE_CACHE_SIZE_PROPERTY,
+                    size), e);
+        }
+    }
+
+    /**
+     * Drops the entries kept of the .tgz archives.
+     */
+    public static void clearCache() {
+        tgzEntries.invalidateAll();
+    }
+
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(String entryName, byte[] content) throws IOException;
+    }
+
+    public static Format getFormat(String path) {
+        if (path == null) {
+            return Format.UNKNOWN;
+        }
+        String lowerCasePath = path.toLowerCase();
+        if (lowerCasePath.endsWith(".zip")) {
+            return Format.ZIP;
+        }
+        if (lowerCasePath.endsWith(".tgz") || lowerCasePath.endsWith(".tar.gz")) {
+            return Format.TGZ;
+        }
+        return Format.UNKNOWN;
+    }
+
+    public static boolean isArchive(String path) {
+        return getFormat(path) != Format.UNKNOWN;
+    }
+
+    public static boolean isArchiveEntryPath(String path) {
+        int separatorIndex = path == null ? -1 : path.indexOf(ENTRY_SEPARATOR);
+        return separatorIndex > 0 && isArchive(path.substring(0, separatorIndex));
+    }
+
+    public static String getEntryPath(String archivePath, String entryName) {
+        return archivePath + ENTRY_SEPARATOR + entryName;
+    }
+
+    public static String getArchivePath(String entryPath) {
+        return entryPath.substring(0, entryPath.indexOf(ENTRY_SEPARATOR));
+    }
+
+    public static String getEntryName(String entryPath) {
+        return FilenameUtils.separatorsToUnix(entryPath.substring(entryPath.indexOf(ENTRY_SEPARATOR) + ENTRY_SEPARATOR.length()));
+    }
+
+    /**
+     * Returns the content of the file addressed by the given archive entry path, or null if the entry does not exist.
+     */
+    public static byte[] readEntry(String entryPath) throws IOException {
+        String archivePath = getArchivePath(entryPath);
+        String entryName = getEntryName(entryPath);
+        if (getFormat(archivePath) == Format.ZIP) {
+            try (ZipFile zipFile = new ZipFile(archivePath)) {
+                ZipEntry entry = zipFile.getEntry(entryName);
+                if (entry == null) {
+                    return null;
+                }
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    return in.readAllBytes();
+                }
+            }
+        }
+
+        File archiveFile = new File(archivePath);
+        IOUtils.FileStamp stamp = IOUtils.FileStamp.of(archiveFile);
+        TgzEntries cached = tgzEntries.getIfPresent(archivePath);
+        if (cached == null || !cached.stamp.equals(stamp)) {
+            if (archiveFile.length() > ARCHIVE_CACHE_SIZE) {
+                return readTgzEntry(archiveFile, entryName);
+            }
+            Map<String, byte[]> entries = new HashMap<>();
+            long[] bytes = new long[1];
+            visitEntries(archivePath, (name, content) -> {
+                if (entries.putIfAbsent(name, content) == null) {
+                    bytes[0] += content.length;
+                }
+            });
+            cached = new TgzEntries(stamp, entries, bytes[0]);
+            if (bytes[0] <= ARCHIVE_CACHE_SIZE) {
+                tgzEntries.put(archivePath, cached);
+            }
+        }
+        byte[] content = cached.entries.get(entryName);
+        // a copy, as the caller may change it
+        return content != null ? content.clone() : null;
+    }
+
+    // reads the archive up to the first entry with the name
+    private static byte[] readTgzEntry(File archiveFile, String entryName) throws IOException {
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(new GzipCompressorInputStream(
+                new BufferedInputStream(Files.newInputStream(archiveFile.toPath()))))) {
+            TarArchiveEntry entry;
+            while ((entry = tarIn.getNextEntry()) != null) {
+                if (entry.isFile() && entry.getName().equals(entryName)) {
+                    return tarIn.readAllBytes();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Visits each file in the archive, in archive order, with a single pass over the archive.
+     */
+    public static void visitEntries(String archivePath, EntryVisitor visitor) throws IOException {
+        File archiveFile = new File(archivePath);
+        if (!archiveFile.isFile()) {
+            throw new IllegalArgumentException(String.format("Archive not found: %s", archivePath));
+        }
+
+        switch (getFormat(archivePath)) {
+            case ZIP:
+                try (ZipFile zipFile = new ZipFile(archiveFile)) {
+                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        if (!entry.isDirectory()) {
+                            try (InputStream in = zipFile.getInputStream(entry)) {
+                                visitor.visit(entry.getName(), in.readAllBytes());
+                            }
+                        }
+                    }
+                }
+                break;
+            case TGZ:
+                try (TarArchiveInputStream tarIn = new TarArchiveInputStream(new GzipCompressorInputStream(
+                        new BufferedInputStream(Files.newInputStream(archiveFile.toPath()))))) {
+                    TarArchiveEntry entry;
+                    while ((entry = tarIn.getNextEntry()) != null) {
+                        if (entry.isFile()) {
+                            visitor.visit(entry.getName(), tarIn.readAllBytes());
+                        }
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unsupported archive format: %s (expected .zip, .tgz or .tar.gz)", archivePath));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.opencds.cqf.tooling.utilities;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes bundle and package output directly into a .zip or .tgz archive instead of a tree of loose files.
+ * <p>
+ * Entries are streamed into the archive as they are encoded; zip entries are encoded straight into the archive
+ * stream, tar entries (which need their size up front) are encoded in memory first. Nothing is written to a
+ * temporary file. Writes are synchronized so a single writer can be shared by concurrent bundling tasks.
+ * Use {@link ArchiveUtils} to read resources back out of the archive.
+ */
+public class ArchiveWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveWriter.class);
+
+    private final String archivePath;
+    private final ZipArchiveOutputStream zipOut;
+    private final TarArchiveOutputStream tarOut;
+    private final Set<String> entryNames = new HashSet<>();
+
+    public ArchiveWriter(String archivePath) throws IOException {
+        this.archivePath = archivePath;
+        File archiveFile = new File(archivePath);
+        if (archiveFile.getParentFile() != null) {
+            Files.createDirectories(archiveFile.getParentFile().toPath());
+        }
+
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(archiveFile.toPath()));
+        switch (ArchiveUtils.getFormat(archivePath)) {
+            case ZIP:
+                this.zipOut = new ZipArchiveOutputStream(out);
+                this.tarOut = null;
+                break;
+            case TGZ:
+                this.zipOut = null;
+                this.tarOut = new TarArchiveOutputStream(new GzipCompressorOutputStream(out));
+                this.tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                break;
+            default:
+                out.close();
+                throw new IllegalArgumentException(String.format("Unsupported archive format: %s (expected .zip, .tgz or .tar.gz)", archivePath));
+        }
+    }
+
+    public String getArchivePath() {
+        return archivePath;
+    }
+
+    /**
+     * Returns the archive entry name for a file that would otherwise have been written to filePath under rootPath.
+     */
+    public static String getEntryName(String rootPath, String filePath) {
+        String root = FilenameUtils.separatorsToUnix(FilenameUtils.normalizeNoEndSeparator(rootPath));
+        String file = FilenameUtils.separatorsToUnix(FilenameUtils.normalize(filePath));
+        if (root != null && file != null && file.startsWith(root + "/")) {
+            return file.substring(root.length() + 1);
+        }
+        return file == null ? filePath : file;
+    }
+
+    private boolean addEntryName(String entryName) {
+        if (!entryNames.add(entryName)) {
+            logger.warn("Skipping duplicate entry {} in archive {}", entryName, archivePath);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void writeEntry(String entryName, byte[] content) {
+        String name = FilenameUtils.separatorsToUnix(entryName);
+        if (!addEntryName(name)) {
+            return;
+        }
+
+        try {
+            if (zipOut != null) {
+                zipOut.putArchiveEntry(new ZipArchiveEntry(name));
+                zipOut.write(content);
+                zipOut.closeArchiveEntry();
+            } else {
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setSize(content.length);
+                tarOut.putArchiveEntry(entry);
+                tarOut.write(content);
+                tarOut.closeArchiveEntry();
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException(String.format("Error writing %s to archive %s: %s", name, archivePath, e.getMessage()));
+        }
+    }
+
+    public void writeText(String entryName, String content) {
+        writeEntry(entryName, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the resource to the archive, using the same file name that IOUtils.writeResource would use.
+     *
+     * @param directoryEntryName the directory within the archive
+     * @param fileName           the base file name, or null to use the resource id
+     */
+    public void writeResource(IBaseResource resource, String directoryEntryName, String fileName,
+                              IOUtils.Encoding encoding, FhirContext fhirContext) {
+        String baseName = fileName == null || fileName.isBlank() ? resource.getIdElement().getIdPart() : fileName;
+        String entryName = IOUtils.formatFileName(baseName, encoding, fhirContext);
+        if (directoryEntryName != null && !directoryEntryName.isEmpty()) {
+            entryName = FilenameUtils.separatorsToUnix(directoryEntryName) + "/" + entryName;
+        }
+
+        if (tarOut != null) {
+            writeEntry(entryName, IOUtils.encodeResource(resource, encoding, fhirContext, true));
+            return;
+        }
+
+        synchronized (this) {
+            if (!addEntryName(entryName)) {
+                return;
+            }
+            try {
+                zipOut.putArchiveEntry(new ZipArchiveEntry(entryName));
+                // encode straight into the archive stream; the writer is flushed but not closed so the archive stays open
+                Writer writer = new OutputStreamWriter(zipOut, StandardCharsets.UTF_8);
+                IOUtils.getParser(encoding, fhirContext, true).encodeResourceToWriter(resource, writer);
+                writer.flush();
+                zipOut.closeArchiveEntry();
+            } catch (IOException e) {
+                logger.error(e.getMessage());
+                throw new RuntimeException(String.format("Error writing %s to archive %s: %s", entryName, archivePath, e.getMessage()));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (zipOut != null) {
+            zipOut.close();
+        } else {
+            tarOut.close();
+        }
+        logger.info("Wrote {} entries to {}", entryNames.size(), archivePath);
+    }
+}
@@ -6,6 +6,7 @@ import java.util.List;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import org.opencds.cqf.tooling.exception.HelpRequestedException;
 
 public class ArgUtils {
     public static final String[] HELP_OPTIONS = {"h", "help", "?"};
@@ -19,7 +20,7 @@ public class ArgUtils {
             catch (Exception e) {
             }
 
-            System.exit(0);
+            throw new HelpRequestedException();
         }
 
         return options;
@@ -0,0 +1,108 @@
+package org.opencds.cqf.tooling.utilities;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.TerserUtil;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * What the artifact registries of IOUtils and the ValueSet cache keep of a resource of the IG: its type, id, canonical
+ * url, version, name, source path and depends-on canonicals. The resource itself is read again from its path (through
+ * the resource cache of IOUtils) when it is needed, so the registries do not keep every artifact, with its CQL and ELM
+ * attachments or ValueSet expansion, in memory for the whole run.
+ */
+public class ArtifactRecord {
+    private final String type;
+    private final String id;
+    private final String url;
+    private final String version;
+    private final String name;
+    private final String path;
+    private final List<String> dependencies;
+
+    private ArtifactRecord(String type, String id, String url, String version, String name, String path,
+                           List<String> dependencies) {
+        this.type = type;
+        this.id = id;
+        this.url = url;
+        this.version = version;
+        this.name = name;
+        this.path = path;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * @param path the file the resource was read from (for a resource of a Bundle, the file of the Bundle)
+     */
+    public static ArtifactRecord of(IBaseResource resource, String path, FhirContext fhirContext) {
+        List<String> dependencies;
+        switch (resource.fhirType()) {
+            case "Library":
+            case "Measure":
+                dependencies = Collections.unmodifiableList(ResourceUtils.getDependencies(resource, fhirContext));
+                break;
+            default:
+                dependencies = Collections.emptyList();
+        }
+        return new ArtifactRecord(resource.fhirType(), resource.getIdElement().getIdPart(),
+                getPrimitive(resource, "url", fhirContext), getPrimitive(resource, "version", fhirContext),
+                getPrimitive(resource, "name", fhirContext), path, dependencies);
+    }
+
+    private static String getPrimitive(IBaseResource resource, String element, FhirContext fhirContext) {
+        try {
+            IBase value = TerserUtil.getValueFirstRep(fhirContext, resource, element);
+            return value instanceof IPrimitiveType ? ((IPrimitiveType<?>) value).getValueAsString() : null;
+        } catch (RuntimeException e) {
+            // the resource type has no such element
+            return null;
+        }
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the canonicals of the relatedArtifacts of type depends-on (Library and Measure only)
+     */
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * @return whether the resource is the artifact of this record (same type, id, url and version), whichever instance
+     * it is
+     */
+    public boolean describes(IBaseResource resource, FhirContext fhirContext) {
+        return resource != null && type.equals(resource.fhirType())
+                && Objects.equals(id, resource.getIdElement().getIdPart())
+                && Objects.equals(url, getPrimitive(resource, "url", fhirContext))
+                && Objects.equals(version, getPrimitive(resource, "version", fhirContext));
+    }
+}
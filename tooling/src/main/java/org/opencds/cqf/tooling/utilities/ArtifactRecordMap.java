@@ -0,0 +1,86 @@
+package org.opencds.cqf.tooling.utilities;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A read-only map of resources backed by a map of {@link ArtifactRecord}s: the keys are those of the records and a
+ * resource is loaded from its record when the value is requested. Iterating over the values loads every resource, so
+ * code that only needs the ids, urls or paths of the artifacts should use the records instead.
+ * <p>
+ * Two requests for the same key return the same instance only while the resource cache of {@link IOUtils} keeps it:
+ * it is read again once it is evicted or its file changed. A change made to a returned resource in memory is therefore
+ * not stable; code that relies on it should write the resource to its file.
+ */
+public class ArtifactRecordMap extends AbstractMap<String, IBaseResource> {
+    private final Map<String, ArtifactRecord> records;
+    private final Function<ArtifactRecord, IBaseResource> loader;
+
+    /**
+     * @param records the records, which the map reflects (it is not copied)
+     * @param loader  loads the resource of a record, returning null when it can no longer be read
+     */
+    public ArtifactRecordMap(Map<String, ArtifactRecord> records, Function<ArtifactRecord, IBaseResource> loader) {
+        this.records = Collections.unmodifiableMap(records);
+        this.loader = loader;
+    }
+
+    public Map<String, ArtifactRecord> getRecords() {
+        return records;
+    }
+
+    @Override
+    public IBaseResource get(Object key) {
+        ArtifactRecord record = records.get(key);
+        return record == null ? null : loader.apply(record);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return records.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return records.keySet();
+    }
+
+    @Override
+    public Set<Entry<String, IBaseResource>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, IBaseResource>> iterator() {
+                Iterator<Entry<String, ArtifactRecord>> iterator = records.entrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, IBaseResource> next() {
+                        Entry<String, ArtifactRecord> entry = iterator.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(), loader.apply(entry.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return records.size();
+            }
+        };
+    }
+}
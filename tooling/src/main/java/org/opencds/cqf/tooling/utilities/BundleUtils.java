@@ -11,9 +11,11 @@ import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Resource;
 import org.opencds.cqf.tooling.common.SoftwareSystem;
 import org.opencds.cqf.tooling.common.r4.SoftwareSystemHelper;
+import org.opencds.cqf.tooling.processor.BundleContentStore;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -111,18 +113,33 @@ public class BundleUtils {
     }
 
     public static List<Map.Entry<String, IBaseResource>> getBundlesInDir(String directoryPath, FhirContext fhirContext, Boolean recursive) {
+        if (ArchiveUtils.isArchive(directoryPath) && new File(directoryPath).isFile()) {
+            return getBundlesInArchive(directoryPath, fhirContext);
+        }
+
         File dir = new File(directoryPath);
         if (!dir.isDirectory()) {
             throw new IllegalArgumentException("path to directory must be an existing directory.");
         }
 
-        List<String> filePaths = IOUtils.getFilePaths(directoryPath, recursive).stream().filter(x -> !x.endsWith(".cql")).collect(Collectors.toList());
+        // the objects of a deduplicated bundle output are resources, not bundles
+        List<String> filePaths = IOUtils.getFilePaths(directoryPath, recursive).stream()
+                .filter(x -> !x.endsWith(".cql") && !BundleContentStore.isObject(x)).collect(Collectors.toList());
 
         List<Map.Entry<String, IBaseResource>> bundleMap = new ArrayList<>();
         RuntimeResourceDefinition bundleDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Bundle");
         String bundleClassName = bundleDefinition.getImplementingClass().getName();
         for (String path : filePaths) {
-            IBaseResource resource = IOUtils.readResource(path, fhirContext);
+            IBaseResource resource;
+            if (BundleContentStore.isManifest(path)) {
+                // a materialized manifest is read as its full bundle
+                if (BundleContentStore.isMaterialized(path)) {
+                    continue;
+                }
+                resource = BundleContentStore.forManifest(path).readManifest(path, fhirContext);
+            } else {
+                resource = IOUtils.readResource(path, fhirContext);
+            }
             if (resource != null) {
                 if (bundleClassName.equals(resource.getClass().getName())) {
                     Map.Entry<String, IBaseResource> bundleEntry = new AbstractMap.SimpleEntry<>(path, resource);
@@ -140,6 +157,31 @@ public class BundleUtils {
 //            .collect(Collectors.toList());
     }
 
+    /**
+     * Reads the bundles in a .zip or .tgz archive in a single pass, without extracting it. The returned paths are
+     * archive entry paths (see {@link ArchiveUtils}).
+     */
+    public static List<Map.Entry<String, IBaseResource>> getBundlesInArchive(String archivePath, FhirContext fhirContext) {
+        List<Map.Entry<String, IBaseResource>> bundleMap = new ArrayList<>();
+        RuntimeResourceDefinition bundleDefinition = ResourceUtils.getResourceDefinition(fhirContext, "Bundle");
+        String bundleClassName = bundleDefinition.getImplementingClass().getName();
+        try {
+            ArchiveUtils.visitEntries(archivePath, (entryName, content) -> {
+                IOUtils.Encoding encoding = IOUtils.getEncoding(entryName);
+                if (encoding != IOUtils.Encoding.JSON && encoding != IOUtils.Encoding.XML) {
+                    return;
+                }
+                IBaseResource resource = IOUtils.getParser(encoding, fhirContext).parseResource(new String(content, StandardCharsets.UTF_8));
+                if (resource != null && bundleClassName.equals(resource.getClass().getName())) {
+                    bundleMap.add(new AbstractMap.SimpleEntry<>(ArchiveUtils.getEntryPath(archivePath, entryName), resource));
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Error reading bundles from archive %s: %s", archivePath, e.getMessage()), e);
+        }
+        return bundleMap;
+    }
+
     public static void stampDstu3BundleEntriesWithSoftwareSystems(org.hl7.fhir.dstu3.model.Bundle bundle, List<SoftwareSystem> softwareSystems, FhirContext fhirContext, String rootDir) {
         for (org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent entry : bundle.getEntry()) {
             org.hl7.fhir.dstu3.model.Resource resource = entry.getResource();
@@ -0,0 +1,145 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The library and include declarations of a CQL file, read from its header without translating it. Reading stops at
+ * the first declaration that cannot be part of the header (a code system, value set, parameter, context or
+ * definition), so only the start of the file is read.
+ */
+public class CqlHeader {
+
+    private static final String IDENTIFIER = "(?:\"([^\"]+)\"|([A-Za-z_][\\w.]*))(?:\\s+version\\s+'([^']*)')?";
+    private static final Pattern LIBRARY_DECLARATION = Pattern.compile("^\\s*library\\s+" + IDENTIFIER);
+    private static final Pattern INCLUDE_DECLARATION = Pattern.compile("^\\s*include\\s+" + IDENTIFIER);
+    private static final Pattern HEADER_END = Pattern.compile(
+            "^\\s*(codesystem|valueset|code|concept|parameter|context|define|private|public)\\b");
+
+    /**
+     * The name and version of a declared or included library. The name of a qualified identifier is its last part;
+     * the qualifier is the namespace name.
+     */
+    public static class Declaration {
+        private final String namespace;
+        private final String name;
+        private final String version;
+
+        Declaration(String namespace, String name, String version) {
+            this.namespace = namespace;
+            this.name = name;
+            this.version = version;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    private final Declaration library;
+    private final List<Declaration> includes;
+
+    private CqlHeader(Declaration library, List<Declaration> includes) {
+        this.library = library;
+        this.includes = Collections.unmodifiableList(includes);
+    }
+
+    /**
+     * @return the library declaration, or null when the file has none
+     */
+    public Declaration getLibrary() {
+        return library;
+    }
+
+    public List<Declaration> getIncludes() {
+        return includes;
+    }
+
+    public static CqlHeader read(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + file, e);
+        }
+    }
+
+    static CqlHeader read(BufferedReader reader) throws IOException {
+        Declaration library = null;
+        List<Declaration> includes = new ArrayList<>();
+        boolean inComment = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (inComment) {
+                int end = line.indexOf("*/");
+                if (end < 0) {
+                    continue;
+                }
+                line = line.substring(end + 2);
+                inComment = false;
+            }
+            line = stripComments(line);
+            if (line.endsWith("/*")) {
+                line = line.substring(0, line.length() - 2);
+                inComment = true;
+            }
+
+            Matcher matcher = LIBRARY_DECLARATION.matcher(line);
+            if (library == null && matcher.find()) {
+                library = toDeclaration(matcher);
+                continue;
+            }
+            matcher = INCLUDE_DECLARATION.matcher(line);
+            if (matcher.find()) {
+                includes.add(toDeclaration(matcher));
+                continue;
+            }
+            if (HEADER_END.matcher(line).find()) {
+                break;
+            }
+        }
+        return new CqlHeader(library, includes);
+    }
+
+    // removes the block comments that close on the line; one that stays open is kept as a trailing "/*"
+    private static String stripComments(String line) {
+        int start = line.indexOf("/*");
+        while (start >= 0) {
+            int end = line.indexOf("*/", start + 2);
+            if (end < 0) {
+                return line.substring(0, start) + "/*";
+            }
+            line = line.substring(0, start) + " " + line.substring(end + 2);
+            start = line.indexOf("/*");
+        }
+        return line;
+    }
+
+    private static Declaration toDeclaration(Matcher matcher) {
+        if (matcher.group(1) != null) {
+            return new Declaration(null, matcher.group(1), matcher.group(3));
+        }
+        String identifier = matcher.group(2);
+        int separator = identifier.lastIndexOf('.');
+        return separator < 0
+                ? new Declaration(null, identifier, matcher.group(3))
+                : new Declaration(identifier.substring(0, separator), identifier.substring(separator + 1),
+                        matcher.group(3));
+    }
+}
@@ -0,0 +1,283 @@
+package org.opencds.cqf.tooling.utilities;
+
+import org.opencds.cqf.tooling.common.Profiler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of the CQL files of a directory by file name, file id and declared library name and version, with the parsed
+ * {@link CqlHeader} of each file. The directory is listed and the headers are read once, when the index is first used;
+ * after that finding a CQL file or the files a library includes is a map lookup.
+ * <p>
+ * Like the resource cache of {@link IOUtils}, the index checks the modification time of its directories on every use,
+ * and lists a changed directory again: it is rebuilt when CQL files or subdirectories were created or deleted, not
+ * when other files were. A library lookup also checks the modification time and size of the file found, so a changed
+ * declaration is seen. A miss is not checked against the files, as most misses are libraries that are not in the
+ * directory at all (FHIRHelpers comes from the translator): a file edited in place to declare another library is only
+ * seen once the directory changes or the index is invalidated. Changes within the timestamp resolution of the file
+ * system are missed, so code that changes CQL files and reads the index right away should call {@link #invalidate()}.
+ */
+public class CqlSourceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(CqlSourceIndex.class);
+
+    private final Path directory;
+    private final boolean recursive;
+
+    private boolean built;
+    private int entryCount;
+    private final List<Path> files = new ArrayList<>();
+    // indexed directory -> its modification time and the CQL files and subdirectories it had when it was listed
+    private final Map<Path, Listing> listings = new HashMap<>();
+    // indexed file (absolute and normalized) -> its stamp when its header was read
+    private final Map<Path, IOUtils.FileStamp> stamps = new HashMap<>();
+    private final Map<Path, CqlHeader> headers = new HashMap<>();
+    private final Map<String, Path> byFileName = new HashMap<>();
+    private final Map<String, Path> byFileId = new HashMap<>();
+    // library name -> version (null for an unversioned library) -> the first CQL file declaring it
+    private final Map<String, Map<String, Path>> byLibrary = new HashMap<>();
+
+    /**
+     * @param directory the directory of the CQL files
+     * @param recursive whether the CQL files of the subdirectories are indexed
+     */
+    public CqlSourceIndex(Path directory, boolean recursive) {
+        this.directory = directory;
+        this.recursive = recursive;
+    }
+
+    /**
+     * @return the CQL files, in directory order (subdirectories after the files of their parent)
+     */
+    public synchronized List<Path> getFiles() {
+        ensureBuilt();
+        return Collections.unmodifiableList(new ArrayList<>(files));
+    }
+
+    /**
+     * @return the number of entries (files and subdirectories, CQL or not) directly in the directory
+     */
+    public synchronized int getEntryCount() {
+        ensureBuilt();
+        return entryCount;
+    }
+
+    /**
+     * @return the first CQL file with the name, or null
+     */
+    public synchronized Path findByFileName(String fileName) {
+        ensureBuilt();
+        return byFileName.get(fileName);
+    }
+
+    /**
+     * @return the first CQL file whose id ({@link IOUtils#getIdFromFileName(String)} of the name without the .cql
+     * extension) is the given id, or null
+     */
+    public synchronized Path findByFileId(String id) {
+        ensureBuilt();
+        return byFileId.get(id);
+    }
+
+    /**
+     * @param version the version, which only matches itself, or null for the file declaring the library without a
+     *                version, or else the most recent version
+     * @return the first CQL file declaring the library, or null
+     */
+    public synchronized Path findLibrary(String name, String version) {
+        ensureBuilt();
+        Path file = lookupLibrary(name, version);
+        if (file != null && isFileChanged(file)) {
+            build();
+            file = lookupLibrary(name, version);
+        }
+        return file;
+    }
+
+    private Path lookupLibrary(String name, String version) {
+        Map<String, Path> versions = byLibrary.get(name);
+        if (versions == null) {
+            return null;
+        }
+        if (version != null || versions.containsKey(null)) {
+            return versions.get(version);
+        }
+        String latest = null;
+        for (String candidate : versions.keySet()) {
+            if (latest == null || compareVersions(candidate, latest) > 0) {
+                latest = candidate;
+            }
+        }
+        return versions.get(latest);
+    }
+
+    static int compareVersions(String left, String right) {
+        String[] leftParts = left.split("[.-]");
+        String[] rightParts = right.split("[.-]");
+        for (int i = 0; i < Math.max(leftParts.length, rightParts.length); i++) {
+            String leftPart = i < leftParts.length ? leftParts[i] : "0";
+            String rightPart = i < rightParts.length ? rightParts[i] : "0";
+            int comparison;
+            if (leftPart.matches("\\d+") && rightPart.matches("\\d+")) {
+                comparison = Long.compare(Long.parseLong(leftPart), Long.parseLong(rightPart));
+            } else {
+                comparison = leftPart.compareTo(rightPart);
+            }
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the header of an indexed CQL file, or null when the file is not indexed
+     */
+    public synchronized CqlHeader getHeader(Path file) {
+        ensureBuilt();
+        if (isFileChanged(file)) {
+            build();
+        }
+        return headers.get(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Drops the index, which is rebuilt on the next use.
+     */
+    public synchronized void invalidate() {
+        built = false;
+    }
+
+    private void ensureBuilt() {
+        if (built && !isDirectoryChanged()) {
+            return;
+        }
+        build();
+    }
+
+    private void build() {
+        files.clear();
+        listings.clear();
+        stamps.clear();
+        headers.clear();
+        byFileName.clear();
+        byFileId.clear();
+        byLibrary.clear();
+        entryCount = 0;
+
+        try (Profiler.Span span = Profiler.start(Profiler.DISCOVERY, "CqlLibrary")) {
+            if (Files.isDirectory(directory)) {
+                index(directory);
+            }
+        }
+        built = true;
+    }
+
+    private void index(Path current) {
+        long lastModified = current.toFile().lastModified();
+        List<Path> entries = list(current);
+        Listing listing = new Listing(lastModified, entries);
+        listings.put(current, listing);
+
+        for (Path entry : listing.cqlFiles) {
+            add(entry, entry.getFileName().toString());
+        }
+        if (recursive) {
+            for (Path subdirectory : listing.subdirectories) {
+                index(subdirectory);
+            }
+        }
+    }
+
+    private List<Path> list(Path current) {
+        List<Path> entries;
+        try (Stream<Path> stream = Files.list(current)) {
+            entries = stream.sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error listing the CQL files of " + current, e);
+        }
+        if (current.equals(directory)) {
+            entryCount = entries.size();
+        }
+        return entries;
+    }
+
+    private void add(Path file, String fileName) {
+        files.add(file);
+        stamps.put(file.toAbsolutePath().normalize(), IOUtils.FileStamp.of(file.toFile()));
+        byFileName.putIfAbsent(fileName, file);
+        byFileId.putIfAbsent(IOUtils.getIdFromFileName(fileName.replace(".cql", "")), file);
+        CqlHeader header;
+        try {
+            header = CqlHeader.read(file);
+        } catch (UncheckedIOException e) {
+            logger.warn("Unable to read the header of {}: {}", file, e.getMessage());
+            return;
+        }
+        headers.put(file.toAbsolutePath().normalize(), header);
+        if (header.getLibrary() != null) {
+            byLibrary.computeIfAbsent(header.getLibrary().getName(), k -> new HashMap<>())
+                    .putIfAbsent(header.getLibrary().getVersion(), file);
+        }
+    }
+
+    // whether CQL files or subdirectories were created or deleted; a directory that only changed otherwise is stamped
+    private boolean isDirectoryChanged() {
+        if (listings.isEmpty()) {
+            // the directory did not exist when the index was built
+            return Files.isDirectory(directory);
+        }
+        for (Map.Entry<Path, Listing> entry : listings.entrySet()) {
+            Path current = entry.getKey();
+            long lastModified = current.toFile().lastModified();
+            if (lastModified == entry.getValue().lastModified) {
+                continue;
+            }
+            if (!Files.isDirectory(current)) {
+                return true;
+            }
+            Listing listing = new Listing(lastModified, list(current));
+            if (!listing.cqlFiles.equals(entry.getValue().cqlFiles)
+                    || !listing.subdirectories.equals(entry.getValue().subdirectories)) {
+                return true;
+            }
+            entry.setValue(listing);
+        }
+        return false;
+    }
+
+    private boolean isFileChanged(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        IOUtils.FileStamp stamp = stamps.get(key);
+        return stamp != null && !stamp.equals(IOUtils.FileStamp.of(key.toFile()));
+    }
+
+
+    private static final class Listing {
+        private final long lastModified;
+        private final List<Path> cqlFiles = new ArrayList<>();
+        private final List<Path> subdirectories = new ArrayList<>();
+
+        Listing(long lastModified, List<Path> entries) {
+            this.lastModified = lastModified;
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry)) {
+                    subdirectories.add(entry);
+                } else if (entry.getFileName().toString().endsWith(".cql")) {
+                    cqlFiles.add(entry);
+                }
+            }
+        }
+    }
+}
@@ -2,14 +2,22 @@ package org.opencds.cqf.tooling.utilities;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class FhirContextCache {
+    private static final Logger logger = LoggerFactory.getLogger(FhirContextCache.class);
+
+    public static final String WARMUP_PROPERTY = "cqf.tooling.fhircontext.warmup";
 
     private static final Map<FhirVersionEnum, FhirContext> contextCache = new EnumMap<>(FhirVersionEnum.class);
+    private static final Map<FhirVersionEnum, CompletableFuture<Void>> warmUps = new EnumMap<>(FhirVersionEnum.class);
 
     private FhirContextCache() {}
 
@@ -29,14 +37,73 @@ public class FhirContextCache {
     }
 
     /**
-     * Fetches a FhirContext from a cache. If a context for a given version doesn't exist, one is created.
+     * Fetches a FhirContext from a cache. If a context for a given version doesn't exist, one is created and warmed up
+     * in the background (unless the system property {@value #WARMUP_PROPERTY} is false).
+     * <p>
+     * The contexts are HAPI's cached contexts ({@link FhirContext#forCached(FhirVersionEnum)}), so the code that calls
+     * FhirContext.forR4Cached() and the like shares them.
      *
      * @param fhirVersion The FHIR version to get a context for
      * @return A FhirContext that corresponds to the fhirVersion
      */
     public static synchronized FhirContext getContext(FhirVersionEnum fhirVersion) {
         Objects.requireNonNull(fhirVersion, "fhirVersion can not be null");
-        contextCache.computeIfAbsent(fhirVersion, k -> FhirContext.forVersion(fhirVersion));
-        return contextCache.get(fhirVersion);
+        FhirContext context = contextCache.get(fhirVersion);
+        if (context == null) {
+            context = FhirContext.forCached(fhirVersion);
+            contextCache.put(fhirVersion, context);
+            if (Boolean.parseBoolean(System.getProperty(WARMUP_PROPERTY, "true"))) {
+                warmUp(fhirVersion);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Scans the resource definitions of the contexts of the given versions in the background, one thread per version,
+     * so the first parse of each resource type does not pay for the model scan. A context is warmed up once; the
+     * returned future completes when all the given versions are.
+     *
+     * @param fhirVersions The FHIR versions to warm up
+     * @return A future that completes when the contexts are warmed up
+     */
+    public static synchronized CompletableFuture<Void> warmUp(FhirVersionEnum... fhirVersions) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[fhirVersions.length];
+        for (int i = 0; i < fhirVersions.length; i++) {
+            FhirVersionEnum fhirVersion = Objects.requireNonNull(fhirVersions[i], "fhirVersion can not be null");
+            CompletableFuture<Void> future = warmUps.get(fhirVersion);
+            if (future == null) {
+                FhirContext context = contextCache.computeIfAbsent(fhirVersion, FhirContext::forCached);
+                future = new CompletableFuture<>();
+                warmUps.put(fhirVersion, future);
+                startWarmUp(context, future);
+            }
+            futures[i] = future;
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    private static void startWarmUp(FhirContext context, CompletableFuture<Void> future) {
+        FhirVersionEnum fhirVersion = context.getVersion().getVersion();
+        Thread thread = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                for (String resourceType : context.getResourceTypes()) {
+                    context.getResourceDefinition(resourceType);
+                }
+                // loads the parser classes
+                IBaseResource parameters = context.getResourceDefinition("Parameters").newInstance();
+                context.newJsonParser().encodeResourceToString(parameters);
+                context.newXmlParser().encodeResourceToString(parameters);
+                logger.debug("Warmed up the {} FhirContext in {} ms", fhirVersion, System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                // the definitions are scanned on first use instead
+                logger.debug("Error warming up the {} FhirContext: {}", fhirVersion, e.getMessage());
+            } finally {
+                future.complete(null);
+            }
+        }, "fhir-context-warmup-" + fhirVersion);
+        thread.setDaemon(true);
+        thread.start();
     }
 }
@@ -2,9 +2,11 @@ package org.opencds.cqf.tooling.utilities;
 
 import ca.uhn.fhir.context.FhirContext;
 import com.google.gson.JsonParser;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
@@ -12,19 +14,25 @@ import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.common.ExecutionService;
+import org.opencds.cqf.tooling.common.Profiler;
+import org.opencds.cqf.tooling.common.jfr.HttpRequestEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 /**
@@ -45,8 +53,9 @@ public class HttpClientUtils {
 
     //This is not to maintain a thread count, but rather to maintain the maximum number of POST calls that can simultaneously be waiting for a response from the server.
     //This gives us some control over how many POSTs we're making so we don't crash the server.
-    //possible TODO:Allow users to specify this value on their own with arg passed into operation so that more robust servers can process post list faster
-    private static final int MAX_SIMULTANEOUS_POST_COUNT = 10;
+    //Posts are made one at a time unless the cqf.tooling.http.maxConcurrentPosts system property allows more, so that more robust servers can process post list faster
+    public static final String MAX_CONCURRENT_POSTS_PROPERTY = "cqf.tooling.http.maxConcurrentPosts";
+    private static final int MAX_SIMULTANEOUS_POST_COUNT = Math.max(1, Integer.getInteger(MAX_CONCURRENT_POSTS_PROPERTY, 1));
 
     //failedPostCalls needs to maintain the details built in the FAILED message, as well as a copy of the inputs for a retry by the user on failed posts.
     private static Queue<Pair<String, PostComponent>> failedPostCalls = new ConcurrentLinkedQueue<>();
@@ -54,7 +63,10 @@ public class HttpClientUtils {
     private static Map<IBaseResource, Callable<Void>> tasks = new ConcurrentHashMap<>();
     private static Map<IBaseResource, Callable<Void>> initialTasks = new ConcurrentHashMap<>();
     private static List<IBaseResource> runningPostTaskList = new CopyOnWriteArrayList<>();
-    private static int processedPostCounter = 0;
+    //the resource queued for each distinct target url and body, so a resource shared between bundles (e.g. a common
+    //library or ValueSet) is only posted once per collection:
+    private static Map<String, IBaseResource> queuedContent = new ConcurrentHashMap<>();
+    private static final AtomicInteger processedPostCounter = new AtomicInteger();
 
     private HttpClientUtils() {
     }
@@ -125,7 +137,8 @@ public class HttpClientUtils {
      * Creates a task for handling an HTTP POST request to a FHIR server with the specified parameters.
      * <p>
      * This method is responsible for creating a task that prepares and executes an HTTP POST request to the provided FHIR server
-     * with the given FHIR resource, encoding type, and FHIR context. It adds the task to the queue of tasks for later execution.
+     * with the given FHIR resource, encoding type, and FHIR context. It adds the task to the queue of tasks for later execution,
+     * unless the same content is already queued for the same URL.
      * If any exceptions occur during task creation or configuration, an error message is logged.
      *
      * @param fhirServerUrl The URL of the FHIR server to which the POST request will be sent.
@@ -136,7 +149,19 @@ public class HttpClientUtils {
     private static void createPostTask(String fhirServerUrl, IBaseResource resource, IOUtils.Encoding encoding, FhirContext fhirContext, String fileLocation, boolean withPriority) {
         try {
             PostComponent postPojo = new PostComponent(fhirServerUrl, resource, encoding, fhirContext, fileLocation, withPriority);
-            HttpPost post = configureHttpPost(fhirServerUrl, resource, encoding, fhirContext);
+            String resourceString = IOUtils.encodeResourceAsString(resource, encoding, fhirContext);
+            HttpPost post = configureHttpPost(fhirServerUrl, resource, encoding, resourceString);
+            String contentKey = DigestUtils.sha256Hex(post.getURI() + "\n" + resourceString);
+            IBaseResource queued = queuedContent.putIfAbsent(contentKey, resource);
+            if (queued != null) {
+                //already queued; only move it ahead of the other tasks when this post has priority:
+                Callable<Void> queuedTask = withPriority ? tasks.remove(queued) : null;
+                if (queuedTask != null) {
+                    initialTasks.put(queued, queuedTask);
+                }
+                logger.debug("Skipping duplicate POST of {}", fileLocation != null ? fileLocation : resource.getIdElement().getIdPart());
+                return;
+            }
             if (withPriority) {
                 initialTasks.put(resource, createPostCallable(post, postPojo));
             } else {
@@ -155,12 +180,12 @@ public class HttpClientUtils {
      * encountered, it throws a runtime exception.
      *
      * @param fhirServerUrl The URL of the FHIR server to which the POST request will be sent.
-     * @param resource      The FHIR resource to be posted.
-     * @param encoding      The encoding type of the resource.
-     * @param fhirContext   The FHIR context for the resource.
+     * @param resource       The FHIR resource to be posted.
+     * @param encoding       The encoding type of the resource.
+     * @param resourceString The resource encoded with the encoding type.
      * @return An HTTP POST request configured for the FHIR server and resource.
      */
-    private static HttpPost configureHttpPost(String fhirServerUrl, IBaseResource resource, IOUtils.Encoding encoding, FhirContext fhirContext) {
+    private static HttpPost configureHttpPost(String fhirServerUrl, IBaseResource resource, IOUtils.Encoding encoding, String resourceString) {
 
         //Transaction bundles get posted to /fhir but other resources get posted to /fhir/resourceType ie fhir/Group
         String fhirServer = fhirServerUrl;
@@ -172,7 +197,6 @@ public class HttpClientUtils {
 
         HttpPost post = new HttpPost(fhirServer);
         post.addHeader("content-type", "application/" + encoding.toString());
-        String resourceString = IOUtils.encodeResourceAsString(resource, encoding, fhirContext);
         StringEntity input;
         try {
             input = new StringEntity(resourceString);
@@ -205,13 +229,19 @@ public class HttpClientUtils {
                     Paths.get(postComponent.fileLocation).getFileName().toString()
                     :
                     postComponent.resource.getIdElement().getIdPart());
-            try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
+            try (CloseableHttpClient httpClient = HttpClientBuilder.create().build();
+                 Profiler.Span span = Profiler.start(Profiler.HTTP_POST, resourceIdentifier)) {
 
+                span.addBytes(post.getEntity().getContentLength());
+                HttpRequestEvent event = new HttpRequestEvent();
+                event.begin();
                 HttpResponse response = httpClient.execute(post);
 
                 StatusLine statusLine = response.getStatusLine();
                 int statusCode = statusLine.getStatusCode();
-                String diagnosticString = getDiagnosticString(EntityUtils.toString(response.getEntity()));
+                String responseBody = EntityUtils.toString(response.getEntity());
+                commitRequestEvent(event, post, resourceIdentifier, statusCode, responseBody);
+                String diagnosticString = getDiagnosticString(responseBody);
 
                 if (statusCode >= 200 && statusCode < 300) {
                     successfulPostCalls.add(buildSuccessMessage(postComponent.fhirServerUrl, resourceIdentifier));
@@ -220,15 +250,20 @@ public class HttpClientUtils {
                     Header locationHeader = response.getFirstHeader("Location");
                     if (locationHeader != null) {
                         postComponent.redirectFhirServerUrl = locationHeader.getValue();
-                        HttpPost redirectedPost = configureHttpPost(postComponent.redirectFhirServerUrl, postComponent.resource, postComponent.encoding, postComponent.fhirContext);
+                        HttpPost redirectedPost = configureHttpPost(postComponent.redirectFhirServerUrl, postComponent.resource, postComponent.encoding,
+                                IOUtils.encodeResourceAsString(postComponent.resource, postComponent.encoding, postComponent.fhirContext));
                         String redirectLocationIdentifier = postComponent.redirectFhirServerUrl
                                 + "(redirected from " + postComponent.fhirServerUrl + ")";
                         //attempt to post at location specified in redirect response:
                         try (CloseableHttpClient redirectHttpClient = HttpClientBuilder.create().build()) {
+                            HttpRequestEvent redirectEvent = new HttpRequestEvent();
+                            redirectEvent.begin();
                             HttpResponse redirectResponse = redirectHttpClient.execute(redirectedPost);
                             StatusLine redirectStatusLine = redirectResponse.getStatusLine();
                             int redirectStatusCode = redirectStatusLine.getStatusCode();
-                            String redirectDiagnosticString = getDiagnosticString(EntityUtils.toString(redirectResponse.getEntity()));
+                            String redirectResponseBody = EntityUtils.toString(redirectResponse.getEntity());
+                            commitRequestEvent(redirectEvent, redirectedPost, resourceIdentifier, redirectStatusCode, redirectResponseBody);
+                            String redirectDiagnosticString = getDiagnosticString(redirectResponseBody);
 
                             //treat new response same as we would before:
                             if (redirectStatusCode >= 200 && redirectStatusCode < 300) {
@@ -259,6 +294,22 @@ public class HttpClientUtils {
         };
     }
 
+    private static void commitRequestEvent(HttpRequestEvent event, HttpRequestBase request, String resourceIdentifier,
+                                           int statusCode, String responseBody) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = request.getMethod();
+            event.url = request.getURI().toString();
+            event.resource = resourceIdentifier;
+            event.status = statusCode;
+            if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+                event.requestBytes = ((HttpEntityEnclosingRequest) request).getEntity().getContentLength();
+            }
+            event.responseBytes = responseBody == null ? 0 : responseBody.getBytes(StandardCharsets.UTF_8).length;
+            event.commit();
+        }
+    }
+
     private static Pair<String, PostComponent> buildExceptionMessage(PostComponent postComponent, Exception e, String resourceIdentifier, String locationIdentifier) {
         return Pair.of("[FAIL] Exception during " + resourceIdentifier + " POST request execution to " + locationIdentifier + ": " + e.getMessage(), postComponent);
     }
@@ -306,7 +357,7 @@ public class HttpClientUtils {
      * and pool size information is printed to the standard output.
      */
     private static void reportProgress() {
-        int currentCounter = processedPostCounter++;
+        int currentCounter = processedPostCounter.getAndIncrement();
         double percentage = (double) currentCounter / getTotalTaskCount() * 100;
         System.out.print("\rPOST calls: " + String.format("%.2f%%", percentage) + " processed. POST response pool size: " + runningPostTaskList.size() + ". ");
     }
@@ -320,28 +371,26 @@ public class HttpClientUtils {
      * <p>
      * This method orchestrates the execution of a collection of HTTP POST requests, each represented as a task.
      * The method performs the following steps:
-     * 1. Creates a thread pool using a fixed number of threads (usually 1).
+     * 1. Runs the tasks on the shared IO pool of the ExecutionService, at most MAX_SIMULTANEOUS_POST_COUNT (one unless configured) at a time.
      * 2. Initiates the HTTP POST tasks for FHIR resources and monitors their progress.
      * 3. Collects and logs success or failure messages for each task.
      * 4. Sorts and reports the results of the post tasks, both successful and failed.
      * 5. Offers the option to retry failed tasks, if desired by the user.
-     * 6. Cleans up resources and shuts down the thread pool when finished.
+     * 6. Cleans up resources when finished.
      * <p>
      * This method serves as the entry point for posting tasks and provides progress monitoring and result reporting.
      */
     public static void postTaskCollection() {
-        ExecutorService executorService = Executors.newFixedThreadPool(1);
-
         try {
             logger.info(getTotalTaskCount() + " POST calls to be made. Starting now. Please wait...");
             double percentage = 0;
             System.out.print("\rPOST: " + String.format("%.2f%%", percentage) + " done. ");
 
             //execute any tasks marked as having priority:
-            executeTasks(executorService, initialTasks);
+            executeTasks(initialTasks);
 
             //execute the remaining tasks:
-            executeTasks(executorService, tasks);
+            executeTasks(tasks);
 
             reportProgress();
 
@@ -379,10 +428,10 @@ public class HttpClientUtils {
                         }
                     }
                     //execute any tasks marked as having priority:
-                    executeTasks(executorService, initialTasks);
+                    executeTasks(initialTasks);
 
                     //execute the remaining tasks:
-                    executeTasks(executorService, tasks);
+                    executeTasks(tasks);
 
                     reportProgress();
                     if (failedPostCalls.isEmpty()) {
@@ -423,7 +472,6 @@ public class HttpClientUtils {
 
         } finally {
             cleanUp();
-            executorService.shutdown();
         }
     }
 
@@ -447,41 +495,22 @@ public class HttpClientUtils {
     }
 
 
-    private static void executeTasks(ExecutorService executorService, Map<IBaseResource, Callable<Void>> executableTasksMap) {
-        List<Future<Void>> futures = new ArrayList<>();
-        List<IBaseResource> resources = new ArrayList<>(executableTasksMap.keySet());
-        for (int i = 0; i < resources.size(); i++) {
-            IBaseResource thisResource = resources.get(i);
-            if (runningPostTaskList.size() < MAX_SIMULTANEOUS_POST_COUNT) {
-                runningPostTaskList.add(thisResource);
-                futures.add(executorService.submit(executableTasksMap.get(thisResource)));
-            } else {
-                threadSleep(10);
-                i--;
-            }
-        }
-
-        for (Future<Void> future : futures) {
-            try {
-                future.get();
-            } catch (Exception e) {
-                logger.error("HTTPClientUtils future.get()", e);
-            }
+    private static void executeTasks(Map<IBaseResource, Callable<Void>> executableTasksMap) {
+        List<Callable<Void>> postTasks = new ArrayList<>();
+        for (Map.Entry<IBaseResource, Callable<Void>> entry : executableTasksMap.entrySet()) {
+            postTasks.add(() -> {
+                runningPostTaskList.add(entry.getKey());
+                return entry.getValue().call();
+            });
         }
-    }
 
-    /**
-     * Pauses the current thread's execution for a specified duration.
-     * This method causes the current thread to sleep for the given duration, allowing a pause in execution. If an
-     * interruption occurs during the sleep, it is logged as an exception.
-     *
-     * @param i The duration, in milliseconds, for which the thread should sleep.
-     */
-    private static void threadSleep(int i) {
         try {
-            Thread.sleep(i);
+            ExecutionService.getInstance().invokeAll(ExecutionService.Pool.IO, "HttpClientUtils.post", postTasks, MAX_SIMULTANEOUS_POST_COUNT);
+        } catch (ExecutionException e) {
+            logger.error("HTTPClientUtils executeTasks", e.getCause());
         } catch (InterruptedException e) {
-            logger.error("postTaskCollection", new RuntimeException(e));
+            Thread.currentThread().interrupt();
+            logger.error("HTTPClientUtils executeTasks interrupted", e);
         }
     }
 
@@ -494,6 +523,7 @@ public class HttpClientUtils {
      * 3. Resets the map of tasks to be executed.
      * 4. Resets the counter that tracks the number of processed POST calls.
      * 5. Clears the list of resources currently being posted.
+     * 6. Forgets the content already queued, so it can be posted again.
      * <p>
      * This method ensures a clean state and prepares the system for potential subsequent POST calls or retries.
      */
@@ -502,14 +532,20 @@ public class HttpClientUtils {
         successfulPostCalls = new CopyOnWriteArrayList<>();
         tasks = new ConcurrentHashMap<>();
         initialTasks = new ConcurrentHashMap<>();
-        processedPostCounter = 0;
+        processedPostCounter.set(0);
         runningPostTaskList = new CopyOnWriteArrayList<>();
+        queuedContent = new ConcurrentHashMap<>();
     }
 
     public static String get(String path) throws IOException {
         try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
             HttpGet get = new HttpGet(path);
-            return getResponse(httpClient.execute(get));
+            HttpRequestEvent event = new HttpRequestEvent();
+            event.begin();
+            HttpResponse response = httpClient.execute(get);
+            String responseBody = getResponse(response);
+            commitRequestEvent(event, get, null, response.getStatusLine().getStatusCode(), responseBody);
+            return responseBody;
         }
     }
 
@@ -5,6 +5,9 @@ import ca.uhn.fhir.context.RuntimeCompositeDatatypeDefinition;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.util.BundleBuilder;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.apache.commons.io.FileUtils;
@@ -12,10 +15,14 @@ import org.apache.commons.io.FilenameUtils;
 import org.cqframework.cql.cql2elm.*;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
-import org.hl7.fhir.utilities.Utilities;
+import org.opencds.cqf.tooling.common.Profiler;
+import org.opencds.cqf.tooling.common.jfr.ResourceEncodeEvent;
+import org.opencds.cqf.tooling.common.jfr.ResourceParseEvent;
 import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
+import org.opencds.cqf.tooling.processor.CompiledLibraryRegistry;
 import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.opencds.cqf.tooling.processor.DependencyService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,7 +32,6 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 public class IOUtils {
@@ -78,8 +84,20 @@ public class IOUtils {
         if (encoding == Encoding.UNKNOWN) {
             return new byte[] { };
         }
-        IParser parser = getParser(encoding, fhirContext);
-        return parser.setPrettyPrint(prettyPrintOutput).encodeResourceToString(resource).getBytes();
+        ResourceEncodeEvent event = new ResourceEncodeEvent();
+        event.begin();
+        IParser parser = getParser(encoding, fhirContext, prettyPrintOutput);
+        byte[] content = parser.encodeResourceToString(resource).getBytes();
+        event.end();
+        if (event.shouldCommit()) {
+            event.resourceType = resource.fhirType();
+            event.resourceId = resource.getIdElement().getIdPart();
+            event.encoding = encoding.toString();
+            event.prettyPrint = prettyPrintOutput;
+            event.bytes = content.length;
+            event.commit();
+        }
+        return content;
     }
 
     public static String getFileContent(File file) {
@@ -96,8 +114,8 @@ public class IOUtils {
         if (encoding == Encoding.UNKNOWN) {
             return "";
         }
-        IParser parser = getParser(encoding, fhirContext);
-        return parser.setPrettyPrint(true).encodeResourceToString(resource);
+        IParser parser = getParser(encoding, fhirContext, true);
+        return parser.encodeResourceToString(resource);
     }
 
     // Issue 96 - adding second signature to allow for passing versioned
@@ -151,9 +169,12 @@ public class IOUtils {
             outputPath = FilenameUtils.concat(path, formatFileName(baseName, encoding, fhirContext));
         }
 
-        try (FileOutputStream writer = new FileOutputStream(outputPath)) {
-            writer.write(encodeResource(resource, encoding, fhirContext, prettyPrintOutput));
+        try (Profiler.Span span = Profiler.start(Profiler.DISK_WRITE, outputPath);
+             FileOutputStream writer = new FileOutputStream(outputPath)) {
+            byte[] content = encodeResource(resource, encoding, fhirContext, prettyPrintOutput);
+            writer.write(content);
             writer.flush();
+            span.addBytes(content.length);
         } catch (IOException e) {
             logger.error(e.getMessage());
             throw new RuntimeException("Error writing Resource to file: " + e.getMessage());
@@ -198,9 +219,12 @@ public class IOUtils {
     }
 
     public static void writeCqlToFile(String cql, String filePath) {
-        try (FileOutputStream writer = new FileOutputStream(filePath)) {
-            writer.write(cql.getBytes(StandardCharsets.UTF_8));
+        try (Profiler.Span span = Profiler.start(Profiler.DISK_WRITE, filePath);
+             FileOutputStream writer = new FileOutputStream(filePath)) {
+            byte[] content = cql.getBytes(StandardCharsets.UTF_8);
+            writer.write(content);
             writer.flush();
+            span.addBytes(content.length);
         } catch (IOException e) {
             logger.error(e.getMessage());
             throw new RuntimeException("Error writing Resource to file: " + e.getMessage());
@@ -279,21 +303,99 @@ public class IOUtils {
         return readResource(path, fhirContext, false);
     }
 
+    public static final String RESOURCE_CACHE_SIZE_PROPERTY = "cqf.tooling.cache.resources.maxBytes";
+
+    // The parsed resources, weighted by the size of their files and bounded (by default to an eighth of the maximum
+    // heap in file bytes), so the least recently used resources are read again rather than kept for the whole run.
+    // Each entry has the modification time and size of its file (the archive, for an archive entry), so a file changed
+    // since it was read (e.g. by an earlier step of a pipeline or an earlier request to the daemon) is read again.
+    private static final Cache<String, CachedResource> cachedResources = Caffeine.newBuilder()
+            .maximumWeight(getResourceCacheSize())
+            .weigher((String path, CachedResource cached) -> cached.weight)
+            .recordStats()
+            .build();
+
+    private static final class CachedResource {
+        private final IBaseResource resource;
+        private final FileStamp stamp;
+        private final int weight;
+
+        private CachedResource(IBaseResource resource, FileStamp stamp, long bytes) {
+            this.resource = resource;
+            this.stamp = stamp;
+            this.weight = (int) Math.min(Math.max(bytes, 1), Integer.MAX_VALUE);
+        }
+    }
+
+    static long getResourceCacheSize() {
+        String size = System.getProperty(RESOURCE_CACHE_SIZE_PROPERTY);
+        if (size == null || size.isEmpty()) {
+            return Runtime.getRuntime().maxMemory() / 8;
+        }
+        try {
+            return Long.parseLong(size);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid value for %s: %s", RESOURCE_CACHE_SIZE_PROPERTY,
+                    size), e);
+        }
+    }
+
+    /**
+     * @return the hit, miss, load and eviction counts of the resource cache of {@link #readResource}
+     */
+    public static CacheStats getResourceCacheStats() {
+        return cachedResources.stats();
+    }
+
+    // the file whose modification time and size a cached resource is checked against: the archive of an archive entry
+    private static File getStampFile(String path) {
+        return new File(ArchiveUtils.isArchiveEntryPath(path) ? ArchiveUtils.getArchivePath(path) : path);
+    }
+
+    // the cached resource of the path, or null when it is not cached or its file has changed since it was read
+    private static IBaseResource getCachedResource(String path) {
+        CachedResource cached = cachedResources.getIfPresent(path);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.stamp.equals(FileStamp.of(getStampFile(path)))) {
+            return cached.resource;
+        }
+        cachedResources.asMap().remove(path, cached);
+        return null;
+    }
+
     //users should always check for null
-    private static final Map<String, IBaseResource> cachedResources = new LinkedHashMap<>();
     public static IBaseResource readResource(String path, FhirContext fhirContext, Boolean safeRead) {
         Encoding encoding = getEncoding(path);
         if (encoding == Encoding.UNKNOWN || encoding == Encoding.CQL) {
             return null;
         }
 
-        IBaseResource resource = cachedResources.get(path);
+        IBaseResource resource = getCachedResource(path);
         if (resource != null) {
             return resource;
         }
 
+        ResourceParseEvent event = new ResourceParseEvent();
+        event.begin();
         try {
             IParser parser = getParser(encoding, fhirContext);
+            if (ArchiveUtils.isArchiveEntryPath(path)) {
+                FileStamp stamp = FileStamp.of(getStampFile(path));
+                byte[] content = ArchiveUtils.readEntry(path);
+                if (content == null) {
+                    if (Boolean.TRUE.equals(safeRead)) {
+                        return null;
+                    }
+                    throw new IOException("Entry not found in archive");
+                }
+                resource = parser.parseResource(new String(content, StandardCharsets.UTF_8));
+                cachedResources.put(path, new CachedResource(resource, stamp, content.length));
+                commitParseEvent(event, path, encoding, resource, content.length);
+                return resource;
+            }
+
             File file = new File(path);
 
             if (file.exists() && file.isDirectory()) {
@@ -303,18 +405,61 @@ public class IOUtils {
             if (Boolean.TRUE.equals(safeRead) && !file.exists()) {
                 return null;
             }
+            FileStamp stamp = FileStamp.of(file);
             try (FileReader reader = new FileReader(file)) {
                 resource = parser.parseResource(reader);
             }
-            cachedResources.put(path, resource);
+            cachedResources.put(path, new CachedResource(resource, stamp, stamp.length));
+            commitParseEvent(event, path, encoding, resource, file.length());
         } catch (IOException e) {
             throw new RuntimeException(String.format("Error reading resource from path %s: %s", path, e.getMessage()), e);
         }
         return resource;
     }
 
+    private static void commitParseEvent(ResourceParseEvent event, String path, Encoding encoding, IBaseResource resource, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.encoding = encoding.toString();
+            event.resourceType = resource == null ? null : resource.fhirType();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    // the modification time and size of a file, to tell whether it changed since it was read
+    static final class FileStamp {
+        private final long lastModified;
+        private final long length;
+
+        private FileStamp(long lastModified, long length) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        static FileStamp of(File file) {
+            return new FileStamp(file.lastModified(), file.length());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp) o;
+            return lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(lastModified) * 31 + Long.hashCode(length);
+        }
+    }
+
     public static void updateCachedResource(IBaseResource updatedResource, String path) {
-        cachedResources.computeIfPresent(path, (key, value) -> updatedResource);
+        cachedResources.asMap().computeIfPresent(path,
+                (key, cached) -> new CachedResource(updatedResource, cached.stamp, cached.weight));
     }
 
     public static List<IBaseResource> readResources(List<String> paths, FhirContext fhirContext) {
@@ -334,16 +479,18 @@ public class IOUtils {
             return null;
         }
 
-        if (cachedResources.containsKey(path)) {
-            return cachedResources.get(path);
+        IBaseResource cachedResource = getCachedResource(path);
+        if (cachedResource != null) {
+            return cachedResource;
         }
 
         IParser parser = getParser(encoding, fhirContext);
+        FileStamp stamp = FileStamp.of(new File(path));
         try (FileReader reader = new FileReader(path)) {
             JsonObject obj = JsonParser.parseReader(reader).getAsJsonObject();
             Arrays.stream(elements).forEach(obj::remove);
             IBaseResource resource = parser.parseResource(obj.toString());
-            cachedResources.put(path, resource);
+            cachedResources.put(path, new CachedResource(resource, stamp, stamp.length));
             return resource;
         } catch (IOException e) {
             logger.error(e.getMessage());
@@ -535,15 +682,13 @@ public class IOUtils {
     }
 
     //users should protect against Encoding.UNKNOWN or Encoding.CQL
-    private static IParser getParser(Encoding encoding, FhirContext fhirContext) {
-        switch (encoding) {
-            case XML:
-                return fhirContext.newXmlParser();
-            case JSON:
-                return fhirContext.newJsonParser();
-            default:
-                throw new RuntimeException("Unknown encoding type: " + encoding);
-        }
+    static IParser getParser(Encoding encoding, FhirContext fhirContext) {
+        return getParser(encoding, fhirContext, false);
+    }
+
+    // the pooled parser of the calling thread, see ParserPool
+    static IParser getParser(Encoding encoding, FhirContext fhirContext, boolean prettyPrint) {
+        return ParserPool.getParser(encoding, fhirContext, prettyPrint);
     }
 
     public static Boolean pathEndsWithElement(String igPath, String pathElement) {
@@ -571,19 +716,36 @@ public class IOUtils {
             throw new IllegalArgumentException("The specified path to library files is not a directory");
         }
 
-        List<String> dependencyLibraries = ResourceUtils.getIncludedLibraryNames(cqlContentPath, includeVersion);
-        File[] allCqlContentFiles = cqlContentDir.listFiles();
+        // the includes come from the indexed header of the file rather than from a translation
+        CqlSourceIndex index = getCqlSourceIndex(cqlContentDir.getPath(), false);
+        CqlHeader header = index.getHeader(cqlContent.toPath());
+        List<String> dependencyLibraries = new ArrayList<>();
+        Map<String, CqlHeader.Declaration> includes = new HashMap<>();
+        if (header != null) {
+            for (CqlHeader.Declaration include : header.getIncludes()) {
+                String id = ResourceUtils.getId(include.getName(), include.getVersion(), includeVersion);
+                putInListIfAbsent(id, dependencyLibraries);
+                includes.putIfAbsent(id, include);
+            }
+        } else {
+            dependencyLibraries = ResourceUtils.getIncludedLibraryNames(cqlContentPath, includeVersion);
+        }
         ArrayList<File> dependencyCqlFiles = new ArrayList<>();
 
-        if (allCqlContentFiles != null) {
-            if (allCqlContentFiles.length == 1) {
-                return new ArrayList<>();
+        if (index.getEntryCount() == 1) {
+            return new ArrayList<>();
+        }
+        for (Iterator<String> iterator = dependencyLibraries.iterator(); iterator.hasNext(); ) {
+            String dependencyLibrary = iterator.next();
+            Path dependencyFile = index.findByFileId(dependencyLibrary);
+            CqlHeader.Declaration include = includes.get(dependencyLibrary);
+            if (dependencyFile == null && include != null) {
+                // a file named differently than the library it declares
+                dependencyFile = index.findLibrary(include.getName(), include.getVersion());
             }
-            for (File cqlFile : allCqlContentFiles) {
-                if (dependencyLibraries.contains(getIdFromFileName(cqlFile.getName().replace(".cql", "")))) {
-                    dependencyCqlFiles.add(cqlFile);
-                    dependencyLibraries.remove(getIdFromFileName(cqlFile.getName().replace(".cql", "")));
-                }
+            if (dependencyFile != null && !dependencyCqlFiles.contains(dependencyFile.toFile())) {
+                dependencyCqlFiles.add(dependencyFile.toFile());
+                iterator.remove();
             }
         }
 
@@ -680,64 +842,81 @@ public class IOUtils {
     }
 
     public static String getLibraryPathAssociatedWithCqlFileName(String cqlPath, FhirContext fhirContext) {
-        String libraryPath = null;
         String fileName = FilenameUtils.getName(cqlPath);
         String libraryFileName = LibraryProcessor.ResourcePrefix + fileName;
-        for (String path : IOUtils.getLibraryPaths(fhirContext)) {
-            // NOTE: A bit of a hack, but we need to support both xml and json encodings for existing resources and the long-term strategy is
-            // to revisit this and change the approach to use the references rather than file name matching, so this should be good for the near-term.
-            if (path.endsWith(libraryFileName.replaceAll(".cql", ".json"))
-                    || path.endsWith(libraryFileName.replaceAll(".cql", ".xml"))
-                    || path.endsWith(fileName.replaceAll(".cql", ".json"))
-                    || path.endsWith(fileName.replaceAll(".cql", ".xml")))
-            {
-                libraryPath = path;
-                break;
+        // NOTE: A bit of a hack, but we need to support both xml and json encodings for existing resources and the long-term strategy is
+        // to revisit this and change the approach to use the references rather than file name matching, so this should be good for the near-term.
+        List<String> candidates = Arrays.asList(libraryFileName.replaceAll(".cql", ".json"),
+                libraryFileName.replaceAll(".cql", ".xml"), fileName.replaceAll(".cql", ".json"),
+                fileName.replaceAll(".cql", ".xml"));
+
+        return findFirstLibraryPath(candidates, fhirContext);
+    }
+
+    // file name -> position of the first library path with that name in libraryPathList
+    private static final Map<String, Integer> libraryPathPositions = new HashMap<>();
+    private static final List<String> libraryPathList = new ArrayList<>();
+
+    // the first library path (in discovery order) with one of the file names
+    private static synchronized String findFirstLibraryPath(List<String> fileNames, FhirContext fhirContext) {
+        if (libraryPathList.isEmpty()) {
+            for (String path : getLibraryPaths(fhirContext)) {
+                libraryPathPositions.putIfAbsent(FilenameUtils.getName(path), libraryPathList.size());
+                libraryPathList.add(path);
             }
         }
+        int position = libraryPathList.size();
+        for (String fileName : fileNames) {
+            Integer fileNamePosition = libraryPathPositions.get(fileName);
+            if (fileNamePosition != null && fileNamePosition < position) {
+                position = fileNamePosition;
+            }
+        }
+        return position < libraryPathList.size() ? libraryPathList.get(position) : null;
+    }
 
-        return libraryPath;
+    private static synchronized void clearLibraryPathPositions() {
+        libraryPathPositions.clear();
+        libraryPathList.clear();
     }
 
-    private static final Set<String> cqlLibraryPaths = new LinkedHashSet<>();
-    public static Set<String> getCqlLibraryPaths() {
-        if (cqlLibraryPaths.isEmpty()) {
-            setupCqlLibraryPaths();
-        }
-        return cqlLibraryPaths;
+    private static final Map<String, CqlSourceIndex> cqlSourceIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * @return the index of the CQL files of the directory, shared until the path caches are cleared
+     */
+    public static CqlSourceIndex getCqlSourceIndex(String directoryPath, boolean recursive) {
+        String key = Paths.get(directoryPath).toAbsolutePath().normalize() + ":" + recursive;
+        return cqlSourceIndexes.computeIfAbsent(key, k -> new CqlSourceIndex(Paths.get(directoryPath), recursive));
     }
-    private static void setupCqlLibraryPaths() {
+
+    public static Set<String> getCqlLibraryPaths() {
         //need to add an error report for bad resource paths
+        Set<String> cqlLibraryPaths = new LinkedHashSet<>();
         for (String dir : resourceDirectories) {
-            List<String> filePaths = IOUtils.getFilePaths(dir, true);
-            filePaths.stream().filter(path -> path.contains(".cql")).forEach(cqlLibraryPaths::add);
+            getCqlSourceIndex(dir, true).getFiles().forEach(path -> cqlLibraryPaths.add(path.toString()));
         }
+        return cqlLibraryPaths;
     }
 
     public static String getCqlLibrarySourcePath(String libraryName, String cqlFileName, List<String> binaryPaths) {
         // Old way, requires the resourcePaths argument to include cql directories, which is wrong
-        List<String> cqlLibrarySourcePaths = IOUtils.getCqlLibraryPaths().stream()
-                .filter(path -> path.endsWith(cqlFileName))
-                .collect(Collectors.toList());
-        String cqlLibrarySourcePath = (cqlLibrarySourcePaths.isEmpty()) ? null : cqlLibrarySourcePaths.get(0);
+        for (String dir : resourceDirectories) {
+            Path path = getCqlSourceIndex(dir, true).findByFileName(cqlFileName);
+            if (path != null) {
+                return path.toString();
+            }
+        }
 
         // Correct way, uses the binaryPaths loaded from the BaseProcessor (passed here because static)
-        try {
-            if (cqlLibrarySourcePath == null) {
-                for (String path : binaryPaths) {
-                    File f = new File(Utilities.path(path, cqlFileName));
-                    if (f.exists()) {
-                        cqlLibrarySourcePath = f.getAbsolutePath();
-                        break;
-                    }
-                }
+        for (String binaryPath : binaryPaths) {
+            Path path = getCqlSourceIndex(binaryPath, false).findByFileName(cqlFileName);
+            if (path != null) {
+                return path.toAbsolutePath().toString();
             }
-        } catch (IOException e) {
-            logger.error(e.getMessage());
-            LogUtils.putException(libraryName, e);
         }
 
-        return cqlLibrarySourcePath;
+        return null;
     }
 
     private static final Set<String> terminologyPaths = new LinkedHashSet<>();
@@ -748,6 +927,9 @@ public class IOUtils {
         return terminologyPaths;
     }
     private static void setupTerminologyPaths(FhirContext fhirContext) {
+        Profiler.time(Profiler.DISCOVERY, "Terminology", () -> discoverTerminologyPaths(fhirContext));
+    }
+    private static void discoverTerminologyPaths(FhirContext fhirContext) {
         HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
         for (String dir : resourceDirectories) {
             for (String path : IOUtils.getFilePaths(dir, true)) {
@@ -777,6 +959,13 @@ public class IOUtils {
         }
     }
 
+    /**
+     * Reads the resource of an artifact record from its path (through the resource cache).
+     */
+    public static IBaseResource readArtifact(ArtifactRecord record, FhirContext fhirContext) {
+        return readResource(record.getPath(), fhirContext, true);
+    }
+
     public static IBaseResource getLibraryByUrl(FhirContext fhirContext, String url) {
         IBaseResource library = getLibraryUrlMap(fhirContext).get(url);
         if (library == null) {
@@ -792,16 +981,22 @@ public class IOUtils {
         }
         return libraryPaths;
     }
-    private static final Map<String, IBaseResource> libraryUrlMap = new LinkedHashMap<>();
+    private static final Map<String, ArtifactRecord> libraryUrlMap = new LinkedHashMap<>();
+    /**
+     * The libraries by canonical url, with and without version. A resource is read when it is requested and may be read again later, so changes made to it in
+     * memory are not kept; see {@link ArtifactRecordMap}.
+     */
     public static Map<String, IBaseResource> getLibraryUrlMap(FhirContext fhirContext) {
+        return new ArtifactRecordMap(getLibraryUrlRecords(fhirContext), record -> readArtifact(record, fhirContext));
+    }
+    /**
+     * The records of the libraries by canonical url, with and without version.
+     */
+    public static Map<String, ArtifactRecord> getLibraryUrlRecords(FhirContext fhirContext) {
         if (libraryPathMap.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
-//        LogUtils.info(String.format("libraryUrlMap Size: %d", libraryPathMap.size()));
-//        for (Map.Entry<String, IBaseResource> e : libraryUrlMap.entrySet()) {
-//            LogUtils.info(String.format("libraryUrlMap Entry: %s", e.getKey()));
-//        }
-        return libraryUrlMap;
+        return Collections.unmodifiableMap(libraryUrlMap);
     }
     private static final Map<String, String> libraryPathMap = new LinkedHashMap<>();
     public static Map<String, String> getLibraryPathMap(FhirContext fhirContext) {
@@ -810,14 +1005,27 @@ public class IOUtils {
         }
         return libraryPathMap;
     }
-    private static final Map<String, IBaseResource> libraries = new LinkedHashMap<>();
+    private static final Map<String, ArtifactRecord> libraries = new LinkedHashMap<>();
+    /**
+     * The libraries by id. A resource is read when it is requested and may be read again later, so changes made to it in
+     * memory are not kept; see {@link ArtifactRecordMap}.
+     */
     public static Map<String, IBaseResource> getLibraries(FhirContext fhirContext) {
+        return new ArtifactRecordMap(getLibraryRecords(fhirContext), record -> readArtifact(record, fhirContext));
+    }
+    /**
+     * The records of the libraries by id.
+     */
+    public static Map<String, ArtifactRecord> getLibraryRecords(FhirContext fhirContext) {
         if (libraries.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
-        return libraries;
+        return Collections.unmodifiableMap(libraries);
     }
     private static void setupLibraryPaths(FhirContext fhirContext) {
+        Profiler.time(Profiler.DISCOVERY, "Library", () -> discoverLibraryPaths(fhirContext));
+    }
+    private static void discoverLibraryPaths(FhirContext fhirContext) {
         Map<String, IBaseResource> resources = new LinkedHashMap<>();
         for (String dir : resourceDirectories) {
             for(String path : IOUtils.getFilePaths(dir, true)) {
@@ -838,15 +1046,14 @@ public class IOUtils {
                     .filter(entry -> entry.getValue() != null)
                     .filter(entry ->  libraryClassName.equals(entry.getValue().getClass().getName()))
                     .forEach(entry -> {
+                        ArtifactRecord record = ArtifactRecord.of(entry.getValue(), entry.getKey(), fhirContext);
                         libraryPaths.add(entry.getKey());
-                        libraries.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
-                        libraryPathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
-                        String url = ResourceUtils.getUrl(entry.getValue(), fhirContext);
-                        var version = ResourceUtils.getVersion(entry.getValue(), fhirContext);
-                        if (url != null) {
-                            libraryUrlMap.put(ResourceUtils.getUrl(entry.getValue(), fhirContext), entry.getValue());
-                            if (version != null) {
-                                libraryUrlMap.put(ResourceUtils.getUrl(entry.getValue(), fhirContext) + "|" + version, entry.getValue());
+                        libraries.put(record.getId(), record);
+                        libraryPathMap.put(record.getId(), entry.getKey());
+                        if (record.getUrl() != null) {
+                            libraryUrlMap.put(record.getUrl(), record);
+                            if (record.getVersion() != null) {
+                                libraryUrlMap.put(record.getUrl() + "|" + record.getVersion(), record);
                             }
                         }
                     });
@@ -867,14 +1074,21 @@ public class IOUtils {
         }
         return measurePathMap;
     }
-    private static final Map<String, IBaseResource> measures = new LinkedHashMap<>();
+    private static final Map<String, ArtifactRecord> measures = new LinkedHashMap<>();
+    /**
+     * The measures by id. A resource is read when it is requested and may be read again later, so changes made to it in
+     * memory are not kept; see {@link ArtifactRecordMap}.
+     */
     public static Map<String, IBaseResource> getMeasures(FhirContext fhirContext) {
         if (measures.isEmpty()) {
             setupMeasurePaths(fhirContext);
         }
-        return measures;
+        return new ArtifactRecordMap(measures, record -> readArtifact(record, fhirContext));
     }
     private static void setupMeasurePaths(FhirContext fhirContext) {
+        Profiler.time(Profiler.DISCOVERY, "Measure", () -> discoverMeasurePaths(fhirContext));
+    }
+    private static void discoverMeasurePaths(FhirContext fhirContext) {
         Map<String, IBaseResource> resources = new LinkedHashMap<>();
         for (String dir : resourceDirectories) {
             for(String path : IOUtils.getFilePaths(dir, true)) {
@@ -895,7 +1109,8 @@ public class IOUtils {
                     .filter(entry ->  measureClassName.equals(entry.getValue().getClass().getName()))
                     .forEach(entry -> {
                         measurePaths.add(entry.getKey());
-                        measures.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
+                        measures.put(entry.getValue().getIdElement().getIdPart(),
+                                ArtifactRecord.of(entry.getValue(), entry.getKey(), fhirContext));
                         measurePathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
                     });
         }
@@ -909,6 +1124,9 @@ public class IOUtils {
         return measureReportPaths;
     }
     private static void setupMeasureReportPaths(FhirContext fhirContext) {
+        Profiler.time(Profiler.DISCOVERY, "MeasureReport", () -> discoverMeasureReportPaths(fhirContext));
+    }
+    private static void discoverMeasureReportPaths(FhirContext fhirContext) {
         HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
         for (String dir : resourceDirectories) {
             for(String path : IOUtils.getFilePaths(dir, true)) {
@@ -942,14 +1160,21 @@ public class IOUtils {
         }
         return planDefinitionPathMap;
     }
-    private static final Map<String, IBaseResource> planDefinitions = new LinkedHashMap<>();
+    private static final Map<String, ArtifactRecord> planDefinitions = new LinkedHashMap<>();
+    /**
+     * The plan definitions by id. A resource is read when it is requested and may be read again later, so changes made to it in
+     * memory are not kept; see {@link ArtifactRecordMap}.
+     */
     public static Map<String, IBaseResource> getPlanDefinitions(FhirContext fhirContext) {
         if (planDefinitions.isEmpty()) {
             setupPlanDefinitionPaths(fhirContext);
         }
-        return planDefinitions;
+        return new ArtifactRecordMap(planDefinitions, record -> readArtifact(record, fhirContext));
     }
     private static void setupPlanDefinitionPaths(FhirContext fhirContext) {
+        Profiler.time(Profiler.DISCOVERY, "PlanDefinition", () -> discoverPlanDefinitionPaths(fhirContext));
+    }
+    private static void discoverPlanDefinitionPaths(FhirContext fhirContext) {
         HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
         for (String dir : resourceDirectories) {
             for(String path : IOUtils.getFilePaths(dir, true)) {
@@ -966,7 +1191,8 @@ public class IOUtils {
                     .filter(entry ->  planDefinitionClassName.equals(entry.getValue().getClass().getName()))
                     .forEach(entry -> {
                         planDefinitionPaths.add(entry.getKey());
-                        planDefinitions.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
+                        planDefinitions.put(entry.getValue().getIdElement().getIdPart(),
+                                ArtifactRecord.of(entry.getValue(), entry.getKey(), fhirContext));
                         planDefinitionPathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
                     });
         }
@@ -988,15 +1214,22 @@ public class IOUtils {
         return questionnairePathMap;
     }
 
-    private static final Map<String, IBaseResource> questionnaires = new LinkedHashMap<>();
+    private static final Map<String, ArtifactRecord> questionnaires = new LinkedHashMap<>();
+    /**
+     * The questionnaires by id. A resource is read when it is requested and may be read again later, so changes made to it in
+     * memory are not kept; see {@link ArtifactRecordMap}.
+     */
     public static Map<String, IBaseResource> getQuestionnaires(FhirContext fhirContext) {
         if (questionnaires.isEmpty()) {
             setupQuestionnairePaths(fhirContext);
         }
-        return questionnaires;
+        return new ArtifactRecordMap(questionnaires, record -> readArtifact(record, fhirContext));
     }
 
     private static void setupQuestionnairePaths(FhirContext fhirContext) {
+        Profiler.time(Profiler.DISCOVERY, "Questionnaire", () -> discoverQuestionnairePaths(fhirContext));
+    }
+    private static void discoverQuestionnairePaths(FhirContext fhirContext) {
         HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
         for (String dir : resourceDirectories) {
             for(String path : IOUtils.getFilePaths(dir, true)) {
@@ -1013,7 +1246,8 @@ public class IOUtils {
                     .filter(entry ->  questionnaireClassName.equals(entry.getValue().getClass().getName()))
                     .forEach(entry -> {
                         questionnairePaths.add(entry.getKey());
-                        questionnaires.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
+                        questionnaires.put(entry.getValue().getIdElement().getIdPart(),
+                                ArtifactRecord.of(entry.getValue(), entry.getKey(), fhirContext));
                         questionnairePathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
                     });
         }
@@ -1027,12 +1261,16 @@ public class IOUtils {
         return activityDefinitionPathMap;
     }
 
-    private static final Map<String, IBaseResource> activityDefinitions = new LinkedHashMap<>();
+    private static final Map<String, ArtifactRecord> activityDefinitions = new LinkedHashMap<>();
+    /**
+     * The activity definitions by id. A resource is read when it is requested and may be read again later, so changes made to it in
+     * memory are not kept; see {@link ArtifactRecordMap}.
+     */
     public static Map<String, IBaseResource> getActivityDefinitions(FhirContext fhirContext) {
         if (activityDefinitions.isEmpty()) {
             setupActivityDefinitionPaths(fhirContext);
         }
-        return activityDefinitions;
+        return new ArtifactRecordMap(activityDefinitions, record -> readArtifact(record, fhirContext));
     }
 
     private static final Set<String> activityDefinitionPaths = new LinkedHashSet<>();
@@ -1045,6 +1283,9 @@ public class IOUtils {
     }
 
     private static void setupActivityDefinitionPaths(FhirContext fhirContext) {
+        Profiler.time(Profiler.DISCOVERY, "ActivityDefinition", () -> discoverActivityDefinitionPaths(fhirContext));
+    }
+    private static void discoverActivityDefinitionPaths(FhirContext fhirContext) {
         HashMap<String, IBaseResource> resources = new LinkedHashMap<>();
         // BUG: resourceDirectories is being populated with all "per-convention" directories during validation. So,
         // if you have resources in the /tests directory for example, they will be picked up from there, rather than
@@ -1064,7 +1305,8 @@ public class IOUtils {
                     .filter(entry ->  activityDefinitionClassName.equals(entry.getValue().getClass().getName()))
                     .forEach(entry -> {
                         activityDefinitionPaths.add(entry.getKey());
-                        activityDefinitions.put(entry.getValue().getIdElement().getIdPart(), entry.getValue());
+                        activityDefinitions.put(entry.getValue().getIdElement().getIdPart(),
+                                ArtifactRecord.of(entry.getValue(), entry.getKey(), fhirContext));
                         activityDefinitionPathMap.put(entry.getValue().getIdElement().getIdPart(), entry.getKey());
                     });
         }
@@ -1093,6 +1335,9 @@ public class IOUtils {
     }
 
     private static void setupDevicePaths(FhirContext fhirContext) {
+        Profiler.time(Profiler.DISCOVERY, "Device", () -> discoverDevicePaths(fhirContext));
+    }
+    private static void discoverDevicePaths(FhirContext fhirContext) {
         devicePaths = new LinkedHashSet <>();
         Map<String, IBaseResource> resources = new LinkedHashMap<>();
         for (String dir : resourceDirectories) {
@@ -1151,14 +1396,46 @@ public class IOUtils {
      * boost over removing final keyword and initializing new instances.
      */
     public static void cleanUp(){
-        alreadyCopied.clear();
-        cachedResources.clear();
+        CompiledLibraryRegistry.clear();
+        ArchiveUtils.clearCache();
+        clearRunCaches();
+    }
+
+    /**
+     * Clears the state of a run but keeps the CompiledLibraryRegistry, which is checked against the CQL files when
+     * used, so the next run in the same JVM (e.g. a request to the daemon) does not translate unchanged libraries
+     * again. The parsed resources are cleared: they are shared instances that a run may change in memory (bundling
+     * sets ids and strips narratives), which their file stamps cannot show.
+     */
+    public static void clearRunCaches() {
+        logger.debug("Resource cache: {}", cachedResources.stats());
+        cachedResources.invalidateAll();
+        cachedTranslator.clear();
+        clearPathCaches();
+    }
+
+    /**
+     * Clears the cached directory listings, so files created or deleted since they were listed are seen.
+     */
+    public static void clearFilePathCaches() {
         cachedFilePaths.clear();
         cachedDirectoryPaths.clear();
-        cachedTranslator.clear();
-        cqlLibraryPaths.clear();
+        // changes within the timestamp resolution of the file system do not change the stamps the index checks
+        cqlSourceIndexes.values().forEach(CqlSourceIndex::invalidate);
+    }
+
+    /**
+     * Clears what was discovered from the file system (directory listings and the paths and maps of the IG artifacts)
+     * but keeps the parsed resources, which are checked against their files when used, and the CQL translators. Used
+     * between the steps of a pipeline, which share the parsed resources and translations.
+     */
+    public static void clearPathCaches() {
+        alreadyCopied.clear();
+        clearFilePathCaches();
+        cqlSourceIndexes.clear();
         terminologyPaths.clear();
         libraryPaths.clear();
+        clearLibraryPathPositions();
         libraryUrlMap.clear();
         libraryPathMap.clear();
         libraries.clear();
@@ -1173,5 +1450,6 @@ public class IOUtils {
         questionnairePathMap.clear();
         questionnaires.clear();
         activityDefinitionPaths.clear();
+        DependencyService.clear();
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.OperationParam;
+import org.opencds.cqf.tooling.operations.OperationRegistry;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -58,6 +59,18 @@ public class OperationUtils {
       return System.lineSeparator() + FlipTable.of(headers, rows);
    }
 
+   public static String getHelpMenu(OperationRegistry.OperationDescriptor operation) {
+      String[] headers = new String[]{ "Parameter", "Description" };
+      String[][] rows = new String[operation.getParams().size()][2];
+      int idx = 0;
+      for (OperationRegistry.ParamDescriptor param : operation.getParams()) {
+         rows[idx][0] = formatAliases(param.getAlias());
+         rows[idx++][1] = param.getDescription();
+      }
+
+      return System.lineSeparator() + FlipTable.of(headers, rows);
+   }
+
    public static int getOperationParamCount(ExecutableOperation operation) {
       int count = 0;
       for (Field field : operation.getClass().getDeclaredFields()) {
@@ -0,0 +1,70 @@
+package org.opencds.cqf.tooling.utilities;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-thread pool of configured FHIR parsers. Creating a parser for every resource read or written is cheap compared
+ * to parsing, but not free, and it adds up over the thousands of resources of an IG; parsers are not thread-safe, so
+ * each thread keeps its own, one per FhirContext, encoding and pretty-print setting.
+ * <p>
+ * The parsers are shared by all the code running on the thread: use them for a single parse or encode and do not change
+ * their configuration (call {@link FhirContext#newJsonParser()} for a parser with other settings).
+ */
+public class ParserPool {
+
+    // contexts per thread before the least recently used one is dropped, so a thread does not keep a context alive
+    private static final int MAX_CONTEXTS = 4;
+
+    private static final ThreadLocal<Map<FhirContext, IParser[]>> parsers = ThreadLocal.withInitial(
+            () -> new LinkedHashMap<>(MAX_CONTEXTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<FhirContext, IParser[]> eldest) {
+                    return size() > MAX_CONTEXTS;
+                }
+            });
+
+    private ParserPool() {}
+
+    /**
+     * @param encoding JSON or XML
+     * @param fhirContext the context of the parser
+     * @param prettyPrint whether the parser pretty prints the resources it encodes
+     * @return the parser of the calling thread for the given context and settings
+     */
+    public static IParser getParser(IOUtils.Encoding encoding, FhirContext fhirContext, boolean prettyPrint) {
+        int index;
+        switch (encoding) {
+            case JSON:
+                index = 0;
+                break;
+            case XML:
+                index = 2;
+                break;
+            default:
+                throw new RuntimeException("Unknown encoding type: " + encoding);
+        }
+        if (prettyPrint) {
+            index++;
+        }
+
+        IParser[] contextParsers = parsers.get().computeIfAbsent(fhirContext, k -> new IParser[4]);
+        IParser parser = contextParsers[index];
+        if (parser == null) {
+            parser = encoding == IOUtils.Encoding.JSON ? fhirContext.newJsonParser() : fhirContext.newXmlParser();
+            parser.setPrettyPrint(prettyPrint);
+            contextParsers[index] = parser;
+        }
+        return parser;
+    }
+
+    /**
+     * Drops the parsers of the calling thread.
+     */
+    public static void clear() {
+        parsers.remove();
+    }
+}
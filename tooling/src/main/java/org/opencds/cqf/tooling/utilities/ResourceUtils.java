@@ -15,7 +15,6 @@ import org.cqframework.cql.cql2elm.CqlCompilerException;
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
 import org.cqframework.cql.cql2elm.CqlTranslatorOptionsMapper;
-import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.cql2elm.ModelManager;
 import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
@@ -31,6 +30,9 @@ import org.hl7.fhir.instance.model.api.ICompositeType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.hl7.fhir.r4.model.CanonicalType;
 import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
+import org.opencds.cqf.tooling.library.GenericLibrarySourceProvider;
+import org.opencds.cqf.tooling.processor.CompiledLibraryRegistry;
+import org.opencds.cqf.tooling.processor.DependencyService;
 import org.opencds.cqf.tooling.processor.ValueSetsProcessor;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 import org.slf4j.Logger;
@@ -40,11 +42,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -152,6 +154,11 @@ public class ResourceUtils {
    }
 
    public static List<String> getDepLibraryPaths(String path, FhirContext fhirContext, Encoding encoding, Boolean versioned) {
+      return DependencyService.getInstance(fhirContext).getLibraryPaths(path, encoding, versioned,
+            () -> readDepLibraryPaths(path, fhirContext, encoding, versioned));
+   }
+
+   private static List<String> readDepLibraryPaths(String path, FhirContext fhirContext, Encoding encoding, Boolean versioned) {
       switch (fhirContext.getVersion().getVersion()) {
          case DSTU3:
             return getStu3DepLibraryPaths(path, fhirContext, encoding, versioned);
@@ -180,7 +187,7 @@ public class ResourceUtils {
                   dependencyLibraryName = IOUtils.formatFileName(name.split("\\|")[0], encoding, fhirContext);
                }
                String dependencyLibraryPath = IOUtils.concatFilePath(directoryPath, prefix + dependencyLibraryName);
-               IOUtils.putAllInListIfAbsent(getStu3DepLibraryPaths(dependencyLibraryPath, fhirContext, encoding, versioned), paths);
+               IOUtils.putAllInListIfAbsent(getDepLibraryPaths(dependencyLibraryPath, fhirContext, encoding, versioned), paths);
                IOUtils.putInListIfAbsent(dependencyLibraryPath, paths);
             }
          }
@@ -189,7 +196,7 @@ public class ResourceUtils {
    }
 
    private static Map<String, IBaseResource> getStu3DepLibraryResources(String path, Map<String, IBaseResource> dependencyLibraries, FhirContext fhirContext, Encoding encoding, Boolean versioned) {
-      List<String> dependencyLibraryPaths = getStu3DepLibraryPaths(path, fhirContext, encoding, versioned);
+      List<String> dependencyLibraryPaths = getDepLibraryPaths(path, fhirContext, encoding, versioned);
       for (String dependencyLibraryPath : dependencyLibraryPaths) {
          Object resource = IOUtils.readResource(dependencyLibraryPath, fhirContext);
          if (resource instanceof org.hl7.fhir.dstu3.model.Library) {
@@ -227,7 +234,7 @@ public class ResourceUtils {
    }
 
    private static Map<String, IBaseResource> getR4DepLibraryResources(String path, Map<String, IBaseResource> dependencyLibraries, FhirContext fhirContext, Encoding encoding, Boolean versioned, Logger logger) {
-      List<String> dependencyLibraryPaths = getR4DepLibraryPaths(path, fhirContext, encoding, versioned);
+      List<String> dependencyLibraryPaths = getDepLibraryPaths(path, fhirContext, encoding, versioned);
       for (String dependencyLibraryPath : dependencyLibraryPaths) {
          if (dependencyLibraryPath.contains("ModelInfo")) {
             logger.debug("skipping ModelInfo");
@@ -308,95 +315,15 @@ public class ResourceUtils {
    }
 
    public static Map<String, IBaseResource> getDepLibraryResources(IBaseResource resource, FhirContext fhirContext, Boolean includeDependencies, Boolean includeVersion, Set<String> missingDependencies) {
-      Map<String, IBaseResource> libraryResources = new HashMap<>();
-
-      List<String> libraryUrls = getLibraryDependencies(resource, fhirContext);
-
-      for (String libraryUrl : libraryUrls) {
-         IBaseResource library = IOUtils.getLibraryUrlMap(fhirContext).get(libraryUrl);
-         if (library == null) {
-            var id = CanonicalUtils.getId(libraryUrl);
-            var version = CanonicalUtils.getVersion(libraryUrl);
-            library = IOUtils.getLibraries(fhirContext).get(id);
-            if (library != null) {
-               var libraryVersion = ResourceUtils.getVersion(library, fhirContext);
-               if (libraryVersion != null && !libraryVersion.equals(version)) {
-                  logger.warn("Mismatch library version for {}, expected {}, found {}", libraryUrl, version, libraryVersion);
-                  library = null;
-               }
-            }
-         }
-         if (library != null) {
-            libraryResources.putIfAbsent(libraryUrl, library);
-
-            if (includeDependencies) {
-               Map<String, IBaseResource> libraryDependencies = getDepLibraryResources(library, fhirContext, includeDependencies, includeVersion, missingDependencies);
-               for (Entry<String, IBaseResource> entry : libraryDependencies.entrySet()) {
-                  libraryResources.putIfAbsent(entry.getKey(), entry.getValue());
-               }
-            }
-         }
-         else {
-            missingDependencies.add(libraryUrl);
-         }
-      }
-
-      return libraryResources;
+      DependencyService dependencies = DependencyService.getInstance(fhirContext);
+      missingDependencies.addAll(dependencies.getMissingLibraries(resource, includeDependencies));
+      return new LinkedHashMap<>(dependencies.getLibraryDependencies(resource, includeDependencies));
    }
 
    public static Map<String, IBaseResource> getDepValueSetResources(IBaseResource resource, FhirContext fhirContext, Boolean includeDependencies, Set<String> missingDependencies) {
-      Map<String, IBaseResource> valueSetResources = new HashMap<>();
-
-      List<String> valueSetUrls = getTerminologyDependencies(resource, fhirContext);
-
-      for (String valueSetUrl : valueSetUrls) {
-         var cachedVs = ValueSetsProcessor.getCachedValueSets(fhirContext);
-         if (cachedVs.entrySet().stream().filter(
-                 entry -> entry.getKey().equals(valueSetUrl)).findAny().isEmpty()) {
-            missingDependencies.add(valueSetUrl);
-         } else {
-              cachedVs.entrySet().stream().filter(entry -> entry.getKey().equals(valueSetUrl))
-                      .forEach(entry -> valueSetResources.put(entry.getKey(), entry.getValue()));
-         }
-      }
-      Set<String> dependencies = new HashSet<>(valueSetUrls);
-
-      if (includeDependencies) {
-         List<String> libraryUrls = getLibraryDependencies(resource, fhirContext);
-         for (String url : libraryUrls) {
-            IBaseResource library = IOUtils.getLibraryUrlMap(fhirContext).get(url);
-            if (library == null) {
-               var id = CanonicalUtils.getId(url);
-               var version = CanonicalUtils.getVersion(url);
-               library = IOUtils.getLibraries(fhirContext).get(id);
-               if (library != null) {
-                  var libraryVersion = ResourceUtils.getVersion(library, fhirContext);
-                  if (libraryVersion != null && !libraryVersion.equals(version)) {
-                     logger.warn("Mismatch library version for {}, expected {}, found {}", url, version, libraryVersion);
-                     library = null;
-                  }
-               }
-            }
-            if (library != null) {
-               Map<String, IBaseResource> dependencyValueSets = getDepValueSetResources(library, fhirContext, includeDependencies, missingDependencies);
-               dependencies.addAll(dependencyValueSets.keySet());
-               for (Entry<String, IBaseResource> entry : dependencyValueSets.entrySet()) {
-                  valueSetResources.putIfAbsent(entry.getKey(), entry.getValue());
-               }
-            }
-            else {
-               missingDependencies.add(url);
-            }
-         }
-      }
-
-      if (dependencies.size() != valueSetResources.size()) {
-         dependencies.removeAll(valueSetResources.keySet());
-         for (String valueSetUrl : dependencies) {
-            missingDependencies.add(valueSetUrl);
-         }
-      }
-      return valueSetResources;
+      DependencyService dependencies = DependencyService.getInstance(fhirContext);
+      missingDependencies.addAll(dependencies.getMissingTerminology(resource, includeDependencies));
+      return new LinkedHashMap<>(dependencies.getTerminologyDependencies(resource, includeDependencies));
    }
 
    public static Map<String, IBaseResource> getDepValueSetResources(String cqlContentPath, String igPath, FhirContext fhirContext, boolean includeDependencies, Boolean includeVersion) throws CqlTranslatorException {
@@ -404,10 +331,12 @@ public class ResourceUtils {
 
       List<String> valueSetDefIDs = getDepELMValueSetDefIDs(cqlContentPath);
 
+      Map<String, IBaseResource> cachedValueSets = ValueSetsProcessor.getCachedValueSets(fhirContext);
       for (String valueSetUrl : valueSetDefIDs) {
-         ValueSetsProcessor.getCachedValueSets(fhirContext).entrySet().stream()
-                 .filter(entry -> entry.getKey().equals(valueSetUrl))
-                 .forEach(entry -> valueSetResources.put(entry.getKey(), entry.getValue()));
+         IBaseResource valueSet = cachedValueSets.get(valueSetUrl);
+         if (valueSet != null) {
+            valueSetResources.put(valueSetUrl, valueSet);
+         }
       }
       Set<String> dependencies = new HashSet<>(valueSetDefIDs);
 
@@ -452,8 +381,15 @@ public class ResourceUtils {
       return includedValueSetDefIDs;
    }
 
+   // the declarations below are read from the libraries compiled by the CqlProcessor when available, the CQL is only
+   // translated (again) when it was not compiled in this run
    public static List<IncludeDef> getIncludedDefs(String cqlContentPath) throws CqlTranslatorException {
       ArrayList<IncludeDef> includedDefs = new ArrayList<>();
+      CompiledLibraryRegistry.Entry compiled = CompiledLibraryRegistry.get(cqlContentPath);
+      if (compiled != null) {
+         includedDefs.addAll(compiled.getIncludeDefs());
+         return includedDefs;
+      }
       org.hl7.elm.r1.Library elm = getElmFromCql(cqlContentPath);
       if (elm.getIncludes() != null && !elm.getIncludes().getDef().isEmpty()) {
          includedDefs.addAll(elm.getIncludes().getDef());
@@ -463,6 +399,11 @@ public class ResourceUtils {
 
    public static List<ValueSetDef> getValueSetDefs(String cqlContentPath) throws CqlTranslatorException {
       ArrayList<ValueSetDef> valueSetDefs = new ArrayList<>();
+      CompiledLibraryRegistry.Entry compiled = CompiledLibraryRegistry.get(cqlContentPath);
+      if (compiled != null) {
+         valueSetDefs.addAll(compiled.getValueSetDefs());
+         return valueSetDefs;
+      }
       org.hl7.elm.r1.Library elm;
       elm = getElmFromCql(cqlContentPath);
       if (elm.getValueSets() != null && !elm.getValueSets().getDef().isEmpty()) {
@@ -496,7 +437,7 @@ public class ResourceUtils {
       ModelManager modelManager = new ModelManager();
       LibraryManager libraryManager = new LibraryManager(modelManager);
       libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
-      libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
+      libraryManager.getLibrarySourceLoader().registerProvider(new GenericLibrarySourceProvider(folder));
       return  IOUtils.translate(new File(cqlContentPath), libraryManager);
    }
 
@@ -938,8 +879,8 @@ public class ResourceUtils {
       try (FileOutputStream writer = new FileOutputStream(outputPath + "/" + resource.getIdElement().getResourceType() + "-" + resource.getIdElement().getIdPart() + "." + encoding)) {
          writer.write(
                  encoding.equals("json")
-                         ? context.newJsonParser().setPrettyPrint(true).encodeResourceToString(resource).getBytes()
-                         : context.newXmlParser().setPrettyPrint(true).encodeResourceToString(resource).getBytes()
+                         ? ParserPool.getParser(IOUtils.Encoding.JSON, context, true).encodeResourceToString(resource).getBytes()
+                         : ParserPool.getParser(IOUtils.Encoding.XML, context, true).encodeResourceToString(resource).getBytes()
          );
          writer.flush();
          outputResourceTracker.put(resourceFileLocation, Boolean.TRUE);
@@ -960,8 +901,8 @@ public class ResourceUtils {
          try (FileOutputStream writer = new FileOutputStream(outputPath + "/" + name + "." + encoding)) {
             writer.write(
                     encoding.equals("json")
-                            ? context.newJsonParser().setPrettyPrint(true).encodeResourceToString(resource).getBytes()
-                            : context.newXmlParser().setPrettyPrint(true).encodeResourceToString(resource).getBytes()
+                            ? ParserPool.getParser(IOUtils.Encoding.JSON, context, true).encodeResourceToString(resource).getBytes()
+                            : ParserPool.getParser(IOUtils.Encoding.XML, context, true).encodeResourceToString(resource).getBytes()
             );
             writer.flush();
          }
@@ -0,0 +1,115 @@
+package org.opencds.cqf.tooling.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+public class ExecutionServiceTest {
+
+    @Test
+    public void testNestedBatchesRunInline() throws Exception {
+        // a single CPU thread would deadlock if the nested batch waited on the pool
+        ExecutionService executionService = new ExecutionService(1, 1, 1, false);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int value = i;
+            tasks.add(() -> executionService.invokeAll(ExecutionService.Pool.CPU, "inner",
+                    List.<Callable<Integer>>of(() -> value, () -> value)).stream().mapToInt(Integer::intValue).sum());
+        }
+
+        List<Integer> results = executionService.invokeAll(ExecutionService.Pool.CPU, "outer", tasks);
+        assertEquals(results, List.of(0, 2, 4, 6));
+        assertEquals(executionService.getMetrics().get("inner").getCompletedCount(), 8);
+        assertEquals(executionService.getMetrics().get("outer").getBatchCount(), 1);
+    }
+
+    @Test
+    public void testMaxConcurrency() throws Exception {
+        ExecutionService executionService = new ExecutionService(2, 8, 16, true);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return null;
+            });
+        }
+
+        executionService.invokeAll(ExecutionService.Pool.IO, "limited", tasks, 3);
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(executionService.getMetrics().get("limited").getCompletedCount(), 20);
+    }
+
+    @Test
+    public void testFailureDoesNotStopBatch() throws Exception {
+        ExecutionService executionService = new ExecutionService(2, 1, 16, false);
+        AtomicInteger completed = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            throw new IllegalStateException("first");
+        });
+        for (int i = 0; i < 10; i++) {
+            tasks.add(() -> {
+                completed.incrementAndGet();
+                return null;
+            });
+        }
+        tasks.add(() -> {
+            throw new IllegalArgumentException("second");
+        });
+
+        try {
+            executionService.invokeAll(ExecutionService.Pool.CPU, "failing", tasks);
+            fail("Expected the batch to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals(e.getCause().getSuppressed().length, 1);
+        }
+        // every task ran before the failure was thrown
+        assertEquals(completed.get(), 10);
+        assertEquals(executionService.getMetrics().get("failing").getFailedCount(), 2);
+    }
+
+    @Test
+    public void testFailFastCancelsBatch() throws Exception {
+        ExecutionService executionService = new ExecutionService(2, 1, 16, false);
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            blocking.await();
+            throw new IllegalStateException("failed");
+        });
+        tasks.add(() -> {
+            blocking.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+
+        try {
+            executionService.invokeAll(ExecutionService.Pool.CPU, "failFast", tasks, 0, true);
+            fail("Expected the batch to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(interrupted.await(30, TimeUnit.SECONDS));
+        assertEquals(executionService.getMetrics().get("failFast").getFailedCount(), 1);
+    }
+}
@@ -0,0 +1,59 @@
+package org.opencds.cqf.tooling.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class ProfilerTest {
+
+    @AfterMethod
+    public void tearDown() {
+        Profiler.disable();
+        Profiler.reset();
+    }
+
+    @Test
+    public void testDisabledProfilerRecordsNothing() {
+        Profiler.disable();
+        try (Profiler.Span span = Profiler.start(Profiler.CQL_TRANSLATE, "FHIRHelpers")) {
+            span.addBytes(10);
+        }
+        assertEquals(Profiler.toJson().getAsJsonArray("phases").size(), 0);
+    }
+
+    @Test
+    public void testPhasesAndArtifacts() {
+        Profiler.enable();
+        for (int i = 0; i < 3; i++) {
+            try (Profiler.Span span = Profiler.start(Profiler.CQL_TRANSLATE, "FHIRHelpers")) {
+                span.addBytes(100);
+            }
+        }
+        try (Profiler.Span span = Profiler.start(Profiler.CQL_TRANSLATE, "EXM124")) {
+            span.addBytes(50);
+        }
+        try (Profiler.Span ignored = Profiler.start(Profiler.DISK_WRITE, null)) {
+            // nothing written
+        }
+
+        JsonArray phases = Profiler.toJson().getAsJsonArray("phases");
+        assertEquals(phases.size(), 2);
+
+        JsonObject translate = null;
+        for (int i = 0; i < phases.size(); i++) {
+            if (phases.get(i).getAsJsonObject().get("phase").getAsString().equals(Profiler.CQL_TRANSLATE)) {
+                translate = phases.get(i).getAsJsonObject();
+            }
+        }
+        assertTrue(translate != null);
+        assertEquals(translate.get("count").getAsLong(), 4);
+        assertEquals(translate.get("bytes").getAsLong(), 350);
+        assertEquals(translate.getAsJsonArray("artifacts").size(), 2);
+        assertTrue(Profiler.getSummary(5).contains(Profiler.CQL_TRANSLATE + " FHIRHelpers x3"));
+    }
+}
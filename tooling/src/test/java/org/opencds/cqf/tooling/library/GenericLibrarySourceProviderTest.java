@@ -0,0 +1,155 @@
+package org.opencds.cqf.tooling.library;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.opencds.cqf.tooling.utilities.CqlHeader;
+import org.opencds.cqf.tooling.utilities.CqlSourceIndex;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class GenericLibrarySourceProviderTest {
+
+    private Path directory;
+
+    private void write(String fileName, String cql) throws IOException {
+        Files.write(directory.resolve(fileName), cql.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static VersionedIdentifier identifier(String id, String version) {
+        return new VersionedIdentifier().withId(id).withVersion(version);
+    }
+
+    private static String read(GenericLibrarySourceProvider provider, VersionedIdentifier identifier)
+            throws IOException {
+        try (InputStream source = provider.getLibrarySource(identifier)) {
+            return source != null ? new String(source.readAllBytes(), StandardCharsets.UTF_8) : null;
+        }
+    }
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("library-source-provider");
+        write("Common.cql", "/*\n library Commented version '9.9.9'\n*/\nlibrary Common version '1.0.0'\n\ndefine X: 1\n");
+        write("Common-newer.cql", "// the next minor\nlibrary Common version '1.2.0'\n\ndefine X: 2\n");
+        write("Common2.cql", "library Common version '2.0.0'\n\ndefine X: 3\n");
+        write("Quoted.cql", "library \"Quoted Name\" version '0.1'\n");
+        write("Qualified.cql", "library CQF.Helpers version '3.1.0'\n");
+        write("NoHeader.cql", "define X: 1\n");
+        write("NotCql.txt", "library Ignored version '1.0.0'\n");
+    }
+
+    @AfterMethod
+    public void clearIndexes() {
+        IOUtils.clearPathCaches();
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testLookups() throws IOException {
+        GenericLibrarySourceProvider provider = new GenericLibrarySourceProvider(directory.toString());
+
+        assertEquals(read(provider, identifier("Common", "1.0.0")),
+                "/*\n library Commented version '9.9.9'\n*/\nlibrary Common version '1.0.0'\n\ndefine X: 1\n");
+        // a version only matches itself, so the LibraryManager can ask the next provider
+        assertNull(read(provider, identifier("Common", "1.1.0")));
+        // the most recent version
+        assertEquals(read(provider, identifier("Common", null)), read(provider, identifier("Common", "2.0.0")));
+        assertNull(read(provider, identifier("Common", "2.1.0")));
+        assertNull(read(provider, identifier("Commented", "9.9.9")));
+
+        assertEquals(read(provider, identifier("Quoted Name", "0.1")), "library \"Quoted Name\" version '0.1'\n");
+        assertEquals(read(provider, identifier("Helpers", "3.1.0")), "library CQF.Helpers version '3.1.0'\n");
+        assertNull(read(provider, identifier("Ignored", "1.0.0")));
+    }
+
+    @Test
+    public void testNamespace() throws IOException {
+        GenericLibrarySourceProvider provider = new GenericLibrarySourceProvider(directory.toString(),
+                "http://example.org/fhir");
+
+        assertEquals(read(provider, identifier("Common", "1.0.0").withSystem("http://example.org/fhir")),
+                read(provider, identifier("Common", "1.0.0")));
+        assertNull(read(provider, identifier("Common", "1.0.0").withSystem("http://other.org/fhir")));
+    }
+
+    @Test
+    public void testProvidersOfAFolderShareTheIndex() {
+        new GenericLibrarySourceProvider(directory.toString()).getLibrarySource(identifier("Common", "1.0.0"));
+        CqlSourceIndex index = IOUtils.getCqlSourceIndex(directory.toString(), false);
+        CqlHeader header = index.getHeader(directory.resolve("Common.cql"));
+
+        // another translation of the folder does not read the headers again
+        new GenericLibrarySourceProvider(directory.toString()).getLibrarySource(identifier("Common", "2.0.0"));
+        assertSame(IOUtils.getCqlSourceIndex(directory.toString(), false), index);
+        assertSame(index.getHeader(directory.resolve("Common.cql")), header);
+    }
+
+    @Test
+    public void testAddedFileIsFound() throws IOException {
+        Path added = Files.createTempDirectory("library-source-provider-added");
+        try {
+            GenericLibrarySourceProvider provider = new GenericLibrarySourceProvider(added.toString());
+            assertNull(read(provider, identifier("Added", "1.0.0")));
+
+            long scanned = added.toFile().lastModified();
+            Files.write(added.resolve("Added.cql"), "library Added version '1.0.0'\n".getBytes(StandardCharsets.UTF_8));
+            // file systems with coarse timestamps may not move the directory time within the test
+            assertTrue(added.toFile().setLastModified(scanned + 2000));
+
+            assertEquals(read(provider, identifier("Added", "1.0.0")), "library Added version '1.0.0'\n");
+        } finally {
+            FileUtils.deleteDirectory(added.toFile());
+        }
+    }
+
+    @Test
+    public void testLibraryManagerFallsThroughOnVersionMiss() {
+        LibraryManager libraryManager = new LibraryManager(new ModelManager(), CqlCompilerOptions.defaultOptions());
+        libraryManager.getLibrarySourceLoader().registerProvider(new GenericLibrarySourceProvider(directory.toString()));
+        // a version the directory does not have, which the provider must not answer with 1.0.0 or 1.2.0
+        libraryManager.getLibrarySourceLoader().registerProvider(identifier -> "Common".equals(identifier.getId())
+                && "1.0.1".equals(identifier.getVersion())
+                ? new ByteArrayInputStream("library Common version '1.0.1'\n\ndefine X: 4\n".getBytes(StandardCharsets.UTF_8))
+                : null);
+
+        CqlTranslator translator = CqlTranslator.fromText(
+                "library Test version '1.0.0'\n\n"
+                        + "include Common version '1.0.1' called Patch\n\n"
+                        + "define Y: Patch.X\n",
+                libraryManager);
+
+        assertTrue(translator.getErrors().isEmpty(), translator.getErrors().toString());
+    }
+
+    @Test
+    public void testProviderSourcesCanBeReadAgain() throws IOException {
+        GenericLibrarySourceProvider provider = new GenericLibrarySourceProvider(directory.toString());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(read(provider, identifier("Common", "2.0.0")), "library Common version '2.0.0'\n\ndefine X: 3\n");
+        }
+        assertNull(provider.getLibrarySource(identifier("Missing", "1.0.0")));
+    }
+}
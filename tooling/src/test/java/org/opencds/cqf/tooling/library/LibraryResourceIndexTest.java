@@ -0,0 +1,42 @@
+package org.opencds.cqf.tooling.library;
+
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+
+import org.hl7.fhir.r5.model.Library;
+import org.testng.annotations.Test;
+
+public class LibraryResourceIndexTest {
+
+    private static Library library(String name, String version) {
+        return new Library().setName(name).setVersion(version);
+    }
+
+    @Test
+    public void testFindsFirstMatchLikeAScan() {
+        Library common100 = library("Common", "1.0.0");
+        Library common200 = library("Common", "2.0.0");
+        Library duplicate100 = library("Common", "1.0.0");
+        Library unversioned = library("Unversioned", null);
+        LibraryResourceIndex index = new LibraryResourceIndex(List.of(common100, common200, duplicate100, unversioned));
+
+        assertSame(index.find("Common", null), common100);
+        assertSame(index.find("Common", "1.0.0"), common100);
+        assertSame(index.find("Common", "2.0.0"), common200);
+        assertSame(index.find("Unversioned", null), unversioned);
+        assertNull(index.find("Common", "3.0.0"));
+        assertNull(index.find("Unversioned", "1.0.0"));
+        assertNull(index.find("Missing", null));
+    }
+
+    @Test
+    public void testAddedLibrariesAreFound() {
+        LibraryResourceIndex index = new LibraryResourceIndex(List.of());
+        Library added = library("Added", "1.0.0");
+        index.add(added);
+        assertSame(index.find("Added", "1.0.0"), added);
+        assertSame(index.find("Added", null), added);
+    }
+}
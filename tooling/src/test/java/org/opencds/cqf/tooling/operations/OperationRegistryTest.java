@@ -0,0 +1,47 @@
+package org.opencds.cqf.tooling.operations;
+
+import org.opencds.cqf.tooling.operations.dateroller.RollTestDates;
+import org.opencds.cqf.tooling.utilities.OperationUtils;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class OperationRegistryTest {
+
+   @Test
+   void testRegistryIsGenerated() {
+      // every @Operation class of the module is in the registry generated by the annotation processor
+      assertTrue(OperationRegistry.getOperationNames().containsAll(Arrays.asList(
+              "BundleToResources", "RefreshLibrary", "RollTestDates", "StructureMapping", "FhirTxExpansion")));
+      assertNull(OperationRegistry.get("NonexistentOperationName"));
+   }
+
+   @Test
+   void testOperationMetadata() {
+      OperationRegistry.OperationDescriptor operation = OperationRegistry.get("RollTestDates");
+      assertNotNull(operation);
+      assertEquals(operation.getClassName(), RollTestDates.class.getName());
+      assertEquals(operation.loadClass(), RollTestDates.class);
+
+      OperationRegistry.ParamDescriptor encoding = operation.getParams().stream()
+              .filter(param -> param.getField().equals("encoding")).findFirst().orElseThrow();
+      assertEquals(encoding.getAlias(), new String[] { "e", "encoding" });
+      assertEquals(encoding.getSetter(), "setEncoding");
+      assertEquals(encoding.getDefaultValue(), "json");
+      assertFalse(encoding.isRequired());
+
+      assertTrue(OperationUtils.getHelpMenu(operation).contains("-ptres | -pathtoresources"));
+   }
+
+   @Test
+   void testUnescape() {
+      assertEquals(OperationRegistry.unescape("a\\tb\\nc\\\\d"), "a\tb\nc\\d");
+      assertEquals(OperationRegistry.unescape("plain"), "plain");
+   }
+}
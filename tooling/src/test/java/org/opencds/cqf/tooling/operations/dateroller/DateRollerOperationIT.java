@@ -13,6 +13,7 @@ import org.hl7.fhir.r4.model.Period;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -362,6 +363,34 @@ public class DateRollerOperationIT {
       Assert.assertFalse(request.has("prefetch"));
    }
 
+   @Test
+   void testCdsHooksRequestJsonDatesRolled() {
+      Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
+      LocalDate lastUpdated = LocalDate.now().minusDays(40);
+      String request = "{ \"hook\": \"order-sign\", \"prefetch\": { \"item1\": {" +
+              " \"resourceType\": \"Observation\", \"id\": \"example\"," +
+              " \"extension\": [ { \"url\": \"" + RollTestDates.DATEROLLER_EXT_URL + "\", \"extension\": [" +
+              " { \"url\": \"dateLastUpdated\", \"valueDateTime\": \"" + lastUpdated + "\" } ] } ]," +
+              " \"status\": \"final\", \"code\": { \"text\": \"example\" }," +
+              " \"effectivePeriod\": { \"start\": \"" + lastUpdated + "T08:30:00-06:00\" }," +
+              " \"issued\": \"" + lastUpdated.minusDays(1) + "T10:00:00.123Z\"," +
+              " \"component\": [ { \"code\": { \"text\": \"c\" }, \"valueDateTime\": \"" + lastUpdated.getYear() + "\" } ]" +
+              " }, \"item2\": null } }";
+      JsonObject jsonRequest = gson.fromJson(request, JsonObject.class);
+      RollTestDates dateRoller = new RollTestDates();
+      dateRoller.setFhirContext(fhirContext);
+      dateRoller.getUpdatedRequest(jsonRequest, gson);
+
+      JsonObject observation = jsonRequest.getAsJsonObject("prefetch").getAsJsonObject("item1");
+      LocalDate today = LocalDate.now();
+      Assert.assertEquals(observation.getAsJsonObject("effectivePeriod").get("start").getAsString(),
+              today + "T08:30:00-06:00");
+      Assert.assertEquals(observation.get("issued").getAsString(), today.minusDays(1) + "T10:00:00.123Z");
+      Assert.assertEquals(observation.getAsJsonArray("component").get(0).getAsJsonObject()
+              .get("valueDateTime").getAsString(), String.valueOf(lastUpdated.getYear()));
+      Assert.assertTrue(jsonRequest.getAsJsonObject("prefetch").get("item2").isJsonNull());
+   }
+
    private Extension getDateRollerExtension() {
       Duration frequency = new Duration();
       frequency.setValue(30).setUnit("days");
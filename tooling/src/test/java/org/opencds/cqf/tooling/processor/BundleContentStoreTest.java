@@ -0,0 +1,149 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.opencds.cqf.tooling.utilities.BundleUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class BundleContentStoreTest {
+
+    private static final FhirContext fhirContext = FhirContext.forR4Cached();
+    private File bundlesDir;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        bundlesDir = Files.createTempDirectory("bundles").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.cleanUp();
+        FileUtils.deleteDirectory(bundlesDir);
+    }
+
+    private Bundle getMeasureBundle(String measureId, Library sharedLibrary, ValueSet sharedValueSet) {
+        Measure measure = new Measure();
+        measure.setId(measureId);
+        measure.setUrl("http://example.org/fhir/Measure/" + measureId);
+        return BundleUtils.bundleR4Artifacts(measureId, List.<IBaseResource>of(measure, sharedLibrary, sharedValueSet), null, false);
+    }
+
+    private List<File> getObjectFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(new File(bundlesDir, BundleContentStore.OBJECTS_PATH_ELEMENT).toPath())) {
+            return paths.map(Path::toFile).filter(File::isFile).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testSharedResourcesStoredOnce() throws IOException {
+        Library library = new Library();
+        library.setId("FHIRHelpers");
+        library.setUrl("http://example.org/fhir/Library/FHIRHelpers");
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId("diabetes");
+        valueSet.setUrl("http://example.org/fhir/ValueSet/diabetes");
+
+        BundleContentStore store = new BundleContentStore(bundlesDir.getAbsolutePath());
+        String firstManifest = store.writeManifest(getMeasureBundle("measure-a", library, valueSet),
+                new File(bundlesDir, "measure-a").getAbsolutePath(), null, fhirContext);
+        String secondManifest = store.writeManifest(getMeasureBundle("measure-b", library, valueSet),
+                new File(bundlesDir, "measure-b").getAbsolutePath(), null, fhirContext);
+
+        assertTrue(BundleContentStore.isManifest(firstManifest));
+        assertTrue(new File(secondManifest).exists());
+        // two measures plus one copy each of the shared library and ValueSet
+        assertEquals(getObjectFiles().size(), 4);
+        // the manifest only references the stored resources
+        assertFalse(FileUtils.readFileToString(new File(firstManifest), "UTF-8").contains("\"Library\""));
+    }
+
+    @Test
+    public void testMaterializeManifest() {
+        Library library = new Library();
+        library.setId("FHIRHelpers");
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId("diabetes");
+
+        Bundle bundle = getMeasureBundle("measure-a", library, valueSet);
+        String manifestPath = new BundleContentStore(bundlesDir.getAbsolutePath()).writeManifest(bundle,
+                new File(bundlesDir, "measure-a").getAbsolutePath(), "measure-a-bundle", fhirContext);
+
+        Bundle materialized = (Bundle) BundleContentStore.materialize(manifestPath, IOUtils.Encoding.JSON, fhirContext);
+        assertEquals(materialized.getEntry().size(), 3);
+        assertEquals(materialized.getEntry().get(1).getResource().getIdElement().getIdPart(), "FHIRHelpers");
+        assertEquals(materialized.getEntryFirstRep().getRequest().getUrl(), bundle.getEntryFirstRep().getRequest().getUrl());
+        assertTrue(new File(new File(bundlesDir, "measure-a"), "measure-a-bundle.json").exists());
+    }
+
+    @Test
+    public void testSweepRemovesUnreferencedObjects() throws IOException {
+        Library library = new Library();
+        library.setId("FHIRHelpers");
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId("diabetes");
+
+        BundleContentStore store = new BundleContentStore(bundlesDir.getAbsolutePath());
+        store.writeManifest(getMeasureBundle("measure-a", library, valueSet),
+                new File(bundlesDir, "measure-a").getAbsolutePath(), null, fhirContext);
+        String removedManifest = store.writeManifest(getMeasureBundle("measure-b", library, (ValueSet) new ValueSet().setUrl("http://example.org/fhir/ValueSet/other").setId("other")),
+                new File(bundlesDir, "measure-b").getAbsolutePath(), null, fhirContext);
+        assertEquals(getObjectFiles().size(), 5);
+
+        // a later run no longer writes measure-b
+        Files.delete(new File(removedManifest).toPath());
+        assertEquals(new BundleContentStore(bundlesDir.getAbsolutePath()).sweep(), 2);
+        assertEquals(getObjectFiles().size(), 3);
+
+        Bundle materialized = (Bundle) BundleContentStore.materialize(
+                new File(new File(bundlesDir, "measure-a"), "measure-a" + BundleContentStore.MANIFEST_EXTENSION).getAbsolutePath(),
+                IOUtils.Encoding.JSON, fhirContext);
+        assertEquals(materialized.getEntry().size(), 3);
+    }
+
+    @Test
+    public void testBundlesInDirReadManifests() {
+        Library library = new Library();
+        library.setId("FHIRHelpers");
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId("diabetes");
+
+        BundleContentStore store = new BundleContentStore(bundlesDir.getAbsolutePath());
+        String manifestPath = store.writeManifest(getMeasureBundle("measure-a", library, valueSet),
+                new File(bundlesDir, "measure-a").getAbsolutePath(), "measure-a-bundle", fhirContext);
+
+        // the stored objects are not bundles, and the manifest is read as the full bundle
+        List<Map.Entry<String, IBaseResource>> bundles = BundleUtils.getBundlesInDir(bundlesDir.getAbsolutePath(), fhirContext);
+        assertEquals(bundles.size(), 1);
+        assertEquals(bundles.get(0).getKey(), manifestPath);
+        assertEquals(((Bundle) bundles.get(0).getValue()).getEntry().get(1).getResource().getIdElement().getIdPart(), "FHIRHelpers");
+
+        // once materialized, only the full bundle is read
+        BundleContentStore.materialize(manifestPath, IOUtils.Encoding.JSON, fhirContext);
+        IOUtils.clearPathCaches();
+        bundles = BundleUtils.getBundlesInDir(bundlesDir.getAbsolutePath(), fhirContext);
+        assertEquals(bundles.size(), 1);
+        assertFalse(BundleContentStore.isManifest(bundles.get(0).getKey()));
+    }
+}
@@ -0,0 +1,85 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.hl7.elm.r1.ValueSetDef;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CompiledLibraryRegistryTest {
+
+    private static final String CQL = "library Registered version '1.0.0'\n\n"
+            + "codesystem \"LOINC\": 'http://loinc.org'\n"
+            + "valueset \"Diabetes\": 'http://example.org/fhir/ValueSet/diabetes'\n\n"
+            + "define \"One\": 1\n";
+
+    private Path directory;
+    private File cqlFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("compiled-library-registry");
+        cqlFile = directory.resolve("Registered.cql").toFile();
+        Files.write(cqlFile.toPath(), CQL.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        CompiledLibraryRegistry.clear();
+        ResourceUtils.cleanUp();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testDeclarationsAreReadFromTheRegistry() throws Exception {
+        // the registered ELM declares other value sets than the file, so the declarations can only come from the registry
+        String compiledCql = "library Registered version '1.0.0'\n\n"
+                + "valueset \"Asthma\": 'http://example.org/fhir/ValueSet/asthma'\n"
+                + "valueset \"Hypertension\": 'http://example.org/fhir/ValueSet/hypertension'\n\n"
+                + "define \"One\": 1\n";
+        LibraryManager libraryManager = new LibraryManager(new ModelManager(), CqlCompilerOptions.defaultOptions());
+        CompiledLibraryRegistry.register(cqlFile, CqlTranslator.fromText(compiledCql, libraryManager).toELM());
+
+        // a path to the same file spelled differently finds the entry
+        String path = directory.resolve(".").resolve("Registered.cql").toString();
+        assertNotNull(CompiledLibraryRegistry.get(path));
+
+        List<ValueSetDef> valueSetDefs = ResourceUtils.getValueSetDefs(path);
+        assertEquals(valueSetDefs.size(), 2);
+        assertEquals(valueSetDefs.get(0).getId(), "http://example.org/fhir/ValueSet/asthma");
+        assertEquals(valueSetDefs.get(1).getId(), "http://example.org/fhir/ValueSet/hypertension");
+        assertEquals(ResourceUtils.getDepELMValueSetDefIDs(path).size(), 2);
+        assertEquals(ResourceUtils.getIncludedDefs(path).size(), 0);
+
+        // without the entry the file is translated
+        CompiledLibraryRegistry.clear();
+        valueSetDefs = ResourceUtils.getValueSetDefs(path);
+        assertEquals(valueSetDefs.size(), 1);
+        assertEquals(valueSetDefs.get(0).getId(), "http://example.org/fhir/ValueSet/diabetes");
+    }
+
+    @Test
+    public void testChangedFileIsNotServed() throws Exception {
+        LibraryManager libraryManager = new LibraryManager(new ModelManager(), CqlCompilerOptions.defaultOptions());
+        CompiledLibraryRegistry.register(cqlFile, CqlTranslator.fromText(CQL, libraryManager).toELM());
+
+        Files.write(cqlFile.toPath(), (CQL + "\ndefine \"Two\": 2\n").getBytes(StandardCharsets.UTF_8));
+        assertNull(CompiledLibraryRegistry.get(cqlFile.getPath()));
+    }
+}
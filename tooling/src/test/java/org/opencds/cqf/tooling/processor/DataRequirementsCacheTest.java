@@ -0,0 +1,125 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.r5.model.Library;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class DataRequirementsCacheTest {
+
+    private LibraryManager libraryManager;
+    private CompiledLibrary compiledLibrary;
+    private CqlCompilerOptions options;
+
+    @BeforeClass
+    public void setUp() {
+        options = CqlCompilerOptions.defaultOptions();
+        libraryManager = new LibraryManager(new ModelManager(), options);
+        CqlTranslator translator = CqlTranslator.fromText(
+                "library Shared version '1.0.0'\n\nparameter \"Threshold\" Integer default 5\n\n"
+                        + "define \"Numerator\": \"Threshold\" + 1\n\ndefine \"Denominator\": 10\n", libraryManager);
+        compiledLibrary = translator.getTranslatedLibrary();
+        libraryManager.getCompiledLibraries().put(compiledLibrary.getIdentifier(), compiledLibrary);
+    }
+
+    @Test
+    public void testSameExpressionsAreComputedOnce() {
+        DataRequirementsCache cache = new DataRequirementsCache(null);
+        Library first = cache.gatherDataRequirements(libraryManager, compiledLibrary, options,
+                Set.of("Numerator", "Denominator"), false, null);
+        Library second = cache.gatherDataRequirements(libraryManager, compiledLibrary, options,
+                Set.of("Denominator", "Numerator"), false, null);
+
+        assertEquals(cache.size(), 1);
+        // every caller gets its own copy, as the refreshes change the library
+        assertNotSame(first, second);
+        assertTrue(first.equalsDeep(second));
+    }
+
+    @Test
+    public void testDifferentExpressionsAreComputedSeparately() {
+        DataRequirementsCache cache = new DataRequirementsCache(null);
+        cache.gatherDataRequirements(libraryManager, compiledLibrary, options, Set.of("Numerator"), false, null);
+        cache.gatherDataRequirements(libraryManager, compiledLibrary, options, Set.of("Denominator"), false, null);
+        cache.gatherDataRequirements(libraryManager, compiledLibrary, options, Set.of("Numerator"), true, null);
+        assertEquals(cache.size(), 3);
+
+        cache.clear();
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testStoredResultsAreReadByAnotherCache() throws IOException {
+        Path directory = Files.createTempDirectory("data-requirements");
+        try {
+            Library computed = new DataRequirementsCache(directory, "test", 10).gatherDataRequirements(libraryManager,
+                    compiledLibrary, options, Set.of("Numerator"), false, null);
+            assertEquals(countEntries(directory), 1);
+
+            Library stored = new DataRequirementsCache(directory, "test", 10).gatherDataRequirements(libraryManager,
+                    compiledLibrary, options, Set.of("Numerator"), false, null);
+            assertTrue(computed.equalsDeep(stored));
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    public void testStoreIsBounded() throws IOException {
+        Path directory = Files.createTempDirectory("data-requirements");
+        try {
+            DataRequirementsCache cache = new DataRequirementsCache(directory, "test", 1);
+            cache.gatherDataRequirements(libraryManager, compiledLibrary, options, Set.of("Numerator"), false, null);
+            cache.gatherDataRequirements(libraryManager, compiledLibrary, options, Set.of("Denominator"), false, null);
+            assertEquals(countEntries(directory), 1);
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    public void testUnknownVersionIsNotStored() throws IOException {
+        Path directory = Files.createTempDirectory("data-requirements");
+        try {
+            new DataRequirementsCache(directory, null, 10).gatherDataRequirements(libraryManager, compiledLibrary,
+                    options, Set.of("Numerator"), false, null);
+            assertEquals(countEntries(directory), 0);
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    public void testStoreIsOptIn() {
+        String previous = System.clearProperty(DataRequirementsCache.DIRECTORY_PROPERTY);
+        try {
+            assertNull(DataRequirementsCache.getDefaultDirectory());
+        } finally {
+            if (previous != null) {
+                System.setProperty(DataRequirementsCache.DIRECTORY_PROPERTY, previous);
+            }
+        }
+    }
+
+    private static long countEntries(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.filter(p -> p.toString().endsWith(".json")).count();
+        }
+    }
+}
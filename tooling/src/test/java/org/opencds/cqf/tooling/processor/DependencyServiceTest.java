@@ -0,0 +1,118 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.RelatedArtifact;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.opencds.cqf.tooling.utilities.ArtifactRecord;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class DependencyServiceTest {
+
+    private static final FhirContext fhirContext = FhirContext.forR4Cached();
+    private static final String BASE = "http://example.org/fhir/";
+
+    private Path directory;
+    private List<String> resourceDirectories;
+
+    private static Library library(String name, String... dependencies) {
+        Library library = new Library();
+        library.setId(name);
+        library.setName(name);
+        library.setUrl(BASE + "Library/" + name);
+        library.setVersion("1.0.0");
+        for (String dependency : dependencies) {
+            library.addRelatedArtifact().setType(RelatedArtifact.RelatedArtifactType.DEPENDSON).setResource(BASE + dependency);
+        }
+        return library;
+    }
+
+    private void write(String fileName, IBaseResource resource) throws IOException {
+        Files.write(directory.resolve(fileName),
+                fhirContext.newJsonParser().encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dependency-service");
+        write("Library-Root.json", library("Root", "Library/Common|1.0.0", "Library/FHIRHelpers|1.0.0", "ValueSet/one"));
+        write("Library-Common.json", library("Common", "Library/FHIRHelpers|1.0.0", "Library/Missing|1.0.0", "ValueSet/two"));
+        write("Library-FHIRHelpers.json", library("FHIRHelpers", "ValueSet/absent"));
+        write("ValueSet-one.json", new ValueSet().setUrl(BASE + "ValueSet/one").setId("one"));
+        write("ValueSet-two.json", new ValueSet().setUrl(BASE + "ValueSet/two").setId("two"));
+
+        resourceDirectories = IOUtils.resourceDirectories;
+        IOUtils.resourceDirectories = new ArrayList<>(List.of(directory.toString()));
+        IOUtils.clearPathCaches();
+        ValueSetsProcessor.clearCachedValueSets();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.resourceDirectories = resourceDirectories;
+        IOUtils.cleanUp();
+        ValueSetsProcessor.clearCachedValueSets();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testLibraryClosure() {
+        DependencyService dependencies = DependencyService.getInstance(fhirContext);
+        IBaseResource root = IOUtils.getLibraries(fhirContext).get("Root");
+
+        Map<String, IBaseResource> direct = dependencies.getLibraryDependencies(root, false);
+        assertEquals(direct.keySet(), Set.of(BASE + "Library/Common|1.0.0", BASE + "Library/FHIRHelpers|1.0.0"));
+        assertTrue(dependencies.getMissingLibraries(root, false).isEmpty());
+
+        Map<String, IBaseResource> closure = dependencies.getLibraryDependencies(root, true);
+        assertEquals(closure.size(), 2);
+        assertEquals(dependencies.getMissingLibraries(root, true), Set.of(BASE + "Library/Missing|1.0.0"));
+        // memoized
+        assertSame(dependencies.getLibraryDependencies(root, true), closure);
+    }
+
+    @Test
+    public void testLibrariesAreKeptAsRecords() {
+        ArtifactRecord common = IOUtils.getLibraryRecords(fhirContext).get("Common");
+        assertEquals(common.getUrl(), BASE + "Library/Common");
+        assertEquals(common.getVersion(), "1.0.0");
+        assertEquals(common.getDependencies().size(), 3);
+        assertEquals(IOUtils.getLibraryUrlRecords(fhirContext).get(BASE + "Library/Common|1.0.0"), common);
+
+        IBaseResource library = IOUtils.getLibraries(fhirContext).get("Common");
+        assertTrue(common.describes(library, fhirContext));
+        assertEquals(ValueSetsProcessor.getCachedValueSetRecords(fhirContext).get(BASE + "ValueSet/two").getId(), "two");
+    }
+
+    @Test
+    public void testTerminologyClosure() {
+        DependencyService dependencies = DependencyService.getInstance(fhirContext);
+        IBaseResource root = IOUtils.getLibraries(fhirContext).get("Root");
+
+        assertEquals(dependencies.getTerminologyDependencies(root, false).keySet(), Set.of(BASE + "ValueSet/one"));
+        assertEquals(dependencies.getTerminologyDependencies(root, true).keySet(),
+                Set.of(BASE + "ValueSet/one", BASE + "ValueSet/two"));
+        // every missing dependency of the closure is reported at once
+        assertEquals(dependencies.getMissingTerminology(root, true),
+                Set.of(BASE + "ValueSet/absent", BASE + "Library/Missing|1.0.0"));
+    }
+}
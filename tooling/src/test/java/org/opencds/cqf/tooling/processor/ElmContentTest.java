@@ -0,0 +1,73 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.LibraryContentType;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ElmContentTest {
+
+    private CqlTranslator translator;
+
+    @BeforeClass
+    public void setUp() {
+        LibraryManager libraryManager = new LibraryManager(new ModelManager(), CqlCompilerOptions.defaultOptions());
+        translator = CqlTranslator.fromText(
+                "library Spill version '1.0.0'\n\ndefine \"Ten\": 10\n\ndefine \"Eleven\": \"Ten\" + 1\n", libraryManager);
+    }
+
+    @Test
+    public void testSmallElmIsKeptInMemory() throws IOException {
+        ElmContent elm = ElmContent.write(translator.toELM(), LibraryContentType.XML, 1024 * 1024);
+        byte[] expected = translator.toXml().getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(elm.isSpilled());
+        assertEquals(elm.getBytes(), expected);
+        assertEquals(elm.length(), expected.length);
+        assertEquals(elm.getSha256(), DigestUtils.sha256Hex(expected));
+    }
+
+    @Test
+    public void testLargeElmIsSpilledToDisk() throws IOException {
+        ElmContent elm = ElmContent.write(translator.toELM(), LibraryContentType.JSON, 16);
+        try {
+            byte[] expected = translator.toJson().getBytes(StandardCharsets.UTF_8);
+
+            assertTrue(elm.isSpilled());
+            assertEquals(elm.getBytes(), expected);
+            assertEquals(elm.length(), expected.length);
+            assertEquals(elm.getSha256(), DigestUtils.sha256Hex(expected));
+        } finally {
+            elm.delete();
+        }
+    }
+
+    @Test
+    public void testSpilledElmIsReadableUntilDeleted() throws IOException {
+        ElmContent first = ElmContent.write(translator.toELM(), LibraryContentType.XML, 16);
+        ElmContent second = ElmContent.write(translator.toELM(), LibraryContentType.XML, 16);
+        try {
+            // a later spill does not remove an earlier one that is still referenced
+            assertEquals(first.getBytes(), second.getBytes());
+
+            first.delete();
+            assertThrows(UncheckedIOException.class, first::getBytes);
+            assertEquals(second.getBytes(), translator.toXml().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            second.delete();
+        }
+    }
+}
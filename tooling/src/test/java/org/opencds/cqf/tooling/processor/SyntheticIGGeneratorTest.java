@@ -0,0 +1,132 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.opencds.cqf.tooling.parameter.SyntheticIGParameters;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class SyntheticIGGeneratorTest {
+
+    private static final Pattern INCLUDE = Pattern.compile("include (SyntheticLibrary(\\d{4})) version");
+    private File igDir;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        igDir = Files.createTempDirectory("synthetic-ig").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(igDir);
+    }
+
+    private SyntheticIGParameters getParams(File dir) {
+        SyntheticIGParameters params = new SyntheticIGParameters();
+        params.igPath = dir.getAbsolutePath();
+        params.libraryCount = 12;
+        params.includeDepth = 3;
+        params.includeFanOut = 2;
+        params.measureCount = 3;
+        params.valueSetCount = 5;
+        params.valueSetExpansionSize = 7;
+        params.patientsPerMeasure = 4;
+        return params;
+    }
+
+    private static List<Path> list(File dir, String... subPath) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath().resolve(String.join(File.separator, subPath)))) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static String read(File dir, String... subPath) throws IOException {
+        return new String(Files.readAllBytes(dir.toPath().resolve(String.join(File.separator, subPath))),
+                StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testGeneratesRequestedArtifacts() throws IOException {
+        new SyntheticIGGenerator().generate(getParams(igDir));
+
+        assertTrue(new File(igDir, "ig.ini").isFile());
+        assertTrue(new File(igDir, "input" + File.separator + "synthetic-ig.json").isFile());
+        assertEquals(list(igDir, "input", "cql").size(), 15);
+        assertEquals(list(igDir, "input", "resources", "library").size(), 15);
+        assertEquals(list(igDir, "input", "resources", "measure").size(), 3);
+        assertEquals(list(igDir, "input", "vocabulary", "valueset").size(), 5);
+        // Patient, Encounter and MeasureReport for every test case, plus a Condition for half of them
+        assertEquals(list(igDir, "input", "tests", "measure").size(), 3 * (4 * 3 + 2));
+
+        ValueSet valueSet = (ValueSet) FhirContext.forR4Cached().newJsonParser().parseResource(
+                read(igDir, "input", "vocabulary", "valueset", "valueset-synthetic-valueset-0.json"));
+        assertEquals(valueSet.getExpansion().getContains().size(), 7);
+        assertEquals(valueSet.getCompose().getIncludeFirstRep().getConcept().size(), 7);
+    }
+
+    @Test
+    public void testIncludesOnlyTheLayerBelow() throws IOException {
+        new SyntheticIGGenerator().generate(getParams(igDir));
+
+        // 12 libraries in 3 layers: 0-3, 4-7 and 8-11
+        for (int i = 0; i < 12; i++) {
+            String cql = read(igDir, "input", "cql", String.format("SyntheticLibrary%04d.cql", i));
+            Matcher matcher = INCLUDE.matcher(cql);
+            int includes = 0;
+            while (matcher.find()) {
+                int included = Integer.parseInt(matcher.group(2));
+                assertEquals(included / 4, i / 4 - 1, "SyntheticLibrary" + i + " includes " + matcher.group(1));
+                includes++;
+            }
+            assertEquals(includes, i < 4 ? 0 : 2);
+        }
+
+        String measureCql = read(igDir, "input", "cql", "SyntheticMeasure0000.cql");
+        Matcher matcher = INCLUDE.matcher(measureCql);
+        while (matcher.find()) {
+            assertTrue(Integer.parseInt(matcher.group(2)) >= 8);
+        }
+    }
+
+    @Test
+    public void testIsDeterministic() throws IOException {
+        File otherDir = Files.createTempDirectory("synthetic-ig").toFile();
+        try {
+            new SyntheticIGGenerator().generate(getParams(igDir));
+            new SyntheticIGGenerator().generate(getParams(otherDir));
+
+            List<Path> files = list(igDir, "input", "cql");
+            for (Path file : files) {
+                assertEquals(read(otherDir, "input", "cql", file.getFileName().toString()),
+                        read(igDir, "input", "cql", file.getFileName().toString()));
+            }
+        } finally {
+            FileUtils.deleteDirectory(otherDir);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsNonEmptyDirectory() throws IOException {
+        assertFalse(new File(igDir, "existing.txt").exists());
+        FileUtils.writeStringToFile(new File(igDir, "existing.txt"), "existing", StandardCharsets.UTF_8);
+        new SyntheticIGGenerator().generate(getParams(igDir));
+    }
+}
@@ -1,13 +1,59 @@
 package org.opencds.cqf.tooling.processor;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.opencds.cqf.tooling.utilities.ArtifactRecord;
+import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.testng.annotations.Test;
 
+import ca.uhn.fhir.context.FhirContext;
+
 public class ValueSetsProcessorTest {
 
     private ValueSetsProcessor processor;
-    
+
     @Test
     public void testBundleValueSets() throws Exception {
-        
+
+    }
+
+    @Test
+    public void testReadValueSetFromBundle() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        for (int i = 0; i < 3; i++) {
+            bundle.addEntry().setResource(new ValueSet().setUrl("http://example.org/ValueSet/vs" + i)
+                    .setId("vs" + i));
+        }
+        File file = File.createTempFile("valuesets", ".json");
+        try {
+            Files.write(file.toPath(), fhirContext.newJsonParser().encodeResourceToString(bundle)
+                    .getBytes(StandardCharsets.UTF_8));
+            ArtifactRecord second = ArtifactRecord.of(bundle.getEntry().get(1).getResource(), file.getPath(),
+                    fhirContext);
+
+            IBaseResource valueSet = ValueSetsProcessor.readValueSet(second, fhirContext);
+            assertEquals(((ValueSet) valueSet).getUrl(), "http://example.org/ValueSet/vs1");
+            // the bundle is indexed once while it is cached
+            assertSame(ValueSetsProcessor.readValueSet(second, fhirContext), valueSet);
+
+            ArtifactRecord missing = ArtifactRecord.of(new ValueSet().setUrl("http://example.org/ValueSet/other")
+                    .setId("other"), file.getPath(), fhirContext);
+            assertNull(ValueSetsProcessor.readValueSet(missing, fhirContext));
+        } finally {
+            ValueSetsProcessor.clearCachedValueSets();
+            IOUtils.cleanUp();
+            Files.deleteIfExists(file.toPath());
+        }
     }
 }
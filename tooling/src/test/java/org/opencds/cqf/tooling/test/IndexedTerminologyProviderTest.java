@@ -0,0 +1,76 @@
+package org.opencds.cqf.tooling.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class IndexedTerminologyProviderTest {
+
+    private static final FhirContext fhirContext = FhirContext.forR4Cached();
+    private static final String SNOMED = "http://snomed.info/sct";
+    private static final String DIABETES_VS = "http://example.org/fhir/ValueSet/diabetes";
+    private static final String ASTHMA_VS = "http://example.org/fhir/ValueSet/asthma";
+
+    private ValueSet getExpandedValueSet() {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setUrl(DIABETES_VS);
+        valueSet.setVersion("1.0.0");
+        ValueSet.ValueSetExpansionContainsComponent group = valueSet.getExpansion().addContains();
+        group.addContains().setSystem(SNOMED).setCode("44054006");
+        group.addContains().setSystem(SNOMED).setCode("46635009");
+        return valueSet;
+    }
+
+    private ValueSet getComposedValueSet() {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setUrl(ASTHMA_VS);
+        ValueSet.ConceptSetComponent include = valueSet.getCompose().addInclude().setSystem(SNOMED);
+        include.addConcept().setCode("195967001");
+        include.addConcept().setCode("44054006");
+        return valueSet;
+    }
+
+    @Test
+    public void testFromBundles() {
+        Bundle content = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        content.addEntry().setResource(getExpandedValueSet());
+        content.addEntry().setResource(new Patient().setId("p1"));
+        Bundle tests = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        tests.addEntry().setResource(getComposedValueSet());
+
+        IndexedTerminologyProvider terminology = IndexedTerminologyProvider.fromBundles(fhirContext, content, null, tests);
+
+        assertTrue(terminology.hasValueSet(DIABETES_VS));
+        assertTrue(terminology.hasValueSet(ASTHMA_VS));
+        assertEquals(terminology.getValueSetsForCode(SNOMED, "44054006").size(), 2);
+    }
+
+    @Test
+    public void testNestedExpansionAndVersionedUrl() {
+        IndexedTerminologyProvider terminology = IndexedTerminologyProvider.fromBundles(fhirContext,
+                new Bundle().addEntry(new Bundle.BundleEntryComponent().setResource(getExpandedValueSet())));
+
+        assertTrue(terminology.in(SNOMED, "46635009", DIABETES_VS));
+        assertTrue(terminology.in(SNOMED, "46635009", DIABETES_VS + "|1.0.0"));
+        assertEquals(terminology.expand(DIABETES_VS + "|1.0.0").size(), 2);
+    }
+
+    @Test
+    public void testComposedConcepts() {
+        IndexedTerminologyProvider terminology = IndexedTerminologyProvider.fromBundles(fhirContext,
+                new Bundle().addEntry(new Bundle.BundleEntryComponent().setResource(getComposedValueSet())));
+
+        assertTrue(terminology.in(SNOMED, "195967001", ASTHMA_VS));
+        assertTrue(terminology.in(null, "44054006", ASTHMA_VS));
+        assertFalse(terminology.in(SNOMED, "46635009", ASTHMA_VS));
+        assertFalse(terminology.hasValueSet(DIABETES_VS));
+        assertEquals(terminology.expand(DIABETES_VS).size(), 0);
+    }
+}
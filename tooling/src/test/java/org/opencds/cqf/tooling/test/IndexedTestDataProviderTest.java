@@ -0,0 +1,110 @@
+package org.opencds.cqf.tooling.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class IndexedTestDataProviderTest {
+
+    private static final FhirContext fhirContext = FhirContext.forR4Cached();
+    private static final String SNOMED = "http://snomed.info/sct";
+    private static final String DIABETES_VS = "http://example.org/fhir/ValueSet/diabetes";
+
+    private Bundle getTestBundle() {
+        Bundle bundle = new Bundle();
+        bundle.setType(Bundle.BundleType.COLLECTION);
+        bundle.addEntry().setResource(new Patient().setId("p1"));
+        bundle.addEntry().setResource(new Patient().setId("p2"));
+        bundle.addEntry().setResource(condition("c1", "p1", "44054006"));
+        bundle.addEntry().setResource(condition("c2", "p1", "38341003"));
+        bundle.addEntry().setResource(condition("c3", "p2", "44054006"));
+        Encounter encounter = new Encounter();
+        encounter.setId("e1");
+        encounter.setSubject(new Reference("Patient/p1"));
+        encounter.addType(new CodeableConcept(new Coding(SNOMED, "185349003", null)));
+        bundle.addEntry().setResource(encounter);
+        return bundle;
+    }
+
+    private Condition condition(String id, String patientId, String code) {
+        Condition condition = new Condition();
+        condition.setId(id);
+        condition.setSubject(new Reference("Patient/" + patientId));
+        condition.setCode(new CodeableConcept(new Coding(SNOMED, code, null)));
+        return condition;
+    }
+
+    private ValueSet getDiabetesValueSet() {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setUrl(DIABETES_VS);
+        valueSet.getExpansion().addContains().setSystem(SNOMED).setCode("44054006");
+        valueSet.getExpansion().addContains().setSystem(SNOMED).setCode("46635009");
+        return valueSet;
+    }
+
+    @Test
+    public void testTerminologyMembership() {
+        IndexedTerminologyProvider terminology = new IndexedTerminologyProvider(fhirContext, List.of(getDiabetesValueSet()));
+
+        assertTrue(terminology.in(SNOMED, "44054006", DIABETES_VS));
+        assertTrue(terminology.in(null, "46635009", DIABETES_VS));
+        assertFalse(terminology.in(SNOMED, "38341003", DIABETES_VS));
+        assertFalse(terminology.in("http://loinc.org", "44054006", DIABETES_VS));
+        assertEquals(terminology.expand(DIABETES_VS).size(), 2);
+    }
+
+    @Test
+    public void testRetrieveByTypeAndSubject() {
+        IndexedTestDataProvider provider = IndexedTestDataProvider.fromBundle(fhirContext, getTestBundle(), null);
+
+        assertEquals(provider.retrieve("Condition", null).size(), 3);
+        assertEquals(provider.retrieve("Condition", "p1").size(), 2);
+        assertEquals(provider.retrieve("Patient", "p2").size(), 1);
+        assertEquals(provider.retrieve("Encounter", "p2").size(), 0);
+        assertEquals(provider.retrieve("Observation", "p1").size(), 0);
+    }
+
+    @Test
+    public void testRetrieveByCode() {
+        IndexedTestDataProvider provider = IndexedTestDataProvider.fromBundle(fhirContext, getTestBundle(), null);
+
+        assertEquals(provider.retrieveByCode("Condition", null, SNOMED, "44054006").size(), 2);
+        assertEquals(provider.retrieveByCode("Condition", "p2", SNOMED, "44054006").size(), 1);
+        assertEquals(provider.retrieveByCode("Condition", "p1", null, "38341003").size(), 1);
+        assertEquals(provider.retrieveByCode("Encounter", "p1", SNOMED, "185349003").size(), 1);
+    }
+
+    @Test
+    public void testRetrieveByValueSet() {
+        IndexedTerminologyProvider terminology = new IndexedTerminologyProvider(fhirContext, List.of(getDiabetesValueSet()));
+        IndexedTestDataProvider provider = IndexedTestDataProvider.fromBundle(fhirContext, getTestBundle(), terminology);
+
+        List<IBaseResource> conditions = provider.retrieveByValueSet("Condition", "p1", DIABETES_VS);
+        assertEquals(conditions.size(), 1);
+        assertEquals(conditions.get(0).getIdElement().getIdPart(), "c1");
+        assertEquals(provider.retrieveByValueSet("Condition", null, DIABETES_VS).size(), 2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRetrieveByUnknownValueSet() {
+        IndexedTerminologyProvider terminology = new IndexedTerminologyProvider(fhirContext, List.of(getDiabetesValueSet()));
+        IndexedTestDataProvider provider = IndexedTestDataProvider.fromBundle(fhirContext, getTestBundle(), terminology);
+
+        provider.retrieveByValueSet("Condition", "p1", "http://example.org/fhir/ValueSet/unknown");
+    }
+}
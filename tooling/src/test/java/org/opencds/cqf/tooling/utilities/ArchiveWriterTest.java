@@ -0,0 +1,107 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class ArchiveWriterTest {
+
+    private static final FhirContext fhirContext = FhirContext.forR4Cached();
+    private File outputDir;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        outputDir = Files.createTempDirectory("archive").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.cleanUp();
+        FileUtils.deleteDirectory(outputDir);
+    }
+
+    @DataProvider(name = "formats")
+    public Object[][] formats() {
+        return new Object[][] { { "bundles.zip" }, { "bundles.tgz" } };
+    }
+
+    @Test(dataProvider = "formats")
+    public void testWriteAndReadArchive(String archiveName) throws IOException {
+        String archivePath = new File(outputDir, archiveName).getAbsolutePath();
+        String bundleDir = new File(outputDir, "bundles/measure/EXM124").getAbsolutePath();
+
+        Measure measure = new Measure();
+        measure.setId("EXM124");
+        Library library = new Library();
+        library.setId("EXM124");
+        Bundle bundle = BundleUtils.bundleR4Artifacts("EXM124", List.<IBaseResource>of(measure, library), null, false);
+
+        try (ArchiveWriter writer = new ArchiveWriter(archivePath)) {
+            String entryDir = ArchiveWriter.getEntryName(new File(outputDir, "bundles").getAbsolutePath(), bundleDir);
+            assertEquals(entryDir, "measure/EXM124");
+            writer.writeResource(bundle, entryDir, "EXM124-bundle", IOUtils.Encoding.JSON, fhirContext);
+            writer.writeResource(library, entryDir + "/files", null, IOUtils.Encoding.JSON, fhirContext);
+            writer.writeText(entryDir + "/files/EXM124.cql", "library EXM124 version '1.0.0'");
+            // duplicates are skipped rather than corrupting the archive
+            writer.writeResource(library, entryDir + "/files", null, IOUtils.Encoding.JSON, fhirContext);
+        }
+
+        IBaseResource readLibrary = IOUtils.readResource(
+                ArchiveUtils.getEntryPath(archivePath, "measure/EXM124/files/EXM124.json"), fhirContext);
+        assertTrue(readLibrary instanceof Library);
+        assertEquals(readLibrary.getIdElement().getIdPart(), "EXM124");
+        assertNull(IOUtils.readResource(ArchiveUtils.getEntryPath(archivePath, "missing.json"), fhirContext, true));
+        assertEquals(new String(ArchiveUtils.readEntry(ArchiveUtils.getEntryPath(archivePath, "measure/EXM124/files/EXM124.cql")),
+                StandardCharsets.UTF_8), "library EXM124 version '1.0.0'");
+
+        List<Map.Entry<String, IBaseResource>> bundles = BundleUtils.getBundlesInDir(archivePath, fhirContext, true);
+        assertEquals(bundles.size(), 1);
+        assertEquals(bundles.get(0).getKey(), ArchiveUtils.getEntryPath(archivePath, "measure/EXM124/EXM124-bundle.json"));
+        assertEquals(((Bundle) bundles.get(0).getValue()).getEntry().size(), 2);
+    }
+
+    @Test
+    public void testTgzEntriesFollowTheArchive() throws IOException {
+        String archivePath = new File(outputDir, "bundles.tgz").getAbsolutePath();
+        String entryPath = ArchiveUtils.getEntryPath(archivePath, "measure/EXM124/files/EXM124.cql");
+        try (ArchiveWriter writer = new ArchiveWriter(archivePath)) {
+            writer.writeText("measure/EXM124/files/EXM124.cql", "library EXM124 version '1.0.0'");
+        }
+        long written = new File(archivePath).lastModified();
+
+        byte[] content = ArchiveUtils.readEntry(entryPath);
+        assertEquals(new String(content, StandardCharsets.UTF_8), "library EXM124 version '1.0.0'");
+        // a change to the returned bytes does not reach the next read
+        content[0] = 'X';
+        assertEquals(new String(ArchiveUtils.readEntry(entryPath), StandardCharsets.UTF_8),
+                "library EXM124 version '1.0.0'");
+        assertNull(ArchiveUtils.readEntry(ArchiveUtils.getEntryPath(archivePath, "missing.cql")));
+
+        try (ArchiveWriter writer = new ArchiveWriter(archivePath)) {
+            writer.writeText("measure/EXM124/files/EXM124.cql", "library EXM124 version '2.0.0'");
+        }
+        // file systems with coarse timestamps may not move the archive time within the test
+        assertTrue(new File(archivePath).setLastModified(written + 2000));
+        assertEquals(new String(ArchiveUtils.readEntry(entryPath), StandardCharsets.UTF_8),
+                "library EXM124 version '2.0.0'");
+    }
+}
@@ -0,0 +1,138 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CqlSourceIndexTest {
+
+    private Path directory;
+
+    private Path write(String fileName, String cql) throws IOException {
+        Path file = directory.resolve(fileName);
+        Files.createDirectories(file.getParent());
+        Files.write(file, cql.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cql-source-index");
+        write("Measure_One.cql", "library MeasureOne version '1.0.0'\n\nusing FHIR version '4.0.1'\n\n"
+                + "include FHIRHelpers version '4.0.1' called FHIRHelpers\ninclude CQF.Common version '2.0.0' called C\n\n"
+                + "define \"Included\": C.X\n\ninclude Late called L\n");
+        write("FHIRHelpers-4.0.1.cql", "library FHIRHelpers version '4.0.1'\n");
+        write("CommonLogic.cql", "library Common version '2.0.0'\n\ndefine X: 1\n");
+        write("nested/Nested.cql", "library Nested\n");
+        write("cql-options.json", "{}");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.clearPathCaches();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testHeader() {
+        CqlHeader header = CqlHeader.read(directory.resolve("Measure_One.cql"));
+
+        assertEquals(header.getLibrary().getName(), "MeasureOne");
+        assertEquals(header.getLibrary().getVersion(), "1.0.0");
+        // includes after the first definition are not part of the header
+        assertEquals(header.getIncludes().size(), 2);
+        assertEquals(header.getIncludes().get(0).getName(), "FHIRHelpers");
+        assertEquals(header.getIncludes().get(0).getVersion(), "4.0.1");
+        assertEquals(header.getIncludes().get(1).getNamespace(), "CQF");
+        assertEquals(header.getIncludes().get(1).getName(), "Common");
+    }
+
+    @Test
+    public void testHeaderCommentsClosedOnTheLine() throws IOException {
+        Path file = write("Commented.cql", "/* Author: someone */ library Commented version '1.0.0'\n"
+                + "/* first */ include Helpers /* called */ called H /* last\n"
+                + "include Hidden called X\n*/ include Shown version '2.0.0' called S\n");
+        CqlHeader header = CqlHeader.read(file);
+
+        assertEquals(header.getLibrary().getName(), "Commented");
+        assertEquals(header.getLibrary().getVersion(), "1.0.0");
+        assertEquals(header.getIncludes().size(), 2);
+        assertEquals(header.getIncludes().get(0).getName(), "Helpers");
+        assertEquals(header.getIncludes().get(1).getName(), "Shown");
+        assertEquals(header.getIncludes().get(1).getVersion(), "2.0.0");
+    }
+
+    @Test
+    public void testLookups() throws IOException {
+        CqlSourceIndex index = new CqlSourceIndex(directory, true);
+        assertEquals(index.getFiles().size(), 4);
+        assertEquals(index.getEntryCount(), 5);
+        assertEquals(index.findByFileName("Nested.cql"), directory.resolve("nested/Nested.cql"));
+        assertEquals(index.findByFileId("Measure-One"), directory.resolve("Measure_One.cql"));
+        assertEquals(index.findLibrary("Common", "2.0.0"), directory.resolve("CommonLogic.cql"));
+        assertEquals(index.findLibrary("Common", null), directory.resolve("CommonLogic.cql"));
+        assertNull(index.findLibrary("Common", "3.0.0"));
+
+        Path added = write("Added.cql", "library Added version '1.0.0'\n");
+        index.invalidate();
+        assertEquals(index.findLibrary("Added", "1.0.0"), added);
+    }
+
+    @Test
+    public void testChangesAreSeenByTheirStamps() throws IOException {
+        CqlSourceIndex index = new CqlSourceIndex(directory, true);
+        CqlHeader header = index.getHeader(directory.resolve("CommonLogic.cql"));
+
+        // another kind of file is not a reason to read the CQL headers again
+        write("notes.txt", "");
+        touch(directory);
+        assertSame(index.getHeader(directory.resolve("CommonLogic.cql")), header);
+        assertEquals(index.getEntryCount(), 6);
+
+        Path added = write("Added.cql", "library Added version '1.0.0'\n");
+        touch(directory);
+        assertEquals(index.findLibrary("Added", "1.0.0"), added);
+        assertNotSame(index.getHeader(directory.resolve("CommonLogic.cql")), header);
+
+        // a miss, like a library the translator provides, is not checked against every file
+        CqlHeader rebuilt = index.getHeader(directory.resolve("CommonLogic.cql"));
+        assertNull(index.findLibrary("Missing", "1.0.0"));
+        assertSame(index.getHeader(directory.resolve("CommonLogic.cql")), rebuilt);
+
+        // a changed declaration is seen when its file is found
+        Path common = write("CommonLogic.cql", "library Common version '2.1.0'\n\ndefine X: 1\n");
+        touch(common);
+        assertNull(index.findLibrary("Common", "2.0.0"));
+        assertEquals(index.findLibrary("Common", "2.1.0"), common);
+    }
+
+    // file systems with coarse timestamps may not move the time within the test
+    private static void touch(Path path) {
+        assertTrue(path.toFile().setLastModified(path.toFile().lastModified() + 2000));
+    }
+
+    @Test
+    public void testDependencyFiles() throws Exception {
+        String measure = directory.resolve("Measure_One.cql").toString();
+        List<File> dependencies = IOUtils.getDependencyCqlFiles(measure, false);
+
+        assertEquals(dependencies.size(), 2);
+        assertEquals(dependencies.get(0), directory.resolve("FHIRHelpers-4.0.1.cql").toFile());
+        // found by its library declaration, as no file is named after it
+        assertEquals(dependencies.get(1), directory.resolve("CommonLogic.cql").toFile());
+    }
+}
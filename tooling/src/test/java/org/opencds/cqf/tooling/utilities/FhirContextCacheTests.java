@@ -1,6 +1,10 @@
 package org.opencds.cqf.tooling.utilities;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
 
 import org.testng.annotations.Test;
 
@@ -53,4 +57,16 @@ public class FhirContextCacheTests {
     public void TestGarbageIn() {
         FhirContextCache.getContext("not-a-version");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void TestSharesHapiCachedContext() {
+        assertSame(FhirContextCache.getContext(FhirVersionEnum.R4), FhirContext.forR4Cached());
+    }
+
+    @Test
+    public void TestWarmUp() throws Exception {
+        FhirContextCache.warmUp(FhirVersionEnum.R4).get(2, TimeUnit.MINUTES);
+        // warming up again returns the completed warm up
+        assertTrue(FhirContextCache.warmUp(FhirVersionEnum.R4).isDone());
+    }
+}
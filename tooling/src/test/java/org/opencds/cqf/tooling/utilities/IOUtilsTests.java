@@ -1,11 +1,22 @@
 package org.opencds.cqf.tooling.utilities;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+import org.hl7.fhir.r4.model.Library;
 import org.testng.annotations.Test;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import ca.uhn.fhir.context.FhirContext;
+
 public class IOUtilsTests {
 
     @Test
@@ -15,4 +26,30 @@ public class IOUtilsTests {
         String expected = basePath + File.separator + "input" + File.separator + "resources" + File.separator + "library";
         assertEquals(result, expected);
     }
+
+    @Test
+    public void TestChangedResourceIsReadAgain() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        Path file = Files.createTempFile("Library-cached", ".json");
+        try {
+            Files.write(file, fhirContext.newJsonParser().encodeResourceToString(new Library().setName("First"))
+                    .getBytes(StandardCharsets.UTF_8));
+            String path = file.toString();
+            CacheStats before = IOUtils.getResourceCacheStats();
+
+            Library first = (Library) IOUtils.readResource(path, fhirContext);
+            assertSame(IOUtils.readResource(path, fhirContext), first);
+            assertEquals(IOUtils.getResourceCacheStats().minus(before).hitCount(), 1);
+
+            Files.write(file, fhirContext.newJsonParser().encodeResourceToString(new Library().setName("Second"))
+                    .getBytes(StandardCharsets.UTF_8));
+            file.toFile().setLastModified(file.toFile().lastModified() + 2000);
+            Library second = (Library) IOUtils.readResource(path, fhirContext);
+            assertNotSame(second, first);
+            assertEquals(second.getName(), "Second");
+        } finally {
+            IOUtils.cleanUp();
+            Files.deleteIfExists(file);
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hl7.fhir.r4.model.Patient;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.parser.IParser;
+
+public class ParserPoolTest {
+
+    private final FhirContext fhirContext = FhirContextCache.getContext(FhirVersionEnum.R4);
+
+    @Test
+    public void testParsersAreReusedPerThread() throws InterruptedException {
+        IParser parser = ParserPool.getParser(IOUtils.Encoding.JSON, fhirContext, false);
+        assertSame(ParserPool.getParser(IOUtils.Encoding.JSON, fhirContext, false), parser);
+        assertNotSame(ParserPool.getParser(IOUtils.Encoding.JSON, fhirContext, true), parser);
+        assertNotSame(ParserPool.getParser(IOUtils.Encoding.XML, fhirContext, false), parser);
+
+        AtomicReference<IParser> otherThreadParser = new AtomicReference<>();
+        Thread thread = new Thread(() -> otherThreadParser.set(
+                ParserPool.getParser(IOUtils.Encoding.JSON, fhirContext, false)));
+        thread.start();
+        thread.join();
+        assertNotSame(otherThreadParser.get(), parser);
+    }
+
+    @Test
+    public void testPrettyPrintSetting() {
+        Patient patient = new Patient();
+        patient.setId("example");
+        patient.setActive(true);
+
+        assertFalse(ParserPool.getParser(IOUtils.Encoding.JSON, fhirContext, false)
+                .encodeResourceToString(patient).contains("\n"));
+        assertTrue(ParserPool.getParser(IOUtils.Encoding.JSON, fhirContext, true)
+                .encodeResourceToString(patient).contains("\n"));
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testUnsupportedEncoding() {
+        ParserPool.getParser(IOUtils.Encoding.CQL, fhirContext, false);
+    }
+}